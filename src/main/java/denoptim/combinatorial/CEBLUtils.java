@@ -19,7 +19,11 @@
 package denoptim.combinatorial;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
@@ -30,8 +34,11 @@ import com.google.gson.GsonBuilder;
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
 import denoptim.files.SingletonFileAccess;
+import denoptim.fragspace.FragmentSpace;
+import denoptim.fragspace.FragmentSpaceParameters;
 import denoptim.graph.DGraph;
 import denoptim.io.DenoptimIO;
+import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.combinatorial.CEBLParameters;
 
 
@@ -43,6 +50,11 @@ import denoptim.programs.combinatorial.CEBLParameters;
 
 public class CEBLUtils
 {
+    /**
+     * Stores of graphs that are currently open, by pathname
+     */
+    private static final Map<String,GraphLevelStore> levelStores = 
+            new HashMap<String,GraphLevelStore>();
 
 //------------------------------------------------------------------------------
 
@@ -143,6 +155,156 @@ public class CEBLUtils
         return fileName;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the pathname, without extension, of the {@link GraphLevelStore}
+     * of a level.
+     */
+
+    public static String getNameOfLevelStore(CEBLParameters settings, 
+            int level)
+    {
+        return getNameOfStorageDir(settings, level)
+                + DENOPTIMConstants.FSEP
+                + DENOPTIMConstants.FSEIDXNAMEROOT
+                + level;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the {@link GraphLevelStore} of the given 
+     * level exists.
+     */
+
+    public static boolean hasLevelStore(CEBLParameters settings, int level)
+    {
+        return GraphLevelStore.exists(getNameOfLevelStore(settings, level));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the {@link GraphLevelStore} of a level. The store is opened, or
+     * created, only once and remains open until 
+     * {@link #closeLevelStores()} is called. Building blocks of the 
+     * fragment space of the exploration are stored as references, so the
+     * same fragment space is needed to read the stored graphs.
+     * @param settings the settings of the exploration.
+     * @param level the level of the graphs in the store.
+     * @return the store of the given level.
+     */
+
+    public static GraphLevelStore getLevelStore(CEBLParameters settings, 
+            int level) throws DENOPTIMException
+    {
+        String pathname = getNameOfLevelStore(settings, level);
+        synchronized (levelStores)
+        {
+            GraphLevelStore store = levelStores.get(pathname);
+            if (store == null)
+            {
+                FragmentSpace fragSpace = null;
+                if (settings.containsParameters(ParametersType.FS_PARAMS))
+                {
+                    fragSpace = ((FragmentSpaceParameters) 
+                            settings.getParameters(ParametersType.FS_PARAMS))
+                            .getFragmentSpace();
+                }
+                store = new GraphLevelStore(pathname, fragSpace);
+                levelStores.put(pathname, store);
+            }
+            return store;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Closes all the open {@link GraphLevelStore}s.
+     */
+
+    public static void closeLevelStores() throws DENOPTIMException
+    {
+        synchronized (levelStores)
+        {
+            for (GraphLevelStore store : levelStores.values())
+            {
+                try
+                {
+                    store.close();
+                } catch (IOException e)
+                {
+                    throw new DENOPTIMException(e);
+                }
+            }
+            levelStores.clear();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Forces the graphs stored for a level to be written to the storage 
+     * device.
+     * @return the size of the {@link GraphLevelStore} of the given level, or 0
+     * if no such store exists.
+     */
+
+    public static long syncLevelStore(CEBLParameters settings, int level) 
+            throws DENOPTIMException
+    {
+        if (!hasLevelStore(settings, level))
+        {
+            return 0;
+        }
+        GraphLevelStore store = getLevelStore(settings, level);
+        store.sync();
+        return store.getEndOffset();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Lists the graphs of a level that have been stored each in its own file, 
+     * which is the format used by former versions.
+     * @return the sorted list of files
+     */
+
+    public static ArrayList<File> getLegacyStorageFiles(CEBLParameters settings,
+            int level)
+    {
+        ArrayList<File> lst = new ArrayList<File>();
+        File dir = new File(getNameOfStorageDir(settings, level));
+        if (dir.isDirectory())
+        {
+            lst.addAll(FileUtils.listFiles(dir, 
+                    new String[] {DENOPTIMConstants.SERGFILENAMEEXT}, false));
+        }
+        Collections.sort(lst);
+        return lst;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Counts the graphs stored for a level, irrespectively on whether they
+     * are in a {@link GraphLevelStore} or in individual files.
+     * @return the number of graphs stored for the given level.
+     */
+
+    public static int countGraphsOfLevel(CEBLParameters settings, int level)
+            throws DENOPTIMException
+    {
+        int count = getLegacyStorageFiles(settings, level).size();
+        if (hasLevelStore(settings, level))
+        {
+            count = count + getLevelStore(settings, level).size();
+        }
+        return count;
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -174,17 +336,19 @@ public class CEBLUtils
 //------------------------------------------------------------------------------
 
     /**
-     * Serialize a <code>DENOPTIMGraph</code> to a file.
-     * The pathname of the output file is given by the value of 
+     * Appends a <code>DENOPTIMGraph</code> to the {@link GraphLevelStore} of
+     * the given level, and records it in the human-readable index file.
+     * The pathname of the output files is given by the value of 
      * <code>level</code> and the parameters from <code>FSEParameters</code>.
      * @param graph the graph to store
      * @param level the level of modification from which the graph is generated
      * @param rootId the ID of the root graph used to build the graph
      * @param nextIds the set of indexes used to generate the next combination
      * of fragment. 
+     * @return the offset of the graph in the {@link GraphLevelStore}.
      */
 
-    protected static void storeGraphOfLevel(CEBLParameters settings, 
+    protected static long storeGraphOfLevel(CEBLParameters settings, 
             DGraph graph, int level, int rootId, 
             ArrayList<Integer> nextIds) throws DENOPTIMException
     {
@@ -202,15 +366,14 @@ public class CEBLUtils
             }
         }
 
-        String fileSer = getNameOfStorageFile(settings, level, 
-                graph.getGraphId());
         String indexFile = getNameOfStorageIndexFile(settings, level);
         String indexLine = graph.toString() + " => " + graph.getGraphId() + " " 
                            + rootId + " " + nextIds;
         
-        SingletonFileAccess.getInstance().writeData(fileSer, graph.toJson(),
-                false);
+        long offset = getLevelStore(settings, level).append(graph, rootId,
+                nextIds);
         SingletonFileAccess.getInstance().writeData(indexFile, indexLine, true);
+        return offset;
     }
 
 //------------------------------------------------------------------------------
@@ -73,6 +73,17 @@ public class CheckPoint
      */
     protected ArrayList<Integer> nextIds;
 
+    /**
+     * Offset of the root graph in the store of the previous level.
+     */
+    protected long rootOffset = -1L;
+
+    /**
+     * Size of the store of the current level when all graphs up to the
+     * safely completed one have been stored.
+     */
+    protected long levelOffset = -1L;
+
 
 //-----------------------------------------------------------------------------
 
@@ -130,6 +141,29 @@ public class CheckPoint
         return rootId;
     }
 
+//-----------------------------------------------------------------------------
+
+    /**
+     * @return the offset of the root graph in the {@link GraphLevelStore} of
+     * the previous level, or a negative value if the root graph was not read
+     * from a {@link GraphLevelStore}.
+     */
+    public long getRootOffset()
+    {
+        return rootOffset;
+    }
+
+//-----------------------------------------------------------------------------
+
+    /**
+     * @return the size of the {@link GraphLevelStore} of the current level
+     * when this checkpoint was made, or a negative value if not known.
+     */
+    public long getLevelOffset()
+    {
+        return levelOffset;
+    }
+
 //-----------------------------------------------------------------------------
 
     /**
@@ -229,6 +263,28 @@ public class CheckPoint
         rootId = val;
     }
 
+//-----------------------------------------------------------------------------
+
+    /**
+     * Set the offset of the root graph in the store of the previous level.
+     */
+
+    public void setRootOffset(long val)
+    {
+        rootOffset = val;
+    }
+
+//-----------------------------------------------------------------------------
+
+    /**
+     * Set the size of the store of the current level.
+     */
+
+    public void setLevelOffset(long val)
+    {
+        levelOffset = val;
+    }
+
 //-----------------------------------------------------------------------------
    
     @Override
@@ -243,6 +299,8 @@ public class CheckPoint
     	sb.append(", graphId=").append(graphId);
     	sb.append(", rootId=").append(rootId);
     	sb.append(", nextIds=").append(nextIds);
+    	sb.append(", rootOffset=").append(rootOffset);
+    	sb.append(", levelOffset=").append(levelOffset);
     	return sb.toString();
     }
 
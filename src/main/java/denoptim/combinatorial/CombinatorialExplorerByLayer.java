@@ -21,8 +21,8 @@ package denoptim.combinatorial;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -32,11 +32,11 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.time.StopWatch;
 
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
+import denoptim.fitness.FitnessParameters;
 import denoptim.fragspace.FragmentSpaceParameters;
 import denoptim.fragspace.FragsCombination;
 import denoptim.fragspace.FragsCombinationIterator;
@@ -44,6 +44,7 @@ import denoptim.fragspace.IdFragmentAndAP;
 import denoptim.graph.DGraph;
 import denoptim.graph.Vertex;
 import denoptim.graph.Vertex.BBType;
+import denoptim.graph.rings.RingClosureParameters;
 import denoptim.io.DenoptimIO;
 import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.combinatorial.CEBLParameters;
@@ -294,6 +295,9 @@ public class CombinatorialExplorerByLayer
                 chk.setSafelyCompletedGraphId(tsk.getGraphId());
                 chk.setRootId(tsk.getRootId());
                 chk.setNextIds(tsk.getNextIds());
+                chk.setRootOffset(tsk.getRootOffset());
+                chk.setLevelOffset(CEBLUtils.syncLevelStore(settings, 
+                        tsk.getLevel()));
                 chk.setLevel(tsk.getLevel());
                 chk.setUnqVrtId(GraphUtils.getUniqueVertexIndex());
                 chk.setUnqGraphId(GraphUtils.getUniqueGraphIndex());
@@ -380,8 +384,7 @@ public class CombinatorialExplorerByLayer
                   + "index file ('" + DENOPTIMConstants.FSEIDXNAMEROOT + level
                   + ".txt')."
                   + DENOPTIMConstants.EOL
-                  + "Now reading '" + DENOPTIMConstants.SERGFILENAMEEXT + "' "
-                  + "files from '" 
+                  + "Now reading stored graphs from '" 
                   + CEBLUtils.getNameOfStorageDir(settings, level) + "'.";
             settings.getLogger().log(Level.WARNING,msg);
             
@@ -397,11 +400,22 @@ public class CombinatorialExplorerByLayer
             	throw new DENOPTIMException(msg);
             }
 
-            Collection<File> lst = FileUtils.listFiles(
-            		new File(CEBLUtils.getNameOfStorageDir(settings, level)),
-            		new String[] {DENOPTIMConstants.SERGFILENAMEEXT},false);
-            // Keep only safely completed serialized graphs
-            serFromChkRestart = lst.size();
+            // Keep only safely completed stored graphs
+            if (CEBLUtils.hasLevelStore(settings, level))
+            {
+                int removed = CEBLUtils.getLevelStore(settings, level)
+                        .rollBack(chk.getLevelOffset(), 
+                                chk.getLatestSafelyCompletedGraphId());
+                if (removed > 0)
+                {
+                    msg = "Removed " + removed + " non-safely completed "
+                            + "graphs from the store of level " + level;
+                    settings.getLogger().log(Level.WARNING,msg);
+                }
+            }
+            Collection<File> lst = CEBLUtils.getLegacyStorageFiles(settings, 
+                    level);
+            serFromChkRestart = CEBLUtils.countGraphsOfLevel(settings, level);
             for (File f : lst)
             {
                 String fName = f.getName();
@@ -439,12 +453,8 @@ public class CombinatorialExplorerByLayer
                     long millis = (endTime - startTime);
                     if (allTasksCompleted())
                     {
-                        Collection<File> lst = FileUtils.listFiles(
-                        		new File(CEBLUtils.getNameOfStorageDir(
-                        		        settings, level)),
-                        		new String[]{DENOPTIMConstants.SERGFILENAMEEXT},
-                                                                         false);
-                        int outCount = lst.size() - serFromChkRestart;
+                        int outCount = CEBLUtils.countGraphsOfLevel(settings,
+                                level) - serFromChkRestart;
                         int totSubmSubTasks = countSubTasks();
                         if (outCount != totSubmSubTasks  &&  level > -1)
                         {
@@ -527,12 +537,7 @@ public class CombinatorialExplorerByLayer
                 // Needed to perceive prev.lev. when restarting from checkpoint
                 try
                 {
-                    Collection<File> lstRootsForNextLev = FileUtils.listFiles(
-                    		new File(CEBLUtils.getNameOfStorageDir(settings,
-                    		        level-1)),
-                    		new String[] {DENOPTIMConstants.SERGFILENAMEEXT},
-                    		false);
-                    if (lstRootsForNextLev.size() == 0)
+                    if (CEBLUtils.countGraphsOfLevel(settings, level-1) == 0)
                     {
                         noRoot = true;
                     }
@@ -559,8 +564,38 @@ public class CombinatorialExplorerByLayer
             }
         }
 
-        // shutdown thread pool
+        // shutdown thread pool and wait for the tasks to release the 
+        // resources we are about to close (e.g., external fitness workers)
         tpe.shutdown();
+        try
+        {
+            if (!tpe.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                tpe.shutdownNow(); // Cancel currently executing tasks
+                if (!tpe.awaitTermination(60, TimeUnit.SECONDS))
+                {
+                    settings.getLogger().log(Level.WARNING, "Some tasks did "
+                            + "not terminate. Closing resources anyway.");
+                }
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            tpe.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        CEBLUtils.closeLevelStores();
+        settings.closeRunSummaryDatabase();
+        if (settings.containsParameters(ParametersType.FIT_PARAMS))
+        {
+            ((FitnessParameters) settings.getParameters(
+                    ParametersType.FIT_PARAMS)).closeFitnessResources();
+        }
+        if (settings.containsParameters(ParametersType.RC_PARAMS))
+        {
+            ((RingClosureParameters) settings.getParameters(
+                    ParametersType.RC_PARAMS)).closeRingClosuresArchive();
+        }
 
         // closing messages
         watch.stop();
@@ -642,21 +677,53 @@ public class CombinatorialExplorerByLayer
              msg = "Previous level folder '" + prevLevDirName + "' not found!";
             throw new DENOPTIMException(msg);
         }
-        Collection<File> files = FileUtils.listFiles(new File(prevLevDirName),
-                       new String[] {DENOPTIMConstants.SERGFILENAMEEXT}, false);
-        ArrayList<File> lstFiles = new ArrayList<File>(files);
-        Collections.sort(lstFiles);
-        for (File file : lstFiles) 
+        // Graphs stored by former versions, i.e., one file per graph, are 
+        // read before those in the store of graphs.
+        Iterator<File> legacyFiles = CEBLUtils.getLegacyStorageFiles(settings,
+                level-1).iterator();
+        GraphLevelStore.Reader storeReader = null;
+        if (CEBLUtils.hasLevelStore(settings, level-1))
         {
-            cntRoot++;
-            if (restartFromChkPt && 
-               settings.getCheckPoint().serFileAlreadyUsed(file.getName()))
+            long fromOffset = 0;
+            if (restartFromChkPt 
+                    && settings.getCheckPoint().getRootOffset() > 0)
             {
-                continue;
+                fromOffset = settings.getCheckPoint().getRootOffset();
+            }
+            storeReader = CEBLUtils.getLevelStore(settings, level-1)
+                    .newReader(fromOffset);
+        }
+        while (true) 
+        {
+            DGraph rootGraph = null;
+            String rootName = "";
+            long rootOffset = -1;
+            if (legacyFiles.hasNext())
+            {
+                File file = legacyFiles.next();
+                cntRoot++;
+                if (restartFromChkPt && 
+                   (settings.getCheckPoint().getRootOffset() >= 0 ||
+                   settings.getCheckPoint().serFileAlreadyUsed(file.getName())))
+                {
+                    continue;
+                }
+                rootGraph = DenoptimIO.readDENOPTIMGraphsFromJSONFile(
+                        file.getAbsolutePath()).get(0);
+                rootName = file.getName();
+            } else if (storeReader != null) {
+                GraphLevelStore.Entry entry = storeReader.next();
+                if (entry == null)
+                {
+                    break;
+                }
+                cntRoot++;
+                rootGraph = entry.getGraph(fsSettings.getFragmentSpace());
+                rootName = "graph " + entry.getGraphId();
+                rootOffset = entry.getOffset();
+            } else {
+                break;
             }
-
-            DGraph rootGraph = DenoptimIO.readDENOPTIMGraphsFromJSONFile(
-                    file.getAbsolutePath()).get(0);
                     
             // Get combination factory
             FragsCombinationIterator fcf = new FragsCombinationIterator(
@@ -673,7 +740,7 @@ public class CombinatorialExplorerByLayer
             if (settings.getLogger().isLoggable(Level.FINE))
             {
                 StringBuilder sb = new StringBuilder(512);
-                sb.append("Root: " + file.getName() + DENOPTIMConstants.EOL);
+                sb.append("Root: " + rootName + DENOPTIMConstants.EOL);
                 sb.append(" - #Usable APs on root = "); 
                 sb.append(fcf.getNumRootAPs() + DENOPTIMConstants.EOL);
                 sb.append(" - Size of candidates sets = "); 
@@ -723,6 +790,7 @@ public class CombinatorialExplorerByLayer
 
                     ArrayList<Integer> nextIds = fcf.getNextIds();
                     task.setNextIds(nextIds);
+                    task.setRootOffset(rootOffset);
 
                     submittedAndFutures.put(task, tpe.submit(task));
                     submitted.add(task);
@@ -814,12 +882,20 @@ public class CombinatorialExplorerByLayer
             {
                 cleanup();
                 tpe.shutdown();
+                if (storeReader != null)
+                {
+                    storeReader.close();
+                }
                 throw dex;
             }
             catch (Exception ex)
             {
                 cleanup();
                 tpe.shutdown();
+                if (storeReader != null)
+                {
+                    storeReader.close();
+                }
                 throw new DENOPTIMException(ex);
             }
 
@@ -21,6 +21,7 @@ package denoptim.combinatorial;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -30,6 +31,7 @@ import org.openscience.cdk.interfaces.IAtomContainer;
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
 import denoptim.fitness.FitnessParameters;
+import denoptim.fitness.FitnessProvider;
 import denoptim.fragspace.FragmentSpace;
 import denoptim.fragspace.FragmentSpaceParameters;
 import denoptim.fragspace.FragsCombination;
@@ -38,6 +40,7 @@ import denoptim.graph.Candidate;
 import denoptim.graph.DGraph;
 import denoptim.graph.SymmetricVertexes;
 import denoptim.graph.Vertex;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.molecularmodeling.ThreeDimTreeBuilder;
 import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.combinatorial.CEBLParameters;
@@ -45,6 +48,7 @@ import denoptim.task.FitnessTask;
 import denoptim.utils.GeneralUtils;
 import denoptim.utils.GraphUtils;
 import denoptim.utils.MoleculeUtils;
+import denoptim.utils.Randomizer;
 
 
 /**
@@ -61,6 +65,12 @@ public class GraphBuildingTask extends FitnessTask
      */
     private int rootId;
 
+    /**
+     * The offset of the root graph in the store of the previous level, or
+     * a negative value if the root graph was not read from such store.
+     */
+    private long rootOffset = -1L;
+
     /**
      * GraphID: may be from the original graph or from its latest generated 
      * cyclic alternative.
@@ -72,6 +82,12 @@ public class GraphBuildingTask extends FitnessTask
      */
     private int level;
 
+    /**
+     * The offset of the graph sent to the fitness provider in the store of 
+     * the active level, or a negative value if no such graph has been stored.
+     */
+    private long graphOffset = -1L;
+
     /**
      * Pointer defining the active combination for this task
      */
@@ -191,6 +207,28 @@ public class GraphBuildingTask extends FitnessTask
         return rootId;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the offset of the root graph in the store of the previous level.
+     */
+
+    public long getRootOffset()
+    {
+        return rootOffset;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Set the offset of the root graph in the store of the previous level.
+     */
+
+    public void setRootOffset(long rootOffset)
+    {
+        this.rootOffset = rootOffset;
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -214,6 +252,10 @@ public class GraphBuildingTask extends FitnessTask
     @Override
     public Object call() throws Exception
     {
+        // Any random decision taken by this task depends on the combination
+        // of fragments, not on the scheduling of concurrent tasks
+        Randomizer rng = fitnessSettings.getRandomizer();
+        rng.startTaskStream(level + "_" + rootId + "_" + nextIds);
         try
         {
             String msg = "Call GraphBuildingTask " + id 
@@ -285,7 +327,12 @@ public class GraphBuildingTask extends FitnessTask
                 }
             }
 
-            Object[] res = dGraph.checkConsistency(ceblSettings);
+            // The check builds a molecular representation, which makes the
+            // vertices stop sharing the atoms of the building blocks in the
+            // libraries. So, we check a clone and keep the vertices of dGraph
+            // as they are, which allows storing them as references to the 
+            // libraries.
+            Object[] res = dGraph.clone().checkConsistency(ceblSettings);
             if (res == null) // null is used to indicate an unacceptable graph
             {
                 nSubTasks = 1;
@@ -339,6 +386,8 @@ public class GraphBuildingTask extends FitnessTask
                     lst = lst + altCyclicGraphs.get(sz-1).getGraphId() + "]";
     
                     // process all alternative graphs
+                    List<Object[]> altResults = new ArrayList<Object[]>();
+                    List<Long> altOffsets = new ArrayList<Long>();
                     for (int ig = 0; ig<altCyclicGraphs.size(); ig++)
                     {
                         DGraph g = altCyclicGraphs.get(ig);
@@ -394,24 +443,67 @@ public class GraphBuildingTask extends FitnessTask
                             altRes[0] = inchiKey;
                             
                             // Store graph
-                            CEBLUtils.storeGraphOfLevel(ceblSettings, g.clone(), 
-                                    level, rootId, nextIds);
+                            graphOffset = CEBLUtils.storeGraphOfLevel(
+                                    ceblSettings, g.clone(), level, rootId, 
+                                    nextIds);
                             graphId = gId;
-    
-                            // Optionally perform external task
-                            if (ceblSettings.submitFitnessTask())
+                            altResults.add(altRes);
+                            altOffsets.add(graphOffset);
+                        }
+                        catch (Throwable t)
+                        {
+                            msg = "Exception while working on cyclic graph "+g;
+                            throw new Throwable(msg,t);
+                        }
+                    }
+                    
+                    // Optionally perform external task
+                    if (ceblSettings.submitFitnessTask())
+                    {
+                        // The internal fitness provider evaluates all 
+                        // alternatives in one batch
+                        double[] altFitness = null;
+                        if (!fitnessSettings.useExternalFitness() 
+                                && altResults.size() > 1)
+                        {
+                            List<IAtomContainer> mols = 
+                                    new ArrayList<IAtomContainer>();
+                            for (Object[] altRes : altResults)
+                            {
+                                mols.add((IAtomContainer) altRes[2]);
+                            }
+                            FitnessProvider fp = 
+                                    fitnessSettings.acquireFitnessProvider();
+                            try
+                            {
+                                altFitness = fp.getFitness(mols);
+                            } finally {
+                                fitnessSettings.releaseFitnessProvider(fp);
+                            }
+                        }
+                        for (int ig = 0; ig<altResults.size(); ig++)
+                        {
+                            DGraph g = altCyclicGraphs.get(ig);
+                            try
                             {
                                 // We change the graph that was originally given 
                                 // to the FitnessTask superclass!
                                 dGraph = g;
                                 result.setGraph(g);
-                                sendToFitnessProvider(altRes);
+                                graphOffset = altOffsets.get(ig);
+                                if (altFitness != null 
+                                        && !Double.isNaN(altFitness[ig]))
+                                {
+                                    precomputedFitness = altFitness[ig];
+                                }
+                                sendToFitnessProvider(altResults.get(ig));
+                            }
+                            catch (Throwable t)
+                            {
+                                msg = "Exception while working on cyclic graph "
+                                        + g;
+                                throw new Throwable(msg,t);
                             }
-                        }
-                        catch (Throwable t)
-                        {
-                            msg = "Exception while working on cyclic graph "+g;
-                            throw new Throwable(msg,t);
                         }
                     }
                 }
@@ -421,8 +513,8 @@ public class GraphBuildingTask extends FitnessTask
 
                     // Store graph
                     DGraph gClone = dGraph.clone();
-                    CEBLUtils.storeGraphOfLevel(ceblSettings, gClone, level, rootId, 
-                            nextIds);
+                    graphOffset = CEBLUtils.storeGraphOfLevel(ceblSettings, 
+                            gClone, level, rootId, nextIds);
                     
                     // Optionally improve the molecular representation, which
                     // is otherwise only given by the collection of building
@@ -456,6 +548,8 @@ public class GraphBuildingTask extends FitnessTask
             hasException = true;
             thrownExc = t;
             throw new Exception(t);
+        } finally {
+            rng.endTaskStream();
         }
 
         completed = true;
@@ -525,6 +619,12 @@ public class GraphBuildingTask extends FitnessTask
         result.setUID(molinchi);
         
         runFitnessProvider();
+        
+        RunSummaryDatabase runSummaryDB = ceblSettings.getRunSummaryDatabase();
+        if (runSummaryDB != null)
+        {
+            runSummaryDB.appendCandidate(result, -1, this.level, graphOffset);
+        }
     }
 
 //------------------------------------------------------------------------------
@@ -0,0 +1,739 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.combinatorial;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.google.gson.JsonParseException;
+
+import denoptim.exception.DENOPTIMException;
+import denoptim.fragspace.FragmentSpace;
+import denoptim.graph.DGraph;
+
+/**
+ * Append-only storage of the graphs generated at one level of a
+ * combinatorial exploration. The store is made of two files:
+ * <ul>
+ * <li>a data file containing a sequence of records, each being a
+ * self-delimited and checksummed chunk holding the ID of the graph, the ID of
+ * its root graph, the indexes used to generate the next combination of
+ * fragments, and the compressed JSON representation of the graph,</li>
+ * <li>an index file with fixed-size entries mapping the ID of each graph to
+ * the offset of its record in the data file.</li>
+ * </ul>
+ * Records are only appended. When opening an existing store, any incomplete
+ * record at the end of the data file (i.e., the result of a crash) is removed
+ * and the index is made consistent with the data file. Offsets of records are
+ * stable, so they can be used to identify a position in the store, for
+ * example, in a {@link CheckPoint}.
+ *
+ * @author Marco Foscato
+ */
+
+public class GraphLevelStore implements Closeable
+{
+    /**
+     * Extension of the data file
+     */
+    public static final String DATAEXT = "dgs";
+
+    /**
+     * Extension of the index file
+     */
+    public static final String INDEXEXT = "dgi";
+
+    /**
+     * Marks the beginning of a record
+     */
+    private static final int MAGIC = 0x44475331;
+
+    /**
+     * Status of records that are part of the store
+     */
+    private static final byte ACTIVE = 1;
+
+    /**
+     * Status of records that have been discarded upon rolling back the store
+     */
+    private static final byte DISCARDED = 0;
+
+    /**
+     * Size of a record with no indexes and no payload: magic number, status,
+     * graph ID, root ID, number of indexes, length of payload, and checksum.
+     */
+    private static final int MINRECORDSIZE = 25;
+
+    /**
+     * Size of an entry of the index file: graph ID and offset
+     */
+    private static final int INDEXENTRYSIZE = 12;
+
+    /**
+     * The data file
+     */
+    private final File dataFile;
+
+    /**
+     * Access to the data file
+     */
+    private final RandomAccessFile data;
+
+    /**
+     * Access to the index file
+     */
+    private final RandomAccessFile index;
+
+    /**
+     * Offset where the next record will be written
+     */
+    private long end = 0;
+
+    /**
+     * Number of active records
+     */
+    private int numActive = 0;
+
+    /**
+     * Offset of records by graph ID. Loaded only when needed.
+     */
+    private Map<Integer,Long> offsets = null;
+
+    /**
+     * Fragment space whose building blocks are written as references
+     */
+    private final FragmentSpace fragSpace;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Opens a store, and creates its files if they do not exist already.
+     * Graphs are stored with all their vertices written in full.
+     * @param pathname the pathname of the store without extension.
+     * @throws DENOPTIMException if the files cannot be accessed.
+     */
+    public GraphLevelStore(String pathname) throws DENOPTIMException
+    {
+        this(pathname, null);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Opens a store, and creates its files if they do not exist already.
+     * @param pathname the pathname of the store without extension.
+     * @param fragSpace the fragment space whose building blocks are stored
+     * as references, or <code>null</code> to store all vertices in full.
+     * The same fragment space is needed to get the stored graphs with
+     * {@link Entry#getGraph(FragmentSpace)}.
+     * @throws DENOPTIMException if the files cannot be accessed.
+     */
+    public GraphLevelStore(String pathname, FragmentSpace fragSpace)
+            throws DENOPTIMException
+    {
+        this.fragSpace = fragSpace;
+        dataFile = new File(pathname + "." + DATAEXT);
+        try
+        {
+            data = new RandomAccessFile(dataFile, "rw");
+            index = new RandomAccessFile(pathname + "." + INDEXEXT, "rw");
+            recover();
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot open store of graphs '"
+                    + pathname + "'.", e);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param pathname the pathname of the store without extension.
+     * @return <code>true</code> if the data file of a store exists.
+     */
+    public static boolean exists(String pathname)
+    {
+        return new File(pathname + "." + DATAEXT).exists();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Makes the index consistent with the data file and removes any
+     * incomplete record from the end of the data file.
+     */
+    private void recover() throws IOException
+    {
+        long idxLength = index.length();
+        idxLength = idxLength - (idxLength % INDEXENTRYSIZE);
+        index.setLength(idxLength);
+
+        long dataLength = data.length();
+        long pos = 0;
+        if (idxLength > 0)
+        {
+            index.seek(idxLength - INDEXENTRYSIZE);
+            index.readInt();
+            long lastOffset = index.readLong();
+            Entry last = null;
+            if (lastOffset >= 0 && lastOffset < dataLength)
+            {
+                data.seek(lastOffset);
+                last = readRecord(data, lastOffset, dataLength - lastOffset);
+            }
+            if (last != null)
+            {
+                pos = lastOffset + last.size;
+            } else {
+                // Index refers to data that is not there: rebuild it
+                index.setLength(0);
+            }
+        }
+
+        // Index any complete record that has not been indexed
+        while (pos < dataLength)
+        {
+            data.seek(pos);
+            Entry entry = readRecord(data, pos, dataLength - pos);
+            if (entry == null)
+                break;
+            if (entry.active)
+                writeIndexEntry(entry.graphId, pos);
+            pos = pos + entry.size;
+        }
+        data.setLength(pos);
+        end = pos;
+        numActive = (int) (index.length() / INDEXENTRYSIZE);
+    }
+
+//------------------------------------------------------------------------------
+
+    private void writeIndexEntry(int graphId, long offset) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(INDEXENTRYSIZE);
+        buf.putInt(graphId);
+        buf.putLong(offset);
+        index.seek(index.length());
+        index.write(buf.array());
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Appends a graph to this store. This method can be called by concurrent
+     * threads: the graph is serialized by the calling thread and only the
+     * writing of the record is serialized.
+     * @param graph the graph to store.
+     * @param rootId the ID of the root graph used to build the graph.
+     * @param nextIds the set of indexes used to generate the next combination
+     * of fragments.
+     * @return the offset of the record of the given graph.
+     * @throws DENOPTIMException if the record could not be written.
+     */
+    public long append(DGraph graph, int rootId, List<Integer> nextIds)
+            throws DENOPTIMException
+    {
+        byte[] record = encode(graph.getGraphId(), rootId, nextIds,
+                graph.toJson(fragSpace));
+        synchronized (this)
+        {
+            long offset = end;
+            try
+            {
+                data.seek(offset);
+                data.write(record);
+                writeIndexEntry(graph.getGraphId(), offset);
+            } catch (IOException e)
+            {
+                throw new DENOPTIMException("Cannot append graph to '"
+                        + dataFile + "'.", e);
+            }
+            end = offset + record.length;
+            numActive++;
+            if (offsets != null)
+                offsets.put(graph.getGraphId(), offset);
+            return offset;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private static byte[] encode(int graphId, int rootId,
+            List<Integer> nextIds, String json) throws DENOPTIMException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(baos))
+        {
+            dos.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot compress graph " + graphId, e);
+        }
+        byte[] payload = baos.toByteArray();
+
+        ByteBuffer buf = ByteBuffer.allocate(MINRECORDSIZE
+                + 4 * nextIds.size() + payload.length);
+        buf.putInt(MAGIC);
+        buf.put(ACTIVE);
+        int checkedFrom = buf.position();
+        buf.putInt(graphId);
+        buf.putInt(rootId);
+        buf.putInt(nextIds.size());
+        for (Integer id : nextIds)
+            buf.putInt(id);
+        buf.putInt(payload.length);
+        buf.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), checkedFrom, buf.position() - checkedFrom);
+        buf.putInt((int) crc.getValue());
+        return buf.array();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a record.
+     * @param in the source positioned at the beginning of the record.
+     * @param offset the offset of the record.
+     * @param available the max number of bytes that the record can occupy.
+     * @return the record or <code>null</code> if the source does not contain a
+     * complete and valid record.
+     */
+    private static Entry readRecord(DataInput in, long offset, long available)
+            throws IOException
+    {
+        if (available < MINRECORDSIZE)
+            return null;
+        try
+        {
+            if (in.readInt() != MAGIC)
+                return null;
+            byte status = in.readByte();
+            int graphId = in.readInt();
+            int rootId = in.readInt();
+            int numIds = in.readInt();
+            if (numIds < 0 || 4L * numIds > available - MINRECORDSIZE)
+                return null;
+            ByteBuffer header = ByteBuffer.allocate(16 + 4 * numIds);
+            header.putInt(graphId);
+            header.putInt(rootId);
+            header.putInt(numIds);
+            ArrayList<Integer> nextIds = new ArrayList<Integer>(numIds);
+            for (int i=0; i<numIds; i++)
+            {
+                int id = in.readInt();
+                nextIds.add(id);
+                header.putInt(id);
+            }
+            int length = in.readInt();
+            long size = MINRECORDSIZE + 4L * numIds + length;
+            if (length < 0 || size > available)
+                return null;
+            header.putInt(length);
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(header.array());
+            crc.update(payload);
+            if (in.readInt() != (int) crc.getValue())
+                return null;
+            return new Entry(graphId, rootId, nextIds, payload, offset,
+                    (int) size, status == ACTIVE);
+        } catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Forces any record appended so far to be written to the storage device.
+     * @throws DENOPTIMException if the storage device cannot be updated.
+     */
+    public synchronized void sync() throws DENOPTIMException
+    {
+        try
+        {
+            data.getChannel().force(false);
+            index.getChannel().force(false);
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot synchronize '" + dataFile
+                    + "'.", e);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the offset where the next record will be written, i.e., the
+     * size of the data file.
+     */
+    public synchronized long getEndOffset()
+    {
+        return end;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of graphs in this store.
+     */
+    public synchronized int size()
+    {
+        return numActive;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the graph with the given ID.
+     * @param graphId the ID of the graph to read.
+     * @return the record of the graph, or <code>null</code> if no such graph
+     * is in this store.
+     * @throws DENOPTIMException if the store cannot be read.
+     */
+    public synchronized Entry get(int graphId) throws DENOPTIMException
+    {
+        if (offsets == null)
+        {
+            offsets = new HashMap<Integer,Long>();
+            try
+            {
+                index.seek(0);
+                for (int i=0; i<numActive; i++)
+                {
+                    int id = index.readInt();
+                    offsets.put(id, index.readLong());
+                }
+            } catch (IOException e)
+            {
+                offsets = null;
+                throw new DENOPTIMException("Cannot read index of '"
+                        + dataFile + "'.", e);
+            }
+        }
+        Long offset = offsets.get(graphId);
+        if (offset == null)
+            return null;
+        return readAt(offset);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the record at the given offset.
+     * @param offset the offset of the beginning of the record.
+     * @return the record.
+     * @throws DENOPTIMException if there is no valid record at the given
+     * offset.
+     */
+    public synchronized Entry readAt(long offset) throws DENOPTIMException
+    {
+        Entry entry = null;
+        try
+        {
+            if (offset >= 0 && offset < end)
+            {
+                data.seek(offset);
+                entry = readRecord(data, offset, end - offset);
+            }
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot read '" + dataFile + "'.", e);
+        }
+        if (entry == null)
+        {
+            throw new DENOPTIMException("No record at offset " + offset
+                    + " of '" + dataFile + "'.");
+        }
+        return entry;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Creates a reader that streams the graphs of this store in the order
+     * they have been appended. Graphs appended after the creation of the
+     * reader are not seen by the reader.
+     * @param fromOffset the offset of the first record to read. Use 0 to read
+     * the entire store.
+     * @return the reader, which should be closed after use.
+     * @throws DENOPTIMException if the data file cannot be read.
+     */
+    public Reader newReader(long fromOffset) throws DENOPTIMException
+    {
+        return new Reader(fromOffset, getEndOffset());
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Brings the store back to a former state: removes any record written
+     * at or after the given offset, and discards any record of a graph with
+     * ID higher than the given one.
+     * @param offset the size of the data file to restore. Use a negative
+     * value to keep all the records.
+     * @param maxGraphId the highest graph ID to keep.
+     * @return the number of graphs that have been removed.
+     * @throws DENOPTIMException if the store cannot be modified.
+     */
+    public synchronized int rollBack(long offset, int maxGraphId)
+            throws DENOPTIMException
+    {
+        int before = numActive;
+        try
+        {
+            if (offset >= 0 && offset < end)
+            {
+                data.setLength(offset);
+                end = offset;
+            }
+            index.setLength(0);
+            long pos = 0;
+            while (pos < end)
+            {
+                data.seek(pos);
+                Entry entry = readRecord(data, pos, end - pos);
+                if (entry == null)
+                {
+                    throw new DENOPTIMException("Invalid record at offset "
+                            + pos + " of '" + dataFile + "'.");
+                }
+                if (entry.active && entry.graphId > maxGraphId)
+                {
+                    data.seek(pos + 4);
+                    data.writeByte(DISCARDED);
+                } else if (entry.active) {
+                    writeIndexEntry(entry.graphId, pos);
+                }
+                pos = pos + entry.size;
+            }
+            numActive = (int) (index.length() / INDEXENTRYSIZE);
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot roll back '" + dataFile
+                    + "'.", e);
+        }
+        offsets = null;
+        sync();
+        return before - numActive;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        data.close();
+        index.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Sequential reader of the records of a store.
+     */
+    public class Reader implements Closeable
+    {
+        private final DataInputStream in;
+        private long pos;
+        private final long limit;
+
+        private Reader(long fromOffset, long limit) throws DENOPTIMException
+        {
+            this.pos = fromOffset;
+            this.limit = limit;
+            try
+            {
+                FileInputStream fis = new FileInputStream(dataFile);
+                fis.getChannel().position(fromOffset);
+                in = new DataInputStream(new BufferedInputStream(fis, 1 << 16));
+            } catch (IOException e)
+            {
+                throw new DENOPTIMException("Cannot read '" + dataFile + "'.",
+                        e);
+            }
+        }
+
+        /**
+         * @return the next graph in the store or <code>null</code> if there
+         * are no more graphs, in which case this reader is closed.
+         * @throws DENOPTIMException if the data file cannot be read or
+         * contains an invalid record.
+         */
+        public Entry next() throws DENOPTIMException
+        {
+            while (pos < limit)
+            {
+                Entry entry = null;
+                try
+                {
+                    entry = readRecord(in, pos, limit - pos);
+                } catch (IOException e)
+                {
+                    throw new DENOPTIMException("Cannot read '" + dataFile
+                            + "'.", e);
+                }
+                if (entry == null)
+                {
+                    throw new DENOPTIMException("Invalid record at offset "
+                            + pos + " of '" + dataFile + "'.");
+                }
+                pos = pos + entry.size;
+                if (entry.active)
+                    return entry;
+            }
+            close();
+            return null;
+        }
+
+        /**
+         * Releases the file. This is done automatically when reaching the
+         * end of the store.
+         */
+        @Override
+        public void close()
+        {
+            try
+            {
+                in.close();
+            } catch (IOException e)
+            {
+                // Nothing to do: we only read from the file
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A graph stored in a {@link GraphLevelStore} and its metadata.
+     */
+    public static class Entry
+    {
+        private final int graphId;
+        private final int rootId;
+        private final ArrayList<Integer> nextIds;
+        private final byte[] payload;
+        private final long offset;
+        private final int size;
+        private final boolean active;
+
+        private Entry(int graphId, int rootId, ArrayList<Integer> nextIds,
+                byte[] payload, long offset, int size, boolean active)
+        {
+            this.graphId = graphId;
+            this.rootId = rootId;
+            this.nextIds = nextIds;
+            this.payload = payload;
+            this.offset = offset;
+            this.size = size;
+            this.active = active;
+        }
+
+        /**
+         * @return the ID of the stored graph.
+         */
+        public int getGraphId()
+        {
+            return graphId;
+        }
+
+        /**
+         * @return the ID of the root graph used to build the stored graph.
+         */
+        public int getRootId()
+        {
+            return rootId;
+        }
+
+        /**
+         * @return the set of indexes used to generate the next combination
+         * of fragments.
+         */
+        public ArrayList<Integer> getNextIds()
+        {
+            return nextIds;
+        }
+
+        /**
+         * @return the offset of this record in the data file.
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return a new instance of the stored graph.
+         * @throws DENOPTIMException if the graph cannot be decoded, for
+         * example, because it was stored with references to the building 
+         * blocks of a fragment space.
+         */
+        public DGraph getGraph() throws DENOPTIMException
+        {
+            return getGraph(null);
+        }
+
+        /**
+         * @param fragSpace the fragment space given to the store that wrote
+         * the graph, or <code>null</code> if the store was not given any.
+         * @return a new instance of the stored graph.
+         * @throws DENOPTIMException if the graph cannot be decoded.
+         */
+        public DGraph getGraph(FragmentSpace fragSpace) 
+                throws DENOPTIMException
+        {
+            try (InputStreamReader reader = new InputStreamReader(
+                    new InflaterInputStream(new ByteArrayInputStream(
+                            payload)), StandardCharsets.UTF_8))
+            {
+                return DGraph.fromJson(reader, fragSpace);
+            } catch (IOException | JsonParseException e)
+            {
+                throw new DENOPTIMException("Cannot decode graph " + graphId,
+                        e);
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -251,6 +251,12 @@ public final class DENOPTIMConstants
      */
     public static final String FITFILENAMEEXTOUT = "_out.sdf";
     
+    /**
+     * Name of the file collecting the summary of all candidates of a GA or 
+     * FSE run, i.e., the run summary database.
+     */
+    public static final String RUNSUMMARYDBFILENAME = "RunSummary.drs";
+    
     /**
      * Extension of output file with 2D picture of candidate
      */
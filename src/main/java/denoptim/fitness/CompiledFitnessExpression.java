@@ -0,0 +1,722 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fitness;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import denoptim.exception.DENOPTIMException;
+
+/**
+ * A fitness expression that is parsed once and can then be evaluated any
+ * number of times, from any thread, and without creating any object.
+ * <p>The expression is written in the same Expression Language syntax used by
+ * the <code>FP-Equation</code> keyword (i.e., <code>${...}</code>), but only
+ * the subset of such language that makes sense for a numerical fitness
+ * is supported: numeric literals, variables, arithmetic operators
+ * (<code>+ - * / div % mod</code>), relational and logical operators,
+ * conditional operator (<code>?:</code>), and parenthesis.
+ * Any other expression is rejected by {@link #compile(String, Collection)},
+ * and should be evaluated by the Expression Language engine.</p>
+ * <p>The values of the variables are given in a <code>double[]</code> where
+ * each variable has its own slot (see {@link #getSlot(String)}). The rules of
+ * the Expression Language are respected, so that integer literals are
+ * combined using integer arithmetic, and division always uses floating point
+ * arithmetic. Therefore, results are identical to those obtained from
+ * the Expression Language engine.</p>
+ */
+public class CompiledFitnessExpression
+{
+    /**
+     * The original expression
+     */
+    private final String expression;
+
+    /**
+     * Slot of each variable in the array of values
+     */
+    private final Map<String,Integer> slots;
+
+    /**
+     * The root of the abstract syntax tree
+     */
+    private final Node root;
+
+    /**
+     * Words with special meaning in the Expression Language.
+     */
+    private static final Set<String> RESERVED = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("and", "or", "not", "eq", "ne",
+                    "lt", "gt", "le", "ge", "true", "false", "null", "empty",
+                    "div", "mod", "instanceof")));
+
+//------------------------------------------------------------------------------
+
+    private CompiledFitnessExpression(String expression,
+            Map<String,Integer> slots, Node root)
+    {
+        this.expression = expression;
+        this.slots = slots;
+        this.root = root;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Parses the given expression.
+     * @param expression the expression in the format <code>${...}</code>.
+     * @param variableNames the names of all the variables that can be used in
+     * the expression. Each name is given a slot in the array of values in the
+     * same order of this collection.
+     * @return the compiled expression.
+     * @throws DENOPTIMException if the expression uses syntax that is not
+     * supported, or refers to unknown variables.
+     */
+    public static CompiledFitnessExpression compile(String expression,
+            Collection<String> variableNames) throws DENOPTIMException
+    {
+        String trimmed = expression.trim();
+        if (!trimmed.startsWith("${") || !trimmed.endsWith("}"))
+        {
+            throw new DENOPTIMException("Fitness expression must start with "
+                    + "'${' and end with '}'. Found '" + expression + "'.");
+        }
+        Map<String,Integer> slots = new LinkedHashMap<String,Integer>();
+        for (String varName : variableNames)
+        {
+            if (!slots.containsKey(varName))
+                slots.put(varName, slots.size());
+        }
+        Parser parser = new Parser(
+                trimmed.substring(2, trimmed.length()-1), slots);
+        Node root = parser.parseAll();
+        if (root.isBoolean())
+        {
+            throw new DENOPTIMException("Fitness expression '" + expression
+                    + "' does not return a number.");
+        }
+        return new CompiledFitnessExpression(expression, slots, root);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of slots, i.e., the size of the array of values
+     * given to {@link #evaluate(double[])}.
+     */
+    public int getNumberOfSlots()
+    {
+        return slots.size();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param varName the name of the variable.
+     * @return the index of the slot for the given variable in the array of
+     * values, or -1 if the variable is not known.
+     */
+    public int getSlot(String varName)
+    {
+        Integer slot = slots.get(varName);
+        if (slot == null)
+            return -1;
+        return slot;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Calculates the value of the expression.
+     * @param values the value of each variable, in the slot given by
+     * {@link #getSlot(String)}.
+     * @return the value of the expression.
+     */
+    public double evaluate(double[] values)
+    {
+        return root.eval(values);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public String toString()
+    {
+        return expression;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A node of the abstract syntax tree. Nodes are immutable.
+     */
+    private static abstract class Node
+    {
+        /**
+         * @return <code>true</code> if this node returns a boolean.
+         */
+        boolean isBoolean()
+        {
+            return false;
+        }
+
+        /**
+         * @return <code>true</code> if this node returns an integer, i.e.,
+         * it involves only integer literals.
+         */
+        boolean isLong()
+        {
+            return false;
+        }
+
+        double eval(double[] v)
+        {
+            return evalLong(v);
+        }
+
+        long evalLong(double[] v)
+        {
+            throw new IllegalStateException("Not an integer expression");
+        }
+
+        boolean evalBoolean(double[] v)
+        {
+            throw new IllegalStateException("Not a boolean expression");
+        }
+    }
+
+    private static class LongLiteral extends Node
+    {
+        private final long value;
+        LongLiteral(long value) {this.value = value;}
+        @Override boolean isLong() {return true;}
+        @Override long evalLong(double[] v) {return value;}
+    }
+
+    private static class DoubleLiteral extends Node
+    {
+        private final double value;
+        DoubleLiteral(double value) {this.value = value;}
+        @Override double eval(double[] v) {return value;}
+    }
+
+    private static class BooleanLiteral extends Node
+    {
+        private final boolean value;
+        BooleanLiteral(boolean value) {this.value = value;}
+        @Override boolean isBoolean() {return true;}
+        @Override boolean evalBoolean(double[] v) {return value;}
+    }
+
+    private static class VariableNode extends Node
+    {
+        private final int slot;
+        VariableNode(int slot) {this.slot = slot;}
+        @Override double eval(double[] v) {return v[slot];}
+    }
+
+    private static class Negation extends Node
+    {
+        private final Node arg;
+        Negation(Node arg) {this.arg = arg;}
+        @Override boolean isLong() {return arg.isLong();}
+        @Override long evalLong(double[] v) {return -arg.evalLong(v);}
+        @Override double eval(double[] v)
+        {
+            if (arg.isLong())
+                return -arg.evalLong(v);
+            return -arg.eval(v);
+        }
+    }
+
+    private static class Not extends Node
+    {
+        private final Node arg;
+        Not(Node arg) {this.arg = arg;}
+        @Override boolean isBoolean() {return true;}
+        @Override boolean evalBoolean(double[] v) {return !arg.evalBoolean(v);}
+    }
+
+    private static class Arithmetic extends Node
+    {
+        private final char op;
+        private final Node a;
+        private final Node b;
+        private final boolean isLong;
+
+        Arithmetic(char op, Node a, Node b)
+        {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            // NB: in Expression Language the division is never done in integer
+            // arithmetic.
+            this.isLong = op != '/' && a.isLong() && b.isLong();
+        }
+
+        @Override boolean isLong() {return isLong;}
+
+        @Override long evalLong(double[] v)
+        {
+            long x = a.evalLong(v);
+            long y = b.evalLong(v);
+            switch (op)
+            {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                default: return x % y;
+            }
+        }
+
+        @Override double eval(double[] v)
+        {
+            if (isLong)
+                return evalLong(v);
+            double x = a.eval(v);
+            double y = b.eval(v);
+            switch (op)
+            {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                case '/': return x / y;
+                default: return x % y;
+            }
+        }
+    }
+
+    private static class Comparison extends Node
+    {
+        private final String op;
+        private final Node a;
+        private final Node b;
+
+        Comparison(String op, Node a, Node b)
+        {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override boolean isBoolean() {return true;}
+
+        @Override boolean evalBoolean(double[] v)
+        {
+            if (a.isBoolean())
+            {
+                boolean x = a.evalBoolean(v);
+                boolean y = b.evalBoolean(v);
+                return op.equals("==") ? x == y : x != y;
+            }
+            int cmp;
+            if (a.isLong() && b.isLong())
+            {
+                cmp = Long.compare(a.evalLong(v), b.evalLong(v));
+            } else {
+                double x = a.eval(v);
+                double y = b.eval(v);
+                // Same as the Expression Language engine, which uses 
+                // Double.compareTo and Double.equals, e.g., NaN is greater 
+                // than any other value and equal to itself, and -0.0 is 
+                // lower than 0.0.
+                cmp = Double.compare(x, y);
+            }
+            switch (op)
+            {
+                case "<": return cmp < 0;
+                case ">": return cmp > 0;
+                case "<=": return cmp <= 0;
+                case ">=": return cmp >= 0;
+                case "==": return cmp == 0;
+                default: return cmp != 0;
+            }
+        }
+    }
+
+    private static class Logical extends Node
+    {
+        private final boolean isAnd;
+        private final Node a;
+        private final Node b;
+
+        Logical(boolean isAnd, Node a, Node b)
+        {
+            this.isAnd = isAnd;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override boolean isBoolean() {return true;}
+
+        @Override boolean evalBoolean(double[] v)
+        {
+            if (isAnd)
+                return a.evalBoolean(v) && b.evalBoolean(v);
+            return a.evalBoolean(v) || b.evalBoolean(v);
+        }
+    }
+
+    private static class Conditional extends Node
+    {
+        private final Node condition;
+        private final Node a;
+        private final Node b;
+
+        Conditional(Node condition, Node a, Node b)
+        {
+            this.condition = condition;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override boolean isLong() {return a.isLong() && b.isLong();}
+
+        @Override long evalLong(double[] v)
+        {
+            return condition.evalBoolean(v) ? a.evalLong(v) : b.evalLong(v);
+        }
+
+        @Override double eval(double[] v)
+        {
+            Node chosen = condition.evalBoolean(v) ? a : b;
+            if (chosen.isLong())
+                return chosen.evalLong(v);
+            return chosen.eval(v);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Recursive-descent parser producing the abstract syntax tree.
+     * Precedence of the operators is that of the Expression Language.
+     */
+    private static class Parser
+    {
+        private final String text;
+        private final Map<String,Integer> slots;
+        private int pos = 0;
+
+        Parser(String text, Map<String,Integer> slots)
+        {
+            this.text = text;
+            this.slots = slots;
+        }
+
+        Node parseAll() throws DENOPTIMException
+        {
+            Node node = parseConditional();
+            skipSpaces();
+            if (pos < text.length())
+                throw error("Unexpected '" + text.charAt(pos) + "'");
+            return node;
+        }
+
+        private Node parseConditional() throws DENOPTIMException
+        {
+            Node condition = parseOr();
+            if (consumeSymbol("?"))
+            {
+                Node a = parseConditional();
+                if (!consumeSymbol(":"))
+                    throw error("Expected ':'");
+                Node b = parseConditional();
+                requireBoolean(condition);
+                if (a.isBoolean() != b.isBoolean())
+                    throw error("Mixed types in conditional expression");
+                if (a.isBoolean())
+                    throw error("Boolean result of conditional expression");
+                return new Conditional(condition, a, b);
+            }
+            return condition;
+        }
+
+        private Node parseOr() throws DENOPTIMException
+        {
+            Node node = parseAnd();
+            while (consumeSymbol("||") || consumeWord("or"))
+            {
+                Node other = parseAnd();
+                requireBoolean(node);
+                requireBoolean(other);
+                node = new Logical(false, node, other);
+            }
+            return node;
+        }
+
+        private Node parseAnd() throws DENOPTIMException
+        {
+            Node node = parseEquality();
+            while (consumeSymbol("&&") || consumeWord("and"))
+            {
+                Node other = parseEquality();
+                requireBoolean(node);
+                requireBoolean(other);
+                node = new Logical(true, node, other);
+            }
+            return node;
+        }
+
+        private Node parseEquality() throws DENOPTIMException
+        {
+            Node node = parseRelational();
+            while (true)
+            {
+                String op = null;
+                if (consumeSymbol("==") || consumeWord("eq"))
+                    op = "==";
+                else if (consumeSymbol("!=") || consumeWord("ne"))
+                    op = "!=";
+                else
+                    break;
+                Node other = parseRelational();
+                if (node.isBoolean() != other.isBoolean())
+                    throw error("Comparison of boolean and number");
+                node = new Comparison(op, node, other);
+            }
+            return node;
+        }
+
+        private Node parseRelational() throws DENOPTIMException
+        {
+            Node node = parseAdditive();
+            while (true)
+            {
+                String op = null;
+                if (consumeSymbol("<=") || consumeWord("le"))
+                    op = "<=";
+                else if (consumeSymbol(">=") || consumeWord("ge"))
+                    op = ">=";
+                else if (consumeSymbol("<") || consumeWord("lt"))
+                    op = "<";
+                else if (consumeSymbol(">") || consumeWord("gt"))
+                    op = ">";
+                else
+                    break;
+                Node other = parseAdditive();
+                requireNumber(node);
+                requireNumber(other);
+                node = new Comparison(op, node, other);
+            }
+            return node;
+        }
+
+        private Node parseAdditive() throws DENOPTIMException
+        {
+            Node node = parseMultiplicative();
+            while (true)
+            {
+                char op;
+                if (consumeSymbol("+"))
+                    op = '+';
+                else if (consumeSymbol("-"))
+                    op = '-';
+                else
+                    break;
+                Node other = parseMultiplicative();
+                requireNumber(node);
+                requireNumber(other);
+                node = new Arithmetic(op, node, other);
+            }
+            return node;
+        }
+
+        private Node parseMultiplicative() throws DENOPTIMException
+        {
+            Node node = parseUnary();
+            while (true)
+            {
+                char op;
+                if (consumeSymbol("*"))
+                    op = '*';
+                else if (consumeSymbol("/") || consumeWord("div"))
+                    op = '/';
+                else if (consumeSymbol("%") || consumeWord("mod"))
+                    op = '%';
+                else
+                    break;
+                Node other = parseUnary();
+                requireNumber(node);
+                requireNumber(other);
+                node = new Arithmetic(op, node, other);
+            }
+            return node;
+        }
+
+        private Node parseUnary() throws DENOPTIMException
+        {
+            if (consumeSymbol("-"))
+            {
+                Node arg = parseUnary();
+                requireNumber(arg);
+                return new Negation(arg);
+            }
+            if ((!peekSymbol("!=") && consumeSymbol("!")) || consumeWord("not"))
+            {
+                Node arg = parseUnary();
+                requireBoolean(arg);
+                return new Not(arg);
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() throws DENOPTIMException
+        {
+            skipSpaces();
+            if (pos >= text.length())
+                throw error("Unexpected end of expression");
+            char c = text.charAt(pos);
+            if (c == '(')
+            {
+                pos++;
+                Node node = parseConditional();
+                if (!consumeSymbol(")"))
+                    throw error("Expected ')'");
+                return node;
+            }
+            if (Character.isDigit(c) || c == '.')
+                return parseNumber();
+            if (Character.isJavaIdentifierStart(c))
+            {
+                int start = pos;
+                while (pos < text.length()
+                        && Character.isJavaIdentifierPart(text.charAt(pos)))
+                    pos++;
+                String word = text.substring(start, pos);
+                if (word.equals("true"))
+                    return new BooleanLiteral(true);
+                if (word.equals("false"))
+                    return new BooleanLiteral(false);
+                if (RESERVED.contains(word))
+                    throw error("Unsupported operator '" + word + "'");
+                skipSpaces();
+                if (pos < text.length() && (text.charAt(pos) == '('
+                        || text.charAt(pos) == '.'
+                        || text.charAt(pos) == '['))
+                    throw error("Unsupported use of '" + word + "'");
+                Integer slot = slots.get(word);
+                if (slot == null)
+                    throw error("Unknown variable '" + word + "'");
+                return new VariableNode(slot);
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        private Node parseNumber() throws DENOPTIMException
+        {
+            int start = pos;
+            boolean isFloating = false;
+            while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+                pos++;
+            if (pos < text.length() && text.charAt(pos) == '.')
+            {
+                isFloating = true;
+                pos++;
+                while (pos < text.length()
+                        && Character.isDigit(text.charAt(pos)))
+                    pos++;
+            }
+            if (pos < text.length()
+                    && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E'))
+            {
+                isFloating = true;
+                pos++;
+                if (pos < text.length()
+                        && (text.charAt(pos) == '+' || text.charAt(pos) == '-'))
+                    pos++;
+                while (pos < text.length()
+                        && Character.isDigit(text.charAt(pos)))
+                    pos++;
+            }
+            String literal = text.substring(start, pos);
+            try
+            {
+                if (isFloating)
+                    return new DoubleLiteral(Double.parseDouble(literal));
+                return new LongLiteral(Long.parseLong(literal));
+            } catch (NumberFormatException e)
+            {
+                throw error("Unsupported number '" + literal + "'");
+            }
+        }
+
+        private void requireBoolean(Node node) throws DENOPTIMException
+        {
+            if (!node.isBoolean())
+                throw error("Expected a boolean");
+        }
+
+        private void requireNumber(Node node) throws DENOPTIMException
+        {
+            if (node.isBoolean())
+                throw error("Expected a number");
+        }
+
+        private void skipSpaces()
+        {
+            while (pos < text.length()
+                    && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+
+        private boolean peekSymbol(String symbol)
+        {
+            skipSpaces();
+            return text.startsWith(symbol, pos);
+        }
+
+        private boolean consumeSymbol(String symbol)
+        {
+            if (peekSymbol(symbol))
+            {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean consumeWord(String word)
+        {
+            skipSpaces();
+            if (!text.startsWith(word, pos))
+                return false;
+            int end = pos + word.length();
+            if (end < text.length()
+                    && Character.isJavaIdentifierPart(text.charAt(end)))
+                return false;
+            pos = end;
+            return true;
+        }
+
+        private DENOPTIMException error(String msg)
+        {
+            return new DENOPTIMException(msg + " at position " + pos
+                    + " of fitness expression '${" + text + "}'.");
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
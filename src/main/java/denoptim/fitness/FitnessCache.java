@@ -0,0 +1,164 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fitness;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import denoptim.utils.HashedUIDStore;
+
+/**
+ * Persistent memory of the fitness values calculated for candidates
+ * identified by their unique identifier (UID).
+ * <p>Values are kept in a small, in-memory, least-recently-used collection
+ * in front of a {@link HashedUIDStore} that stores all values on disk and
+ * survives the end of the run, so that the same cache file can be used by
+ * subsequent runs, and by different programs (e.g., GA and FSE).</p>
+ * <p>Each value is stored under a key that includes a version string, which
+ * identifies the settings used to calculate the fitness (see
+ * {@link FitnessParameters#getFitnessCacheVersion()}). Therefore, values
+ * obtained with a different definition of the fitness are never returned.
+ * </p>
+ */
+public class FitnessCache
+{
+    /**
+     * The storage on disk
+     */
+    private HashedUIDStore store;
+
+    /**
+     * Version identifying the settings used to calculate the fitness.
+     */
+    private String version;
+
+    /**
+     * Most recently used values. Guarded by its own lock.
+     */
+    private Map<String,Double> recent;
+
+    /**
+     * Separator between version and UID in keys.
+     */
+    private static final String SEPARATOR = ":";
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * @param file the text file where to store the fitness values. If it exists
+     * its content is imported and will be extended.
+     * @param version the string identifying the settings used to calculate
+     * the fitness.
+     * @param maxInMemory the maximum number of values kept in memory.
+     * @throws IOException if the file cannot be used.
+     */
+    public FitnessCache(File file, String version, final int maxInMemory)
+            throws IOException
+    {
+        this.store = new HashedUIDStore(file, HashedUIDStore.DEFAULTSTRIPES,
+                true, HashedUIDStore.DEFAULTEXPECTEDSIZE);
+        this.version = version;
+        this.recent = new LinkedHashMap<String,Double>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Double> e)
+            {
+                return size() > maxInMemory;
+            }
+        };
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Searches for the fitness value of a candidate.
+     * @param uid the unique identifier of the candidate.
+     * @return the fitness value or <code>null</code> if the cache does not
+     * contain any value for the given UID.
+     * @throws IOException if the file cannot be read.
+     */
+    public Double getFitness(String uid) throws IOException
+    {
+        if (uid == null || uid.trim().isEmpty())
+            return null;
+        String key = version + SEPARATOR + uid.trim();
+        synchronized (recent)
+        {
+            Double value = recent.get(key);
+            if (value != null)
+                return value;
+        }
+        String stored = store.get(key);
+        if (stored == null || stored.isEmpty())
+            return null;
+        Double value;
+        try
+        {
+            value = Double.parseDouble(stored);
+        } catch (NumberFormatException e)
+        {
+            return null;
+        }
+        synchronized (recent)
+        {
+            recent.put(key, value);
+        }
+        return value;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Stores the fitness value of a candidate. Values are never overwritten:
+     * if the cache contains already a value for the given UID this method
+     * does nothing.
+     * @param uid the unique identifier of the candidate.
+     * @param fitness the fitness value to store.
+     * @throws IOException if the file cannot be written.
+     */
+    public void putFitness(String uid, double fitness) throws IOException
+    {
+        if (uid == null || uid.trim().isEmpty() || Double.isNaN(fitness))
+            return;
+        String key = version + SEPARATOR + uid.trim();
+        if (!store.putIfAbsent(key, Double.toString(fitness)))
+            return;
+        synchronized (recent)
+        {
+            recent.put(key, fitness);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes any pending change on disk and closes the storage.
+     * @throws IOException if the file cannot be written.
+     */
+    public void close() throws IOException
+    {
+        store.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
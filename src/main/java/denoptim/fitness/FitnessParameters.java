@@ -18,13 +18,22 @@
 
 package denoptim.fitness;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
 
 import denoptim.exception.DENOPTIMException;
 import denoptim.files.FileUtils;
 import denoptim.programs.RunTimeParameters;
+import denoptim.task.ExternalFitnessWorkerPool;
 
 /**
  * Settings defining the calculation of fitness.
@@ -49,6 +58,24 @@ public class FitnessParameters extends RunTimeParameters
      */
     private String interpreterExternalExe = "bash";
 
+    /**
+     * Number of persistent external fitness workers. When this is zero, a new 
+     * external process is executed for each candidate.
+     */
+    private int numExternalWorkers = 0;
+    
+    /**
+     * Max time (seconds) we wait for a persistent external fitness worker to 
+     * evaluate a candidate. Zero means no limit.
+     */
+    private int externalWorkerTimeout = 0;
+    
+    /**
+     * The persistent external fitness workers. This is created only when 
+     * first requested.
+     */
+    private ExternalFitnessWorkerPool externalWorkers = null;
+
     /**
      * Formulation of the internally provided fitness
      */
@@ -69,6 +96,22 @@ public class FitnessParameters extends RunTimeParameters
     private List<DescriptorForFitness> descriptors = 
             new ArrayList<DescriptorForFitness>();
     
+    /**
+     * The fitness expression in a form that does not need to be parsed for
+     * each evaluation. This is <code>null</code> unless the internal fitness
+     * provider is used and its expression can be compiled.
+     */
+    private CompiledFitnessExpression compiledFitnessExpression = null;
+    
+    /**
+     * Internal fitness providers that are ready to be reused. Each provider
+     * is used by one thread at a time, so that descriptor implementations,
+     * reference fingerprints, and SMARTS queries are prepared only once for
+     * all the candidates evaluated by that provider.
+     */
+    private ConcurrentLinkedQueue<FitnessProvider> idleFitnessProviders = 
+            new ConcurrentLinkedQueue<FitnessProvider>();
+    
     /**
      * Flag controlling production of png graphics for each candidate
      */
@@ -106,6 +149,23 @@ public class FitnessParameters extends RunTimeParameters
      */
     private boolean writeCandidatesOnDisk = true;
     
+    /**
+     * Pathname to the file used to remember fitness values across runs. 
+     * If <code>null</code> no such memory is used.
+     */
+    private String fitnessCacheFile = null;
+    
+    /**
+     * Maximum number of fitness values kept in memory by the 
+     * {@link FitnessCache}.
+     */
+    private int fitnessCacheMemorySize = 10000;
+    
+    /**
+     * The memory of fitness values. This is created only when first requested.
+     */
+    private FitnessCache fitnessCache = null;
+    
     
 //------------------------------------------------------------------------------
 
@@ -206,6 +266,52 @@ public class FitnessParameters extends RunTimeParameters
     	return descriptors;
     }
 
+//------------------------------------------------------------------------------
+    
+    /**
+     * @return the fitness expression in a form that can be evaluated without
+     * parsing it, or <code>null</code> if such form is not available and the 
+     * expression must be evaluated by the Expression Language engine.
+     */
+    public CompiledFitnessExpression getCompiledFitnessExpression()
+    {
+        return compiledFitnessExpression;
+    }
+
+//------------------------------------------------------------------------------
+    
+    /**
+     * Provides an internal fitness provider for exclusive use of the calling 
+     * thread until it is given back with 
+     * {@link #releaseFitnessProvider(FitnessProvider)}. Providers are reused,
+     * so that the setup of descriptors and queries is done once for many 
+     * candidates, rather than once per candidate.
+     * @return a fitness provider configured according to these settings.
+     */
+    public FitnessProvider acquireFitnessProvider()
+    {
+        FitnessProvider fp = idleFitnessProviders.poll();
+        if (fp == null)
+        {
+            fp = new FitnessProvider(descriptors, fitnessExpression, 
+                    compiledFitnessExpression, getLogger());
+        }
+        return fp;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Makes a fitness provider available for reuse.
+     * @param fp the fitness provider obtained from 
+     * {@link #acquireFitnessProvider()}, which must not be used any longer by
+     * the caller.
+     */
+    public void releaseFitnessProvider(FitnessProvider fp)
+    {
+        idleFitnessProviders.offer(fp);
+    }
+
 //------------------------------------------------------------------------------
 
     public void interpretKeyword(String key, String value) throws DENOPTIMException
@@ -246,6 +352,22 @@ public class FitnessParameters extends RunTimeParameters
                 checkPreFitnessUID = readYesNoTrueFalse(value);
                 checkPreFitnessUIDFromInput = true;
                 break;
+                
+            case "EXTERNALWORKERS=":
+                numExternalWorkers = Integer.parseInt(value);
+                break;
+                
+            case "EXTERNALWORKERTIMEOUT=":
+                externalWorkerTimeout = Integer.parseInt(value);
+                break;
+                
+            case "FITNESSCACHE=":
+                fitnessCacheFile = value;
+                break;
+                
+            case "FITNESSCACHEMEMORYSIZE=":
+                fitnessCacheMemorySize = Integer.parseInt(value);
+                break;
     
             default:
                  msg = "Keyword " + key + " is not a known fitness-related "
@@ -265,6 +387,24 @@ public class FitnessParameters extends RunTimeParameters
             msg = "Cannot find the fitness provider: " + externalExe;
             throw new DENOPTIMException(msg);
         }
+        if (numExternalWorkers < 0)
+        {
+            msg = "Number of external fitness workers must be a positive "
+                    + "number.";
+            throw new DENOPTIMException(msg);
+        }
+        if (externalWorkerTimeout < 0)
+        {
+            msg = "Timeout for external fitness workers must be a positive "
+                    + "number.";
+            throw new DENOPTIMException(msg);
+        }
+        if (fitnessCacheMemorySize < 0)
+        {
+            msg = "Size of the in-memory fitness cache must be a positive "
+                    + "number.";
+            throw new DENOPTIMException(msg);
+        }
         checkOtherParameters();
     }
 
@@ -277,6 +417,8 @@ public class FitnessParameters extends RunTimeParameters
 	        FitnessExpressionParser fep = new FitnessExpressionParser();
     	    fep.parse(fitnessExpression, customVarDescExpressions);
     	    descriptors = fep.getDescriptors();
+    	    compiledFitnessExpression = FitnessProvider.compileExpression(
+    	            descriptors, fitnessExpression, getLogger());
     	}
     	if (!checkPreFitnessUIDFromInput && useExternalFitness)
     	    checkPreFitnessUID = false;
@@ -328,6 +470,155 @@ public class FitnessParameters extends RunTimeParameters
         return writeCandidatesOnDisk;
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the external fitness provider runs as 
+     * persistent workers that evaluate many candidates, rather than as a new 
+     * process for each candidate.
+     */
+    public boolean useExternalFitnessWorkers()
+    {
+        return useExternalFitness && numExternalWorkers > 0;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the persistent external fitness workers, which are created upon
+     * first request. Each worker is started with the interpreter and the 
+     * pathname of the external fitness provider followed by the 
+     * <code>--worker</code> argument.
+     * @return the pool of workers, or <code>null</code> if persistent workers
+     * are not requested.
+     */
+    public synchronized ExternalFitnessWorkerPool getExternalFitnessWorkerPool()
+    {
+        if (!useExternalFitnessWorkers())
+            return null;
+        if (externalWorkers == null)
+        {
+            List<String> command = new ArrayList<String>();
+            command.addAll(Arrays.asList(
+                    interpreterExternalExe.trim().split("\\s+")));
+            command.add(externalExe);
+            command.add("--worker");
+            externalWorkers = new ExternalFitnessWorkerPool(command, 
+                    numExternalWorkers, externalWorkerTimeout * 1000L, 
+                    getLogger());
+        }
+        return externalWorkers;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Terminates the persistent external fitness workers, if any is running,
+     * and closes any other resource used to evaluate the fitness.
+     */
+    public synchronized void closeFitnessResources()
+    {
+        if (externalWorkers != null)
+        {
+            externalWorkers.close();
+            externalWorkers = null;
+        }
+        if (fitnessCache != null)
+        {
+            try
+            {
+                fitnessCache.close();
+            } catch (IOException e)
+            {
+                getLogger().log(Level.WARNING, "Unable to close fitness "
+                        + "cache. " + e.getMessage());
+            }
+            fitnessCache = null;
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if we are asked to remember fitness values
+     * in a {@link FitnessCache}.
+     */
+    public boolean useFitnessCache()
+    {
+        return fitnessCacheFile != null;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the memory of fitness values, which is created upon first 
+     * request.
+     * @return the memory of fitness values or <code>null</code> if 
+     * not requested.
+     * @throws DENOPTIMException if the cache file cannot be used.
+     */
+    public synchronized FitnessCache getFitnessCache() throws DENOPTIMException
+    {
+        if (fitnessCacheFile == null)
+            return null;
+        if (fitnessCache == null)
+        {
+            try
+            {
+                fitnessCache = new FitnessCache(new File(fitnessCacheFile), 
+                        getFitnessCacheVersion(), fitnessCacheMemorySize);
+            } catch (IOException e)
+            {
+                throw new DENOPTIMException("Unable to use fitness cache file '"
+                        + fitnessCacheFile + "'.", e);
+            }
+        }
+        return fitnessCache;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns a string that identifies the settings affecting the value of 
+     * the fitness, i.e., the type of fitness provider, the expression of the
+     * fitness, the definition of custom descriptors, and the kind of 
+     * molecular model given to the fitness provider.
+     * Fitness values are reused only if this string does not change.
+     * @return a version string for values collected in the 
+     * {@link FitnessCache}.
+     */
+    public String getFitnessCacheVersion()
+    {
+        // NB: do not use the system-dependent line separator: the version must
+        // be the same on any platform.
+        StringBuilder sb = new StringBuilder();
+        sb.append(useExternalFitness).append("\n");
+        sb.append(make3DTrees).append("\n");
+        if (useExternalFitness)
+        {
+            sb.append(interpreterExternalExe).append("\n");
+            sb.append(new File(externalExe).getAbsolutePath()).append("\n");
+        } else {
+            sb.append(fitnessExpression).append("\n");
+            for (String customDescriptor : customVarDescExpressions)
+                sb.append(customDescriptor).append("\n");
+        }
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(sb.toString().getBytes(
+                    StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i=0; i<8; i++)
+                hex.append(String.format("%02x", digest[i]));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            // SHA-256 is guaranteed to be available in every JVM
+            return Integer.toHexString(sb.toString().hashCode());
+        }
+    }
+    
 //------------------------------------------------------------------------------
 
 }
@@ -20,6 +20,7 @@ package denoptim.fitness;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -31,6 +32,7 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.qsar.DescriptorEngine;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IAtomPairDescriptor;
@@ -63,6 +65,9 @@ import jakarta.el.VariableMapper;
  * numerical results, i.e., the fitness. Each the value of each {@link Variable} 
  * derived from the calculation of {@link DescriptorForFitness} for a specific
  * chemical object.
+ * <p>Instances are not thread-safe, but can be reused to evaluate any number 
+ * of chemical objects. See {@link FitnessParameters#acquireFitnessProvider()}.
+ * </p>
  * 
  * @author Marco Foscato
  */
@@ -84,6 +89,35 @@ public class FitnessProvider
 	 */
 	private String expression;
 	
+	/**
+	 * The equation in a form that can be evaluated without parsing it again,
+	 * or <code>null</code> if the equation could not be compiled.
+	 */
+	private CompiledFitnessExpression compiledExpression;
+	
+	/**
+	 * SMARTS queries for each descriptor. These are parsed only once.
+	 */
+	private List<Map<String, Pattern>> smartsQueries = null;
+	
+	/**
+	 * For each descriptor, the slot where the value of each of its variables
+	 * is stored in {@link #slotValues}.
+	 */
+	private int[][] variableSlots;
+	
+	/**
+	 * The name of the variable stored in each slot.
+	 */
+	private String[] slotNames;
+	
+	/**
+	 * The values of the variables for the last evaluated chemical object. 
+	 * When the expression is compiled, this is the array given to
+	 * {@link CompiledFitnessExpression#evaluate(double[])}.
+	 */
+	private double[] slotValues;
+	
 	/**
 	 * Program-specific logger
 	 */
@@ -104,13 +138,41 @@ public class FitnessProvider
 	 * @param expression the string defining in expression-language format
 	 * the mathematical formulation used to calculate the fitness from the 
 	 * descriptor values.
+	 * @param logger the program-specific logger.
 	 */
 	
 	public FitnessProvider(List<DescriptorForFitness> descriptors, 
 	        String expression, Logger logger)
+	{
+	    this(descriptors, expression, 
+	            compileExpression(descriptors, expression, logger), logger);
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Constructs an instance that will calculate the fitness according to
+	 * the given parameters and using an expression that has been compiled 
+	 * already. 
+	 * See {@link #FitnessProvider(List, String, Logger)}.
+	 * @param descriptors the list of descriptors to calculate in order to 
+	 * calculate the fitness value
+	 * @param expression the string defining in expression-language format
+	 * the mathematical formulation used to calculate the fitness from the 
+	 * descriptor values.
+	 * @param compiledExpression the compiled form of the expression, or 
+	 * <code>null</code> to evaluate the expression with the 
+	 * Expression Language engine.
+	 * @param logger the program-specific logger.
+	 */
+	
+	public FitnessProvider(List<DescriptorForFitness> descriptors, 
+	        String expression, CompiledFitnessExpression compiledExpression,
+	        Logger logger)
 	{
 	    this.logger = logger;
 		this.expression = expression;
+		this.compiledExpression = compiledExpression;
 	
 		// We cannot use the list<DescriptorsForFitness> parameter directly
 		// because they are not thread-safe.
@@ -147,6 +209,139 @@ public class FitnessProvider
 		engine.setDescriptorInstances(newInstances);
 	    engine.setDescriptorSpecifications(engine.initializeSpecifications(
 	            newInstances));
+	    
+	    // Define where to store the value of each variable
+	    Map<String,Integer> slots = new LinkedHashMap<String,Integer>();
+	    variableSlots = new int[this.descriptors.size()][];
+	    for (int i=0; i<this.descriptors.size(); i++)
+	    {
+	        List<Variable> variables = this.descriptors.get(i).getVariables();
+	        variableSlots[i] = new int[variables.size()];
+	        for (int j=0; j<variables.size(); j++)
+	        {
+	            String varName = variables.get(j).getName();
+	            Integer slot = slots.get(varName);
+	            if (slot == null)
+	            {
+	                slot = slots.size();
+	                slots.put(varName, slot);
+	            }
+	            variableSlots[i][j] = slot;
+	        }
+	    }
+	    slotNames = slots.keySet().toArray(new String[slots.size()]);
+	    slotValues = new double[slotNames.length];
+	    
+	    // The compiled expression must use the same slots
+	    if (compiledExpression != null)
+	    {
+	        boolean sameSlots = 
+	                compiledExpression.getNumberOfSlots() == slotNames.length;
+	        for (int k=0; sameSlots && k<slotNames.length; k++)
+	        {
+	            sameSlots = compiledExpression.getSlot(slotNames[k]) == k;
+	        }
+	        if (!sameSlots)
+	        {
+	            if (logger != null)
+	            {
+	                logger.log(Level.FINE, "Compiled fitness expression does "
+	                        + "not match the variables of the descriptors. "
+	                        + "Using the Expression Language engine.");
+	            }
+	            this.compiledExpression = null;
+	        }
+	    }
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Tries to compile the fitness expression so that it does not need to be 
+	 * parsed for every evaluation.
+	 * @param descriptors the descriptors defining the variables that can be 
+	 * used in the expression.
+	 * @param expression the fitness expression.
+	 * @param logger the program-specific logger.
+	 * @return the compiled expression, or <code>null</code> if the expression
+	 * uses syntax that can only be evaluated by the Expression Language engine.
+	 */
+	public static CompiledFitnessExpression compileExpression(
+	        List<DescriptorForFitness> descriptors, String expression, 
+	        Logger logger)
+	{
+	    List<String> varNames = new ArrayList<String>();
+	    for (DescriptorForFitness d : descriptors)
+	    {
+	        for (Variable v : d.getVariables())
+	            varNames.add(v.getName());
+	    }
+	    try
+        {
+            return CompiledFitnessExpression.compile(expression, varNames);
+        } catch (DENOPTIMException e)
+        {
+            if (logger != null)
+            {
+                logger.log(Level.FINE, "Fitness expression will be evaluated "
+                        + "by the Expression Language engine. " 
+                        + e.getMessage());
+            }
+            return null;
+        }
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Returns the SMARTS queries used to identify atoms and bonds for the 
+	 * variables derived from the given descriptor. Queries are parsed only 
+	 * once and then reused for any molecule evaluated by this instance.
+	 * @param i the index of the descriptor.
+	 * @return the queries mapped by variable name. The map is empty when no
+	 * variable uses SMARTS queries.
+	 * @throws DENOPTIMException if the SMARTS cannot be parsed.
+	 */
+	private Map<String, Pattern> getSMARTSQueries(int i) 
+	        throws DENOPTIMException
+	{
+	    if (smartsQueries == null)
+	    {
+	        List<Map<String, Pattern>> allQueries = 
+	                new ArrayList<Map<String, Pattern>>();
+	        for (DescriptorForFitness descriptor : descriptors)
+	        {
+	            Map<String, String> smarts = new HashMap<String, String>();
+	            for (Variable variable : descriptor.getVariables())
+	            {
+	                logger.log(Level.FINE, "-Processing varName = '" 
+	                        + variable.getName() + "'");
+	                if (variable.smarts != null)
+	                {
+	                    if (variable.smarts.size()!=1)
+	                    {
+	                        throw new DENOPTIMException("Handling of multiple "
+	                                + "SMARTS identifiers is not implemented yet. "
+	                                + "Please, let the DENOPTIM developers know "
+	                                + "about your interest in this "
+	                                + "functionality.");
+	                    }
+	                    smarts.put(variable.getName(), variable.smarts.get(0));
+	                }
+	            }
+	            try
+	            {
+	                allQueries.add(ManySMARTSQuery.compileQueries(smarts));
+	            } catch (DENOPTIMException e)
+	            {
+	                throw new DENOPTIMException("WARNING! Problems while "
+	                        + "searching for specific atoms/bonds using SMARTS: " 
+	                        + e.getMessage(), e);
+	            }
+	        }
+	        smartsQueries = allQueries;
+	    }
+	    return smartsQueries.get(i);
 	}
 	
 //------------------------------------------------------------------------------
@@ -168,15 +363,74 @@ public class FitnessProvider
 			throw new DENOPTIMException("Internal fitness provider has not been"
 					+ " configured.");
 		}
-		
+		DummyAtomHandler dah = new DummyAtomHandler(
+				DENOPTIMConstants.DUMMYATMSYMBOL, logger);
+		return calculateFitness(iac, dah);
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Calculates the fitness of many chemical objects. The descriptor 
+	 * implementations, the SMARTS queries, and the handler of dummy atoms
+	 * are the same for the whole list, so any setup they need is done at most 
+	 * once, and a failure in the evaluation of one object does not affect 
+	 * the others. The values of the descriptors, as well as the fitness 
+	 * value, are added to the properties of each atom container.
+	 * @param iacs the chemical objects to evaluate.
+	 * @return the fitness values in the same order of the chemical objects.
+	 * The value is {@link Double#NaN} for any object that could not be
+	 * evaluated.
+	 * @throws DENOPTIMException if this provider has not been configured.
+	 */
+	
+	public double[] getFitness(List<IAtomContainer> iacs) 
+	        throws DENOPTIMException
+	{
+	    if (engine == null)
+	    {
+	        throw new DENOPTIMException("Internal fitness provider has not been"
+	                + " configured.");
+	    }
+	    DummyAtomHandler dah = new DummyAtomHandler(
+	            DENOPTIMConstants.DUMMYATMSYMBOL, logger);
+	    double[] fitness = new double[iacs.size()];
+	    for (int i=0; i<iacs.size(); i++)
+	    {
+	        try
+	        {
+	            fitness[i] = calculateFitness(iacs.get(i), dah);
+	        } catch (Exception e)
+	        {
+	            logger.log(Level.WARNING, "Failed to calculate fitness of "
+	                    + "molecule " + i + " in batch: " + e.getMessage());
+	            fitness[i] = Double.NaN;
+	        }
+	    }
+	    return fitness;
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Calculates the fitness of one chemical object using the descriptor
+	 * engine, queries, and slots of this instance.
+	 * @param iac the chemical object to evaluate.
+	 * @param dah the tool used to remove dummy atoms.
+	 * @return the final value of the fitness.
+	 * @throws Exception if an error occurs during calculation of the 
+	 * descriptors or of the fitness.
+	 */
+	
+	private double calculateFitness(IAtomContainer iac, DummyAtomHandler dah) 
+	        throws Exception 
+	{
 		// Preparation of the chemical representation
 		
 		// TODO add possibility to submit external molecular modeling task
 		// this could be done by a Modeller class
 		
 		// Cleanup: remove dummy atoms
-		DummyAtomHandler dah = new DummyAtomHandler(
-				DENOPTIMConstants.DUMMYATMSYMBOL, logger);
 		iac = dah.removeDummyInHapto(iac);
 		iac = dah.removeDummy(iac);
 		
@@ -192,16 +446,6 @@ public class FitnessProvider
 		
 		// Collect numerical values needed to calculate the fitness
 
-        // Just to simplify retrieval of the values
-        HashMap<String, Double> valuesMap = new HashMap<String,Double>();
-        // first we initialize them to null
-        for (DescriptorForFitness d : this.descriptors)
-        {
-            for (Variable v : d.getVariables())
-            {
-                valuesMap.put(v.getName(), null);
-            }
-        }
 		for (int i=0; i<engine.getDescriptorInstances().size(); i++)
         {
         	DescriptorForFitness descriptor = descriptors.get(i);
@@ -215,29 +459,11 @@ public class FitnessProvider
         			engine.getDescriptorSpecifications().get(i);
         	
         	// Identify specific atom and bonds
-        	Map<String, String> smarts = new HashMap<String, String>();
-        	for (Variable variable : descriptor.getVariables())
-        	{
-        		logger.log(Level.FINE, "-Processing varName = '" 
-        		        + variable.getName() + "'");
-        		if (variable.smarts != null)
-        		{
-        			if (variable.smarts.size()!=1)
-        			{
-        				throw new DENOPTIMException("Handling of multiple "
-        						+ "SMARTS identifiers is not implemented yet. "
-        						+ "Please, let the DENOPTIM developers know "
-        						+ "about your interest in this "
-        						+ "functionality.");
-        			}
-        			smarts.put(variable.getName(), variable.smarts.get(0));
-        		}
-        	}
-        	
         	Map<String, Mappings> allMatches = new HashMap<String, Mappings>();
-        	if (smarts.size() != 0)
+        	Map<String, Pattern> queries = getSMARTSQueries(i);
+        	if (queries.size() != 0)
         	{
-	        	ManySMARTSQuery msq = new ManySMARTSQuery(iac, smarts);
+	        	ManySMARTSQuery msq = new ManySMARTSQuery(queries, iac);
 	            if (msq.hasProblems())
 	            {
 	                String msg = "WARNING! Problems while searching for "
@@ -255,26 +481,26 @@ public class FitnessProvider
         	DescriptorValue value = null;
         	if (desc instanceof IMolecularDescriptor)
         	{
-        	    for (Variable variable : descriptor.getVariables())
+        	    for (int j=0; j<descriptor.getVariables().size(); j++)
         	    {
-        	        String varName = variable.getName();
+        	        String varName = descriptor.getVariables().get(j).getName();
             		value = (DescriptorValue) iac.getProperty(descSpec);
             		double val = processValue(descName, descriptor, desc, 
             		        descSpec, value, varName, iac);
-            		valuesMap.put(varName, val);
+            		slotValues[variableSlots[i][j]] = val;
                     iac.setProperty(varName,val);
                 }
         	} else if (desc instanceof IAtomicDescriptor) {
-        	    for (Variable variable : descriptor.getVariables())
+        	    for (int j=0; j<descriptor.getVariables().size(); j++)
                 {
-                    String varName = variable.getName();
+                    String varName = descriptor.getVariables().get(j).getName();
         			Mappings hits = allMatches.get(varName);
         			if (hits==null)
         			{
         				String msg = "No hits for SMARTS of " + varName + ": "
         						+ "setting variable value to 0.0";
         				logger.log(Level.WARNING ,msg);
-                        valuesMap.put(varName, 0.0);
+                        slotValues[variableSlots[i][j]] = 0.0;
         				continue;
         			}
         			logger.log(Level.FINE, "-AtomIDs contributing to " 
@@ -310,20 +536,20 @@ public class FitnessProvider
                     logger.log(Level.FINE, "-Values contributing to " 
                             + varName + ": " + vals);
                     double overallValue = MathUtils.mean(vals);
-                    valuesMap.put(varName, overallValue);
+                    slotValues[variableSlots[i][j]] = overallValue;
                     iac.setProperty(varName,overallValue);
         		}
         	} else if (desc instanceof IBondDescriptor) {
-        	    for (Variable variable : descriptor.getVariables())
+        	    for (int j=0; j<descriptor.getVariables().size(); j++)
                 {
-                    String varName = variable.getName();
+                    String varName = descriptor.getVariables().get(j).getName();
         			Mappings hits = allMatches.get(varName);
         			if (hits==null)
         			{
         				String msg = "No hits for SMARTS of " + varName + ": "
         						+ "setting variable value to 0.0";
         				logger.log(Level.WARNING, msg);
-                        valuesMap.put(varName, 0.0);
+                        slotValues[variableSlots[i][j]] = 0.0;
         				continue;
         			}
         			logger.log(Level.FINE, "-AtomIDs contributing to " 
@@ -358,7 +584,7 @@ public class FitnessProvider
                     logger.log(Level.FINE, "-Values contributing to " 
                             + varName + ": "+vals);
                     double overallValue = MathUtils.mean(vals);
-                    valuesMap.put(varName, overallValue);
+                    slotValues[variableSlots[i][j]] = overallValue;
                     iac.setProperty(varName,overallValue);
         		}
         	} else if (desc instanceof IAtomPairDescriptor) {
@@ -371,9 +597,51 @@ public class FitnessProvider
         				+ "as molecular, atomic, or bond descriptor.");
         	}
         }
-        logger.log(Level.FINE, "VARIABLES: "+valuesMap);
-
         // Calculate the fitness from the expression and descriptor values
+        double fitness;
+        if (compiledExpression != null)
+        {
+            if (logger.isLoggable(Level.FINE))
+            {
+                logger.log(Level.FINE, "VARIABLES: " + getValuesMap());
+            }
+            fitness = compiledExpression.evaluate(slotValues);
+        } else {
+            Map<String,Double> valuesMap = getValuesMap();
+            logger.log(Level.FINE, "VARIABLES: " + valuesMap);
+            fitness = evaluateExpression(valuesMap);
+        }
+		iac.setProperty(DENOPTIMConstants.FITNESSTAG,fitness);
+		return fitness;
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * @return the values of the variables for the last evaluated chemical
+	 * object mapped by variable name.
+	 */
+	private Map<String,Double> getValuesMap()
+	{
+	    Map<String,Double> valuesMap = new LinkedHashMap<String,Double>();
+	    for (int k=0; k<slotNames.length; k++)
+	    {
+	        valuesMap.put(slotNames[k], slotValues[k]);
+	    }
+	    return valuesMap;
+	}
+	
+//------------------------------------------------------------------------------
+
+	/**
+	 * Evaluates the fitness expression using the Expression Language engine.
+	 * This is used only when the expression could not be compiled into a
+	 * {@link CompiledFitnessExpression}.
+	 * @param valuesMap the values of the variables.
+	 * @return the value of the expression.
+	 */
+	private double evaluateExpression(Map<String,Double> valuesMap)
+	{
         ExpressionFactory expFactory = ExpressionFactory.newInstance();
         ELContext ncc = new ELContext() {
             
@@ -474,9 +742,7 @@ public class FitnessProvider
             }};
         ValueExpression ve = expFactory.createValueExpression(ncc, expression, 
                 Double.class);
-        double fitness = (double) ve.getValue(ncc);
-		iac.setProperty(DENOPTIMConstants.FITNESSTAG,fitness);
-		return fitness;
+        return (double) ve.getValue(ncc);
 	}
 	
 //------------------------------------------------------------------------------
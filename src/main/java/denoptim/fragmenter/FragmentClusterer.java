@@ -2,15 +2,21 @@ package denoptim.fragmenter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import javax.vecmath.Point3d;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
 import org.apache.commons.math3.ml.distance.DistanceMeasure;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.biojava.nbio.structure.geometry.CalcPoint;
@@ -59,6 +65,18 @@ public class FragmentClusterer
      */
     private List<DynamicCentroidCluster> clusters =
             new ArrayList<DynamicCentroidCluster>();
+    
+    /**
+     * Data depending on the current centroid of each cluster.
+     */
+    private Map<DynamicCentroidCluster,CentroidData> centroidData = 
+            new HashMap<DynamicCentroidCluster,CentroidData>();
+    
+    /**
+     * Rotation-invariant description of the shape of each fragment.
+     */
+    private Map<ClusterableFragment,double[]> shapeOfMembers = 
+            new ConcurrentHashMap<ClusterableFragment,double[]>();
 
     /**
      * Settings from the user
@@ -202,14 +220,123 @@ public class FragmentClusterer
         
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Data that depends only on the coordinates of a cluster centroid, and 
+     * can, therefore, be reused until the centroid changes.
+     */
+    private static class CentroidData
+    {
+        /**
+         * Snapshot of the centroid coordinates this data refers to.
+         */
+        final double[] coords;
+        
+        /**
+         * Rotation-invariant description of the shape of the centroid.
+         */
+        final double[] shape;
+        
+        /**
+         * RMSD threshold for merging, or NaN if not computed yet.
+         */
+        double rmsdThreshold = Double.NaN;
+        
+        /**
+         * RMSD upon superposition of cluster members to the centroid.
+         */
+        final Map<ClusterableFragment,Double> rmsdOfMembers = 
+                new HashMap<ClusterableFragment,Double>();
+        
+        CentroidData(double[] coords)
+        {
+            this.coords = Arrays.copyOf(coords, coords.length);
+            this.shape = getShapeDescriptor(coords);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Result of the comparison of a cluster J with a cluster I: either J is
+     * to be merged into I, or some members of J are to be moved to I.
+     */
+    private static class PairOutcome
+    {
+        final int j;
+        final DynamicCentroidCluster clusterJ;
+        boolean merge = false;
+        double rmsd;
+        final List<ClusterableFragment> toMove = 
+                new ArrayList<ClusterableFragment>();
+        final List<Point3d[]> newCoords = new ArrayList<Point3d[]>();
+        
+        PairOutcome(int j, DynamicCentroidCluster clusterJ)
+        {
+            this.j = j;
+            this.clusterJ = clusterJ;
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Gets the data that depends on the current centroid of a cluster, and
+     * recomputes it if the centroid has changed since the last time.
+     */
+    private CentroidData getCentroidData(DynamicCentroidCluster cluster)
+    {
+        double[] coords = cluster.getCentroid().getPoint();
+        CentroidData cd = centroidData.get(cluster);
+        if (cd == null || !Arrays.equals(cd.coords, coords))
+        {
+            cd = new CentroidData(coords);
+            centroidData.put(cluster, cd);
+        }
+        return cd;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Gets the threshold RMSD for merging into a given cluster. The value is
+     * computed only once per each centroid geometry.
+     */
+    private double getRMSDThreshold(CentroidData cd)
+    {
+        if (Double.isNaN(cd.rmsdThreshold))
+        {
+            SummaryStatistics refRMSDStats = getRMSDStatsOfNoisyDistorsions(
+                    cd.coords,
+                    settings.getSizeUnimodalPop(),
+                    settings.getMaxNoiseUnimodalPop());
+            cd.rmsdThreshold = refRMSDStats.getMean() 
+                    + settings.getFactorForSDOnStatsOfUnimodalPop() 
+                    * refRMSDStats.getStandardDeviation();
+        }
+        return cd.rmsdThreshold;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Gets the rotation-invariant description of the shape of a cluster 
+     * member. Members change position but not shape, so the value is
+     * computed only once per each member.
+     */
+    private double[] getShapeDescriptor(ClusterableFragment cf)
+    {
+        return shapeOfMembers.computeIfAbsent(cf, 
+                k -> getShapeDescriptor(k.getPoint()));
+    }
+    
 //------------------------------------------------------------------------------
     
     private boolean mergeClusters()
     {
         boolean somethingMoved = false;
         
-        SuperPositionSVD svd = new SuperPositionSVD(false);
-        
         Set<DynamicCentroidCluster> toRemoveClusters = 
                 new HashSet<DynamicCentroidCluster>();
         for (int i=0; i<clusters.size(); i++)
@@ -224,45 +351,36 @@ public class FragmentClusterer
                 logger.log(Level.FINE,"Clustering around centroid "+i+"...");
             }
             
-            ClusterableFragment centroidI = 
-                    (ClusterableFragment) clusterI.getCentroid();
-            
             // Define a distance (RMSD upon superposition) for discriminating
             // this geometry from the others.
-            SummaryStatistics refRMSDStats = getRMSDStatsOfNoisyDistorsions(
-                    centroidI.getPoint(),
-                    settings.getSizeUnimodalPop(),
-                    settings.getMaxNoiseUnimodalPop());
-            double rmsdThreshold = refRMSDStats.getMean() 
-                    + settings.getFactorForSDOnStatsOfUnimodalPop() 
-                    * refRMSDStats.getStandardDeviation();
+            CentroidData dataI = getCentroidData(clusterI);
+            double rmsdThreshold = getRMSDThreshold(dataI);
             
+            // Centroids do not change while comparing cluster I with the 
+            // others, so the comparisons are independent of each other and 
+            // can run in parallel. Changes are applied afterwards in the
+            // same order as the clusters.
+            List<Integer> jIndexes = new ArrayList<Integer>();
+            Map<DynamicCentroidCluster,CentroidData> dataOfJs = 
+                    new HashMap<DynamicCentroidCluster,CentroidData>();
             for (int j=i+1; j<clusters.size(); j++)
             {
-                DynamicCentroidCluster clusterJ = 
-                        clusters.get(j);
-                
+                DynamicCentroidCluster clusterJ = clusters.get(j);
                 if (toRemoveClusters.contains(clusterJ))
                     continue;
-                
-                //TODO: consider re-aligning to test alternative mappings. This
-                // because the mapping is done once against the first item in 
-                // the sample, but to distinguish sample members N!=1 and M!=1
-                // a different mapping (i.e., a different isomorphism) might be
-                // preferable.
-                // Essentially, this means "get rid of the assumption that one 
-                // isomorphism is suitable to align all members of the sample.
-                
-                ClusterableFragment centroidJ = (ClusterableFragment) 
-                        clusterJ.getCentroid();
-                
-                Point3d[] ptsCentroidI = ClusterableFragment.convertToPointArray(
-                        centroidI.getPoint());
-                Point3d[] ptsCentroidJ = ClusterableFragment.convertToPointArray(
-                        centroidJ.getPoint());
-                svd.superposeAndTransform(ptsCentroidI, ptsCentroidJ);
-                double rmsd = CalcPoint.rmsd(ptsCentroidI, ptsCentroidJ);
-                if (rmsd < rmsdThreshold)
+                jIndexes.add(j);
+                dataOfJs.put(clusterJ, getCentroidData(clusterJ));
+            }
+            List<PairOutcome> outcomes = jIndexes.parallelStream()
+                    .map(j -> compareClusters(dataI, rmsdThreshold, j, 
+                            dataOfJs.get(clusters.get(j))))
+                    .collect(Collectors.toList());
+            
+            for (PairOutcome outcome : outcomes)
+            {
+                int j = outcome.j;
+                DynamicCentroidCluster clusterJ = outcome.clusterJ;
+                if (outcome.merge)
                 {
                     somethingMoved = true;
                     toRemoveClusters.add(clusterJ);
@@ -270,47 +388,36 @@ public class FragmentClusterer
                     {
                         logger.log(Level.FINEST,"Merging cluster " + j + " into "
                                 + "cluster " + i + " (RMSD " 
-                                + String.format("%.4f", rmsd) + "<"
+                                + String.format("%.4f", outcome.rmsd) + "<"
                                 + String.format("%.4f", rmsdThreshold) + ").");
                     }
-                    for (ClusterableFragment pointJ : clusterJ.getPoints())
+                    for (int k=0; k<outcome.toMove.size(); k++)
                     {
-                        Point3d[] ptsPointJ = ClusterableFragment.convertToPointArray(
-                                pointJ.getPoint());
-                        svd.superposeAndTransform(ptsCentroidI, ptsPointJ);
-                        pointJ.setCoordsVector(ptsPointJ);
+                        ClusterableFragment pointJ = outcome.toMove.get(k);
+                        pointJ.setCoordsVector(outcome.newCoords.get(k));
                         clusterI.addPoint(pointJ);
                     }
-                } else {
-                    // J looks like a cluster distinct from I. Try to move members
-                    Set<ClusterableFragment> toRemoveFromJ = 
-                            new HashSet<ClusterableFragment>();
-                    for (ClusterableFragment pointJ : clusterJ.getPoints())
+                } else if (outcome.toMove.size() > 0) {
+                    // J looks like a cluster distinct from I, but some members
+                    // are closer to I
+                    somethingMoved = true;
+                    for (int k=0; k<outcome.toMove.size(); k++)
                     {
-                        
-                        Point3d[] ptsPointJ = ClusterableFragment.convertToPointArray(
-                                pointJ.getPoint());
-                        svd.superposeAndTransform(ptsCentroidI, ptsPointJ);
-                        double rmsdJ = CalcPoint.rmsd(ptsCentroidJ, ptsPointJ);
-                        svd.superposeAndTransform(ptsCentroidI, ptsPointJ);
-                        double rmsdI = CalcPoint.rmsd(ptsCentroidI, ptsPointJ);
-                        if (rmsdI < rmsdJ)
+                        ClusterableFragment pointJ = outcome.toMove.get(k);
+                        pointJ.setCoordsVector(outcome.newCoords.get(k));
+                        clusterI.addPoint(pointJ);
+                        if (logger!=null)
                         {
-                            somethingMoved = true;
-                            pointJ.setCoordsVector(ptsPointJ);
-                            clusterI.addPoint(pointJ);
-                            toRemoveFromJ.add(pointJ);
-                            if (logger!=null)
-                            {
-                                logger.log(Level.FINEST,"Moving one fragment "
-                                        + "from cluster " + j + " to "
-                                        + "cluster " + i + " (RMSD " 
-                                        + String.format("%.4f", rmsd) + ">="
-                                        + String.format("%.4f", rmsdThreshold) + ").");
-                            }
+                            logger.log(Level.FINEST,"Moving one fragment "
+                                    + "from cluster " + j + " to "
+                                    + "cluster " + i + " (RMSD " 
+                                    + String.format("%.4f", outcome.rmsd) 
+                                    + ">="
+                                    + String.format("%.4f", rmsdThreshold) 
+                                    + ").");
                         }
                     }
-                    clusterJ.removeAll(toRemoveFromJ);
+                    clusterJ.removeAll(outcome.toMove);
                     if (clusterJ.getPoints().size()==0)
                         toRemoveClusters.add(clusterJ);
                 }
@@ -318,10 +425,189 @@ public class FragmentClusterer
         }
         
         clusters.removeAll(toRemoveClusters);
+        for (DynamicCentroidCluster removed : toRemoveClusters)
+            centroidData.remove(removed);
         
         return somethingMoved;
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Compares cluster J with cluster I without altering any of the two. 
+     * The RMSD upon superposition is calculated only when the lower bound 
+     * (see {@link #getRMSDLowerBound(double[], double[], int)}) 
+     * does not suffice to take a decision.
+     * @param dataI data on the centroid of cluster I.
+     * @param rmsdThreshold threshold for merging into cluster I.
+     * @param j the index of cluster J.
+     * @param dataJ data on the centroid of cluster J.
+     * @return what should be done with cluster J.
+     */
+    private PairOutcome compareClusters(CentroidData dataI, 
+            double rmsdThreshold, int j, CentroidData dataJ)
+    {
+        DynamicCentroidCluster clusterJ = clusters.get(j);
+        PairOutcome outcome = new PairOutcome(j, clusterJ);
+        SuperPositionSVD svd = new SuperPositionSVD(false);
+        int numPts = dataI.coords.length/3;
+        
+        //TODO: consider re-aligning to test alternative mappings. This
+        // because the mapping is done once against the first item in 
+        // the sample, but to distinguish sample members N!=1 and M!=1
+        // a different mapping (i.e., a different isomorphism) might be
+        // preferable.
+        // Essentially, this means "get rid of the assumption that one 
+        // isomorphism is suitable to align all members of the sample.
+        
+        Point3d[] ptsCentroidI = ClusterableFragment.convertToPointArray(
+                dataI.coords);
+        
+        // Any lower bound of the RMSD between centroids can be used below, so
+        // we get the actual value only when it may lead to merging.
+        double rmsd = getRMSDLowerBound(dataI.shape, dataJ.shape, numPts);
+        if (rmsd < rmsdThreshold)
+        {
+            Point3d[] ptsCentroidJ = ClusterableFragment.convertToPointArray(
+                    dataJ.coords);
+            svd.superposeAndTransform(ptsCentroidI, ptsCentroidJ);
+            rmsd = CalcPoint.rmsd(ptsCentroidI, ptsCentroidJ);
+        }
+        outcome.rmsd = rmsd;
+        
+        if (rmsd < rmsdThreshold)
+        {
+            outcome.merge = true;
+            for (ClusterableFragment pointJ : clusterJ.getPoints())
+            {
+                Point3d[] ptsPointJ = ClusterableFragment.convertToPointArray(
+                        pointJ.getPoint());
+                svd.superposeAndTransform(ptsCentroidI, ptsPointJ);
+                outcome.toMove.add(pointJ);
+                outcome.newCoords.add(ptsPointJ);
+            }
+            return outcome;
+        }
+        
+        // J looks like a cluster distinct from I. Try to move members that
+        // are closer to I than to J. By triangular inequality, 
+        // RMSD(I,p) >= RMSD(I,J) - RMSD(J,p), so members close to J stay 
+        // where they are without calculating RMSD(I,p).
+        for (ClusterableFragment pointJ : clusterJ.getPoints())
+        {
+            Double rmsdJ = dataJ.rmsdOfMembers.get(pointJ);
+            if (rmsdJ == null)
+            {
+                Point3d[] ptsCentroidJ = ClusterableFragment.convertToPointArray(
+                        dataJ.coords);
+                Point3d[] ptsPointJ = ClusterableFragment.convertToPointArray(
+                        pointJ.getPoint());
+                svd.superposeAndTransform(ptsCentroidJ, ptsPointJ);
+                rmsdJ = CalcPoint.rmsd(ptsCentroidJ, ptsPointJ);
+                dataJ.rmsdOfMembers.put(pointJ, rmsdJ);
+            }
+            double lowerBoundI = Math.max(rmsd - rmsdJ, getRMSDLowerBound(
+                    dataI.shape, getShapeDescriptor(pointJ), numPts));
+            if (lowerBoundI >= rmsdJ)
+                continue;
+            
+            Point3d[] ptsPointJ = ClusterableFragment.convertToPointArray(
+                    pointJ.getPoint());
+            svd.superposeAndTransform(ptsCentroidI, ptsPointJ);
+            double rmsdI = CalcPoint.rmsd(ptsCentroidI, ptsPointJ);
+            if (rmsdI < rmsdJ)
+            {
+                outcome.toMove.add(pointJ);
+                outcome.newCoords.add(ptsPointJ);
+            }
+        }
+        return outcome;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Computes a rotation- and translation-invariant description of the shape 
+     * of a set of 3D points: the square roots of the eigenvalues of the
+     * scatter matrix of the centered points (i.e., the principal moments of 
+     * the distribution of points) sorted in decreasing order.
+     * @param coords the coordinates in the form 
+     * [x1,y1,z1,x2,y2,z2,...xN,yN,zN].
+     * @return the descriptor of the shape.
+     */
+    static double[] getShapeDescriptor(double[] coords)
+    {
+        int n = coords.length/3;
+        double[] center = new double[3];
+        for (int i=0; i<n; i++)
+        {
+            for (int k=0; k<3; k++)
+                center[k] += coords[i*3+k];
+        }
+        for (int k=0; k<3; k++)
+            center[k] = center[k] / n;
+        
+        double[][] scatter = new double[3][3];
+        for (int i=0; i<n; i++)
+        {
+            for (int a=0; a<3; a++)
+            {
+                double da = coords[i*3+a] - center[a];
+                for (int b=a; b<3; b++)
+                {
+                    scatter[a][b] += da * (coords[i*3+b] - center[b]);
+                }
+            }
+        }
+        for (int a=0; a<3; a++)
+        {
+            for (int b=0; b<a; b++)
+                scatter[a][b] = scatter[b][a];
+        }
+        
+        double[] eigenvalues = new EigenDecomposition(
+                new Array2DRowRealMatrix(scatter)).getRealEigenvalues();
+        double[] descriptor = new double[3];
+        for (int k=0; k<3; k++)
+            descriptor[k] = Math.sqrt(Math.max(0.0, eigenvalues[k]));
+        Arrays.sort(descriptor);
+        double tmp = descriptor[0];
+        descriptor[0] = descriptor[2];
+        descriptor[2] = tmp;
+        return descriptor;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Computes a lower bound of the RMSD upon superposition of two sets of
+     * N points from the shape descriptors of the two sets (see 
+     * {@link #getShapeDescriptor(double[])}). Since the sum of the singular 
+     * values of the correlation matrix cannot exceed the sum of the products 
+     * of the singular values of each set of points (von Neumann's trace 
+     * inequality), the RMSD upon superposition is never smaller than
+     * <pre>
+     * sqrt( sum_k (sA_k - sB_k)^2 / N )
+     * </pre>
+     * where sA_k and sB_k are the components of the two shape descriptors.
+     * @param shapeA the shape descriptor of one set of points.
+     * @param shapeB the shape descriptor of the other set of points.
+     * @param numPts the number of points N in each set.
+     * @return the lower bound of the RMSD upon superposition.
+     */
+    static double getRMSDLowerBound(double[] shapeA, double[] shapeB, 
+            int numPts)
+    {
+        double sum = 0.0;
+        for (int k=0; k<3; k++)
+        {
+            double d = shapeA[k] - shapeB[k];
+            sum += d*d;
+        }
+        // Slightly reduced to be robust against rounding
+        return Math.sqrt(sum / numPts) * (1.0 - 1.0E-9);
+    }
+    
 //------------------------------------------------------------------------------
    
     /**
@@ -0,0 +1,420 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fragmenter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.Pattern;
+
+import denoptim.exception.DENOPTIMException;
+import denoptim.files.FileFormat;
+import denoptim.graph.Fragment;
+import denoptim.graph.Vertex;
+import denoptim.graph.Vertex.BBType;
+import denoptim.io.DenoptimIO;
+import denoptim.programs.fragmenter.FragmenterParameters;
+
+/**
+ * Streaming scheme for the parallel fragmentation of structures. A single
+ * reader (see {@link #submit(IAtomContainer)}) collects the input
+ * structures into small batches and puts them in a bounded queue. Any number
+ * of {@link FragmenterTask}s take batches from the queue and run the
+ * configured steps (elemental analysis, pre-filtering, fragmentation, and
+ * post-processing of fragments) on each structure in memory. Results are
+ * written directly to the final output file in the order of the input.
+ * <p>The number of batches that have been read but not yet written is
+ * limited, so the memory footprint does not depend on the size of the
+ * input, and the input is never copied to batch-specific files.</p>
+ * <p>When managing isomorphic families, the accepted fragments are collected
+ * by the {@link IsomorphicFamilyRegistry}, so nothing is written to the
+ * output file by this pipeline (see {@link #writesOutput()}).</p>
+ */
+public class FragmentationPipeline
+{
+    /**
+     * Number of structures in each batch
+     */
+    public static final int BATCHSIZE = 100;
+
+    /**
+     * Settings of the fragmentation run
+     */
+    private final FragmenterParameters settings;
+
+    /**
+     * Batches waiting to be processed
+     */
+    private final ArrayBlockingQueue<Batch> queue;
+
+    /**
+     * Permits to have a batch in memory
+     */
+    private final Semaphore inMemory;
+
+    /**
+     * Batches that have been processed, but are waiting for any previous
+     * batch to be written.
+     */
+    private final TreeMap<Long,Batch> processed = new TreeMap<Long,Batch>();
+
+    /**
+     * Sequential number of the next batch to be written
+     */
+    private long nextToWrite = 0;
+
+    /**
+     * Batch being filled by the reader
+     */
+    private Batch filling = null;
+
+    /**
+     * Sequential number of the next batch to be created
+     */
+    private long nextBatchId = 0;
+
+    /**
+     * Index of the next structure in the input
+     */
+    private int nextMolIndex = 0;
+
+    /**
+     * The file collecting the results
+     */
+    private final File output;
+
+    /**
+     * Compiled SMARTS queries used for pre-filtering, if any
+     */
+    private final Map<String, Pattern> preFilterQueries;
+
+    /**
+     * Number of fragments produced by chopping structures
+     */
+    private final AtomicInteger totalProduced = new AtomicInteger(0);
+
+    /**
+     * Number of results (structures or fragments) that survived all steps
+     */
+    private final AtomicInteger totalKept = new AtomicInteger(0);
+
+    /**
+     * The first problem encountered by any step of the pipeline
+     */
+    private final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+
+    /**
+     * Marker of the end of the stream of batches
+     */
+    private static final Batch ENDOFSTREAM = new Batch(-1, -1);
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A batch of structures travelling through the pipeline.
+     */
+    private static class Batch
+    {
+        final long id;
+        final int firstMolIndex;
+        final List<IAtomContainer> mols = new ArrayList<IAtomContainer>();
+        final List<IAtomContainer> keptMols = new ArrayList<IAtomContainer>();
+        final List<Vertex> keptFrags = new ArrayList<Vertex>();
+
+        Batch(long id, int firstMolIndex)
+        {
+            this.id = id;
+            this.firstMolIndex = firstMolIndex;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * @param settings the settings of the fragmentation run.
+     * @param output the file where to write the results. Any existing file is
+     * overwritten.
+     * @throws DENOPTIMException if the pre-filtering queries cannot be parsed.
+     */
+    public FragmentationPipeline(FragmenterParameters settings, File output)
+            throws DENOPTIMException
+    {
+        this.settings = settings;
+        this.output = output;
+        int numWorkers = Math.max(1, settings.getNumTasks());
+        this.queue = new ArrayBlockingQueue<Batch>(numWorkers);
+        this.inMemory = new Semaphore(3 * numWorkers);
+        if (settings.doPreFilter())
+        {
+            preFilterQueries = FragmenterTools.compilePreFilterQueries(
+                    settings.getPreFiltrationSMARTS());
+        } else {
+            preFilterQueries = null;
+        }
+        if (output.exists())
+        {
+            output.delete();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the results are written to the output file
+     * by this pipeline.
+     */
+    public boolean writesOutput()
+    {
+        return !settings.doManageIsomorphicFamilies();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the file collecting the results.
+     */
+    public File getOutput()
+    {
+        return output;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the first problem encountered by any step of the pipeline, or
+     * <code>null</code>.
+     */
+    public Throwable getFailure()
+    {
+        return failure.get();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of fragments produced by chopping structures.
+     */
+    public int getNumberOfProducedFragments()
+    {
+        return totalProduced.get();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of structures or fragments that survived all steps.
+     */
+    public int getNumberOfResults()
+    {
+        return totalKept.get();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Adds a structure to the pipeline. Blocks while the pipeline is full.
+     * This method is meant to be called by a single reading thread.
+     * @param mol the structure to process.
+     * @return <code>false</code> if the pipeline has been stopped by a
+     * failure, in which case the structure is ignored.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean submit(IAtomContainer mol) throws InterruptedException
+    {
+        if (filling == null)
+        {
+            while (!inMemory.tryAcquire(1, TimeUnit.SECONDS))
+            {
+                if (failure.get() != null)
+                    return false;
+            }
+            filling = new Batch(nextBatchId, nextMolIndex);
+            nextBatchId++;
+        }
+        filling.mols.add(mol);
+        nextMolIndex++;
+        if (filling.mols.size() >= BATCHSIZE)
+        {
+            Batch batch = filling;
+            filling = null;
+            return put(batch);
+        }
+        return failure.get() == null;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Signals that there are no more structures to process. Must be called
+     * once by the reading thread, even if the reading fails, as it lets all
+     * the {@link FragmenterTask}s terminate.
+     * @param numWorkers the number of tasks taking batches from the pipeline.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void close(int numWorkers) throws InterruptedException
+    {
+        if (filling != null)
+        {
+            Batch batch = filling;
+            filling = null;
+            put(batch);
+        }
+        for (int i=0; i<numWorkers; i++)
+        {
+            if (!put(ENDOFSTREAM))
+                break;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private boolean put(Batch batch) throws InterruptedException
+    {
+        while (!queue.offer(batch, 1, TimeUnit.SECONDS))
+        {
+            if (failure.get() != null)
+                return false;
+        }
+        return true;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Takes batches from the pipeline and processes them until the end of the
+     * stream is reached, or any step of the pipeline fails. This method is
+     * meant to be called by each {@link FragmenterTask}.
+     * @param logger the task-specific logger.
+     * @throws Exception if the processing of any structure fails. The same
+     * problem stops the whole pipeline.
+     */
+    public void work(Logger logger) throws Exception
+    {
+        while (true)
+        {
+            Batch batch = queue.poll(1, TimeUnit.SECONDS);
+            if (failure.get() != null)
+                return;
+            if (batch == null)
+                continue;
+            if (batch == ENDOFSTREAM)
+                return;
+            try
+            {
+                process(batch, logger);
+                commit(batch);
+            } catch (Throwable t)
+            {
+                failure.compareAndSet(null, t);
+                queue.clear();
+                throw t;
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Runs the configured steps on all structures of a batch.
+     */
+    private void process(Batch batch, Logger logger) throws Exception
+    {
+        int index = batch.firstMolIndex - 1;
+        for (IAtomContainer mol : batch.mols)
+        {
+            index++;
+            if (logger!=null)
+            {
+                logger.log(Level.FINE,"Processing structure " + index);
+            }
+
+            if (settings.doCheckFormula() && !FragmenterTools
+                    .checkElementalAnalysisAgainstFormula(mol, index, logger))
+                continue;
+
+            if (settings.doPreFilter() && !FragmenterTools.passesPreFilter(
+                    mol, index, preFilterQueries, logger))
+                continue;
+
+            if (settings.doFragmentation())
+            {
+                totalProduced.addAndGet(FragmenterTools.fragmentAndCollect(
+                        mol, index, settings, batch.keptFrags, logger));
+            } else if (settings.doFiltering()) {
+                Vertex frag = new Fragment(mol, BBType.UNDEFINED);
+                FragmenterTools.manageFragmentCollection(frag, index,
+                        settings, batch.keptFrags, logger);
+            } else {
+                batch.keptMols.add(mol);
+            }
+        }
+        batch.mols.clear();
+        totalKept.addAndGet(batch.keptFrags.size() + batch.keptMols.size());
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes the results of any processed batch that is next in the order of
+     * the input.
+     */
+    private synchronized void commit(Batch batch) throws DENOPTIMException
+    {
+        processed.put(batch.id, batch);
+        while (!processed.isEmpty() && processed.firstKey() == nextToWrite)
+        {
+            Batch next = processed.remove(nextToWrite);
+            nextToWrite++;
+            try
+            {
+                if (writesOutput())
+                {
+                    if (!next.keptFrags.isEmpty())
+                    {
+                        DenoptimIO.writeVertexesToFile(output,
+                                FileFormat.VRTXSDF, next.keptFrags, true);
+                    }
+                    if (!next.keptMols.isEmpty())
+                    {
+                        DenoptimIO.writeSDFFile(output.getAbsolutePath(),
+                                next.keptMols, true);
+                    }
+                }
+            } finally {
+                inMemory.release();
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
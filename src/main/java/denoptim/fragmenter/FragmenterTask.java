@@ -50,6 +50,12 @@ public class FragmenterTask extends Task
      */
     private File inputFile;
     
+    /**
+     * Source of the structures to work with when streaming input, or
+     * <code>null</code> when working with {@link #inputFile}.
+     */
+    private FragmentationPipeline pipeline = null;
+    
     /**
      * File containing the latest results, though not the final results. For
      * instance, the results of an intermediate step in the task.
@@ -115,6 +121,27 @@ public class FragmenterTask extends Task
         logger.log(Level.INFO,header);
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Create a task that takes the structures to work with from a pipeline
+     * shared with other tasks (i.e., streaming input), rather than from a 
+     * task-specific file. Note  we start a task-specific logger that prints 
+     * to a task-specific file.
+     * @param pipeline the source of structures to work with.
+     * @param settings the configuration of the task.
+     * @param id identifier of the thread running this task.
+     * @throws SecurityException
+     * @throws IOException
+     */
+    public FragmenterTask(FragmentationPipeline pipeline, 
+            FragmenterParameters settings, int id) 
+                    throws SecurityException, IOException
+    {
+        this((File) null, settings, id);
+        this.pipeline = pipeline;
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
@@ -247,6 +274,20 @@ public class FragmenterTask extends Task
     @Override
     public Object call() throws Exception
     {
+        if (pipeline != null)
+        {
+            logger.log(Level.INFO,"Processing streamed structures");
+            try
+            {
+                pipeline.work(logger);
+            } finally {
+                closeLogger();
+            }
+            results = pipeline.getOutput().getAbsolutePath();
+            completed = true;
+            return results;
+        }
+        
         // Preliminary check for missing atoms by elemental analysis
         if (settings.doCheckFormula())
         {
@@ -265,7 +306,7 @@ public class FragmenterTask extends Task
         {
             logger.log(Level.INFO,"Pre-filtering structures");
             File newResultsFile = new File(getPreFilteredFileName(settings, id));
-            FragmenterTools.filterStrucutresBySMARTS(inputFile, 
+            FragmenterTools.filterStrucutresBySMARTS(preliminaryResults, 
                     settings.getPreFiltrationSMARTS(), newResultsFile, logger);
             preliminaryResults = newResultsFile;
         }
@@ -275,7 +316,8 @@ public class FragmenterTask extends Task
         {
             logger.log(Level.INFO,"Fragmentation of structures");
             File newResultsFile = new File(getFragmentsFileName(settings, id));
-            boolean producedSomething = FragmenterTools.fragmentation(inputFile, 
+            boolean producedSomething = FragmenterTools.fragmentation(
+                    preliminaryResults, 
                     settings, newResultsFile,logger);
             if (!producedSomething)
             {
@@ -289,7 +331,8 @@ public class FragmenterTask extends Task
         {
             logger.log(Level.INFO,"Filtering fragments");
             File newResultsFile = new File(getFragmentsFileName(settings, id));
-            FragmenterTools.manageFragmentCollection(inputFile, settings, 
+            FragmenterTools.manageFragmentCollection(preliminaryResults, 
+                    settings, 
                     newResultsFile, logger);
             preliminaryResults = newResultsFile;
         }
@@ -303,7 +346,19 @@ public class FragmenterTask extends Task
             logger.log(Level.INFO,"Results available in "+results);
         }
         
-        // We stop the logger's file handler to remove the lock file.
+        closeLogger();
+        
+        completed = true;
+        return results;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Stops the logger's file handler to remove the lock file.
+     */
+    private void closeLogger()
+    {
         for (Handler h : logger.getHandlers()) 
         {
             if (h instanceof FileHandler) {
@@ -311,9 +366,6 @@ public class FragmenterTask extends Task
                 h.close();
             }
         }
-        
-        completed = true;
-        return results;
     }
 
 //------------------------------------------------------------------------------
@@ -25,6 +25,7 @@ import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IIsotope;
 import org.openscience.cdk.io.iterator.IteratingSDFReader;
 import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
@@ -95,21 +96,9 @@ public class FragmenterTools
                             + input + ". Cannot compare formula with elemental"
                             + "analysis.");
                 }
-                String formula = mol.getProperty(DENOPTIMConstants.FORMULASTR)
-                        .toString();
-                
-                if (FormulaUtils.compareFormulaAndElementalAnalysis(formula, 
-                        mol, logger))
+                if (checkElementalAnalysisAgainstFormula(mol, index, logger))
                 {
                     buffer.add(mol);
-                } else {
-                    if (logger!=null)
-                    {
-                        logger.log(Level.INFO,"Inconsistency between elemental "
-                                + "analysis of structure and molecular formula."
-                                + " Rejecting structure " + index + ": " 
-                                + mol.getTitle());
-                    }
                 }
                 
                 // If max buffer size is reached, then bump to file
@@ -131,6 +120,49 @@ public class FragmenterTools
         }
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Compares the composition of the structure in the chemical representation
+     * with the molecular formula declared in the 
+     * {@link DENOPTIMConstants#FORMULASTR} property.
+     * @param mol the chemical structure to analyze.
+     * @param index identifies the given {@link IAtomContainer} in a collection
+     * of systems to work on. This is used only for logging.
+     * @param logger a task-dedicated logger where we print messages for the 
+     * user.
+     * @return <code>true</code> if the declared formula matches the 
+     * composition of the chemical representation.
+     * @throws DENOPTIMException
+     */
+    public static boolean checkElementalAnalysisAgainstFormula(
+            IAtomContainer mol, int index, Logger logger) 
+                    throws DENOPTIMException
+    {
+        if (mol.getProperty(DENOPTIMConstants.FORMULASTR)==null)
+        {
+            throw new Error("Property '" + DENOPTIMConstants.FORMULASTR 
+                    + "' not found in molecule " + index + ". Cannot compare "
+                    + "formula with elemental analysis.");
+        }
+        String formula = mol.getProperty(DENOPTIMConstants.FORMULASTR)
+                .toString();
+        
+        if (FormulaUtils.compareFormulaAndElementalAnalysis(formula, 
+                mol, logger))
+        {
+            return true;
+        }
+        if (logger!=null)
+        {
+            logger.log(Level.INFO,"Inconsistency between elemental "
+                    + "analysis of structure and molecular formula."
+                    + " Rejecting structure " + index + ": " 
+                    + mol.getTitle());
+        }
+        return false;
+    }
+    
 //------------------------------------------------------------------------------
     
 
@@ -223,13 +255,7 @@ public class FragmenterTools
         IteratingSDFReader reader = new IteratingSDFReader(fis, 
                 DefaultChemObjectBuilder.getInstance());
 
-        int i = -1;
-        Map<String, String> smartsMap = new HashMap<String, String>();
-        for (String s : smarts)
-        {
-            i++;
-            smartsMap.put("prefilter-"+i, s);
-        }
+        Map<String, Pattern> queries = compilePreFilterQueries(smarts);
         
         int index = -1;
         int maxBufferSize = 2000;
@@ -244,29 +270,9 @@ public class FragmenterTools
                 }
                 IAtomContainer mol = reader.next();
                 
-                ManySMARTSQuery msq = new ManySMARTSQuery(mol, smartsMap);
-                if (msq.hasProblems())
-                {
-                    String msg = "WARNING! Problems while searching for "
-                            + "specific atoms/bonds using SMARTS: " 
-                            + msq.getMessage();
-                    throw new DENOPTIMException(msg,msq.getProblem());
-                }
-                Map<String, Mappings> allMatches = msq.getAllMatches();
-                
-                if (allMatches.size()==0)
+                if (passesPreFilter(mol, index, queries, logger))
                 {
                     buffer.add(mol);
-                } else {
-                    String hits = "";
-                    for (String s : allMatches.keySet())
-                        hits = hits + DenoptimIO.NL + smartsMap.get(s);
-                    if (logger!=null)
-                    {
-                        logger.log(Level.INFO,"Found match for " + hits
-                                + "Rejecting structure " + index + ": " 
-                                + mol.getTitle());
-                    }
                 }
                 
                 // If max buffer size is reached, then bump to file
@@ -287,6 +293,72 @@ public class FragmenterTools
         }
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Parses the SMARTS queries used to reject structures before 
+     * fragmentation. Each query is mapped by its own SMARTS string.
+     * @param smarts the queries leading to rejection.
+     * @return the compiled queries, which can be used on any number of
+     * structures with {@link #passesPreFilter(IAtomContainer, int, Map, Logger)}.
+     * @throws DENOPTIMException if any SMARTS cannot be parsed.
+     */
+    public static Map<String, Pattern> compilePreFilterQueries(
+            Set<String> smarts) throws DENOPTIMException
+    {
+        Map<String, String> smartsMap = new HashMap<String, String>();
+        for (String s : smarts)
+        {
+            smartsMap.put(s, s);
+        }
+        return ManySMARTSQuery.compileQueries(smartsMap);
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Checks if a structure matches any of the given SMARTS queries.
+     * @param mol the chemical structure to analyze.
+     * @param index identifies the given {@link IAtomContainer} in a collection
+     * of systems to work on. This is used only for logging.
+     * @param queries the compiled queries leading to rejection (see 
+     * {@link #compilePreFilterQueries(Set)}).
+     * @param logger a task-dedicated logger where we print messages for the 
+     * user.
+     * @return <code>true</code> if the structure does not match any query, 
+     * i.e., it should be kept.
+     * @throws DENOPTIMException
+     */
+    public static boolean passesPreFilter(IAtomContainer mol, int index,
+            Map<String, Pattern> queries, Logger logger) 
+                    throws DENOPTIMException
+    {
+        ManySMARTSQuery msq = new ManySMARTSQuery(queries, mol);
+        if (msq.hasProblems())
+        {
+            String msg = "WARNING! Problems while searching for "
+                    + "specific atoms/bonds using SMARTS: " 
+                    + msq.getMessage();
+            throw new DENOPTIMException(msg,msq.getProblem());
+        }
+        Map<String, Mappings> allMatches = msq.getAllMatches();
+        
+        if (allMatches.size()==0)
+        {
+            return true;
+        }
+        String hits = "";
+        for (String s : allMatches.keySet())
+            hits = hits + DenoptimIO.NL + s;
+        if (logger!=null)
+        {
+            logger.log(Level.INFO,"Found match for " + hits
+                    + "Rejecting structure " + index + ": " 
+                    + mol.getTitle());
+        }
+        return false;
+    }
+    
 //-----------------------------------------------------------------------------
     
     /**
@@ -327,38 +399,9 @@ public class FragmenterTools
                     logger.log(Level.FINE,"Fragmenting structure " + index);
                 }
                 IAtomContainer mol = iterator.next();
-                String molName = "noname-mol" + index;
-                if (mol.getTitle()!=null && !mol.getTitle().isBlank())
-                    molName = mol.getTitle();
-                
-                // Generate the fragments
-                List<Vertex> fragments = fragmentation(mol, 
-                        settings.getCuttingRules(), 
-                        logger);
-                if (logger!=null)
-                {
-                    logger.log(Level.FINE,"Fragmentation produced " 
-                            + fragments.size() + " fragments.");
-                }
-                totalProd += fragments.size();
-                
-                // Post-fragmentation processing of fragments
                 List<Vertex> keptFragments = new ArrayList<Vertex>();
-                int fragCounter = 0;
-                for (Vertex frag : fragments)
-                {
-                    // Add metadata
-                    String fragIdStr = "From_" + molName + "_" + fragCounter;
-                    frag.setProperty("cdk:Title", fragIdStr);
-                    fragCounter++;
-                    manageFragmentCollection(frag, fragCounter, settings,
-                            keptFragments, logger);
-                }
-                if (logger!=null)
-                {
-                    logger.log(Level.FINE,"Fragments surviving post-"
-                            + "processing: " + keptFragments.size());
-                }
+                totalProd += fragmentAndCollect(mol, index, settings, 
+                        keptFragments, logger);
                 totalKept += keptFragments.size();
                 if (!settings.doManageIsomorphicFamilies() && totalKept>0)
                 {
@@ -392,6 +435,67 @@ public class FragmenterTools
         return true;
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Chops one chemical structure according to the cutting rules in the 
+     * settings, and submits each of the resulting fragments to the 
+     * post-fragmentation processing (see 
+     * {@link #manageFragmentCollection(Vertex, int, FragmenterParameters, List, Logger)}).
+     * @param mol the chemical structure to chop.
+     * @param index identifies the given {@link IAtomContainer} in a collection
+     * of systems to work on. Used to name fragments from untitled structures.
+     * @param settings configurations including cutting rules and filtration 
+     * criteria.
+     * @param collector where fragments that survive post-processing are 
+     * collected.
+     * @param logger where to direct log messages.
+     * @return the number of fragments produced by chopping the structure, 
+     * which includes fragments that are then rejected in the post-processing.
+     * @throws DENOPTIMException
+     * @throws IllegalArgumentException
+     * @throws UndetectedFileFormatException
+     * @throws IOException
+     */
+    public static int fragmentAndCollect(IAtomContainer mol, int index,
+            FragmenterParameters settings, List<Vertex> collector, 
+            Logger logger) throws DENOPTIMException, IllegalArgumentException,
+                UndetectedFileFormatException, IOException
+    {
+        String molName = "noname-mol" + index;
+        if (mol.getTitle()!=null && !mol.getTitle().isBlank())
+            molName = mol.getTitle();
+        
+        // Generate the fragments
+        List<Vertex> fragments = fragmentation(mol, 
+                settings.getCuttingRules(), 
+                logger);
+        if (logger!=null)
+        {
+            logger.log(Level.FINE,"Fragmentation produced " 
+                    + fragments.size() + " fragments.");
+        }
+        
+        // Post-fragmentation processing of fragments
+        int sizeBefore = collector.size();
+        int fragCounter = 0;
+        for (Vertex frag : fragments)
+        {
+            // Add metadata
+            String fragIdStr = "From_" + molName + "_" + fragCounter;
+            frag.setProperty("cdk:Title", fragIdStr);
+            fragCounter++;
+            manageFragmentCollection(frag, fragCounter, settings,
+                    collector, logger);
+        }
+        if (logger!=null)
+        {
+            logger.log(Level.FINE,"Fragments surviving post-"
+                    + "processing: " + (collector.size() - sizeBefore));
+        }
+        return fragments.size();
+    }
+    
 //------------------------------------------------------------------------------
     
     /**
@@ -882,82 +986,11 @@ public class FragmenterTools
          // -> reject the rest.
         if (settings.doManageIsomorphicFamilies())
         {
-            synchronized (settings.MANAGEMWSLOTSSLOCK)
+            if (settings.getIsomorphicFamilyRegistry().register(
+                    (Fragment) frag))
             {
-                String mwSlotID = getMWSlotIdentifier(frag, 
-                        settings.getMWSlotSize());
-
-                File mwFileUnq = settings.getMWSlotFileNameUnqFrags(
-                        mwSlotID);
-                File mwFileAll = settings.getMWSlotFileNameAllFrags(
-                        mwSlotID);
-                
-                // Compare this fragment with previously seen ones
-                Vertex unqVersion = null;
-                if (mwFileUnq.exists())
-                {
-                    ArrayList<Vertex> knownFrags = 
-                            DenoptimIO.readVertexes(mwFileUnq,BBType.UNDEFINED);
-                    unqVersion = knownFrags.stream()
-                        .filter(knownFrag -> 
-                            ((Fragment)frag).isIsomorphicTo(knownFrag))
-                        .findAny()
-                        .orElse(null);
-                }
-                if (unqVersion!=null)
-                {
-                    // Identify this unique fragment
-                    String isoFamID = unqVersion.getProperty(
-                            DENOPTIMConstants.ISOMORPHICFAMILYID)
-                            .toString();
-                    
-                    // Do we already have enough isomorphic family members 
-                    // for this fragment?
-                    int sampleSize = settings.getIsomorphsCount()
-                            .get(isoFamID);
-                    if (sampleSize < settings.getIsomorphicSampleSize())
-                    {
-                        // Add this isomorphic version to the sample
-                        frag.setProperty(
-                                DENOPTIMConstants.ISOMORPHICFAMILYID,
-                                isoFamID);
-                        settings.getIsomorphsCount().put(isoFamID,
-                                sampleSize+1);
-                        DenoptimIO.writeVertexToFile(mwFileAll, 
-                                FileFormat.VRTXSDF, frag, true);
-                        collector.add(frag);
-                    } else {
-                        // This would be inefficient in the long run
-                        // because it by-passes the splitting by MW. 
-                        // Do not do it!
-                        /*
-                        if (logger!=null)
-                        {
-                            logger.log(Level.FINE,"Fragment " 
-                                  + fragCounter 
-                                  + " is isomorphic to unique fragment " 
-                                  + unqVersionID + ", but we already "
-                                  + "have a sample of " + sampleSize
-                                  + ": ignoring this fragment from now "
-                                  + "on.");
-                        }
-                        settings.getIgnorableFragments().add(frag);
-                        */
-                    }
-                } else {
-                    // This is a never-seen fragment
-                    String isoFamID = settings.newIsomorphicFamilyID();
-                    frag.setProperty(
-                            DENOPTIMConstants.ISOMORPHICFAMILYID,
-                            isoFamID);
-                    settings.getIsomorphsCount().put(isoFamID, 1);
-                    DenoptimIO.writeVertexToFile(mwFileUnq, 
-                            FileFormat.VRTXSDF, frag, true);
-                    DenoptimIO.writeVertexToFile(mwFileAll, 
-                            FileFormat.VRTXSDF, frag, true);
-                    collector.add(frag);
-                }
-            } // end synchronized block
+                collector.add(frag);
+            }
         } else {
             //If we are here, we did not ask to remove duplicates
             collector.add(frag);
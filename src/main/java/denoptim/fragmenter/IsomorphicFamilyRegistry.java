@@ -0,0 +1,355 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fragmenter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import denoptim.constants.DENOPTIMConstants;
+import denoptim.exception.DENOPTIMException;
+import denoptim.files.FileFormat;
+import denoptim.graph.Fragment;
+import denoptim.graph.Vertex;
+import denoptim.io.DenoptimIO;
+import denoptim.programs.fragmenter.FragmenterParameters;
+
+/**
+ * Registry of the families of isomorphic fragments found during a
+ * fragmentation run. The registry keeps in memory the first member (i.e., the
+ * unique version) of each family, and groups families in buckets defined by
+ * the molecular weight slot (see
+ * {@link FragmenterTools#getMWSlotIdentifier(Vertex, int)}), the number of
+ * attachment points, and the
+ * {@link Fragment#getIsomorphismInvariantHash()}. A new fragment is compared
+ * by isomorphism only with the families in its own bucket, and only the
+ * bucket is locked while doing so, so threads working on different buckets
+ * do not wait for each other.
+ * <p>Fragments accepted in the registry are written to the files collecting
+ * the fragments of each MW slot (see
+ * {@link FragmenterParameters#getMWSlotFileNameUnqFrags(String)} and
+ * {@link FragmenterParameters#getMWSlotFileNameAllFrags(String)}) by a
+ * dedicated thread. Use {@link #flush()} to wait for all pending writing
+ * operations to be completed.</p>
+ */
+public class IsomorphicFamilyRegistry
+{
+    /**
+     * Settings of the fragmentation run
+     */
+    private final FragmenterParameters settings;
+
+    /**
+     * Families of isomorphic fragments by bucket key
+     */
+    private final ConcurrentHashMap<String,List<IsomorphicFamily>> buckets =
+            new ConcurrentHashMap<String,List<IsomorphicFamily>>();
+
+    /**
+     * Fragments waiting to be written to file
+     */
+    private final LinkedBlockingQueue<PendingWrite> pending =
+            new LinkedBlockingQueue<PendingWrite>();
+
+    /**
+     * Number of fragments that have been queued for writing, but not yet
+     * written.
+     */
+    private long numUnwritten = 0;
+
+    /**
+     * Lock and monitor for {@link #numUnwritten} and {@link #writingProblem}.
+     */
+    private final Object writingLock = new Object();
+
+    /**
+     * Problem that stopped the writing of fragments, if any.
+     */
+    private Throwable writingProblem = null;
+
+    /**
+     * The thread writing fragments to file. Started when first needed.
+     */
+    private Thread writer = null;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A family of isomorphic fragments.
+     */
+    private static class IsomorphicFamily
+    {
+        final String id;
+        final Fragment champion;
+        int size = 1;
+
+        IsomorphicFamily(String id, Fragment champion)
+        {
+            this.id = id;
+            this.champion = champion;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A fragment that has to be appended to a file.
+     */
+    private static class PendingWrite
+    {
+        final File file;
+        final Vertex frag;
+
+        PendingWrite(File file, Vertex frag)
+        {
+            this.file = file;
+            this.frag = frag;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * @param settings the settings of the fragmentation run.
+     */
+    public IsomorphicFamilyRegistry(FragmenterParameters settings)
+    {
+        this.settings = settings;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Adds a fragment to the family of isomorphic fragments it belongs to, or
+     * creates a new family for it, unless the sample of its isomorphic
+     * family is already complete (see
+     * {@link FragmenterParameters#getIsomorphicSampleSize()}). Fragments
+     * that are added get the property
+     * {@link DENOPTIMConstants#ISOMORPHICFAMILYID} and are queued for being
+     * written to the MW slot files.
+     * @param frag the fragment to register.
+     * @return <code>true</code> if the fragment has been added to the
+     * registry, or <code>false</code> if it was rejected because we already
+     * have enough members of its isomorphic family.
+     */
+    public boolean register(Fragment frag)
+    {
+        String mwSlotID = FragmenterTools.getMWSlotIdentifier(frag,
+                settings.getMWSlotSize());
+        String key = mwSlotID + "_" + frag.getAttachmentPoints().size() + "_"
+                + Long.toHexString(frag.getIsomorphismInvariantHash());
+        List<IsomorphicFamily> bucket = buckets.computeIfAbsent(key,
+                k -> new ArrayList<IsomorphicFamily>());
+        synchronized (bucket)
+        {
+            IsomorphicFamily family = null;
+            for (IsomorphicFamily knownFamily : bucket)
+            {
+                if (frag.isIsomorphicTo(knownFamily.champion))
+                {
+                    family = knownFamily;
+                    break;
+                }
+            }
+            if (family != null)
+            {
+                // Do we already have enough isomorphic family members?
+                if (family.size >= settings.getIsomorphicSampleSize())
+                {
+                    return false;
+                }
+                family.size++;
+                settings.getIsomorphsCount().put(family.id, family.size);
+                frag.setProperty(DENOPTIMConstants.ISOMORPHICFAMILYID,
+                        family.id);
+                enqueue(settings.getMWSlotFileNameAllFrags(mwSlotID),
+                        frag.clone());
+            } else {
+                // This is a never-seen fragment
+                family = new IsomorphicFamily(
+                        settings.newIsomorphicFamilyID(), frag);
+                bucket.add(family);
+                settings.getIsomorphsCount().put(family.id, family.size);
+                frag.setProperty(DENOPTIMConstants.ISOMORPHICFAMILYID,
+                        family.id);
+                Fragment copy = frag.clone();
+                enqueue(settings.getMWSlotFileNameUnqFrags(mwSlotID), copy);
+                enqueue(settings.getMWSlotFileNameAllFrags(mwSlotID), copy);
+            }
+        }
+        return true;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Queues a fragment for being written to file. The writing thread
+     * alters the fragment (see {@link Fragment#getIAtomContainer()}), so the
+     * fragment must not be used by anyone else.
+     * @param file the file to append the fragment to.
+     * @param frag the fragment to write.
+     */
+    private void enqueue(File file, Vertex frag)
+    {
+        synchronized (writingLock)
+        {
+            if (writer == null)
+            {
+                writer = new Thread(() -> runWriter(),
+                        "IsomorphicFamilyRegistry-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            numUnwritten++;
+        }
+        pending.add(new PendingWrite(file, frag));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes the queued fragments in batches, one batch per file.
+     */
+    private void runWriter()
+    {
+        List<PendingWrite> batch = new ArrayList<PendingWrite>();
+        try
+        {
+            while (true)
+            {
+                batch.add(pending.take());
+                pending.drainTo(batch);
+                Map<File,List<Vertex>> fragsPerFile =
+                        new LinkedHashMap<File,List<Vertex>>();
+                for (PendingWrite pw : batch)
+                {
+                    fragsPerFile.computeIfAbsent(pw.file,
+                            f -> new ArrayList<Vertex>()).add(pw.frag);
+                }
+                // Any problem must be reported to those waiting for the
+                // fragments to be written, or they would wait forever.
+                Throwable problem = null;
+                try
+                {
+                    for (Map.Entry<File,List<Vertex>> e : 
+                        fragsPerFile.entrySet())
+                    {
+                        DenoptimIO.writeVertexesToFile(e.getKey(),
+                                FileFormat.VRTXSDF, e.getValue(), true);
+                    }
+                } catch (Throwable t)
+                {
+                    problem = t;
+                }
+                synchronized (writingLock)
+                {
+                    numUnwritten = numUnwritten - batch.size();
+                    if (problem != null && writingProblem == null)
+                    {
+                        writingProblem = problem;
+                    }
+                    writingLock.notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e)
+        {
+            // Writer has been stopped
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Waits until all the fragments accepted so far have been written to
+     * file.
+     * @throws DENOPTIMException if any fragment could not be written, or if
+     * interrupted while waiting.
+     */
+    public void flush() throws DENOPTIMException
+    {
+        synchronized (writingLock)
+        {
+            while (numUnwritten > 0 && writingProblem == null)
+            {
+                try
+                {
+                    writingLock.wait();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new DENOPTIMException("Interrupted while writing "
+                            + "fragments.", e);
+                }
+            }
+            if (writingProblem != null)
+            {
+                throw new DENOPTIMException("Could not write fragments to "
+                        + "file.", writingProblem);
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes all pending fragments and stops the writing thread. The registry
+     * can still be used after closing, and a new writing thread will be
+     * started when needed.
+     * @throws DENOPTIMException if any fragment could not be written.
+     */
+    public void close() throws DENOPTIMException
+    {
+        flush();
+        synchronized (writingLock)
+        {
+            if (writer != null)
+            {
+                writer.interrupt();
+                writer = null;
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of families of isomorphic fragments.
+     */
+    public int getNumberOfFamilies()
+    {
+        int count = 0;
+        for (List<IsomorphicFamily> bucket : buckets.values())
+        {
+            synchronized (bucket)
+            {
+                count = count + bucket.size();
+            }
+        }
+        return count;
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -65,6 +65,16 @@ public class ParallelFragmentationAlgorithm extends ParallelAsynchronousTaskExec
      * All settings controlling the tasks executed by this class.
      */
     private FragmenterParameters settings = null;
+    
+    /**
+     * Reader of the input, when streaming the input to the tasks.
+     */
+    private IteratingAtomContainerReader streamReader = null;
+    
+    /**
+     * The pipeline feeding the tasks, when streaming the input to the tasks.
+     */
+    private FragmentationPipeline pipeline = null;
 
     
 //-----------------------------------------------------------------------------
@@ -99,6 +109,31 @@ public class ParallelFragmentationAlgorithm extends ParallelAsynchronousTaskExec
         {
             settings.setWorkingIn3D(false);
         }
+        
+        // When streaming, the input is read while tasks are running
+        if (settings.isStreaming())
+        {
+            streamReader = reader;
+            File output;
+            if (settings.doFragmentation())
+            {
+                output = new File(FragmenterTask.getFragmentsFileName(
+                        settings));
+            } else {
+                output = new File(FragmenterTask.getResultsFileName(
+                        settings));
+            }
+            try
+            {
+                pipeline = new FragmentationPipeline(settings, output);
+            } catch (DENOPTIMException e)
+            {
+                throw new Error("Unable to prepare streaming of structures. " 
+                        + e.getMessage(), e);
+            }
+            return true;
+        }
+        
         // Split data in batches for parallelization
         
         // This is the collector of the mutating pathname to the file collecting
@@ -122,6 +157,23 @@ public class ParallelFragmentationAlgorithm extends ParallelAsynchronousTaskExec
 
     protected void createAndSubmitTasks()
     {
+        if (settings.isStreaming())
+        {
+            for (int i=0; i<settings.getNumTasks(); i++)
+            {
+                FragmenterTask task;
+                try
+                {
+                    task = new FragmenterTask(pipeline, settings, i);
+                } catch (SecurityException | IOException e)
+                {
+                    throw new Error("Unable to start fragmentation thread.",e);
+                }
+                submitTask(task, task.getLogFilePathname());
+            }
+            streamInput(settings, streamReader, pipeline);
+            return;
+        }
         for (int i=0; i<settings.getNumTasks(); i++)
         {
             FragmenterTask task;
@@ -140,6 +192,48 @@ public class ParallelFragmentationAlgorithm extends ParallelAsynchronousTaskExec
 
     protected boolean doPostFlightOperations()
     {
+        // Make sure all fragments collected in MW slots are written to file
+        if (settings.doManageIsomorphicFamilies())
+        {
+            try
+            {
+                settings.getIsomorphicFamilyRegistry().close();
+            } catch (DENOPTIMException e)
+            {
+                throw new Error("Could not collect fragments by MW slot. "
+                        + e.getMessage(), e);
+            }
+        }
+        
+        if (pipeline != null)
+        {
+            if (pipeline.getFailure() != null)
+            {
+                throw new Error("Streaming fragmentation failed. " 
+                        + pipeline.getFailure().getMessage(), 
+                        pipeline.getFailure());
+            }
+            if (settings.doFragmentation() 
+                    && pipeline.getNumberOfProducedFragments()==0)
+            {
+                settings.getLogger().log(Level.WARNING, "No fragment "
+                        + "produced. Cutting rules were ineffective on the "
+                        + "given structures.");
+            }
+            if (pipeline.writesOutput())
+            {
+                if (pipeline.getNumberOfResults()==0)
+                {
+                    settings.getLogger().log(Level.INFO, "No results to "
+                            + "collect. All done.");
+                } else {
+                    settings.getLogger().log(Level.INFO, "Results "
+                            + "collected in file " + pipeline.getOutput());
+                }
+                return true;
+            }
+        }
+        
         // Identify (and possibly collect) final results. The files collecting
         // results change depending on the task we have done, and on whether
         // we ran them in a parallelized fashion or not.
@@ -410,6 +504,64 @@ public class ParallelFragmentationAlgorithm extends ParallelAsynchronousTaskExec
         }
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the input data and feeds it to the tasks via the given pipeline.
+     * As in {@link #splitInputForThreads(FragmenterParameters, IteratingAtomContainerReader)},
+     * each structure is prepared (see 
+     * {@link FragmenterTools#prepareMolToFragmentation(IAtomContainer, FragmenterParameters, int)})
+     * and given the formula in the property {@link DENOPTIMConstants#FORMULASTR}
+     * while being read, but structures are never written to file.
+     */
+    static void streamInput(FragmenterParameters settings, 
+            IteratingAtomContainerReader reader, 
+            FragmentationPipeline pipeline)
+    {
+        LinkedHashMap<String,String> formulae = settings.getFormulae();
+        int index = -1;
+        try
+        {
+            while (reader.hasNext())
+            {
+                index++;
+                IAtomContainer mol = reader.next();
+                
+                // Adjust molecular representation to our settings
+                if (!FragmenterTools.prepareMolToFragmentation(mol, settings, 
+                        index))
+                    continue;
+                
+                // It is convenient to place the formula in the atom container
+                if (formulae!=null && settings.doCheckFormula())
+                {
+                    getFormulaForMol(mol, index, formulae);
+                }
+                
+                if (!pipeline.submit(mol))
+                    break;
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new Error("Interrupted while reading structures.", e);
+        } finally {
+            try {
+                pipeline.close(settings.getNumTasks());
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                reader.close();
+            } catch (IOException e1)
+            {
+                throw new Error("Could not close reader of SDF file '"
+                        + settings.getStructuresFile() + "'",e1);
+            }
+        }
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -0,0 +1,193 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fragspace;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import denoptim.graph.APClass;
+import denoptim.graph.Vertex.BBType;
+import denoptim.utils.Randomizer;
+
+/**
+ * Immutable index of the attachment points of the library of fragments that
+ * are compatible with each {@link APClass} according to the compatibility
+ * matrix. For each {@link APClass} the index stores the identifiers of the
+ * compatible fragments and attachment points as arrays of primitives, so
+ * that the compatible attachment points can be counted, and one of them can
+ * be chosen at random, in constant time.
+ * The compatible attachment points are stored in the order of the
+ * compatible {@link APClass}es in the compatibility matrix, and, within each
+ * class, in the order of the library of fragments.
+ *
+ * @author Marco Foscato
+ */
+
+class APClassCompatibilityIndex
+{
+    /**
+     * Index of the fragment holding each compatible attachment point.
+     */
+    private final Map<APClass,int[]> fragIdsPerClass;
+
+    /**
+     * Index of each compatible attachment point in the list of attachment
+     * points of the fragment holding it.
+     */
+    private final Map<APClass,int[]> apIdsPerClass;
+
+    private static final int[] EMPTY = new int[0];
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Builds the index.
+     * @param compatMatrix the compatibility matrix, or <code>null</code>.
+     * @param fragsApsPerApClass the identifiers of the fragment and the
+     * attachment point for each attachment point in the library of
+     * fragments, grouped by {@link APClass}, or <code>null</code>.
+     */
+    APClassCompatibilityIndex(
+            Map<APClass, ? extends List<APClass>> compatMatrix,
+            Map<APClass, ? extends List<? extends List<Integer>>>
+                fragsApsPerApClass)
+    {
+        fragIdsPerClass = new HashMap<APClass,int[]>();
+        apIdsPerClass = new HashMap<APClass,int[]>();
+        if (compatMatrix == null || fragsApsPerApClass == null)
+            return;
+
+        for (Map.Entry<APClass, ? extends List<APClass>> entry :
+            compatMatrix.entrySet())
+        {
+            int size = 0;
+            for (APClass compClass : entry.getValue())
+            {
+                List<? extends List<Integer>> apIds =
+                        fragsApsPerApClass.get(compClass);
+                if (apIds != null)
+                    size += apIds.size();
+            }
+            int[] fragIds = new int[size];
+            int[] apIds = new int[size];
+            int i = 0;
+            for (APClass compClass : entry.getValue())
+            {
+                List<? extends List<Integer>> ids =
+                        fragsApsPerApClass.get(compClass);
+                if (ids == null)
+                    continue;
+                for (List<Integer> id : ids)
+                {
+                    fragIds[i] = id.get(0);
+                    apIds[i] = id.get(1);
+                    i++;
+                }
+            }
+            fragIdsPerClass.put(entry.getKey(), fragIds);
+            apIdsPerClass.put(entry.getKey(), apIds);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param apc the class of the attachment point for which we want
+     * compatible attachment points.
+     * @return the number of compatible attachment points in the library of
+     * fragments.
+     */
+    int size(APClass apc)
+    {
+        return fragIdsPerClass.getOrDefault(apc, EMPTY).length;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param apc the class of the attachment point for which we want
+     * compatible attachment points.
+     * @param i the index of the compatible attachment point, which must be
+     * lower than {@link #size(APClass)}.
+     * @return the index of the fragment holding the i-th compatible
+     * attachment point.
+     */
+    int getFragmentId(APClass apc, int i)
+    {
+        return fragIdsPerClass.get(apc)[i];
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param apc the class of the attachment point for which we want
+     * compatible attachment points.
+     * @param i the index of the compatible attachment point, which must be
+     * lower than {@link #size(APClass)}.
+     * @return the index of the i-th compatible attachment point in the list
+     * of attachment points of the fragment holding it.
+     */
+    int getAPId(APClass apc, int i)
+    {
+        return apIdsPerClass.get(apc)[i];
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param apc the class of the attachment point for which we want
+     * compatible attachment points.
+     * @param i the index of the compatible attachment point, which must be
+     * lower than {@link #size(APClass)}.
+     * @return the identifier of the i-th compatible attachment point.
+     */
+    IdFragmentAndAP getFragAP(APClass apc, int i)
+    {
+        return new IdFragmentAndAP(-1, // vertexId
+                getFragmentId(apc, i), // MolId,
+                BBType.FRAGMENT,
+                getAPId(apc, i), // ApId
+                -1, // noVSym
+                -1);// noAPSym
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Chooses one of the compatible attachment points with uniform
+     * probability, i.e., each compatible {@link APClass} is chosen with
+     * probability proportional to the number of its attachment points.
+     * @param apc the class of the attachment point for which we want
+     * compatible attachment points.
+     * @param rng the random number generator.
+     * @return the identifier of the chosen attachment point, or
+     * <code>null</code> if there is no compatible attachment point.
+     */
+    IdFragmentAndAP chooseRandomFragAP(APClass apc, Randomizer rng)
+    {
+        int size = size(apc);
+        if (size == 0)
+            return null;
+        return getFragAP(apc, rng.nextInt(size));
+    }
+
+//------------------------------------------------------------------------------
+
+}
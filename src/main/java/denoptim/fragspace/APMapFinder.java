@@ -19,9 +19,14 @@
 package denoptim.fragspace;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import denoptim.graph.APClass;
@@ -128,23 +133,8 @@ public class APMapFinder
             boolean onlyCompleteMappings, boolean compatibleIfFree) 
     {
         this.fragSpace = fragSpace;
-        List<AttachmentPoint> needyAPsA = new ArrayList<AttachmentPoint>();
-        if (vA.getGraphOwner()!=null)
-        {
-            List<Vertex> subgraph = new ArrayList<Vertex>();
-            subgraph.add(vA);
-            needyAPsA = vA.getGraphOwner().getInterfaceAPs(subgraph);
-        }
-        List<AttachmentPoint> needyAPsB = 
-                new ArrayList<AttachmentPoint>();
-        if (vB.getGraphOwner()!=null)
-        {
-            List<Vertex> subgraph = new ArrayList<Vertex>();
-            subgraph.add(vB);
-            needyAPsB = vB.getGraphOwner().getInterfaceAPs(subgraph);
-        }
-        findAllMappings(vA.getAttachmentPoints(), needyAPsA, 
-                vB.getAttachmentPoints(), needyAPsB,
+        findAllMappings(vA.getAttachmentPoints(), getNeedyAPs(vA), 
+                vB.getAttachmentPoints(), getNeedyAPs(vB),
                 fixedRootAPs, screenAll, onlyCompleteMappings, compatibleIfFree);
     }
     
@@ -272,6 +262,14 @@ public class APMapFinder
             return;
         }
         
+        // Test if the APs that must be mapped can be mapped at the same time,
+        // so we do not enumerate mappings that cannot be completed.
+        if (!canMapAllRequired(keys, mustBeDoableA, mustBeDoableB, 
+                apCompatilities, onlyCompleteMappings))
+        {
+            return;
+        }
+        
         if (!onlyCompleteMappings)
         {
             for (AttachmentPoint oldAp : lstA)
@@ -304,7 +302,9 @@ public class APMapFinder
         {
             stopped = FragmentSpaceUtils.recursiveCombiner(keys, 
                     currentKey, apCompatilities, currentMapping, allAPMappings, 
-                    screenAll, maxCombs);
+                    screenAll, maxCombs, new HashSet<AttachmentPoint>(
+                            needyAPsA), new HashSet<AttachmentPoint>(
+                                    needyAPsB));
         } else {
             // This would have been done by the recursive combiner
             allAPMappings.add(currentMapping);
@@ -383,6 +383,226 @@ public class APMapFinder
                     allAPMappings);
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if all the APs that must be part of a mapping can be mapped at 
+     * the same time, i.e., if there is at least one way to pair each of them
+     * with a distinct AP on the other side. The APs of the first list that 
+     * cannot be left out of a mapping are those that must be mapped and 
+     * those that are not available throughout any template barrier, unless 
+     * only complete mappings are requested, in which case all keys must be 
+     * mapped.
+     * @param keys the APs of the first list that are not yet mapped.
+     * @param requiredA the APs of the first list that must be mapped.
+     * @param requiredB the APs of the second list that must be mapped.
+     * @param apCompatilities the compatible APs of the second list for 
+     * each AP of the first list.
+     * @param onlyCompleteMappings use <code>true</code> if all keys must be
+     * mapped.
+     * @return <code>true</code> if the required mapping can exist.
+     */
+    private static boolean canMapAllRequired(List<AttachmentPoint> keys,
+            Set<AttachmentPoint> requiredA, Set<AttachmentPoint> requiredB,
+            Map<AttachmentPoint,List<AttachmentPoint>> apCompatilities,
+            boolean onlyCompleteMappings)
+    {
+        Set<AttachmentPoint> toMapA = new LinkedHashSet<AttachmentPoint>(
+                requiredA);
+        for (AttachmentPoint key : keys)
+        {
+            if (onlyCompleteMappings || !key.isAvailableThroughout())
+                toMapA.add(key);
+        }
+        if (!hasMatching(toMapA, apCompatilities))
+            return false;
+        
+        Map<AttachmentPoint,List<AttachmentPoint>> reverseCompatibilities = 
+                new HashMap<AttachmentPoint,List<AttachmentPoint>>();
+        for (AttachmentPoint key : keys)
+        {
+            for (AttachmentPoint value : apCompatilities.get(key))
+            {
+                if (value == null)
+                    continue;
+                reverseCompatibilities.computeIfAbsent(value, 
+                        k -> new ArrayList<AttachmentPoint>()).add(key);
+            }
+        }
+        return hasMatching(requiredB, reverseCompatibilities);
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if each of the given APs can be paired with a distinct 
+     * candidate partner, i.e., if the bipartite graph of candidate pairs
+     * has a matching that covers all the given APs.
+     * @param toMatch the APs that must be paired.
+     * @param candidates the candidate partners of each AP.
+     * @return <code>true</code> if such matching exists.
+     */
+    private static boolean hasMatching(Collection<AttachmentPoint> toMatch,
+            Map<AttachmentPoint,List<AttachmentPoint>> candidates)
+    {
+        Map<AttachmentPoint,AttachmentPoint> partners = 
+                new HashMap<AttachmentPoint,AttachmentPoint>();
+        for (AttachmentPoint ap : toMatch)
+        {
+            if (!findAugmentingPath(ap, candidates, partners, 
+                    new HashSet<AttachmentPoint>()))
+                return false;
+        }
+        return true;
+    }
+    
+//------------------------------------------------------------------------------
+
+    private static boolean findAugmentingPath(AttachmentPoint ap,
+            Map<AttachmentPoint,List<AttachmentPoint>> candidates,
+            Map<AttachmentPoint,AttachmentPoint> partners,
+            Set<AttachmentPoint> visited)
+    {
+        List<AttachmentPoint> candidatesForAP = candidates.get(ap);
+        if (candidatesForAP == null)
+            return false;
+        for (AttachmentPoint candidate : candidatesForAP)
+        {
+            if (candidate == null || !visited.add(candidate))
+                continue;
+            AttachmentPoint currentPartner = partners.get(candidate);
+            if (currentPartner == null || findAugmentingPath(currentPartner,
+                    candidates, partners, visited))
+            {
+                partners.put(candidate, ap);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if any {@link AttachmentPoint}-{@link AttachmentPoint} mapping
+     * can exist between the two vertexes, as it would be searched by 
+     * {@link #APMapFinder(FragmentSpace, Vertex, Vertex, APMapping, boolean, 
+     * boolean, boolean)} with no fixed mapping, but without enumerating 
+     * any mapping. The result depends only on the {@link APClass}es and 
+     * the status of the APs on the two vertexes, so it is memorized in the
+     * fragment space and reused for any other pair of vertexes with the same
+     * signature. 
+     * A <code>false</code> result means that no mapping exists, while a
+     * <code>true</code> result does not guarantee that a mapping exists when
+     * the APs of the second vertex are also required to be mapped.
+     * @param fragSpace the fragment space to use.
+     * @param vA the first vertex.
+     * @param vB the second vertex.
+     * @param onlyCompleteMappings use <code>true</code> to consider only 
+     * mappings that include all of the APs on the first vertex.
+     * @param compatibleIfFree use <code>true</code> to make APs that are 
+     * available (i.e., available throughout the template barriers) be 
+     * compatible.
+     * @return <code>false</code> if no mapping can exist.
+     */
+    public static boolean isMappingPossible(FragmentSpace fragSpace,
+            Vertex vA, Vertex vB, boolean onlyCompleteMappings, 
+            boolean compatibleIfFree)
+    {
+        List<AttachmentPoint> needyAPsA = getNeedyAPs(vA);
+        List<AttachmentPoint> needyAPsB = getNeedyAPs(vB);
+        if (onlyCompleteMappings)
+        {
+            needyAPsA = vA.getAttachmentPoints();
+            needyAPsB = vB.getAttachmentPoints();
+        }
+        
+        String signature = getMappingSignature(vA.getAttachmentPoints(),
+                needyAPsA, vB.getAttachmentPoints(), needyAPsB,
+                fragSpace.useAPclassBasedApproach(), onlyCompleteMappings, 
+                compatibleIfFree);
+        Boolean possible = fragSpace.getMemorizedAPMappingFeasibility(
+                signature);
+        if (possible != null)
+            return possible;
+
+        LinkedHashMap<AttachmentPoint,List<AttachmentPoint>> apCompatilities = 
+                findMappingCompatibileAPs(vA.getAttachmentPoints(), 
+                        vB.getAttachmentPoints(), compatibleIfFree, fragSpace);
+        List<AttachmentPoint> keys = new ArrayList<AttachmentPoint>(
+                apCompatilities.keySet());
+        Set<AttachmentPoint> doableAPsB = new HashSet<AttachmentPoint>();
+        apCompatilities.values().stream().forEach(l -> doableAPsB.addAll(l));
+        
+        possible = keys.containsAll(needyAPsA) 
+                && doableAPsB.containsAll(needyAPsB)
+                && canMapAllRequired(keys, 
+                        new HashSet<AttachmentPoint>(needyAPsA),
+                        new HashSet<AttachmentPoint>(needyAPsB), 
+                        apCompatilities, onlyCompleteMappings);
+        fragSpace.memorizeAPMappingFeasibility(signature, possible);
+        return possible;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the APs that are used by edges connecting the vertex to the
+     * rest of its graph, if any.
+     */
+    private static List<AttachmentPoint> getNeedyAPs(Vertex v)
+    {
+        if (v.getGraphOwner()==null)
+            return new ArrayList<AttachmentPoint>();
+        List<Vertex> subgraph = new ArrayList<Vertex>();
+        subgraph.add(v);
+        return v.getGraphOwner().getInterfaceAPs(subgraph);
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Builds a string that is the same for any two problems of AP mapping
+     * that are equivalent in terms of the {@link APClass}es and status of 
+     * the APs, irrespectively of the order of the APs.
+     */
+    private static String getMappingSignature(List<AttachmentPoint> lstA, 
+            List<AttachmentPoint> needyAPsA, List<AttachmentPoint> lstB, 
+            List<AttachmentPoint> needyAPsB, boolean useAPClasses,
+            boolean onlyCompleteMappings, boolean compatibleIfFree)
+    {
+        List<String> sigsA = new ArrayList<String>();
+        for (AttachmentPoint ap : lstA)
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append(needyAPsA.contains(ap) ? "N" : "-");
+            sb.append(ap.getAPClass());
+            if (ap.isAvailableThroughout())
+            {
+                sb.append("/free");
+            } else {
+                AttachmentPoint lAP = ap.getLinkedAPThroughout();
+                sb.append(ap.isSrcInUserThroughout() ? "/src>" : "/trg<");
+                if (lAP != null)
+                {
+                    sb.append(lAP.getAPClass());
+                    if (lAP.getOwner().getBuildingBlockType()==BBType.CAP)
+                        sb.append("/cap");
+                }
+            }
+            sigsA.add(sb.toString());
+        }
+        List<String> sigsB = new ArrayList<String>();
+        for (AttachmentPoint ap : lstB)
+        {
+            sigsB.add((needyAPsB.contains(ap) ? "N" : "-") + ap.getAPClass());
+        }
+        Collections.sort(sigsA);
+        Collections.sort(sigsB);
+        return useAPClasses + " " + onlyCompleteMappings + " " 
+                + compatibleIfFree + " " + String.join(" ", sigsA) + " | " + String.join(" ", sigsB);
+    }
+    
 //------------------------------------------------------------------------------
     
     /**
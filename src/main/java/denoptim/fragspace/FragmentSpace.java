@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
@@ -39,6 +40,7 @@ import denoptim.graph.APMapping;
 import denoptim.graph.AttachmentPoint;
 import denoptim.graph.Candidate;
 import denoptim.graph.DGraph;
+import denoptim.graph.Fragment;
 import denoptim.graph.GraphPattern;
 import denoptim.graph.Template;
 import denoptim.graph.Vertex;
@@ -131,6 +133,27 @@ public class FragmentSpace
      */
     private HashMap<APClass, ArrayList<ArrayList<Integer>>> fragsApsPerApClass;
     
+    /**
+     * Index of the attachment points of the library of fragments that are 
+     * compatible with each APClass. Built from the compatibility matrix and 
+     * {@link #fragsApsPerApClass} when needed, and discarded upon any change 
+     * of those.
+     */
+    private volatile APClassCompatibilityIndex compatIndex;
+    
+    /**
+     * Memory of the feasibility of AP mappings, indexed by the signature
+     * of the mapping problem. Depends on the compatibility matrix and 
+     * capping rules, so it is cleared upon any change of those.
+     */
+    private final Map<String,Boolean> apMappingFeasibility = 
+            new ConcurrentHashMap<String,Boolean>();
+    
+    /**
+     * Maximum number of entries in {@link #apMappingFeasibility}.
+     */
+    private static final int MAXMEMORIZEDMAPPINGS = 10000;
+    
     /**
      * Lock for synchronizing tasks
      */
@@ -425,6 +448,8 @@ public class FragmentSpace
         setSymmConstraints(symCntrMap);
 
         groupAndClassifyFragments(apClassBasedApproch);
+        if (apClassBasedApproch)
+            getCompatibilityIndex();
 
         isValid = true;
     }
@@ -491,8 +516,11 @@ public class FragmentSpace
         APClass cls = null;
         try
         {
-            Vertex frg = this.getVertexFromLibrary(
-                    apId.getVertexMolType(), apId.getVertexMolId());
+            // No need to clone the building block just to read its APClass
+            Vertex frg = getLibraryVertex(apId.getVertexMolType(),
+                    apId.getVertexMolId());
+            if (frg == null)
+                return null;
             cls = frg.getAttachmentPoints().get(apId.getApId()).getAPClass();
         } catch (Throwable t)
         {
@@ -502,11 +530,49 @@ public class FragmentSpace
         return cls;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the building block that is stored in the library, i.e., not a
+     * copy of it. The returned vertex must not be altered nor added to any
+     * graph. Use {@link #getVertexFromLibrary(Vertex.BBType, int)} to get a
+     * copy that can be used to build graphs.
+     * @param bbType the type of building block.
+     * @param bbIdx the index of the building block in its library.
+     * @return the building block or <code>null</code> if no such building
+     * block exists.
+     */
+
+    public Vertex getLibraryVertex(Vertex.BBType bbType, int bbIdx)
+    {
+        List<Vertex> library = null;
+        switch (bbType)
+        {
+            case SCAFFOLD:
+                library = scaffoldLib;
+                break;
+            case FRAGMENT:
+            case UNDEFINED:
+                library = fragmentLib;
+                break;
+            case CAP:
+                library = cappingLib;
+                break;
+            default:
+                return null;
+        }
+        if (library == null || bbIdx < 0 || bbIdx >= library.size())
+            return null;
+        return library.get(bbIdx);
+    }
+
 //------------------------------------------------------------------------------
 
     /**
      * Returns a clone of the requested building block. The type of vertex
-     * returned depends on the type stored in the library.
+     * returned depends on the type stored in the library. Clones of 
+     * {@link Fragment}s share the molecular representation with the library
+     * until they need their own (see {@link Fragment#copyOnWriteClone()}).
      * 
      * @param bbType the type of building block. This basically selects the 
      * sub library from which the building block is taken: 0 for scaffold (i.e.,
@@ -630,7 +696,13 @@ public class FragmentSpace
                 settings.getLogger().log(Level.SEVERE, msg);
                 throw new DENOPTIMException(msg);
         }
-        Vertex clone = originalVrtx.clone();
+        Vertex clone = null;
+        if (originalVrtx instanceof Fragment)
+        {
+            clone = ((Fragment) originalVrtx).copyOnWriteClone();
+        } else {
+            clone = originalVrtx.clone();
+        }
         
         clone.setVertexId(GraphUtils.getUniqueVertexIndex());
 
@@ -805,6 +877,8 @@ public class FragmentSpace
         setForbiddenEndList(new HashSet<APClass>());
         DenoptimIO.readCompatibilityMatrix(inFile, apClassCompatibilityMatrix,
                 cappingMap, forbiddenEndList);
+        compatIndex = null;
+        apMappingFeasibility.clear();
     }
 
 //------------------------------------------------------------------------------
@@ -825,11 +899,68 @@ public class FragmentSpace
 
 //------------------------------------------------------------------------------
 
+    /**
+     * Returns the compatibility matrix. Changes of the returned map must be
+     * followed by {@link #setCompatibilityMatrix(HashMap)}.
+     * @return the compatibility matrix.
+     */
     public HashMap<APClass, ArrayList<APClass>> getCompatibilityMatrix()
     {
         return apClassCompatibilityMatrix;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of the attachment points of the library of fragments 
+     * that are compatible with each APClass. The index is built when needed.
+     * @return the index.
+     */
+    private APClassCompatibilityIndex getCompatibilityIndex()
+    {
+        APClassCompatibilityIndex index = compatIndex;
+        if (index == null)
+        {
+            synchronized (LOCK)
+            {
+                if (compatIndex == null)
+                {
+                    compatIndex = new APClassCompatibilityIndex(
+                            apClassCompatibilityMatrix, fragsApsPerApClass);
+                }
+                index = compatIndex;
+            }
+        }
+        return index;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the memorized feasibility of an AP mapping problem.
+     * @param signature the signature of the mapping problem.
+     * @return the memorized feasibility, or <code>null</code> if this 
+     * problem has not been memorized.
+     */
+    Boolean getMemorizedAPMappingFeasibility(String signature)
+    {
+        return apMappingFeasibility.get(signature);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Memorizes the feasibility of an AP mapping problem. Nothing is 
+     * memorized once the memory is full.
+     * @param signature the signature of the mapping problem.
+     * @param feasible the feasibility of the mapping problem.
+     */
+    void memorizeAPMappingFeasibility(String signature, boolean feasible)
+    {
+        if (apMappingFeasibility.size() < MAXMEMORIZEDMAPPINGS)
+            apMappingFeasibility.put(signature, feasible);
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -1111,44 +1242,57 @@ public class FragmentSpace
             ArrayList<IdFragmentAndAP> srcAPs)
     {
         ArrayList<IdFragmentAndAP> compFrAps = new ArrayList<IdFragmentAndAP>();
-        boolean first = true;
+        if (srcAPs.isEmpty())
+            return compFrAps;
+        
+        APClassCompatibilityIndex index = getCompatibilityIndex();
+        
+        // The APs compatible with all the source APs are those compatible 
+        // with the first source AP that are compatible also with the others
+        List<APClass> srcApClss = new ArrayList<APClass>();
         for (IdFragmentAndAP apId : srcAPs)
         {
-            APClass srcApCls = getAPClassForFragment(apId);
-            ArrayList<IdFragmentAndAP> compForOne = 
-                    getFragAPsCompatibleWithClass(srcApCls);
-
-            if (first)
+            srcApClss.add(getAPClassForFragment(apId));
+        }
+        List<Set<Long>> compatWithOthers = new ArrayList<Set<Long>>();
+        for (int i=1; i<srcApClss.size(); i++)
+        {
+            APClass srcApCls = srcApClss.get(i);
+            Set<Long> compForOne = new HashSet<Long>();
+            for (int j=0; j<index.size(srcApCls); j++)
             {
-                compFrAps.addAll(compForOne);
-                first = false;
-                continue;
+                compForOne.add(getFragAPKey(index.getFragmentId(srcApCls, j),
+                        index.getAPId(srcApCls, j)));
             }
-
-            ArrayList<IdFragmentAndAP> toKeep = 
-                    new ArrayList<IdFragmentAndAP>();
-            for (IdFragmentAndAP candAp : compFrAps)
+            compatWithOthers.add(compForOne);
+        }
+        
+        APClass firstApCls = srcApClss.get(0);
+        for (int j=0; j<index.size(firstApCls); j++)
+        {
+            long key = getFragAPKey(index.getFragmentId(firstApCls, j),
+                    index.getAPId(firstApCls, j));
+            boolean compatWithAll = true;
+            for (Set<Long> compForOne : compatWithOthers)
             {
-                for (IdFragmentAndAP newId : compForOne)
+                if (!compForOne.contains(key))
                 {
-                    if (newId.sameFragAndAp(candAp))
-                    {
-                        toKeep.add(candAp);
-                        break;
-                    }
+                    compatWithAll = false;
+                    break;
                 }
             }
-
-            compFrAps = toKeep;
-
-            if (compFrAps.size() == 0)
-            {
-                break;
-            }
+            if (compatWithAll)
+                compFrAps.add(index.getFragAP(firstApCls, j));
         }
-
         return compFrAps;
     }
+    
+//------------------------------------------------------------------------------
+
+    private static long getFragAPKey(int fragId, int apId)
+    {
+        return (((long) fragId) << 32) | (apId & 0xffffffffL);
+    }
 
 //------------------------------------------------------------------------------
 
@@ -1166,26 +1310,11 @@ public class FragmentSpace
         ArrayList<AttachmentPoint> compatAps = 
                 new ArrayList<AttachmentPoint>();
         
-        // Take the compatible AP classes
-        ArrayList<APClass> compatApClasses = getCompatibleAPClasses(aPC1);
-        
-        // Find all APs with a compatible class
-        if (compatApClasses != null)
+        APClassCompatibilityIndex index = getCompatibilityIndex();
+        for (int i=0; i<index.size(aPC1); i++)
         {
-            for (APClass klass : compatApClasses)
-            {
-                ArrayList<Vertex> vrtxs = getVerticesWithAPClass(klass);
-                for (Vertex v : vrtxs)
-                {
-                    for (AttachmentPoint ap : v.getAttachmentPoints())
-                    {
-                        if (ap.getAPClass() == klass)
-                        {
-                            compatAps.add(ap);
-                        }
-                    }
-                }
-            }
+            compatAps.add(fragmentLib.get(index.getFragmentId(aPC1, i))
+                    .getAP(index.getAPId(aPC1, i)));
         }
         
         if (compatAps.size()==0)
@@ -1210,23 +1339,49 @@ public class FragmentSpace
     public ArrayList<IdFragmentAndAP> getFragAPsCompatibleWithClass(
             APClass aPC1)
     {
+        APClassCompatibilityIndex index = getCompatibilityIndex();
+        int size = index.size(aPC1);
         ArrayList<IdFragmentAndAP> compatFragAps = 
-                new ArrayList<IdFragmentAndAP>();
-
-        // Take the compatible AP classes
-        ArrayList<APClass> compatApClasses = getCompatibleAPClasses(aPC1);
-
-        // Find all APs with any compatible class
-        if (compatApClasses != null)
+                new ArrayList<IdFragmentAndAP>(size);
+        for (int i=0; i<size; i++)
         {
-            for (APClass compClass : compatApClasses)
-            {
-                compatFragAps.addAll(getFragsWithAPClass(compClass));
-            }
+            compatFragAps.add(index.getFragAP(aPC1, i));
         }
         return compatFragAps;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of attachment points found in the fragment 
+     * space and that are compatible with a given AP class.
+     * @param aPC1 the AP class for which we want compatible APs.
+     * @return the number of compatible attachment points.
+     */
+    public int countFragAPsCompatibleWithClass(APClass aPC1)
+    {
+        return getCompatibilityIndex().size(aPC1);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Chooses randomly one of the attachment points found in the fragment 
+     * space and that are compatible with a given AP class. All compatible
+     * attachment points have the same probability to be chosen, so the 
+     * result is the same as choosing randomly among those listed by
+     * {@link #getFragAPsCompatibleWithClass(APClass)}, but without building
+     * such list.
+     * @param aPC1 the AP class for which we want compatible APs.
+     * @return the identifier of the chosen attachment point, or 
+     * <code>null</code> if there is no compatible attachment point.
+     */
+    public IdFragmentAndAP chooseRandomFragAPCompatibleWithClass(APClass aPC1)
+    {
+        return getCompatibilityIndex().chooseRandomFragAP(aPC1, 
+                getRandomizer());
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -1320,6 +1475,8 @@ public class FragmentSpace
     public void setCompatibilityMatrix(HashMap<APClass, ArrayList<APClass>> map)
     {
         apClassCompatibilityMatrix = map;
+        compatIndex = null;
+        apMappingFeasibility.clear();
     }
 
 //------------------------------------------------------------------------------
@@ -1335,6 +1492,7 @@ public class FragmentSpace
     public void setCappingMap(HashMap<APClass, APClass> map)
     {
         cappingMap = map;
+        apMappingFeasibility.clear();
     }
 
 //------------------------------------------------------------------------------
@@ -1377,6 +1535,8 @@ public class FragmentSpace
         fragPoolPerNumAP = null;
         apClassesPerFrag = null;
         fragsApsPerApClass = null;
+        compatIndex = null;
+        apMappingFeasibility.clear();
         symmConstraints = null;
         isValid = false;
     }
@@ -1792,6 +1952,7 @@ public class FragmentSpace
         			    outLst.add(apId);
         			    fragsApsPerApClass.put(cls,outLst);
         			}
+        		    compatIndex = null;
         	    }
     	    }
     	    
@@ -1819,6 +1980,7 @@ public class FragmentSpace
             {
     	        fragsApsPerApClass = new HashMap<APClass,ArrayList<
     	            ArrayList<Integer>>>();
+    	        compatIndex = null;
             }
     	    synchronized (LOCK)
             {
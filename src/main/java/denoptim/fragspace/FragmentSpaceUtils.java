@@ -18,8 +18,10 @@
 
 package denoptim.fragspace;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import denoptim.graph.APMapping;
 import denoptim.graph.AttachmentPoint;
@@ -55,6 +57,32 @@ public class FragmentSpaceUtils
                 List<AttachmentPoint>> possibilities,
             APMapping combination, List<APMapping> completeCombinations, 
             boolean screenAll, int maxCombs)
+    {
+        return recursiveCombiner(keys, currentKey, possibilities, combination,
+                completeCombinations, screenAll, maxCombs, 
+                new HashSet<AttachmentPoint>(), 
+                new HashSet<AttachmentPoint>());
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #recursiveCombiner(List, int, Map, APMapping, List, 
+     * boolean, int)} but collects only the combinations that include all the
+     * required keys and values. Partial combinations that cannot be completed
+     * into one such combination are not explored further.
+     * @param requiredKeys the keys that must be part of any combination.
+     * @param requiredValues the values that must be part of any combination.
+     * @return <code>true</code> if the exploration of the combinatorial space
+     * was halted because of reaching the maximum number of combinations.
+     */
+    public static boolean recursiveCombiner(List<AttachmentPoint> keys,
+            int currentKey, Map<AttachmentPoint,
+                List<AttachmentPoint>> possibilities,
+            APMapping combination, List<APMapping> completeCombinations, 
+            boolean screenAll, int maxCombs, 
+            Set<AttachmentPoint> requiredKeys, 
+            Set<AttachmentPoint> requiredValues)
     {
         boolean stopped = false;
         AttachmentPoint apA = keys.get(currentKey);
@@ -84,12 +112,19 @@ public class FragmentSpaceUtils
             // go deeper, to the next key
             if (currentKey+1 < keys.size())
             {
-                stopped = recursiveCombiner(keys, currentKey+1, possibilities, 
-                        combination, completeCombinations, screenAll, maxCombs);
+                if (canBeCompleted(keys, currentKey+1, possibilities, 
+                        combination, requiredKeys, requiredValues))
+                {
+                    stopped = recursiveCombiner(keys, currentKey+1, 
+                            possibilities, combination, completeCombinations,
+                            screenAll, maxCombs, requiredKeys, requiredValues);
+                }
             }
             
             // we reached the deepest level: save combination
-            if (currentKey+1 == keys.size() && !combination.isEmpty())
+            if (currentKey+1 == keys.size() && !combination.isEmpty()
+                    && combination.keySet().containsAll(requiredKeys)
+                    && combination.values().containsAll(requiredValues))
             {   
                 APMapping storable = combination.clone(); //Shallow clone
                 completeCombinations.add(storable);
@@ -104,6 +139,60 @@ public class FragmentSpaceUtils
         }
         return stopped;
     }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if a partial combination can still be completed into one that
+     * includes all the required keys and values, considering that only keys
+     * from the given index onwards can still be added.
+     */
+    private static boolean canBeCompleted(List<AttachmentPoint> keys,
+            int nextKey, Map<AttachmentPoint,
+                List<AttachmentPoint>> possibilities, APMapping combination,
+            Set<AttachmentPoint> requiredKeys, 
+            Set<AttachmentPoint> requiredValues)
+    {
+        if (requiredKeys.isEmpty() && requiredValues.isEmpty())
+            return true;
+        
+        List<AttachmentPoint> nextKeys = keys.subList(nextKey, keys.size());
+        for (AttachmentPoint key : requiredKeys)
+        {
+            if (combination.containsKey(key))
+                continue;
+            if (!nextKeys.contains(key))
+                return false;
+            boolean found = false;
+            for (AttachmentPoint value : possibilities.get(key))
+            {
+                if (value != null && !combination.containsValue(value))
+                {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return false;
+        }
+        for (AttachmentPoint value : requiredValues)
+        {
+            if (combination.containsValue(value))
+                continue;
+            boolean found = false;
+            for (AttachmentPoint key : nextKeys)
+            {
+                if (possibilities.get(key).contains(value))
+                {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
 
 //------------------------------------------------------------------------------
 
@@ -219,12 +219,8 @@ public class FragsCombinationIterator
         // Collect all possibilities (frags, caps, entry) for each free AP
         for (IdFragmentAndAP candSrcAp : allSrcAps)
         {
-            Vertex.BBType fTyp = candSrcAp.getVertexMolType();
-            int fIdx = candSrcAp.getVertexMolId();
-            int apId = candSrcAp.getApId();
-            Vertex frag = settings.getFragmentSpace()
-                    .getVertexFromLibrary(fTyp, fIdx); 
-            APClass srcApCls = frag.getAttachmentPoints().get(apId).getAPClass();
+            APClass srcApCls = settings.getFragmentSpace()
+                    .getAPClassForFragment(candSrcAp);
 
             // Create data structure for candidates 
             ArrayList<IdFragmentAndAP> candsForThisSrc = 
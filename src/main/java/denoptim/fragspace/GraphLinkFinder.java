@@ -156,42 +156,50 @@ public class GraphLinkFinder
             Vertex originalBB = fragSpace.getRandomizer().randomlyChooseOne(
                     candidates);
             candidates.remove(originalBB);
-            try
+            
+            // NB: the new link cannot be the same building block as the old one
+            if (originalBB.getBuildingBlockId() == 
+                    originalLink.getBuildingBlockId())
             {
-                chosenNewLink = fragmentSpace.getVertexFromLibrary(
-                        originalBB.getBuildingBlockType(), 
-                        originalBB.getBuildingBlockId());
-            } catch (DENOPTIMException e)
+                continue;
+            }
+            
+            if (originalBB.getNumberOfAPs() < (originalLink.getNumberOfAPs() -
+                    originalLink.getFreeAPCountThroughout()))
             {
-                e.printStackTrace();
                 continue;
             }
             
-            // NB: the new link cannot be the same building block as the old one
-            if (chosenNewLink.getBuildingBlockId() == 
-                    originalLink.getBuildingBlockId())
+            // Skip building blocks with APs that cannot be mapped, before 
+            // making any copy of the building block.
+            if (!APMapFinder.isMappingPossible(fragSpace, originalLink, 
+                    originalBB, false, true))
             {
                 continue;
             }
             
-            if (chosenNewLink.getNumberOfAPs() < (originalLink.getNumberOfAPs() -
-                    originalLink.getFreeAPCountThroughout()))
+            Vertex candidateLink = null;
+            try
             {
+                candidateLink = fragmentSpace.getVertexFromLibrary(
+                        originalBB.getBuildingBlockType(), 
+                        originalBB.getBuildingBlockId());
+            } catch (DENOPTIMException e)
+            {
+                e.printStackTrace();
                 continue;
             }
             
             // We map all the compatibilities before choosing a specific mapping
             APMapFinder apmf = new APMapFinder(fragSpace, originalLink, 
-                    chosenNewLink, screenAll);
+                    candidateLink, screenAll);
             
             if (!apmf.foundMapping())
             {
-                this.chosenNewLink = null;
                 continue;
-            } else {
-                this.foundNewLink = true;
             }
-            
+            this.foundNewLink = true;
+            this.chosenNewLink = candidateLink;
             chosenAPMap = apmf.getChosenAPMapping();
             
             if (screenAll)
@@ -303,6 +311,13 @@ public class GraphLinkFinder
             Vertex originalBB = fragSpace.getRandomizer().randomlyChooseOne(
                     candidates);
             candidates.remove(originalBB);
+            
+            // Check the library vertex before making a copy of it
+            if (originalBB.getNumberOfAPs() < 2)
+            {
+                continue;
+            }
+            
             try
             {
                 chosenNewLink = fragmentSpace.getVertexFromLibrary(
@@ -314,11 +329,6 @@ public class GraphLinkFinder
                 continue;
             }
             
-            if (chosenNewLink.getNumberOfAPs() < 2)
-            {
-                continue;
-            }
-            
             // We map all the compatibilities before choosing a specific mapping
             LinkedHashMap<AttachmentPoint,List<AttachmentPoint>> apCompatilities =
                     new LinkedHashMap<AttachmentPoint,List<AttachmentPoint>>();
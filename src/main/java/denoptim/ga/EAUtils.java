@@ -19,7 +19,9 @@
 
 package denoptim.ga;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
@@ -66,6 +68,7 @@ import denoptim.graph.rings.CyclicGraphHandler;
 import denoptim.graph.rings.RingClosureParameters;
 import denoptim.graph.rings.RingClosuresArchive;
 import denoptim.io.DenoptimIO;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.logging.CounterID;
 import denoptim.logging.Monitor;
 import denoptim.molecularmodeling.ThreeDimTreeBuilder;
@@ -151,15 +154,11 @@ public class EAUtils
         Population population = new Population(settings);
 
         // Read existing or previously visited UIDs
-        HashSet<String> lstUID = new HashSet<>(1024);
         if (!settings.getUIDFileIn().equals(""))
         {
-            EAUtils.readUID(settings.getUIDFileIn(),lstUID);
-            for (String uid : lstUID)
-            {
-                uniqueIDsSet.addNewUniqueEntry(uid);
-            }
-            settings.getLogger().log(Level.INFO, "Read " + lstUID.size() 
+            int numUIDs = EAUtils.readUID(settings.getUIDFileIn(),
+                    uniqueIDsSet);
+            settings.getLogger().log(Level.INFO, "Read " + numUIDs 
                 + " known UIDs from " + settings.getUIDFileIn());
         }
         
@@ -589,6 +588,7 @@ public class EAUtils
             offspring.setUID(res[0].toString().trim());
             offspring.setSmiles(res[1].toString().trim());
             offspring.setChemicalRepresentation((IAtomContainer) res[2]);
+            offspring.setThreeDimTree((IAtomContainer) res[2], (Long) res[3]);
             
             validOffspring.add(offspring);
         }
@@ -740,6 +740,7 @@ public class EAUtils
         offspring.setUID(res[0].toString().trim());
         offspring.setSmiles(res[1].toString().trim());
         offspring.setChemicalRepresentation((IAtomContainer) res[2]);
+        offspring.setThreeDimTree((IAtomContainer) res[2], (Long) res[3]);
         offspring.setName("M" + GeneralUtils.getPaddedString(
                 DENOPTIMConstants.MOLDIGITS,
                 GraphUtils.getUniqueMoleculeIndex()));
@@ -809,6 +810,7 @@ public class EAUtils
         candidate.setUID(res[0].toString().trim());
         candidate.setSmiles(res[1].toString().trim());
         candidate.setChemicalRepresentation((IAtomContainer) res[2]);
+        candidate.setThreeDimTree((IAtomContainer) res[2], (Long) res[3]);
         
         candidate.setName("M" + GeneralUtils.getPaddedString(
                 DENOPTIMConstants.MOLDIGITS,
@@ -901,6 +903,7 @@ public class EAUtils
         candidate.setUID(res[0].toString().trim());
         candidate.setSmiles(res[1].toString().trim());
         candidate.setChemicalRepresentation((IAtomContainer) res[2]);
+        candidate.setThreeDimTree((IAtomContainer) res[2], (Long) res[3]);
         
         candidate.setName("M" + GeneralUtils.getPaddedString(
                 DENOPTIMConstants.MOLDIGITS,
@@ -1003,6 +1006,7 @@ public class EAUtils
         candidate.setUID(res[0].toString().trim());
         candidate.setSmiles(res[1].toString().trim());
         candidate.setChemicalRepresentation((IAtomContainer) res[2]);
+        candidate.setThreeDimTree((IAtomContainer) res[2], (Long) res[3]);
         
         candidate.setName("M" + GeneralUtils.getPaddedString(
                 DENOPTIMConstants.MOLDIGITS,
@@ -1227,6 +1231,33 @@ public class EAUtils
             String filename, GAParameters settings, boolean printpathNames) 
                     throws DENOPTIMException
     {
+        outputPopulationDetails(population, filename, settings, 
+                printpathNames, -1);
+    }
+    
+//------------------------------------------------------------------------------  
+    
+    /**
+     * Write out summary for the current GA population.
+     * @param population
+     * @param filename the pathname of the file where we write the details of 
+     * the population. If required by the {@link GAParameters}, we use this
+     * also to define a pathname where to write all the members of the 
+     * population.
+     * @param genId the generation at the end of which we have this population.
+     * If not negative, and if the {@link GAParameters} require so, the 
+     * population members are recorded in the run summary database.
+     * @throws DENOPTIMException
+     */
+
+    public static void outputPopulationDetails(Population population, 
+            String filename, GAParameters settings, boolean printpathNames,
+            int genId) throws DENOPTIMException
+    {
+        RunSummaryDatabase runSummaryDB = null;
+        if (genId >= 0)
+            runSummaryDB = settings.getRunSummaryDatabase();
+        
         StringBuilder sb = new StringBuilder(512);
         sb.append(DENOPTIMConstants.GAGENSUMMARYHEADER);
         sb.append(NL);
@@ -1246,6 +1277,9 @@ public class EAUtils
                 popMembers.add(mol);
                 if (mol != null)
                 {
+                    if (runSummaryDB != null)
+                        runSummaryDB.appendPopulationMember(mol, genId);
+                    
                     String mname = new File(mol.getSDFFile()).getName();
                     if (mname != null)
                         sb.append(String.format("%-20s", mname));
@@ -1794,11 +1828,19 @@ public class EAUtils
         if (!rcParams.allowRingClosures())
             return true;
 
-        // get a atoms/bonds molecular representation (no 3D needed)
-        ThreeDimTreeBuilder t3d = new ThreeDimTreeBuilder(settings.getLogger(),
-                settings.getRandomizer());
-        t3d.setAlignBBsIn3D(false);
-        IAtomContainer mol = t3d.convertGraphTo3DAtomContainer(molGraph,true);
+        // get a atoms/bonds molecular representation (no 3D needed). The 
+        // graph has not changed since the consistency check, so we reuse the 
+        // representation made there, if any.
+        IAtomContainer mol = null;
+        if (res!=null && res[2]!=null)
+        {
+            mol = (IAtomContainer) res[2];
+        } else {
+            ThreeDimTreeBuilder t3d = new ThreeDimTreeBuilder(
+                    settings.getLogger(), settings.getRandomizer());
+            t3d.setAlignBBsIn3D(false);
+            mol = t3d.convertGraphTo3DAtomContainer(molGraph,true);
+        }
         
         // Set rotatability property as property of IBond
         String rotoSpaceFile = "";
@@ -2313,5 +2355,39 @@ public class EAUtils
         lst.clear();
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads unique identifiers from a text file (one identifier per line) 
+     * and adds them to the given set. The file is streamed line by line, so
+     * it can be larger than the memory, as is the text file collecting
+     * the entries of a {@link denoptim.utils.HashedUIDStore}.
+     * @param infile the text file to read.
+     * @param uniqueIDsSet the set where to add the identifiers.
+     * @return the number of identifiers that were new to the set.
+     * @throws DENOPTIMException if the file cannot be read.
+     */
+    protected static int readUID(String infile, SizeControlledSet uniqueIDsSet)
+                                                    throws DENOPTIMException
+    {
+        int numNew = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(infile)))
+        {
+            String line;
+            while ((line = br.readLine()) != null)
+            {
+                if (line.trim().isEmpty())
+                    continue;
+                if (uniqueIDsSet.addNewUniqueEntry(line.trim()))
+                    numNew++;
+            }
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Unable to read UIDs from file '" 
+                    + infile + "'.", e);
+        }
+        return numNew;
+    }
+    
 //------------------------------------------------------------------------------    
 }
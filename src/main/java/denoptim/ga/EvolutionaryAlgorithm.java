@@ -19,6 +19,7 @@
 package denoptim.ga;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -44,6 +45,7 @@ import denoptim.exception.ExceptionUtils;
 import denoptim.fitness.FitnessParameters;
 import denoptim.ga.EAUtils.CandidateSource;
 import denoptim.graph.Candidate;
+import denoptim.graph.rings.RingClosureParameters;
 import denoptim.io.IteratingAtomContainerReader;
 import denoptim.logging.CounterID;
 import denoptim.logging.Monitor;
@@ -146,6 +148,11 @@ public class EvolutionaryAlgorithm
      * Task manager for tasks to be executed as batches.
      */
     private TasksBatchManager tbm;
+    
+    /**
+     * Pipeline used in the steady-state parallelization scheme.
+     */
+    private SteadyStatePipeline pipeline = null;
 
     /**
      * Issue emerging from a thread submitted by asynchronous parallelization 
@@ -174,12 +181,20 @@ public class EvolutionaryAlgorithm
         this.logger = settings.getLogger();
         this.cmdListener = cmdListener;
         
+        scs = new SizeControlledSet(
+                settings.maxUIDMemory, settings.uidMemoryOnDisk, 
+                settings.getUIDFileOut(), settings.uidStoreType);
+        
         // There is currently nothing to initialize for the synchronous scheme
         if (settings.getParallelizationScheme() == 1)
         {
             isAsync = false;
             tbm = new TasksBatchManager();
             
+        } else if (settings.getParallelizationScheme() == 3) {
+            isAsync = false;
+            pipeline = new SteadyStatePipeline(settings, scs);
+            
         } else {
             isAsync = true;
             futures = new HashMap<FitnessTask,Future<Object>>();
@@ -238,10 +253,6 @@ public class EvolutionaryAlgorithm
                 }
             });
         }
-        
-        scs = new SizeControlledSet(
-                settings.maxUIDMemory, settings.uidMemoryOnDisk, 
-                settings.getUIDFileOut());
     }
 
 //------------------------------------------------------------------------------
@@ -276,7 +287,7 @@ public class EvolutionaryAlgorithm
                 ParametersType.FIT_PARAMS)).writeCandidatesOnDisk();
         EAUtils.outputPopulationDetails(population, 
                 EAUtils.getPathNameToGenerationDetailsFile(0, settings), 
-                settings, writeCandsOnDisk);
+                settings, writeCandsOnDisk, 0);
         
         // Ensure that there is some variability in fitness values
         double sdev = EAUtils.getPopulationSD(population);
@@ -321,7 +332,7 @@ public class EvolutionaryAlgorithm
                     + NL, genId);
             EAUtils.outputPopulationDetails(population, 
                     EAUtils.getPathNameToGenerationDetailsFile(genId, settings),
-                    settings, writeCandsOnDisk);
+                    settings, writeCandsOnDisk, genId);
             
             if (stopped)
             {
@@ -366,6 +377,11 @@ public class EvolutionaryAlgorithm
             }
             tpe.shutdown();
         }
+        if (pipeline != null)
+        {
+            // let pending evaluations finish
+            pipeline.shutdown();
+        }
 
         // Sort the population and trim it to desired size
         Collections.sort(population, Collections.reverseOrder());
@@ -377,6 +393,24 @@ public class EvolutionaryAlgorithm
         // And write final results
         EAUtils.outputFinalResults(population, settings);
         
+        try
+        {
+            scs.close();
+        } catch (IOException e)
+        {
+            logger.log(Level.WARNING, "Unable to close storage of UIDs. "
+                    + "Details: " + NL 
+                    + ExceptionUtils.getStackTraceAsString(e));
+        }
+        ((FitnessParameters) settings.getParameters(
+                ParametersType.FIT_PARAMS)).closeFitnessResources();
+        settings.closeRunSummaryDatabase();
+        if (settings.containsParameters(ParametersType.RC_PARAMS))
+        {
+            ((RingClosureParameters) settings.getParameters(
+                    ParametersType.RC_PARAMS)).closeRingClosuresArchive();
+        }
+        
         // Termination
         population.trim(0);
         watch.stop();
@@ -499,6 +533,8 @@ public class EvolutionaryAlgorithm
                     cleanupAsync();
                     tpe.shutdown();
                 }
+                if (pipeline != null)
+                    pipeline.stop();
                 throw dex;
             }
             catch (Exception ex)
@@ -508,6 +544,8 @@ public class EvolutionaryAlgorithm
                     cleanupAsync();
                     tpe.shutdown();
                 }
+                if (pipeline != null)
+                    pipeline.stop();
                 ex.printStackTrace();
                 throw new DENOPTIMException(ex);
             }
@@ -557,6 +595,8 @@ public class EvolutionaryAlgorithm
                 cleanupAsync();
                 tpe.shutdown();
             }
+            if (pipeline != null)
+                pipeline.stop();
             throw dex;
         }
         catch (Exception ex)
@@ -566,6 +606,8 @@ public class EvolutionaryAlgorithm
                 cleanupAsync();
                 tpe.shutdown();
             }
+            if (pipeline != null)
+                pipeline.stop();
             ex.printStackTrace();
             throw new DENOPTIMException(ex);
         }
@@ -579,6 +621,8 @@ public class EvolutionaryAlgorithm
             {
                 cleanupCompleted();
                 stopRun();
+            } else if (pipeline != null) {
+                stopRun();
             }
             logger.log(Level.SEVERE,
                     "Unable to initialize molecules in {0} attempts."+NL, i);
@@ -625,7 +669,8 @@ public class EvolutionaryAlgorithm
 
         candidate.setGeneration(0);
         
-        if (((FitnessParameters)settings.getParameters(
+        // NB: the steady-state pipeline checks the UID in a dedicated stage
+        if (pipeline == null && ((FitnessParameters)settings.getParameters(
                 ParametersType.FIT_PARAMS)).checkPreFitnessUID())
         {
             try
@@ -650,7 +695,10 @@ public class EvolutionaryAlgorithm
                 replaceWorstPopMember);
         
         // Submission is dependent on the parallelization scheme
-        if (isAsync)
+        if (pipeline != null)
+        {
+            submitToPipeline(task, candidate, mnt);
+        } else if (isAsync)
         {
             submitted.add(task);
             futures.put(task, tpe.submit(task));
@@ -692,6 +740,26 @@ public class EvolutionaryAlgorithm
         return attemptsToFillBatch;
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Puts a task in the steady-state pipeline. Blocks until there is room in
+     * the pipeline, i.e., until any previous task has completed.
+     */
+    private void submitToPipeline(OffspringEvaluationTask task, 
+            Candidate candidate, Monitor mnt) throws DENOPTIMException
+    {
+        try
+        {
+            pipeline.submit(task, candidate.getUID(), mnt);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new DENOPTIMException("Interrupted while submitting "
+                    + "candidate " + candidate.getName() + ".", e);
+        }
+    }
+    
 //------------------------------------------------------------------------------
     
     private void submitSyncParallelBatch(List<Task> batchOfSyncParallelTasks) 
@@ -835,7 +903,10 @@ public class EvolutionaryAlgorithm
                     
                     candidate.setGeneration(genId);
                     
-                    if (((FitnessParameters)settings.getParameters(
+                    // NB: the steady-state pipeline checks the UID in a 
+                    // dedicated stage
+                    if (pipeline == null 
+                            && ((FitnessParameters)settings.getParameters(
                             ParametersType.FIT_PARAMS)).checkPreFitnessUID())
                     {
                         try
@@ -859,7 +930,10 @@ public class EvolutionaryAlgorithm
                             EAUtils.getPathNameToGenerationFolder(genId, settings), 
                             population, mnt, settings.getUIDFileOut(), false);
                     
-                    if (isAsync)
+                    if (pipeline != null)
+                    {
+                        submitToPipeline(task, candidate, mnt);
+                    } else if (isAsync)
                     {
                         submitted.add(task);
                         futures.put(task, tpe.submit(task));
@@ -898,6 +972,8 @@ public class EvolutionaryAlgorithm
                 cleanupAsync();
                 tpe.shutdown();
             }
+            if (pipeline != null)
+                pipeline.stop();
             dex.printStackTrace();
             throw dex;
         }
@@ -908,6 +984,8 @@ public class EvolutionaryAlgorithm
                 cleanupAsync();
                 tpe.shutdown();
             }
+            if (pipeline != null)
+                pipeline.stop();
             ex.printStackTrace();
             throw new DENOPTIMException(ex);
         }
@@ -921,6 +999,8 @@ public class EvolutionaryAlgorithm
             {
                 cleanupCompleted();
                 stopRun();
+            } else if (pipeline != null) {
+                stopRun();
             }
             logger.log(Level.WARNING,
                     "Reached maximum number of attempts (" + i + ") to "
@@ -1093,6 +1173,10 @@ public class EvolutionaryAlgorithm
             cleanupAsync();
             tpe.shutdown();
         }
+        if (pipeline != null)
+        {
+            pipeline.stop();
+        }
         stopped = true;
     }
     
@@ -1165,6 +1249,13 @@ public class EvolutionaryAlgorithm
                 if (interrupt)
                     break;
             }
+        } else if (pipeline != null) {
+            Throwable t = pipeline.getFailure();
+            if (t != null)
+            {
+                foundExceptions = true;
+                ex = t;
+            }
         } else {
             // We don't really check of exceptions for synchronous scheme
             // because the executor service will detect the exception and stop
@@ -1312,10 +1312,8 @@ public class GraphOperations
         }
         else
         {
-            List<IdFragmentAndAP> candidates = 
-                    fragSpace.getFragAPsCompatibleWithClass(
-                    curDap.getAPClass());
-            if (candidates.size() > 0)
+            if (fragSpace.countFragAPsCompatibleWithClass(
+                    curDap.getAPClass()) > 0)
             {
                 if (chosenVrtxIdx>-1 && chosenApId>-1)
                 {
@@ -1323,7 +1321,8 @@ public class GraphOperations
                     res = new IdFragmentAndAP(-1,chosenVrtxIdx,BBType.FRAGMENT,
                             chosenApId,-1,-1);
                 } else {
-                    res = fragSpace.getRandomizer().randomlyChooseOne(candidates);
+                    res = fragSpace.chooseRandomFragAPCompatibleWithClass(
+                            curDap.getAPClass());
                 }
             }
         }
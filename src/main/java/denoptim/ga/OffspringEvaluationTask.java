@@ -23,6 +23,7 @@ import java.io.File;
 import java.util.logging.Level;
 
 import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.interfaces.IAtomContainer;
 
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
@@ -31,12 +32,14 @@ import denoptim.fragspace.FragmentSpace;
 import denoptim.fragspace.FragmentSpaceParameters;
 import denoptim.graph.Candidate;
 import denoptim.graph.DGraph;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.logging.CounterID;
 import denoptim.logging.Monitor;
 import denoptim.molecularmodeling.ThreeDimTreeBuilder;
 import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.denovo.GAParameters;
 import denoptim.task.FitnessTask;
+import denoptim.utils.Randomizer;
 
 /**
  * Task that calls the fitness provider for an offspring that can become a
@@ -66,6 +69,12 @@ public class OffspringEvaluationTask extends FitnessTask
      */
     private Candidate sibling;
     
+    /**
+     * Flag recording that the molecular representation given to the fitness
+     * provider has been prepared already.
+     */
+    private boolean inputIsPrepared = false;
+    
 //------------------------------------------------------------------------------
     
     public OffspringEvaluationTask(GAParameters gaSettings, 
@@ -109,54 +118,52 @@ public class OffspringEvaluationTask extends FitnessTask
     
     @Override
     public Object call() throws DENOPTIMException, Exception
-    {     
-        mnt.increase(CounterID.FITNESSEVALS);
-          
-    	// Optionally improve the molecular representation, which
-        // is otherwise only given by the collection of building
-        // blocks (not aligned, nor roto-translated)
-        if (fitnessSettings.make3dTree())
+    {
+        // Any random decision taken while evaluating this offspring depends on
+        // the offspring, not on the scheduling of concurrent tasks
+        Randomizer rng = fitnessSettings.getRandomizer();
+        rng.startTaskStream(molName);
+        try
         {
-        	ThreeDimTreeBuilder tb3d = new ThreeDimTreeBuilder(
-        	        fitnessSettings.getLogger(),
-        	        fitnessSettings.getRandomizer());
-        	
-            try {
-                DGraph gWithNoRCVs = dGraph.clone();
-                gWithNoRCVs.replaceUnusedRCVsWithCapps(fragSpace);
-                
-            	// To get a proper molecular representation we need
-            	// 1) build a 3d tree
-            	// 2) remove RCAs
-            	// 3) remove dummy in multi-hapto
-            	// 4) remove dummy in linearities
-                // 5) set atom properties that are expected by CDK classes (for
-                //    example, the number of implicit atoms).
-            	// All this should be done within the TreeBuilder3D and 
-            	// controlled by flags. Obviously, if we remove all these 
-            	// functional dummy atoms, then we cannot use them anymore,
-            	// So: are there cases where we need to keep them?
-            	// We can always rebuild the 3d-tree (with Dummy atoms) if
-            	// we need to get it back. Thus, for the moment I do not see
-            	// a reason for keeping them in the molecular representation,
-            	// but potential down-stream effects have to be evaluated.
-                fitProvMol = tb3d.convertGraphTo3DAtomContainer(
-                        gWithNoRCVs,true);
-        	} catch (Throwable t) {
-        		//we have it already from before
-        	}
+            return evaluate();
+        } finally {
+            rng.endTaskStream();
         }
-        fitProvMol.setProperty(CDKConstants.TITLE, molName);
-        fitProvMol.setProperty(DENOPTIMConstants.SMILESTAG, result.getSmiles());
-        fitProvMol.setProperty(DENOPTIMConstants.INCHIKEYTAG, result.getUID());
-        fitProvMol.setProperty(DENOPTIMConstants.GCODETAG, dGraph.getGraphId());
-        fitProvMol.setProperty(DENOPTIMConstants.UNIQUEIDTAG, result.getUID());
-        fitProvMol.setProperty(DENOPTIMConstants.GRAPHTAG, dGraph.toString());
-        fitProvMol.setProperty(DENOPTIMConstants.GRAPHJSONTAG, dGraph.toJson());
-        if (dGraph.getLocalMsg() != null)
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Prepares the molecular representation of the offspring while the 
+     * stream of random numbers of this task is active, so that the result 
+     * does not depend on when this preparation is done.
+     */
+    @Override
+    public boolean prepareForBatchEvaluation()
+    {
+        Randomizer rng = fitnessSettings.getRandomizer();
+        rng.startTaskStream(molName);
+        try
         {
-        	fitProvMol.setProperty(DENOPTIMConstants.PROVENANCE, 
-        	        dGraph.getLocalMsg());
+            prepareInputForFitnessProvider();
+        } catch (Throwable t) {
+            // The task will try again and deal with the problem when running
+            return false;
+        } finally {
+            rng.endTaskStream();
+        }
+        return true;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    private Object evaluate() throws DENOPTIMException, Exception
+    {     
+        mnt.increase(CounterID.FITNESSEVALS);
+        
+        if (!inputIsPrepared)
+        {
+            prepareInputForFitnessProvider();
         }
         
         // Run the fitness provider, whatever that is (internal or external)
@@ -180,6 +187,13 @@ public class OffspringEvaluationTask extends FitnessTask
         {
             mnt.increase(CounterID.FAILEDFITNESSEVALS);
         }
+        
+        RunSummaryDatabase runSummaryDB = gaSettings.getRunSummaryDatabase();
+        if (runSummaryDB != null)
+        {
+            runSummaryDB.appendCandidate(result, result.getGeneration(), -1, 
+                    -1);
+        }
 
         if (result.hasFitness())
         {
@@ -250,5 +264,83 @@ public class OffspringEvaluationTask extends FitnessTask
         return result;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Builds the molecular representation given to the fitness provider.
+     */
+    private void prepareInputForFitnessProvider()
+    {
+    	// Optionally improve the molecular representation, which
+        // is otherwise only given by the collection of building
+        // blocks (not aligned, nor roto-translated)
+        if (fitnessSettings.make3dTree())
+        {
+        	ThreeDimTreeBuilder tb3d = new ThreeDimTreeBuilder(
+        	        fitnessSettings.getLogger(),
+        	        fitnessSettings.getRandomizer());
+        	
+            try {
+                DGraph gWithNoRCVs = dGraph.clone();
+                gWithNoRCVs.replaceUnusedRCVsWithCapps(fragSpace);
+                
+            	// To get a proper molecular representation we need
+            	// 1) build a 3d tree
+            	// 2) remove RCAs
+            	// 3) remove dummy in multi-hapto
+            	// 4) remove dummy in linearities
+                // 5) set atom properties that are expected by CDK classes (for
+                //    example, the number of implicit atoms).
+            	// All this should be done within the TreeBuilder3D and 
+            	// controlled by flags. Obviously, if we remove all these 
+            	// functional dummy atoms, then we cannot use them anymore,
+            	// So: are there cases where we need to keep them?
+            	// We can always rebuild the 3d-tree (with Dummy atoms) if
+            	// we need to get it back. Thus, for the moment I do not see
+            	// a reason for keeping them in the molecular representation,
+            	// but potential down-stream effects have to be evaluated.
+                fitProvMol = tb3d.convertGraphTo3DAtomContainer(
+                        gWithNoRCVs,true);
+        	} catch (Throwable t) {
+        		//we have it already from before
+        	}
+        } else if (result.hasThreeDimTree()) {
+            // Reuse the representation made when checking the consistency of
+            // the graph, unless the graph has changed since then (e.g., rings
+            // have been added), which makes that representation outdated.
+            IAtomContainer mol = result.getThreeDimTree();
+            if (mol == null)
+            {
+                ThreeDimTreeBuilder tb3d = new ThreeDimTreeBuilder(
+                        fitnessSettings.getLogger(),
+                        fitnessSettings.getRandomizer());
+                tb3d.setAlignBBsIn3D(false);
+                try {
+                    mol = tb3d.convertGraphTo3DAtomContainer(dGraph.clone(),
+                            true);
+                } catch (Throwable t) {
+                    //we have it already from before
+                }
+            }
+            if (mol != null)
+            {
+                fitProvMol = mol;
+            }
+        }
+        fitProvMol.setProperty(CDKConstants.TITLE, molName);
+        fitProvMol.setProperty(DENOPTIMConstants.SMILESTAG, result.getSmiles());
+        fitProvMol.setProperty(DENOPTIMConstants.INCHIKEYTAG, result.getUID());
+        fitProvMol.setProperty(DENOPTIMConstants.GCODETAG, dGraph.getGraphId());
+        fitProvMol.setProperty(DENOPTIMConstants.UNIQUEIDTAG, result.getUID());
+        fitProvMol.setProperty(DENOPTIMConstants.GRAPHTAG, dGraph.toString());
+        fitProvMol.setProperty(DENOPTIMConstants.GRAPHJSONTAG, dGraph.toJson());
+        if (dGraph.getLocalMsg() != null)
+        {
+        	fitProvMol.setProperty(DENOPTIMConstants.PROVENANCE, 
+        	        dGraph.getLocalMsg());
+        }
+        inputIsPrepared = true;
+    }
+
 //------------------------------------------------------------------------------
 }
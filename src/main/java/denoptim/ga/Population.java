@@ -21,16 +21,28 @@ package denoptim.ga;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 
 import denoptim.exception.DENOPTIMException;
 import denoptim.fragspace.FragmentSpace;
 import denoptim.fragspace.FragmentSpaceParameters;
+import denoptim.graph.APClass;
 import denoptim.graph.Candidate;
 import denoptim.graph.DGraph;
+import denoptim.graph.Edge;
+import denoptim.graph.Template;
+import denoptim.graph.Template.ContractLevel;
+import denoptim.graph.Vertex;
+import denoptim.graph.Vertex.BBType;
 import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.denovo.GAParameters;
 
@@ -88,7 +100,11 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         boolean result = super.add(c);
         if (result)
+        {
             populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+                xoverCompatibilities.register(c);
+        }
         return result;
     }
     
@@ -99,6 +115,8 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         super.add(index, c);
         populationUpdate.getAndIncrement();
+        if (xoverCompatibilities != null)
+            xoverCompatibilities.register(c);
     }
     
 //------------------------------------------------------------------------------
@@ -107,7 +125,14 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     public Candidate set(int index, Candidate c)
     {
         populationUpdate.getAndIncrement();
-        return super.set(index, c);
+        Candidate old = super.set(index, c);
+        if (xoverCompatibilities != null)
+        {
+            if (old != c)
+                xoverCompatibilities.remove(old);
+            xoverCompatibilities.register(c);
+        }
+        return old;
     }
     
 //------------------------------------------------------------------------------
@@ -116,7 +141,10 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     public Candidate remove(int index)
     {
         populationUpdate.getAndIncrement();
-        return super.remove(index);
+        Candidate removed = super.remove(index);
+        if (xoverCompatibilities != null)
+            xoverCompatibilities.remove(removed);
+        return removed;
     }
     
 //------------------------------------------------------------------------------
@@ -126,7 +154,11 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         boolean result = super.remove(c);
         if (result)
+        {
             populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+                xoverCompatibilities.remove((Candidate) c);
+        }
         return result;
     }
     
@@ -137,7 +169,11 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         boolean result = super.removeAll(c);
         if (result)
+        {
             populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+                xoverCompatibilities.retainOnly(this);
+        }
         return result;
     }
     
@@ -148,6 +184,8 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         populationUpdate.getAndIncrement();
         super.clear();
+        if (xoverCompatibilities != null)
+            xoverCompatibilities.retainOnly(this);
     }
     
 //------------------------------------------------------------------------------
@@ -157,10 +195,85 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {
         boolean result = super.retainAll(c);
         if (result)
+        {
+            populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+                xoverCompatibilities.retainOnly(this);
+        }
+        return result;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Override
+    public boolean addAll(Collection<? extends Candidate> c)
+    {
+        boolean result = super.addAll(c);
+        if (result)
+        {
+            populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+            {
+                for (Candidate member : c)
+                    xoverCompatibilities.register(member);
+            }
+        }
+        return result;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Override
+    public boolean addAll(int index, Collection<? extends Candidate> c)
+    {
+        boolean result = super.addAll(index, c);
+        if (result)
+        {
             populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+            {
+                for (Candidate member : c)
+                    xoverCompatibilities.register(member);
+            }
+        }
+        return result;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Override
+    public boolean removeIf(Predicate<? super Candidate> filter)
+    {
+        boolean result = super.removeIf(filter);
+        if (result)
+        {
+            populationUpdate.getAndIncrement();
+            if (xoverCompatibilities != null)
+                xoverCompatibilities.retainOnly(this);
+        }
         return result;
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Removes the members in the given range of indexes. This is also what
+     * clearing a {@link #subList(int, int)} of this population does.
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex)
+    {
+        if (fromIndex >= toIndex)
+            return;
+        if (xoverCompatibilities != null)
+        {
+            for (int i=fromIndex; i<toIndex; i++)
+                xoverCompatibilities.remove(get(i));
+        }
+        super.removeRange(fromIndex, toIndex);
+        populationUpdate.getAndIncrement();
+    }
+    
 //------------------------------------------------------------------------------
     
     /**
@@ -190,11 +303,63 @@ public class Population extends ArrayList<Candidate> implements Cloneable
             clone.add(c);
         }
         
-        clone.xoverCompatibilities = xoverCompatibilities.clone();
+        if (xoverCompatibilities != null)
+            clone.xoverCompatibilities = xoverCompatibilities.clone();
         
         return clone;
     }
     
+//------------------------------------------------------------------------------    
+    
+    /**
+     * The pair of {@link APClass}es on the source and target side of an 
+     * {@link Edge}. Two edges can be the seeds of a pair of crossover sites 
+     * only if their signatures are compatible (see 
+     * {@link #isCompatibleWith(EdgeSignature, FragmentSpace)}).
+     */
+    private static class EdgeSignature
+    {
+        private final APClass src;
+        private final APClass trg;
+        
+        EdgeSignature(APClass src, APClass trg)
+        {
+            this.src = src;
+            this.trg = trg;
+        }
+        
+        /**
+         * Checks if the edges with this and the other signature allow 
+         * crossover. This is the same condition used in
+         * {@link GraphOperations#locateCompatibleXOverPoints(DGraph, DGraph, 
+         * FragmentSpace, int)}.
+         */
+        boolean isCompatibleWith(EdgeSignature other, FragmentSpace fragSpace)
+        {
+            if (src == null || trg == null || other.src == null 
+                    || other.trg == null)
+                return false;
+            return src.isCPMapCompatibleWith(other.trg, fragSpace)
+                    && other.src.isCPMapCompatibleWith(trg, fragSpace);
+        }
+        
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof EdgeSignature))
+                return false;
+            EdgeSignature other = (EdgeSignature) o;
+            return Objects.equals(src, other.src) 
+                    && Objects.equals(trg, other.trg);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(src, trg);
+        }
+    }
+    
 //------------------------------------------------------------------------------    
     
     /**
@@ -206,12 +371,30 @@ public class Population extends ArrayList<Candidate> implements Cloneable
      * This data structure user a {@link LinkedHashMap} to ensure
      * reproducibility in the generation of list of keys for the inner map. The
      * order of the keys is given by insertion order.
+     * <p>In addition, candidates are indexed by the signatures of the edges 
+     * that may seed a crossover site, so that pairs of candidates that
+     * cannot possibly do crossover are found without running 
+     * {@link GraphOperations#locateCompatibleXOverPoints(DGraph, DGraph, 
+     * FragmentSpace, int)}, and without storing anything about such pairs.
+     * Since the pairs are stored in both directions, removing a candidate
+     * costs as much as the number of candidates it has been paired with.</p>
      */
     private class XoverSitesAmongCandidates
     {
         private LinkedHashMap<Candidate,
         LinkedHashMap<Candidate,List<XoverSite>>> data;
         
+        /**
+         * The signatures of the edges of each candidate.
+         */
+        private HashMap<Candidate,Set<EdgeSignature>> signatures;
+        
+        /**
+         * The candidates owning an edge with a given signature. Candidates are
+         * listed in order of registration.
+         */
+        private LinkedHashMap<EdgeSignature,LinkedHashSet<Candidate>> buckets;
+        
         /**
          * Initializes an empty data structure.
          */
@@ -219,6 +402,85 @@ public class Population extends ArrayList<Candidate> implements Cloneable
         {
             data = new LinkedHashMap<Candidate,LinkedHashMap<Candidate, 
                     List<XoverSite>>>();
+            signatures = new HashMap<Candidate,Set<EdgeSignature>>();
+            buckets = new LinkedHashMap<EdgeSignature,
+                    LinkedHashSet<Candidate>>();
+        }
+        
+        /**
+         * Adds the given candidate to the index of edge signatures, unless it
+         * is already there.
+         * @param c the candidate to index.
+         */
+        public void register(Candidate c)
+        {
+            if (c == null || signatures.containsKey(c))
+                return;
+            Set<EdgeSignature> sigs = new LinkedHashSet<EdgeSignature>();
+            if (c.getGraph() != null)
+                collectSignatures(c.getGraph(), sigs);
+            signatures.put(c, sigs);
+            for (EdgeSignature sig : sigs)
+            {
+                LinkedHashSet<Candidate> bucket = buckets.get(sig);
+                if (bucket == null)
+                {
+                    bucket = new LinkedHashSet<Candidate>();
+                    buckets.put(sig, bucket);
+                }
+                bucket.add(c);
+            }
+        }
+        
+        /**
+         * Collects the signatures of the edges that can seed a crossover site,
+         * including those in the embedded graphs of any template that is not
+         * fixed.
+         */
+        private void collectSignatures(DGraph g, Set<EdgeSignature> sigs)
+        {
+            for (Edge e : g.getEdgeList())
+            {
+                // We don't do genetic operations on capping vertexes
+                if (e.getTrgAP().getOwner().getBuildingBlockType() 
+                        == BBType.CAP)
+                    continue;
+                sigs.add(new EdgeSignature(e.getSrcAPClass(), 
+                        e.getTrgAPClass()));
+            }
+            for (Vertex v : g.getVertexList())
+            {
+                if (v instanceof Template && ((Template) v).getContractLevel()
+                        != ContractLevel.FIXED)
+                {
+                    collectSignatures(((Template) v).getInnerGraph(), sigs);
+                }
+            }
+        }
+        
+        /**
+         * Finds the candidates that own at least one edge compatible with any 
+         * edge of the given candidate. Only these candidates can possibly do 
+         * crossover with the given one. The cost depends on the number of 
+         * distinct edge signatures, not on the number of candidates.
+         * @param cA the candidate looking for crossover partners.
+         * @param fragSpace the space defining APClass compatibility.
+         * @return the set of potential crossover partners.
+         */
+        public Set<Candidate> getPotentialPartners(Candidate cA, 
+                FragmentSpace fragSpace)
+        {
+            register(cA);
+            Set<Candidate> partners = new HashSet<Candidate>();
+            for (EdgeSignature sigA : signatures.get(cA))
+            {
+                for (EdgeSignature sigB : buckets.keySet())
+                {
+                    if (sigA.isCompatibleWith(sigB, fragSpace))
+                        partners.addAll(buckets.get(sigB));
+                }
+            }
+            return partners;
         }
         
         /**
@@ -321,11 +583,45 @@ public class Population extends ArrayList<Candidate> implements Cloneable
          */
         public void remove(Candidate c)
         {
-            data.remove(c);
-            for (LinkedHashMap<Candidate, List<XoverSite>> m : 
-                data.values())
+            LinkedHashMap<Candidate, List<XoverSite>> toC = data.remove(c);
+            if (toC != null)
+            {
+                for (Candidate partner : toC.keySet())
+                {
+                    LinkedHashMap<Candidate, List<XoverSite>> toPartner = 
+                            data.get(partner);
+                    if (toPartner != null)
+                        toPartner.remove(c);
+                }
+            }
+            Set<EdgeSignature> sigs = signatures.remove(c);
+            if (sigs != null)
             {
-                m.remove(c);
+                for (EdgeSignature sig : sigs)
+                {
+                    LinkedHashSet<Candidate> bucket = buckets.get(sig);
+                    bucket.remove(c);
+                    if (bucket.isEmpty())
+                        buckets.remove(sig);
+                }
+            }
+        }
+        
+        /**
+         * Removes all references to candidates that are not in the given 
+         * collection.
+         * @param members the candidates to keep.
+         */
+        public void retainOnly(Collection<Candidate> members)
+        {
+            Set<Candidate> toKeep = new HashSet<Candidate>(members);
+            Set<Candidate> known = new LinkedHashSet<Candidate>(
+                    signatures.keySet());
+            known.addAll(data.keySet());
+            for (Candidate c : known)
+            {
+                if (!toKeep.contains(c))
+                    remove(c);
             }
         }
         
@@ -352,6 +648,15 @@ public class Population extends ArrayList<Candidate> implements Cloneable
                 }
                 cloned.data.put(c1, inner);
             }
+            for (Candidate c : signatures.keySet())
+            {
+                cloned.signatures.put(c, signatures.get(c));
+            }
+            for (EdgeSignature sig : buckets.keySet())
+            {
+                cloned.buckets.put(sig, 
+                        new LinkedHashSet<Candidate>(buckets.get(sig)));
+            }
             return cloned;
         }
     }
@@ -372,6 +677,22 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     {   
         DGraph gA = memberA.getGraph();
         
+        // Eligible parents may have been evicted from the population after 
+        // having been selected, so they can be in the index only as long as
+        // they are still eligible.
+        Set<Candidate> allowed = new HashSet<Candidate>(this);
+        allowed.add(memberA);
+        allowed.addAll(eligibleParents);
+        xoverCompatibilities.retainOnly(allowed);
+        
+        // Only members sharing compatible edges can do crossover
+        for (Candidate memberB : eligibleParents)
+        {
+            xoverCompatibilities.register(memberB);
+        }
+        Set<Candidate> potentialPartners = 
+                xoverCompatibilities.getPotentialPartners(memberA, fragSpace);
+        
         // Update to make sure we cover any combination of members that has not 
         // been considered before
         for (Candidate memberB : eligibleParents)
@@ -381,6 +702,11 @@ public class Population extends ArrayList<Candidate> implements Cloneable
                 continue;
             }
             
+            if (!potentialPartners.contains(memberB))
+            {
+                continue;
+            }
+            
             if (xoverCompatibilities.contains(memberA, memberB))
             {
                 continue;
@@ -435,11 +761,9 @@ public class Population extends ArrayList<Candidate> implements Cloneable
     public void trim(int populationSize)
     {
         int k = this.size();
-        for (Candidate c : this.subList(settings.getPopulationSize(), k))
-        {
-            xoverCompatibilities.remove(c);
-        }
-        this.subList(settings.getPopulationSize(), k).clear();
+        if (populationSize < 0 || populationSize >= k)
+            return;
+        removeRange(populationSize, k);
     }
     
 //------------------------------------------------------------------------------
@@ -0,0 +1,361 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.ga;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import denoptim.fitness.FitnessParameters;
+import denoptim.logging.CounterID;
+import denoptim.logging.Monitor;
+import denoptim.programs.RunTimeParameters.ParametersType;
+import denoptim.programs.denovo.GAParameters;
+import denoptim.utils.SizeControlledSet;
+
+/**
+ * Steady-state parallelization scheme for the evolutionary algorithm.
+ * Offspring are processed by a pipeline of stages connected by bounded
+ * queues:
+ * <ol>
+ * <li>generation: the thread calling {@link #submit(OffspringEvaluationTask,
+ * String, Monitor)}, i.e., the main loop of the evolutionary algorithm,</li>
+ * <li>deduplication: a thread that discards candidates whose unique
+ * identifier has been seen before,</li>
+ * <li>evaluation: as many threads as the number of CPUs, which run the
+ * {@link OffspringEvaluationTask}s. Each task updates the population as
+ * soon as it completes.</li>
+ * </ol>
+ * <p>The number of offspring in the pipeline is limited, so that the
+ * generation stage blocks until any offspring leaves the pipeline, i.e.,
+ * the generation of new offspring is driven by the completion of previous
+ * ones, and evaluation threads never wait for slow siblings.</p>
+ */
+public class SteadyStatePipeline
+{
+    /**
+     * Offspring that have been generated but not yet deduplicated
+     */
+    private final ArrayBlockingQueue<Job> generated;
+
+    /**
+     * Unique offspring waiting for evaluation
+     */
+    private final ArrayBlockingQueue<Job> unique;
+
+    /**
+     * Permits to enter the pipeline
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * Max number of offspring in the pipeline
+     */
+    private final int maxInFlight;
+
+    /**
+     * Storage of unique identifiers
+     */
+    private final SizeControlledSet scs;
+
+    /**
+     * Flag requesting to discard candidates with known unique identifier
+     */
+    private final boolean checkUID;
+
+    /**
+     * Threads of all stages
+     */
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    /**
+     * Tasks being evaluated
+     */
+    private final Set<OffspringEvaluationTask> running =
+            ConcurrentHashMap.newKeySet();
+
+    /**
+     * The first problem encountered by any task
+     */
+    private final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+
+    /**
+     * Number of evaluation threads
+     */
+    private final int numEvaluators;
+
+    /**
+     * Flag signaling that the pipeline has been stopped
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Program-specific logger
+     */
+    private final Logger logger;
+
+    /**
+     * Marker of the end of the stream of offspring
+     */
+    private static final Job ENDOFSTREAM = new Job(null, null, null);
+
+//------------------------------------------------------------------------------
+
+    /**
+     * An offspring travelling through the pipeline.
+     */
+    private static class Job
+    {
+        final OffspringEvaluationTask task;
+        final String uid;
+        final Monitor mnt;
+
+        Job(OffspringEvaluationTask task, String uid, Monitor mnt)
+        {
+            this.task = task;
+            this.uid = uid;
+            this.mnt = mnt;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor. Starts the threads of the deduplication and evaluation
+     * stages.
+     * @param settings the settings of the evolutionary algorithm.
+     * @param scs the storage of unique identifiers used to detect duplicate
+     * offspring.
+     */
+    public SteadyStatePipeline(GAParameters settings, SizeControlledSet scs)
+    {
+        this.logger = settings.getLogger();
+        this.scs = scs;
+        this.checkUID = ((FitnessParameters) settings.getParameters(
+                ParametersType.FIT_PARAMS)).checkPreFitnessUID();
+        this.numEvaluators = Math.max(1, settings.getNumberOfCPU());
+        this.maxInFlight = 2 * numEvaluators;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.generated = new ArrayBlockingQueue<Job>(numEvaluators);
+        this.unique = new ArrayBlockingQueue<Job>(numEvaluators);
+
+        Thread dedup = new Thread(() -> runDeduplicationStage(),
+                "GA-deduplication");
+        threads.add(dedup);
+        for (int i=0; i<numEvaluators; i++)
+        {
+            threads.add(new Thread(() -> runEvaluationStage(),
+                    "GA-evaluation-" + i));
+        }
+        for (Thread t : threads)
+        {
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Puts an offspring into the pipeline. Blocks while the pipeline is full.
+     * @param task the task that will evaluate the offspring.
+     * @param uid the unique identifier of the offspring.
+     * @param mnt the monitor where to report events.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void submit(OffspringEvaluationTask task, String uid, Monitor mnt)
+            throws InterruptedException
+    {
+        if (stopped)
+            return;
+        inFlight.acquire();
+        if (stopped)
+        {
+            inFlight.release();
+            return;
+        }
+        generated.put(new Job(task, uid, mnt));
+    }
+
+//------------------------------------------------------------------------------
+
+    private void runDeduplicationStage()
+    {
+        try
+        {
+            while (!stopped)
+            {
+                Job job = generated.take();
+                if (job == ENDOFSTREAM)
+                {
+                    for (int i=0; i<numEvaluators; i++)
+                        unique.put(ENDOFSTREAM);
+                    return;
+                }
+                if (checkUID)
+                {
+                    boolean isNew = false;
+                    try
+                    {
+                        isNew = scs.addNewUniqueEntry(job.uid);
+                        if (!isNew)
+                            job.mnt.increase(CounterID.DUPLICATEPREFITNESS);
+                    } catch (Exception e)
+                    {
+                        job.mnt.increase(
+                                CounterID.FAILEDDUPLICATEPREFITNESSDETECTION);
+                    }
+                    if (!isNew)
+                    {
+                        inFlight.release();
+                        continue;
+                    }
+                }
+                unique.put(job);
+            }
+        } catch (InterruptedException e)
+        {
+            // The pipeline has been stopped
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private void runEvaluationStage()
+    {
+        try
+        {
+            // Stopping interrupts this thread, but the interruption may be
+            // consumed by the task being evaluated, so we check the flag.
+            while (!stopped)
+            {
+                Job job = unique.take();
+                if (job == ENDOFSTREAM)
+                    return;
+                running.add(job.task);
+                try
+                {
+                    if (!stopped)
+                        job.task.call();
+                } catch (Throwable t)
+                {
+                    if (!stopped)
+                    {
+                        failure.compareAndSet(null, t);
+                        logger.log(Level.SEVERE, "Problems in "
+                                + job.task.toString() + ". ErrorMessage: '"
+                                + job.task.getErrorMessage() + "'.");
+                    }
+                } finally {
+                    running.remove(job.task);
+                    inFlight.release();
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            // The pipeline has been stopped
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the first exception thrown by any evaluation, or
+     * <code>null</code>.
+     */
+    public Throwable getFailure()
+    {
+        return failure.get();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of offspring that have entered, but not yet left the
+     * pipeline.
+     */
+    public int getNumberInFlight()
+    {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Lets all offspring in the pipeline complete their evaluation, and then
+     * terminates all the threads.
+     */
+    public void shutdown()
+    {
+        if (stopped)
+            return;
+        try
+        {
+            generated.put(ENDOFSTREAM);
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException e)
+        {
+            stop();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Discards all offspring waiting in the pipeline, stops the running
+     * evaluations, and terminates all the threads.
+     */
+    public void stop()
+    {
+        stopped = true;
+        List<Job> discarded = new ArrayList<Job>();
+        generated.drainTo(discarded);
+        unique.drainTo(discarded);
+        for (Job job : discarded)
+        {
+            if (job != ENDOFSTREAM)
+                inFlight.release();
+        }
+        // Tasks that do not run external processes stop by interrupting the
+        // calling thread, but here we interrupt the evaluation threads
+        boolean wasInterrupted = Thread.currentThread().isInterrupted();
+        for (OffspringEvaluationTask task : running)
+        {
+            task.stopTask();
+        }
+        if (!wasInterrupted)
+            Thread.interrupted();
+        for (Thread t : threads)
+        {
+            t.interrupt();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
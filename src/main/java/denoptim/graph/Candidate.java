@@ -28,6 +28,7 @@ import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
 import denoptim.io.DenoptimIO;
+import denoptim.molecularmodeling.ThreeDimTreeBuilder;
 import denoptim.utils.MoleculeUtils;
 
 
@@ -104,6 +105,23 @@ public class Candidate implements Comparable<Candidate>, Cloneable
      */
     private int level;
 
+    /**
+     * Molecular model built from the graph of this candidate by
+     * {@link ThreeDimTreeBuilder}, which is kept to avoid building it again.
+     */
+    private IAtomContainer threeDimTree;
+
+    /**
+     * The graph from which {@link #threeDimTree} was built.
+     */
+    private DGraph graphOfThreeDimTree;
+
+    /**
+     * The invariant hash of {@link #graphOfThreeDimTree} when
+     * {@link #threeDimTree} was built.
+     */
+    private long hashOfThreeDimTreeGraph;
+
     
 //------------------------------------------------------------------------------
 
@@ -391,6 +409,69 @@ public class Candidate implements Comparable<Candidate>, Cloneable
         return iac;
     } 
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Keeps the molecular model built from the graph of this candidate so that
+     * it can be reused until the graph changes.
+     * @param mol the molecular model, or <code>null</code> to forget any
+     * previous model.
+     * @param graphHash the value of {@link DGraph#getInvariantHash()} of the
+     * graph of this candidate when the model was built.
+     */
+    public void setThreeDimTree(IAtomContainer mol, long graphHash)
+    {
+        this.threeDimTree = mol;
+        this.graphOfThreeDimTree = mol==null ? null : graph;
+        this.hashOfThreeDimTreeGraph = graphHash;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Forgets any molecular model kept by this candidate, for example, because
+     * the model has been altered.
+     */
+    public void clearThreeDimTree()
+    {
+        setThreeDimTree(null, 0);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if this candidate keeps a molecular model,
+     * irrespectively on whether such model is still consistent with the graph
+     * (see {@link #getThreeDimTree()}).
+     */
+    public boolean hasThreeDimTree()
+    {
+        return threeDimTree != null;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the molecular model built from the graph of this candidate, if
+     * such model is still consistent with the graph, i.e., if the graph has
+     * not been replaced or changed since the model was built.
+     * @return the model or <code>null</code> if no suitable model is
+     * available.
+     */
+    public IAtomContainer getThreeDimTree()
+    {
+        if (threeDimTree == null || graph == null
+                || graphOfThreeDimTree != graph)
+        {
+            return null;
+        }
+        if (graph.getInvariantHash() != hashOfThreeDimTreeGraph)
+        {
+            return null;
+        }
+        return threeDimTree;
+    }
+
 //------------------------------------------------------------------------------
 
     /**
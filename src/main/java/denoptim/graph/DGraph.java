@@ -24,6 +24,7 @@ import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -38,10 +39,14 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.jgrapht.Graph;
+import org.jgrapht.Graphs;
 import org.jgrapht.alg.isomorphism.VF2GraphIsomorphismInspector;
 import org.jgrapht.graph.DefaultUndirectedGraph;
 import org.openscience.cdk.graph.ConnectivityChecker;
@@ -77,7 +82,7 @@ import denoptim.graph.simplified.Node;
 import denoptim.graph.simplified.NodeConnection;
 import denoptim.graph.simplified.UndirectedEdge;
 import denoptim.io.DenoptimIO;
-import denoptim.json.DENOPTIMgson;
+import denoptim.json.CompactGraphCodec;
 import denoptim.json.DENOPTIMgson.DENOPTIMExclusionStrategyNoAPMap;
 import denoptim.molecularmodeling.ThreeDimTreeBuilder;
 import denoptim.programs.RunTimeParameters;
@@ -158,6 +163,25 @@ public class DGraph implements Cloneable
      */
     private DefaultUndirectedGraph<Node, NodeConnection> 
         jGraphKernel = null;
+    
+    /**
+     * Hash code that is invariant with respect to DENOPTIM-isomorphism, or 
+     * <code>null</code> if not yet computed.
+     */
+    private Long invariantHash = null;
+    
+    /**
+     * Index of vertexes, edges, and rings of this graph, or <code>null</code>
+     * if it needs to be rebuilt.
+     */
+    private GraphIndex index = null;
+    
+    /**
+     * Counter of the changes made by this graph to its lists of vertexes, 
+     * edges, and rings. Used to detect an index that does not reflect the 
+     * current content of this graph.
+     */
+    private int modCount = 0;
 
     /**
      * Identifier for the format of string representations of a graph
@@ -679,6 +703,8 @@ public class DGraph implements Cloneable
         gVertices = vertices;
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
     }
 
 //------------------------------------------------------------------------------
@@ -688,6 +714,8 @@ public class DGraph implements Cloneable
         gEdges = edges;
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
     }
 
 //------------------------------------------------------------------------------
@@ -697,6 +725,8 @@ public class DGraph implements Cloneable
         gRings = rings;
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
     }
 
 //------------------------------------------------------------------------------
@@ -772,6 +802,191 @@ public class DGraph implements Cloneable
         return gRings;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Index of the vertexes, edges, and rings of a graph. It allows to find 
+     * vertexes by ID, edges by source or target vertex, and rings by vertex 
+     * without scanning the lists of the graph. Lists of edges and rings 
+     * retain the order they have in the graph.
+     */
+    private static class GraphIndex
+    {
+        private final Map<Long,Vertex> vertexById = new HashMap<Long,Vertex>();
+        private final Map<Vertex,List<Edge>> edgesBySrc = 
+                new HashMap<Vertex,List<Edge>>();
+        private final Map<Vertex,List<Edge>> edgesByTrg = 
+                new HashMap<Vertex,List<Edge>>();
+        private final Map<Vertex,List<Ring>> ringsByVertex = 
+                new HashMap<Vertex,List<Ring>>();
+        
+        /**
+         * Value of the modification counter of the graph that is reflected
+         * by this index. Each change to the index corresponds to one change 
+         * of the graph.
+         */
+        private int modCount;
+        
+        /**
+         * Number of items indexed, used to detect changes that did not go 
+         * through the graph's methods.
+         */
+        private int numVertexes = 0;
+        private int numEdges = 0;
+        private int numRings = 0;
+        
+        GraphIndex(DGraph g)
+        {
+            for (Vertex v : g.gVertices)
+                addVertex(v);
+            for (Edge e : g.gEdges)
+                addEdge(e);
+            for (Ring r : g.gRings)
+                addRing(r);
+            modCount = g.modCount;
+        }
+        
+        boolean isInSyncWith(DGraph g)
+        {
+            return modCount == g.modCount
+                    && numVertexes == g.gVertices.size() 
+                    && numEdges == g.gEdges.size()
+                    && numRings == g.gRings.size();
+        }
+        
+        void addVertex(Vertex v)
+        {
+            // Consistently with the scan of the list, the first one wins
+            vertexById.putIfAbsent(v.getVertexId(), v);
+            numVertexes++;
+            modCount++;
+        }
+        
+        /**
+         * Removes a vertex that has already been removed from the list of 
+         * vertexes of the given graph.
+         */
+        void removeVertex(Vertex v, DGraph g)
+        {
+            long vid = v.getVertexId();
+            if (vertexById.get(vid) == v)
+            {
+                vertexById.remove(vid);
+                // Any other vertex with the same ID takes its place
+                for (Vertex other : g.gVertices)
+                {
+                    if (other.getVertexId() == vid)
+                    {
+                        vertexById.put(vid, other);
+                        break;
+                    }
+                }
+            }
+            numVertexes--;
+            modCount++;
+        }
+        
+        void addEdge(Edge e)
+        {
+            edgesBySrc.computeIfAbsent(e.getSrcAP().getOwner(), 
+                    k -> new ArrayList<Edge>()).add(e);
+            edgesByTrg.computeIfAbsent(e.getTrgAP().getOwner(), 
+                    k -> new ArrayList<Edge>()).add(e);
+            numEdges++;
+            modCount++;
+        }
+        
+        void removeEdge(Edge e)
+        {
+            removeFromBucket(edgesBySrc, e.getSrcAP().getOwner(), e);
+            removeFromBucket(edgesByTrg, e.getTrgAP().getOwner(), e);
+            numEdges--;
+            modCount++;
+        }
+        
+        void addRing(Ring r)
+        {
+            for (int i=0; i<r.getSize(); i++)
+            {
+                List<Ring> rings = ringsByVertex.computeIfAbsent(
+                        r.getVertexAtPosition(i), k -> new ArrayList<Ring>());
+                if (!rings.contains(r))
+                    rings.add(r);
+            }
+            numRings++;
+            modCount++;
+        }
+        
+        void removeRing(Ring r)
+        {
+            for (int i=0; i<r.getSize(); i++)
+            {
+                removeFromBucket(ringsByVertex, r.getVertexAtPosition(i), r);
+            }
+            numRings--;
+            modCount++;
+        }
+        
+        private static <T> void removeFromBucket(Map<Vertex,List<T>> map, 
+                Vertex key, T item)
+        {
+            List<T> bucket = map.get(key);
+            if (bucket != null)
+            {
+                bucket.remove(item);
+                if (bucket.isEmpty())
+                    map.remove(key);
+            }
+        }
+        
+        Vertex getVertexWithId(long vid)
+        {
+            return vertexById.get(vid);
+        }
+        
+        List<Edge> getEdgesWithSrc(Vertex v)
+        {
+            return edgesBySrc.getOrDefault(v, Collections.emptyList());
+        }
+        
+        List<Edge> getEdgesWithTrg(Vertex v)
+        {
+            return edgesByTrg.getOrDefault(v, Collections.emptyList());
+        }
+        
+        List<Ring> getRingsInvolvingVertex(Vertex v)
+        {
+            return ringsByVertex.getOrDefault(v, Collections.emptyList());
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Gets the index of vertexes, edges, and rings, and (re)builds it, if 
+     * needed.
+     */
+    private GraphIndex getIndex()
+    {
+        if (index == null || !index.isInSyncWith(this))
+        {
+            index = new GraphIndex(this);
+        }
+        return index;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Forces the index of vertexes, edges, and rings of this graph to be 
+     * rebuilt when needed. To be used when any of the indexed properties, 
+     * e.g., the vertex ID, changes without the graph knowing it.
+     */
+    void resetIndex()
+    {
+        index = null;
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
@@ -782,15 +997,16 @@ public class DGraph implements Cloneable
      */
     public List<Edge> getEdgesWithSrc(Vertex v)
     {
-    	List<Edge> edges = new ArrayList<Edge>();
-    	for (Edge e : this.getEdgeList())
-    	{
-    		if (e.getSrcAP().getOwner() == v)
-    		{
-    			edges.add(e);
-    		}
-    	}
-    	return edges;
+        List<Edge> edges = new ArrayList<Edge>();
+        for (Edge e : getIndex().getEdgesWithSrc(v))
+        {
+            // NB: the owner of an AP can change after indexing
+            if (e.getSrcAP().getOwner() == v)
+            {
+                edges.add(e);
+            }
+        }
+        return edges;
     }
     
 //------------------------------------------------------------------------------
@@ -804,8 +1020,9 @@ public class DGraph implements Cloneable
     public List<Edge> getEdgesWithTrg(Vertex v)
     {
         List<Edge> edges = new ArrayList<Edge>();
-        for (Edge e : this.getEdgeList())
+        for (Edge e : getIndex().getEdgesWithTrg(v))
         {
+            // NB: the owner of an AP can change after indexing
             if (e.getTrgAP().getOwner() == v)
             {
                 edges.add(e);
@@ -825,8 +1042,9 @@ public class DGraph implements Cloneable
     public ArrayList<Ring> getRingsInvolvingVertex(Vertex v)
     {
         ArrayList<Ring> rings = new ArrayList<Ring>();
-        for (Ring r : gRings)
+        for (Ring r : getIndex().getRingsInvolvingVertex(v))
         {
+            // NB: vertexes can be removed from rings after indexing
             if (r.contains(v))
             {
                 rings.add(r);
@@ -1020,8 +1238,12 @@ public class DGraph implements Cloneable
     public void addEdge(Edge edge)
     {
         gEdges.add(edge);
+        modCount++;
+        if (index != null)
+            index.addEdge(edge);
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
 
 //------------------------------------------------------------------------------
@@ -1029,8 +1251,12 @@ public class DGraph implements Cloneable
     public void addRing(Ring ring)
     {
         gRings.add(ring);
+        modCount++;
+        if (index != null)
+            index.addRing(ring);
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
     
 //------------------------------------------------------------------------------
@@ -1060,6 +1286,7 @@ public class DGraph implements Cloneable
         addRing(vI,vJ,bndTypI);
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
     
 //------------------------------------------------------------------------------
@@ -1081,6 +1308,7 @@ public class DGraph implements Cloneable
         this.addRing(ring);
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
 
 //------------------------------------------------------------------------------
@@ -1102,8 +1330,12 @@ public class DGraph implements Cloneable
                     + getGraphId());
         vertex.setGraphOwner(this);
         gVertices.add(vertex);
+        modCount++;
+        if (index != null)
+            index.addVertex(vertex);
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
 
 //------------------------------------------------------------------------------
@@ -1175,9 +1407,13 @@ public class DGraph implements Cloneable
 
         // remove the vertex from the graph
         gVertices.remove(vertex);
+        modCount++;
+        if (index != null)
+            index.removeVertex(vertex, this);
         
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
     
 //------------------------------------------------------------------------------
@@ -1442,6 +1678,9 @@ public class DGraph implements Cloneable
         
         // Remove the vertex
         getVertexList().remove(vertex);
+        modCount++;
+        if (index != null)
+            index.removeVertex(vertex, this);
         vertex.resetGraphOwner();
         
         // Add new edges (within the graph owning the removed vertex) 
@@ -1509,6 +1748,8 @@ public class DGraph implements Cloneable
 
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
         
         return !this.containsVertex(vertex);
     }
@@ -2195,6 +2436,7 @@ public class DGraph implements Cloneable
             {
                 r.insertVertex(initialInsertPoint+i, verticesInPath.get(i));
             }
+            index = null;
         }
         
         // update the mapping of this vertices' APs in the jacket template
@@ -2226,6 +2468,8 @@ public class DGraph implements Cloneable
         
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
         
         for (Vertex vOld : subGrpVrtxs)
             if (this.containsVertex(vOld))
@@ -2480,6 +2724,7 @@ public class DGraph implements Cloneable
             {
                 r.insertVertex(newLink,srcVrtx,trgVrtx);
             }
+            index = null;
         }
     
         // NB: if this graph is embedded in a template, new free/available 
@@ -2498,6 +2743,8 @@ public class DGraph implements Cloneable
         
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
         
         return !gEdges.contains(edge) && this.containsVertex(newLink);
     }
@@ -2580,11 +2827,7 @@ public class DGraph implements Cloneable
      */
     public Vertex getVertexWithId(long vid)
     {
-        Vertex v = null;
-        int idx = indexOfVertexWithID(vid);
-        if (idx != -1)
-            v = gVertices.get(idx);
-        return v;
+        return getIndex().getVertexWithId(vid);
     }
 
 //------------------------------------------------------------------------------
@@ -2626,9 +2869,13 @@ public class DGraph implements Cloneable
             trgAP.setUser(null);
 
             gEdges.remove(edge);
+            modCount++;
+            if (index != null)
+                index.removeEdge(edge);
         }
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
 
 //------------------------------------------------------------------------------
@@ -2638,9 +2885,13 @@ public class DGraph implements Cloneable
         if (gRings.contains(ring))
         {
             gRings.remove(ring);
+            modCount++;
+            if (index != null)
+                index.removeRing(ring);
         }
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
     }
 
 //------------------------------------------------------------------------------
@@ -3347,16 +3598,7 @@ public class DGraph implements Cloneable
      */
     public boolean containsVertexID(long l)
     {
-        boolean result = false;
-        for (Vertex v : gVertices) 
-        {
-            if (l == v.getVertexId())
-            {
-                result = true;
-                break;
-            }
-        }
-        return result;
+        return getIndex().getVertexWithId(l) != null;
     }
 
 //------------------------------------------------------------------------------
@@ -3388,6 +3630,8 @@ public class DGraph implements Cloneable
         }
         jGraph = null;
         jGraphKernel = null;
+        invariantHash = null;
+        index = null;
     }
     
 //------------------------------------------------------------------------------
@@ -3446,6 +3690,9 @@ public class DGraph implements Cloneable
      * graph with symmetric branches and its isomorphic analog that is fully
      * asymmetric.</p>
      * 
+     * <p>Pairs of graphs with different {@link #getInvariantHash()} are
+     * recognized as non-isomorphic without running VF2.</p>
+     * 
      * @param other the graph to be compared with this.
      * @return <code>true</code> is this graph is isomorphic to the other.
      */
@@ -3459,6 +3706,11 @@ public class DGraph implements Cloneable
             other.jGraph = GraphConversionTool.getJGraphFromGraph(other);
         }
         
+        if (this.getInvariantHash() != other.getInvariantHash())
+        {
+            return false;
+        }
+        
         // Simple but slow because it ignores symmetry
         /*
         Comparator<DENOPTIMVertex> vComp = (v1, v2) -> {
@@ -3559,6 +3811,148 @@ public class DGraph implements Cloneable
         return vf2.isomorphismExists();
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns a hash code that is equal for any pair of graphs that are 
+     * isomorphic according to {@link #isIsomorphicTo(DGraph)}. Graphs with
+     * different hash codes are not isomorphic, while graphs with equal hash 
+     * codes may or may not be isomorphic. Therefore, this hash code can be 
+     * used to avoid most of the expensive isomorphism checks, for instance, by
+     * grouping graphs according to this hash code and comparing only graphs
+     * in the same group.
+     * <p>The hash code results from a Weisfeiler-Lehman-like refinement of 
+     * vertex labels that initially depend only on the type and identifier of 
+     * the building block, and get refined according to the labels of the 
+     * neighbors and the identity of the attachment points used by each 
+     * edge.</p>
+     * <p>The hash code is cached and recalculated only after changes of the 
+     * list of vertexes, edges, or rings of this graph.</p>
+     * @return the isomorphism-invariant hash code.
+     */
+    public long getInvariantHash()
+    {
+        if (invariantHash == null)
+        {
+            if (jGraph == null)
+            {
+                jGraph = GraphConversionTool.getJGraphFromGraph(this);
+            }
+            invariantHash = computeInvariantHash(jGraph,
+                    v -> mixHash(v.getBuildingBlockType().toOldInt(), 
+                            v.getBuildingBlockId()),
+                    e -> e.getInvariantHash());
+        }
+        return invariantHash;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Computes a hash code that does not depend on the order of nodes and 
+     * edges in a graph. See {@link #getInvariantHash()}.
+     * @param <V> the type of nodes.
+     * @param <E> the type of edges.
+     * @param g the graph.
+     * @param nodeLabel provides the initial label of each node.
+     * @param edgeLabel provides the label of each edge.
+     * @return the hash code.
+     */
+    static <V,E> long computeInvariantHash(Graph<V,E> g,
+            ToLongFunction<V> nodeLabel, ToIntFunction<E> edgeLabel)
+    {
+        List<V> vertices = new ArrayList<V>(g.vertexSet());
+        int n = vertices.size();
+        Map<V,Integer> positions = new HashMap<V,Integer>();
+        long[] labels = new long[n];
+        for (int i=0; i<n; i++)
+        {
+            V v = vertices.get(i);
+            positions.put(v, i);
+            labels[i] = nodeLabel.applyAsLong(v);
+        }
+        
+        int[][] neighbors = new int[n][];
+        int[][] edgeLabels = new int[n][];
+        for (int i=0; i<n; i++)
+        {
+            V v = vertices.get(i);
+            Set<E> edges = g.edgesOf(v);
+            neighbors[i] = new int[edges.size()];
+            edgeLabels[i] = new int[edges.size()];
+            int k = 0;
+            for (E e : edges)
+            {
+                neighbors[i][k] = positions.get(
+                        Graphs.getOppositeVertex(g, e, v));
+                edgeLabels[i][k] = edgeLabel.applyAsInt(e);
+                k++;
+            }
+        }
+        
+        // Refine labels until the partition of vertexes is stable
+        int numClasses = countDistinct(labels);
+        for (int round=0; round<n; round++)
+        {
+            long[] newLabels = new long[n];
+            for (int i=0; i<n; i++)
+            {
+                long[] messages = new long[neighbors[i].length];
+                for (int k=0; k<messages.length; k++)
+                {
+                    messages[k] = mixHash(edgeLabels[i][k], 
+                            labels[neighbors[i][k]]);
+                }
+                Arrays.sort(messages);
+                long label = labels[i];
+                for (long m : messages)
+                {
+                    label = mixHash(label, m);
+                }
+                newLabels[i] = label;
+            }
+            labels = newLabels;
+            int newNumClasses = countDistinct(labels);
+            if (newNumClasses == numClasses)
+                break;
+            numClasses = newNumClasses;
+        }
+        
+        Arrays.sort(labels);
+        long hash = mixHash(n, g.edgeSet().size());
+        for (long label : labels)
+        {
+            hash = mixHash(hash, label);
+        }
+        return hash;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    private static int countDistinct(long[] values)
+    {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i=0; i<sorted.length; i++)
+        {
+            if (i==0 || sorted[i]!=sorted[i-1])
+                count++;
+        }
+        return count;
+    }
+    
+//------------------------------------------------------------------------------
+    
+    static long mixHash(long hash, long value)
+    {
+        long x = hash * 0x9E3779B97F4A7C15L + value;
+        x ^= x >>> 32;
+        x *= 0xD6E8FEB86659FD93L;
+        x ^= x >>> 32;
+        return x;
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
@@ -5320,8 +5714,10 @@ public class DGraph implements Cloneable
      * are not consistent with the actual arrangement of fragments.
      * @param settings the collection of settings defining the criteria with
      * which we evaluate the graph.
-     * @return an object array containing the InChI key, the SMILES string
-     *         and the 2D representation of the molecule.
+     * @return an object array containing the InChI key, the SMILES string,
+     *         the 2D representation of the molecule, and the
+     *         {@link #getInvariantHash()} of this graph when such 
+     *         representation was built.
      *         <code>null</code> is returned if any check or conversion fails.
      * @throws DENOPTIMException
      */
@@ -5351,8 +5747,10 @@ public class DGraph implements Cloneable
      * graphs from the user, thus assuming the user does intend to by-pass some
      * filters when inspecting a 
      * graph that might not be possible to generate from the given settings, 
-     * @return an object array containing the InChI key, the SMILES string
-     *         and the 2D representation of the molecule.
+     * @return an object array containing the InChI key, the SMILES string,
+     *         the 2D representation of the molecule, and the
+     *         {@link #getInvariantHash()} of this graph when such 
+     *         representation was built.
      *         <code>null</code> is returned if any check or conversion fails.
      * @throws DENOPTIMException
      */
@@ -5545,10 +5943,11 @@ public class DGraph implements Cloneable
             inchiKey = "UNDEFINED_INCHI";
         }
 
-        Object[] res = new Object[3];
+        Object[] res = new Object[4];
         res[0] = inchiKey; 
         res[1] = smiles; 
         res[2] = mol;
+        res[3] = getInvariantHash();
 
         return res;
     }
@@ -5589,11 +5988,16 @@ public class DGraph implements Cloneable
         if (!evaluateRings)
             return lstGraphs;
 
-        // get a atoms/bonds molecular representation (no 3D needed)
+        // get a atoms/bonds molecular representation (no 3D needed). This is 
+        // built from a clone, because building it makes the vertices get 
+        // their own atoms, i.e., stop sharing those of the building blocks 
+        // in the libraries (see Fragment#copyOnWriteClone()), and the graphs
+        // generated below are clones of this graph.
         ThreeDimTreeBuilder t3d = new ThreeDimTreeBuilder(settings.getLogger(),
                 settings.getRandomizer());
         t3d.setAlignBBsIn3D(false);
-        IAtomContainer mol = t3d.convertGraphTo3DAtomContainer(this,false);
+        IAtomContainer mol = t3d.convertGraphTo3DAtomContainer(this.clone(),
+                false);
 
         // Set rotatable property as property of IBond
         RotationalSpaceUtils.defineRotatableBonds(mol,
@@ -6629,15 +7033,72 @@ public class DGraph implements Cloneable
 
     /**
      * Produces a string that represents this graph and that adheres to the
-     * JSON format.
+     * JSON format. The string contains no whitespace and all vertices are
+     * written in full. See {@link CompactGraphCodec}.
      * @return the JSON format as a single string
      */
 
     public String toJson()
     {
-        Gson gson = DENOPTIMgson.getWriter();
-        String jsonOutput = gson.toJson(this);
-        return jsonOutput;
+        return toJson(null);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Produces a string that represents this graph and that adheres to the
+     * JSON format. The string contains no whitespace. Vertices that are 
+     * unaltered copies of building blocks in the libraries of the given
+     * fragment space are written as references to those building blocks. 
+     * Therefore, the same fragment space is needed to read the string with
+     * {@link #fromJson(String, FragmentSpace)}.
+     * See {@link CompactGraphCodec}.
+     * @param fragSpace the fragment space with the libraries of building 
+     * blocks, or <code>null</code> to write all vertices in full.
+     * @return the JSON format as a single string
+     */
+
+    public String toJson(FragmentSpace fragSpace)
+    {
+        ensureUniqueIDsForSerialization();
+        return CompactGraphCodec.toJson(this, fragSpace);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Regenerates the identifiers of vertices and attachment points if they
+     * are not unique, as serialized graphs use them to define references.
+     */
+    private void ensureUniqueIDsForSerialization()
+    {
+        boolean regenerateVrtxID = false;
+        boolean regenerateAP = false;
+        Set<Long> unqVrtxIDs = new HashSet<Long>();
+        Set<Integer> unqApIDs = new HashSet<Integer>();
+        for (Vertex v : getVertexList())
+        {
+            if (!unqVrtxIDs.add(v.getVertexId()))
+            {
+                regenerateVrtxID = true;
+            }
+            for (AttachmentPoint ap : v.getAttachmentPoints())
+            {
+                if (!unqApIDs.add(ap.getID()))
+                {
+                    regenerateAP = true;
+                    break;
+                }
+            }
+        }
+        if (regenerateVrtxID)
+        {
+            renumberGraphVertices();
+        }
+        if (regenerateAP)
+        {
+            ensureUniqueApIDs();
+        }
     }
     
 //------------------------------------------------------------------------------
@@ -6660,9 +7121,25 @@ public class DGraph implements Cloneable
 
     public static DGraph fromJson(String json)
     {
-        Gson gson = DENOPTIMgson.getReader();
-        DGraph graph = gson.fromJson(json, DGraph.class);
-        return graph;
+        return fromJson(json, null);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a JSON string, which may contain references to the building 
+     * blocks of the given fragment space, and returns an instance of this 
+     * class.
+     * @param json the string to parse.
+     * @param fragSpace the fragment space used to write the string, or 
+     * <code>null</code> if the string does not contain references to 
+     * building blocks.
+     * @return a new instance of this class.
+     */
+
+    public static DGraph fromJson(String json, FragmentSpace fragSpace)
+    {
+        return CompactGraphCodec.fromJson(json, fragSpace);
     }
 
 //------------------------------------------------------------------------------
@@ -6675,9 +7152,25 @@ public class DGraph implements Cloneable
 
     public static DGraph fromJson(Reader reader)
     {
-        Gson gson = DENOPTIMgson.getReader();
-        DGraph graph = gson.fromJson(reader, DGraph.class);
-        return graph;
+        return fromJson(reader, null);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a JSON string, which may contain references to the building 
+     * blocks of the given fragment space, and returns an instance of this 
+     * class.
+     * @param reader the source of the string to parse.
+     * @param fragSpace the fragment space used to write the string, or 
+     * <code>null</code> if the string does not contain references to 
+     * building blocks.
+     * @return a new instance of this class.
+     */
+
+    public static DGraph fromJson(Reader reader, FragmentSpace fragSpace)
+    {
+        return CompactGraphCodec.read(reader, fragSpace);
     }
 
 //------------------------------------------------------------------------------
@@ -6692,33 +7185,7 @@ public class DGraph implements Cloneable
         public JsonElement serialize(DGraph g, Type typeOfSrc,
                 JsonSerializationContext context) 
         {
-            boolean regenerateVrtxID = false;
-            boolean regenerateAP = false;
-            Set<Long> unqVrtxIDs = new HashSet<Long>();
-            Set<Integer> unqApIDs = new HashSet<Integer>();
-            for (Vertex v : g.getVertexList())
-            {
-                if (!unqVrtxIDs.add(v.getVertexId()))
-                {
-                    regenerateVrtxID = true;
-                }
-                for (AttachmentPoint ap : v.getAttachmentPoints())
-                {
-                    if (!unqApIDs.add(ap.getID()))
-                    {
-                        regenerateAP = true;
-                        break;
-                    }
-                }
-            }
-            if (regenerateVrtxID)
-            {
-                g.renumberGraphVertices();
-            }
-            if (regenerateAP)
-            {
-                g.ensureUniqueApIDs();
-            }
+            g.ensureUniqueIDsForSerialization();
             
             JsonObject jsonObject = new JsonObject();
             jsonObject.addProperty("graphId", g.graphId);
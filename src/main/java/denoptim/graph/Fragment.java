@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -74,6 +75,20 @@ public class Fragment extends Vertex
 	 */
 	private IAtomContainer mol;
 	
+	/**
+	 * Flag signaling that the molecular representation is shared with other
+	 * fragments, and must be copied before any change or any exposure of
+	 * atoms and bonds. See {@link #copyOnWriteClone()}.
+	 */
+	private boolean molIsShared = false;
+	
+	/**
+	 * Copy of the molecular representation that is given to the copies
+	 * made by {@link #copyOnWriteClone()}. This copy is never changed, and
+	 * is discarded whenever atoms or bonds of this fragment may change.
+	 */
+	private volatile IAtomContainer sharableMol;
+	
 	/**
 	 * jGraph representation used for detecting fragment isomorphism.
 	 */
@@ -195,7 +210,7 @@ public class Fragment extends Vertex
     {
         double maxDist = 0.0;
         Point3d origin = new Point3d(0,0,0);
-        for (IAtom atm : atoms())
+        for (IAtom atm : mol.atoms())
         {
             Point3d p = atm.getPoint3d();
             if (p==null)
@@ -368,6 +383,7 @@ public class Fragment extends Vertex
     public AttachmentPoint addAP(int atomPositionNumber, Point3d dirVec, 
             APClass apClass) 
     {
+        ensureMoleculeIsPrivate();
         AttachmentPoint ap = new AttachmentPoint(this,
                 atomPositionNumber, dirVec, apClass);
         getAttachmentPoints().add(ap);
@@ -404,6 +420,7 @@ public class Fragment extends Vertex
     public void addAP(int srcAtmId, APClass apc, Point3d vector) 
             throws DENOPTIMException
     {
+        ensureMoleculeIsPrivate();
         IAtom srcAtm = mol.getAtom(srcAtmId);
         addAPOnAtom(srcAtm, apc, vector);
     }
@@ -426,6 +443,7 @@ public class Fragment extends Vertex
     public AttachmentPoint addAPOnAtom(IAtom srcAtm, APClass apc, 
             Point3d vector) throws DENOPTIMException
     {
+        ensureMoleculeIsPrivate();
         int atmId = mol.indexOf(srcAtm);
         return this.addAP(atmId, new Point3d(vector.x, vector.y, vector.z), apc);
     }
@@ -434,6 +452,7 @@ public class Fragment extends Vertex
     
     public void removeAP(AttachmentPoint ap)
     {
+        ensureMoleculeIsPrivate();
         if (!getAttachmentPoints().contains(ap))
             return;
         
@@ -476,6 +495,7 @@ public class Fragment extends Vertex
     
     public int getAPCountOnAtom(int srcAtmId)
     {
+        ensureMoleculeIsPrivate();
         IAtom srcAtm = mol.getAtom(srcAtmId);
         return getAPCountOnAtom(srcAtm);
     }
@@ -512,6 +532,7 @@ public class Fragment extends Vertex
     
     public void updateAPs()
     {
+        ensureMoleculeIsPrivate();
         for (int atmId = 0; atmId<mol.getAtomCount(); atmId++)
         {
             IAtom srcAtm = mol.getAtom(atmId);
@@ -595,6 +616,7 @@ public class Fragment extends Vertex
     
     public void projectPropertyToAP(String allAtomsProp) throws DENOPTIMException
     {
+        ensureMoleculeIsPrivate();
         lstAPs.clear();
     	if (allAtomsProp.trim().equals(""))
     	{
@@ -660,6 +682,7 @@ public class Fragment extends Vertex
      */
     public void projectListAPToAtomProperties()
     {
+        ensureMoleculeIsPrivate();
         // Write attachment points in the atoms
         for (int i = 0; i < lstAPs.size(); i++)
         {
@@ -694,6 +717,7 @@ public class Fragment extends Vertex
      */
     public void projectAPsToProperties()
     {
+        ensureMoleculeIsPrivate();
         
         // Prepare the string-representation of unused APs on this graph
         LinkedHashMap<Integer,List<AttachmentPoint>> apsPerAtom =
@@ -728,22 +752,182 @@ public class Fragment extends Vertex
 //-----------------------------------------------------------------------------
 
     /**
-     * Returns a deep copy of this fragments.
+     * Returns a deep copy of this fragments. If the molecular representation
+     * of this fragment is shared (see {@link #copyOnWriteClone()}), the clone
+     * shares it too.
      */
     
     @Override
     public Fragment clone()
     {   
-    	Fragment clone = new Fragment();
-    	clone.setVertexId(this.getVertexId());
+        if (molIsShared)
+        {
+            return makeClone(mol, true);
+        }
+        IAtomContainer cMol = null;
     	try
         {
-            clone.mol = MoleculeUtils.makeSameAs(mol);
+            cMol = MoleculeUtils.makeSameAs(mol);
         } catch (DENOPTIMException e1)
         {
             // TODO Auto-generated catch block
             e1.printStackTrace();
         }
+    	return makeClone(cMol, false);
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of this fragment that shares with this fragment the 
+     * molecular representation, i.e., atoms and bonds, until the copy needs 
+     * to change or expose its atoms or bonds. Only then, the copy makes its 
+     * own molecular representation. Copies of the returned fragment also 
+     * share the same molecular representation. 
+     * This is meant for building blocks that are
+     * taken from a library, and that are mostly used without any change of 
+     * the atoms and bonds. Changes of this fragment do not affect the
+     * copies, unless they are made by altering atoms or bonds that were 
+     * obtained from this fragment before making the copy.
+     * @return the copy of this fragment.
+     */
+    public Fragment copyOnWriteClone()
+    {
+        if (molIsShared)
+        {
+            return makeClone(mol, true);
+        }
+        IAtomContainer sharedMol = sharableMol;
+        if (sharedMol == null)
+        {
+            try
+            {
+                sharedMol = MoleculeUtils.makeSameAs(mol);
+            } catch (DENOPTIMException e)
+            {
+                return clone();
+            }
+            sharableMol = sharedMol;
+        }
+        return makeClone(sharedMol, true);
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the molecular representation of this 
+     * fragment is shared with other fragments.
+     */
+    public boolean isMoleculeShared()
+    {
+        return molIsShared;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if this fragment can be reproduced by taking a
+     * {@link #copyOnWriteClone()} of the given fragment and then setting
+     * only identifiers of vertex and attachment points, vertex properties,
+     * and the positions of the attachment points' atoms in the molecular
+     * representation of a graph. Those data are not compared by this method.
+     * @param original the fragment this one might be a copy of, typically a
+     * building block in a library.
+     * @return <code>true</code> if this fragment still shares the molecular
+     * representation of the given fragment and has not been altered in any
+     * of the data that is defined in the given fragment.
+     */
+    public boolean isUnalteredCopyOf(Fragment original)
+    {
+        if (!molIsShared || mol == null
+                || (mol != original.sharableMol
+                    && !(original.molIsShared && mol == original.mol)))
+            return false;
+
+        if (getBuildingBlockId() != original.getBuildingBlockId()
+                || getBuildingBlockType() != original.getBuildingBlockType()
+                || isRCV() != original.isRCV()
+                || lstAPs.size() != original.lstAPs.size()
+                || lstSymAPs.size() != original.lstSymAPs.size()
+                || !Objects.equals(getUnfilteredMutationTypes(),
+                        original.getUnfilteredMutationTypes())
+                || !Objects.equals(uniquefyingPropertyKeys,
+                        original.uniquefyingPropertyKeys))
+            return false;
+
+        for (int i=0; i<lstAPs.size(); i++)
+        {
+            AttachmentPoint ap = lstAPs.get(i);
+            AttachmentPoint oAp = original.lstAPs.get(i);
+            if (ap.getAtomPositionNumber() != oAp.getAtomPositionNumber()
+                    || !Objects.equals(ap.getAPClass(), oAp.getAPClass())
+                    || !Objects.equals(ap.getDirectionVector(),
+                            oAp.getDirectionVector())
+                    || (ap.getProperties() != null
+                        && !ap.getProperties().isEmpty()))
+                return false;
+        }
+
+        for (int i=0; i<lstSymAPs.size(); i++)
+        {
+            SymmetricAPs symAPs = lstSymAPs.get(i);
+            SymmetricAPs oSymAPs = original.lstSymAPs.get(i);
+            if (symAPs.size() != oSymAPs.size())
+                return false;
+            for (int j=0; j<symAPs.size(); j++)
+            {
+                if (symAPs.get(j).getIndexInOwner()
+                        != oSymAPs.get(j).getIndexInOwner())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Makes sure this fragment has its own molecular representation, which
+     * may then be changed or exposed without affecting other fragments. 
+     * Also discards any copy of the molecular representation that is shared 
+     * with copies of this fragment, because it could become outdated.
+     */
+    private void ensureMoleculeIsPrivate()
+    {
+        sharableMol = null;
+        if (!molIsShared)
+            return;
+        try
+        {
+            mol = MoleculeUtils.makeSameAs(mol);
+        } catch (DENOPTIMException e)
+        {
+            // Cannot happen: the shared molecule was made by the same method
+            throw new IllegalStateException(e);
+        }
+        molIsShared = false;
+        projectListAPToAtomProperties();
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Makes a copy of this fragment using the given molecular representation.
+     * @param cMol the molecular representation of the copy, or 
+     * <code>null</code> to make a copy without atoms.
+     * @param shared use <code>true</code> if the molecular representation is
+     * shared with other fragments.
+     * @return the copy.
+     */
+    private Fragment makeClone(IAtomContainer cMol, boolean shared)
+    {
+    	Fragment clone = new Fragment();
+    	clone.setVertexId(this.getVertexId());
+    	if (cMol != null)
+    	{
+    	    clone.mol = cMol;
+    	    clone.molIsShared = shared;
+    	}
     	
     	// WARNING: here we are not recovering all info from APs: we take only
     	// some info. This can be improved...
@@ -758,7 +942,10 @@ public class Fragment extends Vertex
             clone.lstAPs.add(cAp);
         }
         
-        clone.projectListAPToAtomProperties();
+        // For shared molecules, this is done only when making the molecule
+        // private
+        if (!clone.molIsShared)
+            clone.projectListAPToAtomProperties();
         
 		clone.setBuildingBlockId(this.getBuildingBlockId());
 		clone.setBuildingBlockType(this.getBuildingBlockType());
@@ -789,6 +976,7 @@ public class Fragment extends Vertex
     @Override
     public IAtomContainer getIAtomContainer()
     {
+        ensureMoleculeIsPrivate();
         this.projectAPsToProperties();
         for (int atmPos=0; atmPos<mol.getAtomCount(); atmPos++)
         {
@@ -823,6 +1011,7 @@ public class Fragment extends Vertex
 
     public Iterable<IAtom> atoms()
     {
+        ensureMoleculeIsPrivate();
         return mol.atoms();
     }
     
@@ -830,6 +1019,7 @@ public class Fragment extends Vertex
 
     public Iterable<IBond> bonds()
     {
+        ensureMoleculeIsPrivate();
         return mol.bonds();
     }
 
@@ -837,6 +1027,7 @@ public class Fragment extends Vertex
 
     public void addAtom(IAtom atom)
     {
+        ensureMoleculeIsPrivate();
         mol.addAtom(atom);
     }   
     
@@ -844,6 +1035,7 @@ public class Fragment extends Vertex
 
     public IAtom getAtom(int number)
     {
+        ensureMoleculeIsPrivate();
         return mol.getAtom(number);
     }
 
@@ -872,6 +1064,7 @@ public class Fragment extends Vertex
 
     public void addBond(IBond bond)
     {
+        ensureMoleculeIsPrivate();
         mol.addBond(bond);
     }
     
@@ -879,6 +1072,7 @@ public class Fragment extends Vertex
     
     public IBond removeBond(int position)
     {
+        ensureMoleculeIsPrivate();
         return mol.removeBond(position);
     }
 
@@ -886,6 +1080,7 @@ public class Fragment extends Vertex
    
     public IBond removeBond(IAtom atom1, IAtom atom2)
     {
+        ensureMoleculeIsPrivate();
        return mol.removeBond(atom1, atom2);
     }
     
@@ -893,6 +1088,7 @@ public class Fragment extends Vertex
     
     public void removeBond(IBond bond)
     {
+        ensureMoleculeIsPrivate();
         mol.removeBond(bond);
     }
     
@@ -914,6 +1110,7 @@ public class Fragment extends Vertex
      */
     public void removeAtoms(Collection<IAtom> atoms)
     {
+        ensureMoleculeIsPrivate();
         for (IAtom atom : atoms)
             mol.removeAtom(atom);
         
@@ -944,6 +1141,7 @@ public class Fragment extends Vertex
     
     public List<IAtom> getConnectedAtomsList(IAtom atom)
     {
+        ensureMoleculeIsPrivate();
         return mol.getConnectedAtomsList(atom);
     }
     
@@ -1090,6 +1288,25 @@ public class Fragment extends Vertex
         return fii.isomorphismExists();
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Computes a hash code that is invariant with respect to the isomorphism
+     * considered by {@link #isIsomorphicTo(Vertex)}, i.e., isomorphic 
+     * fragments have the same hash code. The hash code depends on the 
+     * elemental symbols, the {@link APClass}es, and on the connectivity of
+     * the graph returned by {@link #getJGraphFragIsomorphism()}. 
+     * Fragments with different hash codes are not isomorphic, so the hash 
+     * code can be used to avoid most isomorphism checks.
+     * @return the isomorphism-invariant hash code.
+     */
+    public long getIsomorphismInvariantHash()
+    {
+        return DGraph.computeInvariantHash(getJGraphFragIsomorphism(),
+                node -> node.label.hashCode(),
+                edge -> edge.label.hashCode());
+    }
+    
 //------------------------------------------------------------------------------
 
     public int getHeavyAtomsCount()
@@ -1235,6 +1452,7 @@ public class Fragment extends Vertex
      */
     public IAtom getAtomHoldingAP(AttachmentPoint ap)
     {
+        ensureMoleculeIsPrivate();
         if (ap.getOwner() != this)
             return null;
        
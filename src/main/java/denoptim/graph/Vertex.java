@@ -260,6 +260,8 @@ public abstract class Vertex implements Cloneable
     public void setVertexId(long vertexId2)
     {
         this.vertexId = vertexId2;
+        if (owner != null)
+            owner.resetIndex();
     }
 
 //------------------------------------------------------------------------------
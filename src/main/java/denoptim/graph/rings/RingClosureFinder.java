@@ -105,7 +105,8 @@ public class RingClosureFinder
         RingClosure rc = new RingClosure(path.get(h1).getPoint3d(),
                                          path.get(h2).getPoint3d(),
                                          path.get(t1).getPoint3d(),
-                                         path.get(t2).getPoint3d());
+                                         path.get(t2).getPoint3d(),
+                                         settings);
         ArrayList<Double> clsablConds = rc.getClosabilityConditions(
                 settings.getConfPathExtraTolerance());
         settings.getLogger().log(Level.FINE, "RingClosability conditions "
@@ -114,7 +115,6 @@ public class RingClosureFinder
         // Make work vector of dihedrals (angles around rotatable bonds)
         // avoiding linearities
         ArrayList<Double> dihedrals = new ArrayList<Double>();
-        ArrayList<Double> dihIncement = new ArrayList<Double>();
         int nn = 0;
         for (int i=2; i<ptsChain.size(); i++)
         {
@@ -135,7 +135,6 @@ public class RingClosureFinder
             {
                 // add FIRST even if it is always not rotatable
                 dihedrals.add(0.0);
-                dihIncement.add(0.0);
             }
             else
             {
@@ -145,30 +144,24 @@ public class RingClosureFinder
                                                         refPoints.get(1), 
                                                         refPoints.get(2),
                                                         refPoints.get(3)));
-                dihIncement.add(0.0);
             }
         }
         // add LAST even if it is always not rotatable
         dihedrals.add(0.0);
-        dihIncement.add(0.0);
 
         settings.getLogger().log(Level.FINE, "Exploring torsional space... (dim:"
                     + nn + " - complete:" + settings.doExhaustiveConfSrch()+")");
 
         long startTime = System.nanoTime();
-        hasClosableRotamer(ptsChain,
+        RotamerScanKernel kernel = new RotamerScanKernel(ptsChain,
                                 rotatability,
                                 dihedrals,
-                                dihIncement,
-                                0,
                                 settings.getPathConfSearchStep(),
                                 h1,h2,t1,t2,
-                                clsablConds,
-                                closableConfs,
+                                clsablConds);
+        kernel.scan(closableConfs,
                                 settings.doExhaustiveConfSrch(),
-                                false, //true for debug only!
-                                settings.getLogger(),
-                                0);
+                                settings.doParallelConfSrch());
         long endTime = System.nanoTime();
         long time = (endTime - startTime) / (long) 1000.0;
 
@@ -185,7 +178,10 @@ public class RingClosureFinder
 
     /**
      * Scan rotatable space looking for conformations that satisfy closability
-     * condition.
+     * condition. This is the reference implementation working on 
+     * {@link Point3d}s. See {@link RotamerScanKernel} for the implementation
+     * used by {@link #evaluateClosability(List, ArrayList, ArrayList, 
+     * ArrayList, RingClosureParameters)}.
      *
      * @param chain the chain of atoms as a list of points in 3D space
      * @param rotatability flags defining which bond is rotatable
@@ -19,6 +19,7 @@
 package denoptim.graph.rings;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -194,13 +195,20 @@ public class RingClosureParameters extends RunTimeParameters
     protected Set<String> reqElInRings = new HashSet<String>();
 
     /**
-     * Pathname of the text file containing the list of visited
-     * <code>RingClosingConformation</code>s (i.e., index file).
-     * The index file is machine-written and is bound to the 
-     * corresponding libraries of fragments.
+     * Pathname of the file containing the archive of visited
+     * <code>RingClosingConformation</code>s. The archive is machine-written
+     * and is bound to the corresponding libraries of fragments. Index files
+     * in the text format of previous versions are also accepted.
      */
     protected String rccIndex = "";
 
+    /**
+     * Flag requesting to use the archive of
+     * <code>RingClosingConformation</code>s without writing into it. This
+     * allows several processes to share the same archive.
+     */
+    protected boolean rccReadOnly = false;
+
     /**
      * Pathname of the root folder containing the archive of serialized
      * <code>RingClosingConformation</code>s.
@@ -220,6 +228,12 @@ public class RingClosureParameters extends RunTimeParameters
      */
     protected boolean exhaustiveConfSrch = false; 
 
+    /**
+     * Flag controlling conformational search. If <code>true</code> the
+     * rotations of the first rotatable bond are explored in parallel.
+     */
+    protected boolean parallelConfSrch = false;
+
     /**
      * Flag controlling the ring-closing criterion evaluating the 
      * simultaneous closability of interdependent chains.
@@ -414,6 +428,13 @@ public class RingClosureParameters extends RunTimeParameters
         return rccFolder;
     }
     
+//----------------------------------------------------------------------------
+
+    public boolean isRCCArchiveReadOnly()
+    {
+        return rccReadOnly;
+    }
+    
 //----------------------------------------------------------------------------
     
     public RingClosuresArchive getRingClosuresArchive()
@@ -421,6 +442,24 @@ public class RingClosureParameters extends RunTimeParameters
         return rcArchive;
     }
 
+//----------------------------------------------------------------------------
+
+    /**
+     * Writes any pending entry of the archive of ring-closing conformations
+     * to the storage device and releases the archive's file.
+     */
+    public void closeRingClosuresArchive()
+    {
+        try
+        {
+            rcArchive.close();
+        } catch (IOException e)
+        {
+            getLogger().log(Level.WARNING, "Unable to close archive of "
+                    + "ring-closing conformations. " + e.getMessage());
+        }
+    }
+
 //----------------------------------------------------------------------------
 
     public boolean doExhaustiveConfSrch()
@@ -428,6 +467,13 @@ public class RingClosureParameters extends RunTimeParameters
 	return exhaustiveConfSrch;
     }
 
+//----------------------------------------------------------------------------
+
+    public boolean doParallelConfSrch()
+    {
+        return parallelConfSrch;
+    }
+
 //----------------------------------------------------------------------------
 
     public boolean serializeRCCs()
@@ -694,6 +740,9 @@ public class RingClosureParameters extends RunTimeParameters
             case "RCCINDEX=":
                 rccIndex = value;
                 break;
+            case "RCCREADONLY":
+                rccReadOnly = true;
+                break;
             case "RCCFOLDER=":
             	serializeRCCs = true;
                 rccFolder = value;
@@ -701,6 +750,9 @@ public class RingClosureParameters extends RunTimeParameters
             case "EXHAUSTIVECONFSEARCH":
             	exhaustiveConfSrch = true;
             	break;
+            case "PARALLELCONFSEARCH":
+                parallelConfSrch = true;
+                break;
             case "CHECKINTERDEPENDENTCHAINS":
             	checkInterdepPaths = true;
             	break;
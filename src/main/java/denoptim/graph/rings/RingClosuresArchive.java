@@ -1,7 +1,7 @@
 /*
  *   DENOPTIM
  *   Copyright (C) 2019 Marco Foscato <marco.foscato@uib.no>
- * 
+ *
  *   This program is free software: you can redistribute it and/or modify
  *   it under the terms of the GNU Affero General Public License as published
  *   by the Free Software Foundation, either version 3 of the License, or
@@ -18,88 +18,365 @@
 
 package denoptim.graph.rings;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
+import java.util.zip.CRC32;
 
 import denoptim.exception.DENOPTIMException;
-import denoptim.files.FileUtils;
 
 
 /**
- * Data structure to store and handle information about sub-structures 
+ * Data structure to store and handle information about sub-structures
  * (i.e., chains of fragments) and ring closure capability.
+ * <p>The archive is kept in memory in concurrent maps, so it can be queried
+ * and extended by any number of threads. When the pathname of the archive is
+ * given (see {@link RingClosureParameters#getRCCLibraryIndexFile()}), the
+ * entries are also saved in a single, append-only, binary file where each
+ * record is self-delimited and checksummed and holds the chain ID, its
+ * closability, and its ring-closing conformations. The offset of each record
+ * is kept in memory, so the conformations are read from the file only when
+ * needed. Records are forced to the storage device in batches of
+ * {@link #SYNCINTERVAL} records, and upon {@link #sync()} or
+ * {@link #close()}.</p>
+ * <p>Only one process can extend the file of an archive. Any other process
+ * can use the same archive in read-only mode
+ * (see {@link RingClosureParameters#isRCCArchiveReadOnly()}), in which case
+ * the entries found in the file are loaded and any new entry is kept only in
+ * memory. An incomplete record at the end of the file, i.e., one that is
+ * being written by another process or the result of a crash, is ignored.</p>
+ * <p>Index files written in the text format used by previous versions are
+ * still read, together with the serialized conformations found in
+ * {@link RingClosureParameters#getRCCLibraryFolder()}, but they are not
+ * updated.</p>
  *
  * @author Marco Foscato
  */
 
-public class RingClosuresArchive
+public class RingClosuresArchive implements Closeable
 {
+    /**
+     * Marks the beginning of a record in the binary file
+     */
+    private static final int MAGIC = 0x52434331;
+
+    /**
+     * Size of the parts of a record other than the payload: magic number,
+     * length of payload, and checksum.
+     */
+    private static final int RECORDOVERHEAD = 12;
+
+    /**
+     * Number of records appended before forcing them to the storage device
+     */
+    public static final int SYNCINTERVAL = 100;
+
     /**
      * Index of the next entry to be added to the archive
      */
-    private int nextRccId = 0;
+    private final AtomicInteger nextRccId = new AtomicInteger(0);
 
     /**
      * Data structure containing the main information about the
-     * <code>RingClosingConformation</code>s (values) per each 
+     * <code>RingClosingConformation</code>s (values) per each
      * <code>ClosableChain</code> (keys). Each value identifies
-     * (i) a unique Id that permits to retrieve the list ring-closing 
-     * conformations from the archive of serialized objects, and 
+     * (i) a unique Id that permits to retrieve the list ring-closing
+     * conformations from the archive, and
      * (ii) the closability of the chain.
      */
-    private HashMap<String,ArrayList<String>> rccsPerChainId =
-							     new HashMap<>();
+    private final ConcurrentHashMap<String,Record> rccsPerChainId =
+							     new ConcurrentHashMap<>();
 
     /**
-     * Data structure containing the library of 
-     * <code>ClosableChain</code>s per each fragment that can act as 
+     * Records by the unique Id of the entry
+     */
+    private final ConcurrentHashMap<Integer,Record> rccsPerId =
+                                                 new ConcurrentHashMap<>();
+
+    /**
+     * Data structure containing the library of
+     * <code>ClosableChain</code>s per each fragment that can act as
      * a turning point fragment (TP; i.e., the
      * fragments involved in the ring that has lower level in the
-     * <code>DENOPTIMGraph</code>). The possible TPs are  
+     * <code>DENOPTIMGraph</code>). The possible TPs are
      * identified by the molecular fragment Id in the proper library of
      * fragments.
      */
-    private HashMap<Integer,ArrayList<ClosableChain>> libCCxTPIdx =
-                                                             new HashMap<>();
-    
+    private final ConcurrentHashMap<Integer,List<ClosableChain>> libCCxTPIdx =
+                                                 new ConcurrentHashMap<>();
+
     /**
      * Parameters
      */
     private RingClosureParameters settings;
 
-  //----------------------------------------------------------------------------
+    /**
+     * The binary file, or <code>null</code> if the archive is not read from
+     * such file.
+     */
+    private File dataFile = null;
+
+    /**
+     * Access to the binary file. This is <code>null</code> if the archive
+     * does not use a binary file.
+     */
+    private FileChannel channel = null;
+
+    /**
+     * Exclusive lock held by the only process that can append records
+     */
+    private FileLock lock = null;
+
+    /**
+     * <code>true</code> if new records are appended to the binary file
+     */
+    private boolean writable = false;
+
+    /**
+     * <code>true</code> if entries have been read from a text index file
+     */
+    private boolean legacyIndex = false;
+
+    /**
+     * Offset where the next record will be written
+     */
+    private long end = 0;
+
+    /**
+     * Number of records appended since the last synchronization with the
+     * storage device
+     */
+    private int unsynced = 0;
+
+//------------------------------------------------------------------------------
 
     /**
-     * Construct an empty archive.
+     * Information on a chain stored in the archive.
+     */
+    private static class Record
+    {
+        final int rccId;
+        final boolean closable;
+
+        /**
+         * Offset of the record in the binary file, or -1 if not written
+         */
+        volatile long offset = -1;
+
+        /**
+         * Conformations of a record that is not, or not yet, written
+         */
+        volatile RingClosingConformations rcc;
+
+        Record(int rccId, boolean closable, RingClosingConformations rcc)
+        {
+            this.rccId = rccId;
+            this.closable = closable;
+            this.rcc = rcc;
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Construct an empty archive that lives only in memory.
      */
     public RingClosuresArchive(){}
-    
+
 //----------------------------------------------------------------------------
 
     /**
      * Construct the library of ring closing substructures from an
-     * existing index file.
-     * @param rccIndex the index file.
+     * existing archive file, if any. Unless the archive is meant to be
+     * read-only, the file is created if it does not exist, and it is locked
+     * to prevent other processes from writing into it.
+     * @param settings the parameters defining the archive.
+     * @throws DENOPTIMException if the archive cannot be read or another
+     * process is writing into it.
+     */
+
+    public RingClosuresArchive(RingClosureParameters settings)
+            throws DENOPTIMException
+    {
+        this.settings = settings;
+        String pathname = settings.getRCCLibraryIndexFile();
+        if (pathname == null || pathname.isBlank())
+        {
+            return;
+        }
+        File file = new File(pathname);
+        if (file.exists() && file.length() > 0 && !isBinaryArchive(file))
+        {
+            readLibraryOfRCCs(pathname);
+            legacyIndex = true;
+            settings.getLogger().log(Level.WARNING, "Index of ring-closing "
+                    + "conformations '" + pathname + "' has the text format "
+                    + "of previous versions. It will be read but not updated."
+                    + " New entries will be kept only in memory.");
+            return;
+        }
+        if (settings.isRCCArchiveReadOnly() && !file.exists())
+        {
+            return;
+        }
+        openBinaryArchive(file, !settings.isRCCArchiveReadOnly());
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the file starts with a record of the
+     * binary format.
+     */
+    private static boolean isBinaryArchive(File file) throws DENOPTIMException
+    {
+        try (DataInputStream dis = new DataInputStream(
+                new FileInputStream(file)))
+        {
+            return dis.readInt() == MAGIC;
+        } catch (EOFException e)
+        {
+            return false;
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot read archive of ring-closing "
+                    + "conformations '" + file + "'.", e);
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Opens the binary file and loads the records it contains.
+     * @param file the binary file.
+     * @param write if <code>true</code> the file is locked and any record
+     * appended to this archive is written into it.
+     */
+    private void openBinaryArchive(File file, boolean write)
+            throws DENOPTIMException
+    {
+        dataFile = file;
+        try
+        {
+            channel = new RandomAccessFile(file, write ? "rw" : "r")
+                    .getChannel();
+            if (write)
+            {
+                // The locked region lays beyond the data, so readers are
+                // never blocked, even where locks are mandatory.
+                try
+                {
+                    lock = channel.tryLock(Long.MAX_VALUE - 1, 1, false);
+                } catch (OverlappingFileLockException e)
+                {
+                    lock = null;
+                }
+                if (lock == null)
+                {
+                    channel.close();
+                    channel = null;
+                    throw new DENOPTIMException("Archive of ring-closing "
+                            + "conformations '" + file + "' is being "
+                            + "written by another process. Use it in "
+                            + "read-only mode (see keyword RC-RCCReadOnly).");
+                }
+            }
+            long pos = loadRecords(file);
+            if (write && pos < channel.size())
+            {
+                // Remove any incomplete record left by a crash
+                channel.truncate(pos);
+            }
+            end = pos;
+            writable = write;
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot open archive of ring-closing "
+                    + "conformations '" + file + "'.", e);
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Reads all the complete records of the binary file.
+     * @return the offset right after the last complete record.
      */
+    private long loadRecords(File file) throws IOException, DENOPTIMException
+    {
+        long pos = 0;
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file))))
+        {
+            while (true)
+            {
+                byte[] payload = readRecord(dis);
+                if (payload == null)
+                    break;
+                DataInputStream pis = new DataInputStream(
+                        new ByteArrayInputStream(payload));
+                String chainId = pis.readUTF();
+                boolean closable = pis.readBoolean();
+                Record rec = new Record(nextRccId.getAndIncrement(), closable,
+                        null);
+                rec.offset = pos;
+                if (rccsPerChainId.putIfAbsent(chainId, rec) == null)
+                {
+                    addRecord(chainId, rec);
+                }
+                pos = pos + RECORDOVERHEAD + payload.length;
+            }
+        }
+        return pos;
+    }
+
+//----------------------------------------------------------------------------
 
-    public RingClosuresArchive(RingClosureParameters settings) throws DENOPTIMException
+    /**
+     * Reads a record from a stream.
+     * @return the payload of the record or <code>null</code> if the stream
+     * does not contain a complete and valid record.
+     */
+    private static byte[] readRecord(DataInputStream dis) throws IOException
     {
-        if (FileUtils.checkExists(settings.getRCCLibraryIndexFile()))
+        try
         {
-            readLibraryOfRCCs(settings.getRCCLibraryIndexFile());
+            if (dis.readInt() != MAGIC)
+                return null;
+            int length = dis.readInt();
+            if (length < 0)
+                return null;
+            byte[] payload = new byte[length];
+            dis.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (dis.readInt() != (int) crc.getValue())
+                return null;
+            return payload;
+        } catch (EOFException e)
+        {
+            return null;
         }
     }
 
@@ -124,22 +401,23 @@ public class RingClosuresArchive
                 String rccIdNum = parts[1];
                 String closability = parts[2];
 
-                if (Integer.parseInt(rccIdNum) != nextRccId)
+                if (Integer.parseInt(rccIdNum) != nextRccId.get())
                 {
                     String msg = "Expecting RCC Ids to be ordered (i.e., "
                                  + "1,2,3,...,n), but inconsistent number "
-                                 + "is found in " + filename + " - Found" 
+                                 + "is found in " + filename + " - Found"
                                  + rccIdNum + " instead of " + nextRccId;
                     throw new DENOPTIMException(msg);
                 }
 
-                if (rccsPerChainId.containsKey(chainIdStr))
+                Record rec = new Record(nextRccId.getAndIncrement(),
+                        closability.equals("T"), null);
+                if (rccsPerChainId.putIfAbsent(chainIdStr, rec) != null)
                 {
                     String msg = "Found duplicate in library of RCCs";
                         throw new DENOPTIMException(msg);
                 }
-
-                addRecord(chainIdStr,rccIdNum,closability);
+                addRecord(chainIdStr, rec);
             }
         }
         catch (NumberFormatException | IOException nfe)
@@ -170,163 +448,190 @@ public class RingClosuresArchive
 
 //----------------------------------------------------------------------------
 
-    private void addRecord(String chainId, String rccIdNum,
-            String closability) throws DENOPTIMException
+    /**
+     * Makes a record that is already in the map of chain IDs reachable by
+     * its Id and by the turning point of the chain.
+     */
+    private void addRecord(String chainId, Record rec)
     {
-        // Create record for RCC
-        ArrayList<String> record = new ArrayList<String>();
-        record.add(rccIdNum);
-        record.add(closability);
-
-        // Store (closability,rccIndex)-x-chainID
-        rccsPerChainId.put(chainId,record);
+        rccsPerId.put(rec.rccId, rec);
 
         // Store (closable chain)-x-vertexMolId
-        if (closability.equals("T"))
+        if (rec.closable)
         {
 //TODO per each fragment with more than 3 APs store the link to a ClosableChain
 // not a new one. Might need to store the number of APs as a property of
 // the ChainLinks, that is, change to format of the chainId string to include also that info
             ClosableChain cc = new ClosableChain(chainId);
             int tpId = cc.getTurningPointIdx();
-            if (libCCxTPIdx.containsKey(tpId))
-            {
-                libCCxTPIdx.get(tpId).add(cc);
-            }
-            else
-            {
-                ArrayList<ClosableChain> lstCC = new ArrayList<ClosableChain>();
-                lstCC.add(cc);
-                libCCxTPIdx.put(tpId,lstCC);
-            }
+            libCCxTPIdx.computeIfAbsent(tpId, k -> Collections.synchronizedList(
+                    new ArrayList<ClosableChain>())).add(cc);
         }
-
-        // Increment counter
-        nextRccId++;
     }
 
 //----------------------------------------------------------------------------
 
     /**
-     * Append a new closable chain entry to the archive
+     * Append a new closable chain entry to the archive. This method can be
+     * called by concurrent threads. If the chain is already in the archive,
+     * for example, because another thread stored it first, this method does
+     * nothing.
      * @param chainId the string representing the chain of fragments
      * @param closable <code>true</code> for verified closable chains
      * @param rcc the ensemble of <code>RingClosingConformations</code> of
      * the chain
+     * @throws DENOPTIMException if the entry cannot be written to the file of
+     * the archive.
      */
 
     public void storeEntry(String chainId, boolean closable,
             RingClosingConformations rcc) throws DENOPTIMException
     {
-    	String closability = "F";
-    	if (closable)
-    	{
-    	    closability = "T";
-    	}
+        if (rccsPerChainId.containsKey(chainId))
+        {
+            return;
+        }
+        if (rcc == null)
+        {
+            rcc = new RingClosingConformations();
+        }
+        Record rec = new Record(nextRccId.getAndIncrement(), closable, rcc);
+        if (rccsPerChainId.putIfAbsent(chainId, rec) != null)
+        {
+            return;
+        }
+        addRecord(chainId, rec);
 
-        File file = new File(settings.getRCCLibraryIndexFile());
-        long fileLength = file.length();
-        RandomAccessFile rafile = null;
-        FileChannel channel = null;
-        FileLock lock = null;
-        try
+        if (!writable)
         {
-            // Lock the index file
-            rafile = new RandomAccessFile(file, "rw");
-            channel = rafile.getChannel();
+            return;
+        }
 
-            int nTry = 0;
-            while (true)
+        // Encoding is done by the calling thread, only writing is serialized
+        byte[] record = encode(chainId, closable, rcc);
+        synchronized (this)
+        {
+            if (channel == null)
             {
-                try
+                // Archive has been closed: keep the entry in memory
+                return;
+            }
+            try
+            {
+                ByteBuffer buf = ByteBuffer.wrap(record);
+                long pos = end;
+                while (buf.hasRemaining())
                 {
-                    lock = channel.tryLock();
-                    if (lock != null)
-                        break;
+                    pos = pos + channel.write(buf, pos);
                 }
-                catch (OverlappingFileLockException e)
+                rec.offset = end;
+                end = pos;
+                unsynced++;
+                if (unsynced >= SYNCINTERVAL)
                 {
-                    nTry++;
-                    settings.getLogger().log(Level.WARNING,"Attempt " + nTry
-                             + " to get lock " + "for '"
-                             + settings.getRCCLibraryIndexFile()
-                             + "' failed. ");
+                    channel.force(false);
+                    unsynced = 0;
                 }
-            }
-        
-            if (rccsPerChainId.containsKey(chainId))
+            } catch (IOException e)
             {
-                throw new DENOPTIMException("Found duplicate in library of "
-                            + " RingClosingConformations");
+                throw new DENOPTIMException("Exception while trying to store "
+                        + chainId + " in '" + dataFile + "'.", e);
             }
+        }
+        // The conformations can now be read from the file
+        rec.rcc = null;
+    }
 
-            // Add record in maps (objects kept in memory)
-            String rccId = Integer.toString(nextRccId);
-            addRecord(chainId,rccId,closability);
+//----------------------------------------------------------------------------
 
-            // Update RCC index file
-            if (closable)
-            {
-                rafile.seek(fileLength);
-                rafile.writeBytes(chainId + " " + rccId + " " + "T" +"\n");
-                channel.force(true);
-        		if (settings.serializeRCCs())
-        		{
-                    String rccFileName = settings.getRCCLibraryFolder()
-                            + "/" + rccId + ".ser";
-                    FileOutputStream fos = null;
-                    ObjectOutputStream oos = null;
-                    try
-                    {
-                        fos = new FileOutputStream(rccFileName);
-                        oos = new ObjectOutputStream(fos);
-                        oos.writeObject(rcc);
-                        oos.close();
-                        settings.getLogger().log(Level.FINE,
-                                "Serialization to file " + rccFileName);
-                    }
-                    catch (Throwable t2)
-                    {
-                        throw new DENOPTIMException(t2);
-                    }
-                    finally
-                    {
-                        fos.flush();
-                        fos.close();
-                        fos = null;
-                    }
-        		}
-            }
-            else 
+    private static byte[] encode(String chainId, boolean closable,
+            RingClosingConformations rcc) throws DENOPTIMException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos))
+        {
+            dos.writeUTF(chainId);
+            dos.writeBoolean(closable);
+            ArrayList<ArrayList<Double>> confs = rcc.getListOfConformations();
+            dos.writeInt(confs.size());
+            for (ArrayList<Double> conf : confs)
             {
-                rafile.seek(fileLength);
-                rafile.writeBytes(chainId + " " + rccId + " " + "F" +"\n");
-                channel.force(true);
+                dos.writeInt(conf.size());
+                for (Double dih : conf)
+                {
+                    dos.writeDouble(dih);
+                }
             }
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot encode ring-closing "
+                    + "conformations of " + chainId, e);
         }
-        catch (Throwable t)
+        byte[] payload = baos.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(RECORDOVERHEAD + payload.length);
+        buf.putInt(MAGIC);
+        buf.putInt(payload.length);
+        buf.put(payload);
+        buf.putInt((int) crc.getValue());
+        return buf.array();
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Forces any record appended so far to be written to the storage device.
+     * @throws DENOPTIMException if the storage device cannot be updated.
+     */
+    public synchronized void sync() throws DENOPTIMException
+    {
+        if (!writable || channel == null || unsynced == 0)
         {
-             throw new DENOPTIMException("Exception while trying to store " 
-                     + chainId,t);
+            return;
         }
-        finally
+        try
         {
-            try
+            channel.force(false);
+            unsynced = 0;
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot synchronize '" + dataFile
+                    + "'.", e);
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Writes any pending record to the storage device, releases the lock on
+     * the file of the archive, and closes it. The entries remain available in
+     * memory, but their conformations cannot be read from the file anymore.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (channel == null)
+        {
+            return;
+        }
+        try
+        {
+            if (writable && unsynced > 0)
             {
-                if (channel != null)
-                    channel.close();
-                if (rafile != null)
-                    rafile.close();
-                if (lock != null && lock.isValid())
-                    lock.release();
+                channel.force(false);
+                unsynced = 0;
             }
-            catch (Throwable t)
+            if (lock != null && lock.isValid())
             {
-                throw new DENOPTIMException("RingClosuresArchive is unable "
-                        + "to unlock file '" 
-            			+ settings.getRCCLibraryIndexFile() 
-            			+ "'. " + t);
+                lock.release();
             }
+        } finally {
+            lock = null;
+            channel.close();
+            channel = null;
+            writable = false;
         }
     }
 
@@ -337,15 +642,20 @@ public class RingClosuresArchive
      * (i.e., the
      * fragments involved in the ring that  has lower level).
      * @param tpId the turning point molecule Id in the libraries.
+     * @return a copy of the list of closable chains.
      */
 
     public ArrayList<ClosableChain> getCCFromTurningPointId(int tpId)
     {
-        if (libCCxTPIdx.containsKey(tpId))
+        List<ClosableChain> lst = libCCxTPIdx.get(tpId);
+        if (lst == null)
         {
-            return libCCxTPIdx.get(tpId);
+            return new ArrayList<ClosableChain>();
+        }
+        synchronized (lst)
+        {
+            return new ArrayList<ClosableChain>(lst);
         }
-        return new ArrayList<ClosableChain>();
     }
 
 //----------------------------------------------------------------------------
@@ -365,7 +675,7 @@ public class RingClosuresArchive
     	    if (rccsPerChainId.containsKey(altChId))
     	    {
     	        result = altChId;
-    		break;	    
+    		break;
     	    }
     	}
     	return result;
@@ -379,40 +689,36 @@ public class RingClosuresArchive
 
     public boolean getClosabilityOfChain(String chainId)
     {
-        ArrayList<String> rccRecord = rccsPerChainId.get(chainId);
-        String closability = rccRecord.get(1);
-        return closability.equals("T");
+        return rccsPerChainId.get(chainId).closable;
     }
 
 //----------------------------------------------------------------------------
 
     /**
-     * @return the <code>RingClosingConformations</code> of a chain as 
-     * stored in the archive 
+     * @return the <code>RingClosingConformations</code> of a chain as
+     * stored in the archive
      */
 
     public RingClosingConformations getRCCsOfChain(String chainId)
                                                      throws DENOPTIMException
     {
-        ArrayList<String> rccRecord = rccsPerChainId.get(chainId);
-        int rccId = Integer.parseInt(rccRecord.get(0));
-        String closability = rccRecord.get(1);
+        Record rec = rccsPerChainId.get(chainId);
 
         RingClosingConformations rcc = new RingClosingConformations();
-        if (closability.equals("T"))
+        if (rec.closable)
         {
-            rcc = getRCCsFromArchive(rccId);
-            if (settings.getVerbosity() > 1)
+            rcc = getRCCs(rec);
+            if (settings != null && settings.getVerbosity() > 1)
             {
-                settings.getLogger().log(Level.FINE, 
+                settings.getLogger().log(Level.FINE,
                         "Path is closable (from DB)");
             }
         }
         else
         {
-            if (settings.getVerbosity() > 1)
+            if (settings != null && settings.getVerbosity() > 1)
             {
-                settings.getLogger().log(Level.FINE, 
+                settings.getLogger().log(Level.FINE,
                         "Path is NOT closable (from DB)");
             }
         }
@@ -422,52 +728,164 @@ public class RingClosuresArchive
 //----------------------------------------------------------------------------
 
     /**
-     * Get serialized <code>RingClosingConformations</code> from archive
-     * @param rccId the index identifying the 
-     * <code>RingClosingConformations</code> in the archive 
+     * Get the <code>RingClosingConformations</code> from archive
+     * @param rccId the index identifying the
+     * <code>RingClosingConformations</code> in the archive
      */
 
     public RingClosingConformations getRCCsFromArchive(int rccId)
                                                      throws DENOPTIMException
     {
-        RingClosingConformations rcc = new RingClosingConformations();
-        
-        String rccFileName1 = settings.getRCCLibraryFolder() + 
-                System.getProperty("file.separator") + rccId + ".ser";
-        FileInputStream fis = null;
-        ObjectInputStream ois = null;
-        boolean recoveringDone = false;
-        try
+        Record rec = rccsPerId.get(rccId);
+        if (rec == null)
         {
-            fis = new FileInputStream(rccFileName1);
-            ois = new ObjectInputStream(fis);
-            rcc = (RingClosingConformations) ois.readObject();
-            ois.close();
-            settings.getLogger().log(Level.FINE, 
-                    "Got serialized RCC from " + rccFileName1);
-            recoveringDone = true;
+            throw new DENOPTIMException("No entry with Id " + rccId
+                    + " in archive of ring-closing conformations.");
         }
-        catch (Throwable t2)
+        return getRCCs(rec);
+    }
+
+//----------------------------------------------------------------------------
+
+    private RingClosingConformations getRCCs(Record rec)
+            throws DENOPTIMException
+    {
+        // Read the conformations before the offset: the offset is set before
+        // the conformations are removed from memory.
+        RingClosingConformations rcc = rec.rcc;
+        if (rcc != null)
         {
-            throw new DENOPTIMException(t2);
+            return rcc;
         }
-        finally
+        long offset = rec.offset;
+        if (offset >= 0)
         {
-            try
+            return readRCCsAt(offset);
+        }
+        if (legacyIndex)
+        {
+            return readSerializedRCCs(rec.rccId);
+        }
+        throw new DENOPTIMException("Conformations of entry " + rec.rccId
+                + " are not available in archive of ring-closing "
+                + "conformations.");
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Reads the conformations from the record at the given offset of the
+     * binary file. Positional reads do not interfere with appending records,
+     * so no locking is needed.
+     */
+    private RingClosingConformations readRCCsAt(long offset)
+            throws DENOPTIMException
+    {
+        FileChannel ch = channel;
+        if (ch == null)
+        {
+            throw new DENOPTIMException("Archive of ring-closing conformations "
+                    + "'" + dataFile + "' has been closed.");
+        }
+        try
+        {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            readFully(ch, head, offset);
+            head.flip();
+            if (head.getInt() != MAGIC)
+            {
+                throw new DENOPTIMException("No record at offset " + offset
+                        + " of '" + dataFile + "'.");
+            }
+            int length = head.getInt();
+            ByteBuffer body = ByteBuffer.allocate(length + 4);
+            readFully(ch, body, offset + 8);
+            body.flip();
+            byte[] payload = new byte[length];
+            body.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (body.getInt() != (int) crc.getValue())
             {
-                fis.close();
+                throw new DENOPTIMException("Corrupted record at offset "
+                        + offset + " of '" + dataFile + "'.");
+            }
+
+            DataInputStream dis = new DataInputStream(
+                    new ByteArrayInputStream(payload));
+            String chainId = dis.readUTF();
+            dis.readBoolean();
+            int numConfs = dis.readInt();
+            ArrayList<ArrayList<Double>> confs =
+                    new ArrayList<ArrayList<Double>>(numConfs);
+            for (int i=0; i<numConfs; i++)
+            {
+                int numDihedrals = dis.readInt();
+                ArrayList<Double> conf = new ArrayList<Double>(numDihedrals);
+                for (int j=0; j<numDihedrals; j++)
+                {
+                    conf.add(dis.readDouble());
+                }
+                confs.add(conf);
             }
-            catch (Throwable t)
+            return new RingClosingConformations(chainId, confs);
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot read record at offset "
+                    + offset + " of '" + dataFile + "'.", e);
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos)
+            throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            int n = ch.read(buf, pos);
+            if (n < 0)
             {
-                throw new DENOPTIMException(t);
+                throw new EOFException("Unexpected end of file.");
             }
+            pos = pos + n;
         }
-        if (!recoveringDone)
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * Get serialized <code>RingClosingConformations</code> from the folder
+     * of an archive whose index is in the text format of previous versions.
+     */
+    private RingClosingConformations readSerializedRCCs(int rccId)
+                                                     throws DENOPTIMException
+    {
+        String rccFileName = settings.getRCCLibraryFolder() +
+                System.getProperty("file.separator") + rccId + ".ser";
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new FileInputStream(rccFileName)))
         {
-            String s = "Failed attempt to recover RCC. Check code.";
-            throw new DENOPTIMException(s);
+            RingClosingConformations rcc =
+                    (RingClosingConformations) ois.readObject();
+            settings.getLogger().log(Level.FINE,
+                    "Got serialized RCC from " + rccFileName);
+            return rcc;
         }
-        return rcc;
+        catch (Throwable t)
+        {
+            throw new DENOPTIMException(t);
+        }
+    }
+
+//----------------------------------------------------------------------------
+
+    /**
+     * @return the number of entries in this archive.
+     */
+    public int size()
+    {
+        return rccsPerChainId.size();
     }
 
 //----------------------------------------------------------------------------
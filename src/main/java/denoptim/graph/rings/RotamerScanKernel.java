@@ -0,0 +1,502 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph.rings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.vecmath.Point3d;
+
+/**
+ * Systematic scan of the torsional space of a chain of points looking for
+ * conformations that satisfy the ring closability conditions (see
+ * {@link RingClosure#getClosabilityConditions(double)}). This is equivalent to
+ * {@link RingClosureFinder#hasClosableRotamer(List, ArrayList, ArrayList,
+ * ArrayList, int, double, int, int, int, int, ArrayList, ArrayList, boolean,
+ * boolean, java.util.logging.Logger, int)}, but works on arrays of
+ * primitives, allocates memory only when a closable conformation is found,
+ * and skips any branch of the torsional space where the tail of the
+ * chain cannot reach the position required to close the ring.
+ * <p>The pruning relies on the fact that rotations about the bonds of the
+ * chain do not change the bond lengths: once the rotation of bond
+ * <i>k</i> is defined, points up to <i>k+2</i> do not move anymore, and
+ * the distance between any point of the head and any point <i>t</i> of the
+ * tail can only change by the length of the path from point <i>k+2</i> to
+ * point <i>t</i>.</p>
+ * <p>Optionally, the steps on the first rotatable bond are explored in
+ * parallel. The order of the closable conformations is the same as in a
+ * sequential scan.</p>
+ */
+
+public class RotamerScanKernel
+{
+    /**
+     * Number of points in the chain
+     */
+    private final int numPts;
+
+    /**
+     * Number of bonds, i.e., levels of the scan
+     */
+    private final int numLevels;
+
+    /**
+     * Initial coordinates [x1,y1,z1,x2,y2,z2,...]
+     */
+    private final double[] initXyz;
+
+    /**
+     * Rotatability of each bond
+     */
+    private final boolean[] rotatable;
+
+    /**
+     * Initial value of the dihedral angle of each bond
+     */
+    private final double[] dihedrals;
+
+    /**
+     * Step (degrees) of the rotation about each bond
+     */
+    private final double step;
+
+    /**
+     * Number of steps for a rotatable bond
+     */
+    private final int totStp;
+
+    /**
+     * Cosine of the step
+     */
+    private final double cosStep;
+
+    /**
+     * Sine of the step
+     */
+    private final double sinStep;
+
+    /**
+     * Indexes of the points defining head and tail vectors
+     */
+    private final int h1, h2, t1, t2;
+
+    /**
+     * Closability conditions
+     */
+    private final double[] conds;
+
+    /**
+     * Length of the path from the first point to each point of the chain
+     */
+    private final double[] pathLength;
+
+    /**
+     * Tolerance used when comparing bounds with closability conditions
+     */
+    private static final double TOLERANCE = 1.0E-6;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * The work space of one scan. Parallel scans have one each.
+     */
+    private class ScanState
+    {
+        final double[] xyz;
+        final double[] incr;
+        final double[][] saved;
+        final double[][] rot;
+        final List<ArrayList<Double>> found = new ArrayList<ArrayList<Double>>();
+        final int branch;
+        final AtomicInteger firstHit;
+        final boolean exhaustive;
+
+        ScanState(int branch, AtomicInteger firstHit, boolean exhaustive)
+        {
+            this.xyz = initXyz.clone();
+            this.incr = new double[numLevels];
+            this.saved = new double[numLevels][];
+            this.rot = new double[numLevels][9];
+            this.branch = branch;
+            this.firstHit = firstHit;
+            this.exhaustive = exhaustive;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * @param chain the chain of points. Points are copied, so the given
+     * list is never modified.
+     * @param rotatability flags defining which bond is rotatable.
+     * @param dihedrals the initial value of the dihedral angle of each bond.
+     * @param step the step (degrees) taken by each sequential rotation of a
+     * bond.
+     * @param h1 the index of the first point defining the head vector
+     * @param h2 the index of the second point defining the head vector
+     * @param t1 the index of the first point defining the tail vector
+     * @param t2 the index of the second point defining the tail vector
+     * @param clsablConds the closability condition vector (see
+     * {@link RingClosure#getClosabilityConditions(double)}).
+     */
+    public RotamerScanKernel(List<Point3d> chain, List<Boolean> rotatability,
+            List<Double> dihedrals, double step, int h1, int h2, int t1, int t2,
+            List<Double> clsablConds)
+    {
+        this.numPts = chain.size();
+        this.numLevels = dihedrals.size();
+        this.initXyz = new double[numPts*3];
+        this.pathLength = new double[numPts];
+        for (int i=0; i<numPts; i++)
+        {
+            Point3d p = chain.get(i);
+            initXyz[i*3] = p.x;
+            initXyz[i*3+1] = p.y;
+            initXyz[i*3+2] = p.z;
+            if (i > 0)
+                pathLength[i] = pathLength[i-1] + p.distance(chain.get(i-1));
+        }
+        this.rotatable = new boolean[numLevels];
+        this.dihedrals = new double[numLevels];
+        for (int i=0; i<numLevels; i++)
+        {
+            this.rotatable[i] = rotatability.get(i);
+            this.dihedrals[i] = dihedrals.get(i);
+        }
+        this.step = step;
+        this.totStp = (int) (360.0 / step);
+        this.cosStep = Math.cos(Math.toRadians(step));
+        this.sinStep = Math.sin(Math.toRadians(step));
+        this.h1 = h1;
+        this.h2 = h2;
+        this.t1 = t1;
+        this.t2 = t2;
+        this.conds = new double[7];
+        for (int i=0; i<7; i++)
+            this.conds[i] = clsablConds.get(i);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Scans the torsional space looking for closable conformations.
+     * @param closableConfs where to collect the closable conformations as
+     * vectors of dihedral angles.
+     * @param doExhaustiveSearch use <code>true</code> to collect all
+     * closable conformations, or <code>false</code> to stop at the first one.
+     * @param parallel use <code>true</code> to explore the steps on the first
+     * rotatable bond in parallel.
+     * @return <code>true</code> if any closable conformation has been found.
+     */
+    public boolean scan(ArrayList<ArrayList<Double>> closableConfs,
+            boolean doExhaustiveSearch, boolean parallel)
+    {
+        // Find the first bond whose rotation moves any point
+        int first = -1;
+        for (int k=0; k<numLevels; k++)
+        {
+            if (rotatable[k] && k+2 < numPts)
+            {
+                first = k;
+                break;
+            }
+        }
+
+        if (!parallel || first < 0 || totStp < 2)
+        {
+            ScanState s = new ScanState(-1, null, doExhaustiveSearch);
+            explore(s, 0);
+            closableConfs.addAll(s.found);
+            return !s.found.isEmpty();
+        }
+
+        final int firstRot = first;
+        AtomicInteger firstHit = new AtomicInteger(Integer.MAX_VALUE);
+        List<ScanState> branches = IntStream.range(0, totStp).parallel()
+                .mapToObj(i -> exploreBranch(firstRot, i, firstHit,
+                        doExhaustiveSearch))
+                .collect(Collectors.toList());
+        boolean found = false;
+        for (ScanState branch : branches)
+        {
+            if (branch.found.isEmpty())
+                continue;
+            closableConfs.addAll(branch.found);
+            found = true;
+            if (!doExhaustiveSearch)
+                break;
+        }
+        return found;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Explores the branch of the torsional space where the first rotatable
+     * bond is rotated by the given number of steps. Bonds preceding the
+     * first rotatable one do not rotate, so they are not explored.
+     */
+    private ScanState exploreBranch(int level, int stepId,
+            AtomicInteger firstHit, boolean exhaustive)
+    {
+        ScanState s = new ScanState(stepId, firstHit, exhaustive);
+        if (stepId != 0)
+        {
+            double angle = Math.toRadians(step * stepId);
+            setRotationMatrix(s.xyz, level, Math.cos(angle), Math.sin(angle),
+                    s.rot[level]);
+            rotateBranch(s.xyz, level, s.rot[level]);
+            s.incr[level] = step * stepId;
+        }
+        if (visit(s, level))
+        {
+            if (!exhaustive)
+                firstHit.accumulateAndGet(stepId, Math::min);
+        }
+        return s;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Explores all rotations of one bond and, recursively, of all the
+     * following bonds.
+     * @return <code>true</code> if the last explored conformation is closable,
+     * which, in a non-exhaustive search, means the search can stop.
+     */
+    private boolean explore(ScanState s, int level)
+    {
+        if (stopRequested(s))
+            return false;
+
+        int stps = rotatable[level] ? totStp : 1;
+        int from = (level+2)*3;
+        boolean moves = stps > 1 && from < s.xyz.length;
+        double incr0 = s.incr[level];
+        if (moves)
+        {
+            if (s.saved[level] == null)
+                s.saved[level] = new double[s.xyz.length];
+            System.arraycopy(s.xyz, from, s.saved[level], from,
+                    s.xyz.length - from);
+            setRotationMatrix(s.xyz, level, cosStep, sinStep, s.rot[level]);
+        }
+
+        boolean res = false;
+        for (int i=0; i<stps; i++)
+        {
+            if (i != 0)
+            {
+                if (moves)
+                    rotateBranch(s.xyz, level, s.rot[level]);
+                s.incr[level] = s.incr[level] + step;
+            }
+            res = visit(s, level);
+            if (!s.exhaustive && res)
+                break;
+        }
+
+        // reset
+        if (moves)
+        {
+            System.arraycopy(s.saved[level], from, s.xyz, from,
+                    s.xyz.length - from);
+        }
+        s.incr[level] = incr0;
+        return res;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Deals with the conformation defined by the current rotation of the
+     * given bond: either explores the following bonds or, if this is the last
+     * bond, evaluates closability.
+     */
+    private boolean visit(ScanState s, int level)
+    {
+        if (level+1 < numLevels)
+        {
+            if (isOutOfReach(s.xyz, level+2))
+                return false;
+            return explore(s, level+1);
+        }
+        if (isClosable(s.xyz))
+        {
+            ArrayList<Double> conf = new ArrayList<Double>(numLevels);
+            for (int ib=0; ib<numLevels; ib++)
+            {
+                double tot = dihedrals[ib] + s.incr[ib];
+                if (tot > 180.0)
+                {
+                    tot = tot - 360.0;
+                }
+                conf.add(tot);
+            }
+            s.found.add(conf);
+            return true;
+        }
+        return false;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if a parallel scan has found a closable conformation in a branch
+     * that precedes the branch of the given scan, which can then stop.
+     */
+    private boolean stopRequested(ScanState s)
+    {
+        return s.firstHit != null && !s.exhaustive
+                && s.firstHit.get() < s.branch;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if, given that points up to index <code>fixed</code> cannot move
+     * anymore, the tail of the chain cannot satisfy the closability
+     * conditions in any conformation.
+     */
+    private boolean isOutOfReach(double[] xyz, int fixed)
+    {
+        if (h1 > fixed || h2 > fixed)
+            return false;
+        return isOutOfReach(xyz, h1, t2, fixed, conds[0], conds[1])
+                || isOutOfReach(xyz, h2, t1, fixed, conds[2], conds[3])
+                || isOutOfReach(xyz, h2, t2, fixed, conds[4], conds[5]);
+    }
+
+//------------------------------------------------------------------------------
+
+    private boolean isOutOfReach(double[] xyz, int h, int t, int fixed,
+            double min, double max)
+    {
+        if (t <= fixed)
+        {
+            double d = distance(xyz, h, t);
+            return d >= max || d <= min;
+        }
+        double d = distance(xyz, h, fixed);
+        double reach = pathLength[t] - pathLength[fixed];
+        return (d - reach) >= (max + TOLERANCE)
+                || (d + reach) <= (min - TOLERANCE);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Evaluates closability as in
+     * {@link RingClosure#isClosable(double, double, double, double, double,
+     * double, double, java.util.logging.Logger)}.
+     */
+    private boolean isClosable(double[] xyz)
+    {
+        double dH1T2 = distance(xyz, h1, t2);
+        double dH2T1 = distance(xyz, h2, t1);
+        double dH2T2 = distance(xyz, h2, t2);
+        if (dH1T2 < conds[1] && dH1T2 > conds[0] &&
+            dH2T1 < conds[3] && dH2T1 > conds[2] &&
+            dH2T2 < conds[5] && dH2T2 > conds[4])
+        {
+            double hx = xyz[h2*3] - xyz[h1*3];
+            double hy = xyz[h2*3+1] - xyz[h1*3+1];
+            double hz = xyz[h2*3+2] - xyz[h1*3+2];
+            double tx = xyz[t2*3] - xyz[t1*3];
+            double ty = xyz[t2*3+1] - xyz[t1*3+1];
+            double tz = xyz[t2*3+2] - xyz[t1*3+2];
+            double dot = (hx*tx + hy*ty + hz*tz)
+                    / (Math.sqrt(hx*hx + hy*hy + hz*hz)
+                            * Math.sqrt(tx*tx + ty*ty + tz*tz));
+            return dot <= conds[6];
+        }
+        return false;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static double distance(double[] xyz, int a, int b)
+    {
+        double dx = xyz[a*3] - xyz[b*3];
+        double dy = xyz[a*3+1] - xyz[b*3+1];
+        double dz = xyz[a*3+2] - xyz[b*3+2];
+        return Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Sets the matrix of the rotation about the axis defined by the bond
+     * from point <code>level</code> to point <code>level+1</code>.
+     * @param rot the 9 elements of the matrix, by rows.
+     */
+    private static void setRotationMatrix(double[] xyz, int level, double cos,
+            double sin, double[] rot)
+    {
+        int a = level*3;
+        int b = (level+1)*3;
+        double x = xyz[b] - xyz[a];
+        double y = xyz[b+1] - xyz[a+1];
+        double z = xyz[b+2] - xyz[a+2];
+        double norm = Math.sqrt(x*x + y*y + z*z);
+        x = x / norm;
+        y = y / norm;
+        z = z / norm;
+        double c = 1.0 - cos;
+        rot[0] = cos + x*x*c;
+        rot[1] = x*y*c - z*sin;
+        rot[2] = x*z*c + y*sin;
+        rot[3] = y*x*c + z*sin;
+        rot[4] = cos + y*y*c;
+        rot[5] = y*z*c - x*sin;
+        rot[6] = z*x*c - y*sin;
+        rot[7] = z*y*c + x*sin;
+        rot[8] = cos + z*z*c;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Rotates all the points that follow the bond from point
+     * <code>level</code> to point <code>level+1</code>.
+     */
+    private static void rotateBranch(double[] xyz, int level, double[] rot)
+    {
+        int o = level*3;
+        double ox = xyz[o];
+        double oy = xyz[o+1];
+        double oz = xyz[o+2];
+        for (int i=(level+2)*3; i<xyz.length; i=i+3)
+        {
+            double x = xyz[i] - ox;
+            double y = xyz[i+1] - oy;
+            double z = xyz[i+2] - oz;
+            xyz[i] = rot[0]*x + rot[1]*y + rot[2]*z + ox;
+            xyz[i+1] = rot[3]*x + rot[4]*y + rot[5]*z + oy;
+            xyz[i+2] = rot[6]*x + rot[7]*y + rot[8]*z + oz;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -106,6 +106,22 @@ public class UndirectedEdge
         this.invariant = tmp;
     }
     
+//------------------------------------------------------------------------------
+    
+    /**
+     * Returns a hash code that is equal for any two edges that are equal 
+     * according to {@link #compare(UndirectedEdge)}.
+     * @return the invariant hash code.
+     */
+    public int getInvariantHash()
+    {
+        if (this.invariant == null)
+        {
+            this.makeInvariant();
+        }
+        return 31 * invariant.hashCode() + bondType.ordinal();
+    }
+    
 //------------------------------------------------------------------------------
  
     public int compare(UndirectedEdge other)
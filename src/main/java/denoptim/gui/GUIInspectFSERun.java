@@ -34,12 +34,14 @@ import java.awt.event.ComponentEvent;
 import java.awt.geom.Ellipse2D;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import javax.swing.DefaultListModel;
 import javax.swing.GroupLayout;
@@ -79,6 +81,7 @@ import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
 import denoptim.graph.CandidateLW;
 import denoptim.io.DenoptimIO;
+import denoptim.io.RunSummaryDatabase;
 
 
 /**
@@ -352,27 +355,67 @@ public class GUIInspectFSERun extends GUICardPanel
 		
 		allItems = new ArrayList<CandidateLW>();
 		boolean skippFurtherErrors = false;
-		for (File itemFile : folder.listFiles(new FileFilter() {
-			
-			@Override
-			public boolean accept(File pathname) {
-				if (pathname.getName().startsWith(
-						DENOPTIMConstants.FITFILENAMEPREFIX)
-					&& pathname.getName().endsWith(
-						DENOPTIMConstants.FITFILENAMEEXTOUT)
-					&& !pathname.isDirectory())
-				{
-					return true;
+		
+		// The run summary database, if present, spares reading the files
+		// of all candidates
+		List<CandidateLW> itemsFromDB = new ArrayList<CandidateLW>();
+		try (RunSummaryDatabase runSummaryDB = 
+		        RunSummaryDatabase.openIfExists(folder))
+		{
+		    if (runSummaryDB != null)
+		        itemsFromDB = runSummaryDB.getCandidates();
+		} catch (DENOPTIMException | IOException e)
+		{
+		    e.printStackTrace();
+		    System.out.println("Ignoring unreadable run summary database.");
+		}
+		
+		File[] itemFiles = new File[0];
+		if (itemsFromDB.isEmpty())
+		{
+			itemFiles = folder.listFiles(new FileFilter() {
+				
+				@Override
+				public boolean accept(File pathname) {
+					if (pathname.getName().startsWith(
+							DENOPTIMConstants.FITFILENAMEPREFIX)
+						&& pathname.getName().endsWith(
+							DENOPTIMConstants.FITFILENAMEEXTOUT)
+						&& !pathname.isDirectory())
+					{
+						return true;
+					}
+					return false;
 				}
-				return false;
-			}
-		}))
-		{			
-			CandidateLW item = null;
+			});
+		}
+		
+		// Files are read in parallel, but processed in their original order
+		File[] filesToRead = itemFiles;
+		CandidateLW[] readItems = new CandidateLW[itemFiles.length];
+		DENOPTIMException[] exceptions = new DENOPTIMException[itemFiles.length];
+		IntStream.range(0, itemFiles.length).parallel().forEach(i -> {
 			try {
 				//WARNING: here we assume one candidate per file
-                item = DenoptimIO.readLightWeightCandidate(itemFile).get(0);
-			} catch (DENOPTIMException e1) {
+				readItems[i] = DenoptimIO.readLightWeightCandidate(
+						filesToRead[i]).get(0);
+			} catch (DENOPTIMException e) {
+				exceptions[i] = e;
+			}
+		});
+		CandidateLW[] items = readItems;
+		if (!itemsFromDB.isEmpty())
+		{
+			items = itemsFromDB.toArray(new CandidateLW[0]);
+		}
+		
+		for (int i=0; i<items.length; i++)
+		{
+			CandidateLW item = items[i];
+			if (i < exceptions.length && exceptions[i] != null)
+			{
+				File itemFile = itemFiles[i];
+				DENOPTIMException e1 = exceptions[i];
 				if (!skippFurtherErrors)
 				{
 					e1.printStackTrace();
@@ -411,6 +454,7 @@ public class GUIInspectFSERun extends GUICardPanel
 							return;
 					}
 				}
+				continue;
 			}
 			
 			if (item.hasFitness())
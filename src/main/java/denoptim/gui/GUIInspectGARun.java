@@ -87,6 +87,7 @@ import denoptim.exception.DENOPTIMException;
 import denoptim.files.FileUtils;
 import denoptim.graph.CandidateLW;
 import denoptim.io.DenoptimIO;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.logging.CounterID;
 import denoptim.utils.GeneralUtils;
 
@@ -695,6 +696,19 @@ public class GUIInspectGARun extends GUICardPanel
 		candsPerGeneration = new HashMap<Integer,List<String>>();
 		Map<Integer,double[]> popProperties = new HashMap<Integer,double[]>();
 		allIndividuals = new ArrayList<CandidateLW>();
+		
+		// The run summary database, if present, spares reading the files
+		// of all candidates
+		RunSummaryDatabase runSummaryDB = null;
+		try
+		{
+		    runSummaryDB = RunSummaryDatabase.openIfExists(file);
+		} catch (DENOPTIMException e)
+		{
+		    e.printStackTrace();
+		    System.out.println("Ignoring unreadable run summary database.");
+		}
+		
 		int largestGenId = -1;
 		for (File genFolder : file.listFiles(new FileFilter() {
 			
@@ -714,10 +728,20 @@ public class GUIInspectGARun extends GUICardPanel
             int padSize = genFolder.getName().substring(3).length();
 	        String zeroedGenId = GeneralUtils.getPaddedString(padSize, genId);
 		    readOneGeneration(genFolder, "Gen" + zeroedGenId + ".txt", 
-		            genId, parent, popProperties);
+		            genId, parent, popProperties, runSummaryDB);
 		    if (genId>largestGenId)
 		        largestGenId = genId;
 		}
+		if (runSummaryDB != null)
+		{
+		    try
+            {
+                runSummaryDB.close();
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+		}
 		
 		System.out.println("Imported "+allIndividuals.size()+" individuals.");
 		
@@ -1048,7 +1072,8 @@ public class GUIInspectGARun extends GUICardPanel
 	private void readOneGeneration(File genFolder, String summaryName,
 	        int genId,
 	        Component parent, 
-	        Map<Integer,double[]> popProperties)
+	        Map<Integer,double[]> popProperties,
+	        RunSummaryDatabase runSummaryDB)
     {
         // Read Generation summary file
         File genSummary = new File(genFolder, summaryName);
@@ -1070,26 +1095,82 @@ public class GUIInspectGARun extends GUICardPanel
                     Double.NaN, Double.NaN, Double.NaN, Double.NaN});
         }
         
-        // Read candidates from file (if present)
+        // Get candidates from the run summary database (if present)
         boolean foundCandidateFilesInThisGen = false;
-        for (File fitFile : genFolder.listFiles(new FileFilter() {
-            
-            @Override
-            public boolean accept(File pathname) {
-                if (pathname.getName().endsWith(
-                       DENOPTIMConstants.FITFILENAMEEXTOUT))
+        List<CandidateLW> fromDB = new ArrayList<CandidateLW>();
+        if (runSummaryDB != null)
+        {
+            fromDB = runSummaryDB.getCandidatesOfGeneration(genId);
+            for (CandidateLW one : fromDB)
+            {
+                if (one.hasFitness())
                 {
-                    return true;
+                    molsWithFitness++;
                 }
-                return false;
+                one.setGeneration(genId);
+                allIndividuals.add(one);
+                foundCandidateFilesInThisGen = true;
+            }
+        }
+        
+        // Members of the initial population that were imported rather than
+        // evaluated are not in the database, so the database may not account
+        // for all the members of generation zero.
+        boolean dbIsComplete = foundCandidateFilesInThisGen;
+        if (dbIsComplete && genId == 0 && readPopMembers)
+        {
+            try
+            {
+                int numMembers = DenoptimIO.readPopulationMembersTraces(
+                        genSummary).size();
+                if (fromDB.size() < numMembers)
+                    dbIsComplete = false;
+            } catch (DENOPTIMException e)
+            {
+                // Should never happen since we have already read this file
+                e.printStackTrace();
             }
-        }))
+        }
+        
+        // Read candidates from file (if present)
+        File[] filesInGen = new File[0];
+        if (!dbIsComplete)
         {
-            CandidateLW one;
+            filesInGen = genFolder.listFiles(new FileFilter() {
+                
+                @Override
+                public boolean accept(File pathname) {
+                    if (pathname.getName().endsWith(
+                           DENOPTIMConstants.FITFILENAMEEXTOUT))
+                    {
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
+        
+        // Files are read in parallel, but processed in their original order
+        final File[] fitFiles = filesInGen;
+        CandidateLW[] candidates = new CandidateLW[fitFiles.length];
+        DENOPTIMException[] exceptions = new DENOPTIMException[fitFiles.length];
+        IntStream.range(0, fitFiles.length).parallel().forEach(i -> {
             try {
                 //WARNING: here we assume one candidate per file
-                one = DenoptimIO.readLightWeightCandidate(fitFile).get(0);
-            } catch (DENOPTIMException e1) {
+                candidates[i] = DenoptimIO.readLightWeightCandidate(
+                        fitFiles[i]).get(0);
+            } catch (DENOPTIMException e) {
+                exceptions[i] = e;
+            }
+        });
+        
+        for (int i=0; i<fitFiles.length; i++)
+        {
+            File fitFile = fitFiles[i];
+            CandidateLW one = candidates[i];
+            if (exceptions[i] != null)
+            {
+                DENOPTIMException e1 = exceptions[i];
                 e1.printStackTrace();
                 JOptionPane.showMessageDialog(parent,
                         "Could not read data from to '" + fitFile + "'! "
@@ -1099,6 +1180,9 @@ public class GUIInspectGARun extends GUICardPanel
                         UIManager.getIcon("OptionPane.errorIcon"));
                 return;
             }
+            // Candidates found also in the database are already imported
+            if (fromDB.contains(one))
+                continue;
             if (one.hasFitness())
             {
                 molsWithFitness++;
@@ -1135,8 +1219,12 @@ public class GUIInspectGARun extends GUICardPanel
             readPopMembers = false;
             try
             {
-                for (CandidateLW cand : 
-                    DenoptimIO.readPopulationMembersTraces(genSummary))
+                List<CandidateLW> traces = new ArrayList<CandidateLW>();
+                if (runSummaryDB != null)
+                    traces = runSummaryDB.getPopulationMembers(genId);
+                if (traces.isEmpty())
+                    traces = DenoptimIO.readPopulationMembersTraces(genSummary);
+                for (CandidateLW cand : traces)
                 {
                     // We keep only the oldest version of a candidate.
                     // To this end, note that the equality of CandidateLW
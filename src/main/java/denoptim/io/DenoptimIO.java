@@ -29,6 +29,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -1041,29 +1044,152 @@ public class DenoptimIO
 //------------------------------------------------------------------------------
 
     /**
-     * Extract selected properties from SDF files.
+     * Extract selected properties from SDF files. The file is scanned as a 
+     * stream of lines: the atom and bond blocks are skipped without any 
+     * parsing, and only the title (i.e., {@link CDKConstants#TITLE}) and the 
+     * data fields named by the given property names are collected.
      * @param pathName to the file to read
      * @param propNames the list of property names to extract. All the rest will be
      * ignored.
-     * @return a corresponding map of results.
+     * @return a corresponding map of results, one per record in the file. 
+     * Properties not found in a record are mapped to <code>null</code>.
      * @throws DENOPTIMException if the file cannot be read.
      */
     public static List<Map<String, Object>> readSDFProperties(String pathName, 
             List<String> propNames) throws DENOPTIMException 
     {
         List<Map<String,Object>> results = new ArrayList<Map<String,Object>>();
-        ArrayList<IAtomContainer> iacs =  DenoptimIO.readSDFFile(pathName);
-        for (IAtomContainer iac : iacs)
+        Set<String> wanted = new HashSet<String>(propNames);
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(pathName), 
+                Charset.defaultCharset()))
         {
-            Map<String,Object> properties = new HashMap<String,Object>();
-            for (String propName : propNames)
+            Map<String,Object> properties = null;
+            while ((properties = scanSDFRecord(br, propNames, wanted)) != null)
             {
-                properties.put(propName, iac.getProperty(propName));
+                results.add(properties);
             }
-            results.add(properties);
+        } catch (IOException e) {
+            throw new DENOPTIMException("Unable to read SDF properties from "
+                    + pathName, e);
+        }
+        if (results.isEmpty()) {
+            throw new DENOPTIMException("No data found in " + pathName);
         }
         return results;
     }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Scans the next record of an SDF file collecting the requested 
+     * properties. Multi-line values are joined as done by CDK's 
+     * {@link MDLV2000Reader}.
+     * @param br the reader positioned at the beginning of a record.
+     * @param propNames the names of the properties to report.
+     * @param wanted the names of the properties to collect.
+     * @return the properties of the record, or <code>null</code> if there is 
+     * no other record.
+     * @throws IOException
+     */
+    private static Map<String,Object> scanSDFRecord(BufferedReader br, 
+            List<String> propNames, Set<String> wanted) throws IOException
+    {
+        String line = br.readLine();
+        while (line != null && line.trim().isEmpty())
+            line = br.readLine();
+        if (line == null)
+            return null;
+        
+        Map<String,Object> properties = new HashMap<String,Object>();
+        for (String propName : propNames)
+        {
+            properties.put(propName, null);
+        }
+        
+        // Header block: title, program line, comment, and counts line
+        if (wanted.contains(CDKConstants.TITLE) && line.length() > 0)
+            properties.put(CDKConstants.TITLE, line);
+        br.readLine();
+        br.readLine();
+        String counts = br.readLine();
+        
+        // Skip the atom and bond blocks with no parsing of their content
+        int linesToSkip = 0;
+        if (counts != null && counts.length() >= 6 && !counts.contains("V3000"))
+        {
+            try {
+                linesToSkip = Integer.parseInt(counts.substring(0, 3).trim())
+                        + Integer.parseInt(counts.substring(3, 6).trim());
+            } catch (NumberFormatException e) {
+                linesToSkip = 0;
+            }
+        }
+        for (int i=0; i<linesToSkip; i++)
+        {
+            if (br.readLine() == null)
+                return properties;
+        }
+        
+        // Anything else in the connection table ends with 'M  END'
+        while ((line = br.readLine()) != null)
+        {
+            if (line.startsWith("M  END"))
+                break;
+            if (line.startsWith("$$$$"))
+                return properties;
+        }
+        
+        // Data items
+        String header = null;
+        boolean wrap = false;
+        StringBuilder data = new StringBuilder();
+        while ((line = br.readLine()) != null && !line.startsWith("$$$$"))
+        {
+            String newHeader = getSDFDataHeader(line);
+            if (newHeader != null)
+            {
+                if (header != null && wanted.contains(header))
+                    properties.put(header, data.toString());
+                header = newHeader;
+                wrap = false;
+                data.setLength(0);
+                continue;
+            }
+            if (header == null || !wanted.contains(header))
+                continue;
+            if (data.length() > 0 || !line.equals(" "))
+                line = line.trim();
+            if (line.isEmpty())
+                continue;
+            if (!wrap && data.length() > 0)
+                data.append('\n');
+            data.append(line);
+            wrap = line.length() == 80;
+        }
+        if (header != null && wanted.contains(header))
+            properties.put(header, data.toString());
+        return properties;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the name of the data item defined in the given header line
+     * (i.e., <code>&gt; &lt;NAME&gt;</code>) or <code>null</code> if the 
+     * line is not a header of a data item.
+     */
+    private static String getSDFDataHeader(String line)
+    {
+        if (!line.startsWith(">"))
+            return null;
+        int i = line.indexOf('<', 1);
+        if (i < 0)
+            return null;
+        int j = line.indexOf('>', i);
+        if (j < 0)
+            return null;
+        return line.substring(i + 1, j);
+    }
 
 //------------------------------------------------------------------------------
 
@@ -0,0 +1,534 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import denoptim.constants.DENOPTIMConstants;
+import denoptim.exception.DENOPTIMException;
+import denoptim.graph.Candidate;
+import denoptim.graph.CandidateLW;
+
+/**
+ * Append-only database summarizing the candidates of a GA or FSE run.
+ * The database is a single file containing a sequence of self-delimited and
+ * checksummed records. Each record has the same columns: kind of record,
+ * generation, level, fitness, offset of the graph in the store of graphs
+ * (if any), unique identifier (UID), name, error, provenance, and
+ * pathname of the file defining the candidate. There are two kinds of
+ * records:
+ * <ul>
+ * <li>records of candidates, which are written once the candidate has been
+ * evaluated, and</li>
+ * <li>records of population members, which are written every time a
+ * candidate is found to be a member of the population at the end of a
+ * generation.</li>
+ * </ul>
+ * Records are indexed in memory by UID and by generation when the
+ * database is opened, and upon appending new records. When opening an
+ * existing database, any incomplete record at the end of the file (i.e.,
+ * the result of a crash) is removed.
+ *
+ * @author Marco Foscato
+ */
+
+public class RunSummaryDatabase implements Closeable
+{
+    /**
+     * Marks the beginning of a record
+     */
+    private static final int MAGIC = 0x44525331;
+
+    /**
+     * Kind of records that define an evaluated candidate
+     */
+    private static final byte CANDIDATE = 1;
+
+    /**
+     * Kind of records that define membership in a population
+     */
+    private static final byte MEMBER = 2;
+
+    /**
+     * Size of a record with no content: magic number, length of content,
+     * and checksum.
+     */
+    private static final int MINRECORDSIZE = 12;
+
+    /**
+     * The data file
+     */
+    private final File file;
+
+    /**
+     * Access to the data file
+     */
+    private final RandomAccessFile data;
+
+    /**
+     * Flag signaling that this database cannot be changed.
+     */
+    private final boolean readOnly;
+
+    /**
+     * Offset where the next record will be written
+     */
+    private long end = 0;
+
+    /**
+     * All candidates in the order they have been appended.
+     */
+    private final List<CandidateLW> candidates = new ArrayList<CandidateLW>();
+
+    /**
+     * Index of candidates by UID.
+     */
+    private final Map<String,CandidateLW> candidatesByUID =
+            new HashMap<String,CandidateLW>();
+
+    /**
+     * Offset of the graph of each candidate in the store of graphs, by UID.
+     */
+    private final Map<String,Long> graphOffsetsByUID =
+            new HashMap<String,Long>();
+
+    /**
+     * Index of candidates by generation.
+     */
+    private final Map<Integer,List<CandidateLW>> candidatesByGeneration =
+            new HashMap<Integer,List<CandidateLW>>();
+
+    /**
+     * Index of population members by generation.
+     */
+    private final Map<Integer,List<CandidateLW>> membersByGeneration =
+            new HashMap<Integer,List<CandidateLW>>();
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Opens a database, and creates its file if it does not exist already
+     * and the database is not read-only.
+     * @param file the file of the database.
+     * @param readOnly use <code>true</code> to prevent any change of the
+     * file.
+     * @throws DENOPTIMException if the file cannot be accessed.
+     */
+    public RunSummaryDatabase(File file, boolean readOnly)
+            throws DENOPTIMException
+    {
+        this.file = file;
+        this.readOnly = readOnly;
+        try
+        {
+            data = new RandomAccessFile(file, readOnly ? "r" : "rw");
+            load();
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot open run summary database '"
+                    + file + "'.", e);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param runFolder the folder of a GA or FSE run.
+     * @return the file of the run summary database of the given run.
+     */
+    public static File getFile(String runFolder)
+    {
+        return new File(runFolder + DENOPTIMConstants.FSEP
+                + DENOPTIMConstants.RUNSUMMARYDBFILENAME);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Opens the run summary database of the given run for reading, if such
+     * database exists.
+     * @param runFolder the folder of a GA or FSE run.
+     * @return the database or <code>null</code> if the run has no database.
+     * @throws DENOPTIMException if the database exists but cannot be read.
+     */
+    public static RunSummaryDatabase openIfExists(File runFolder)
+            throws DENOPTIMException
+    {
+        File dbFile = getFile(runFolder.getAbsolutePath());
+        if (!dbFile.exists())
+            return null;
+        return new RunSummaryDatabase(dbFile, true);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads all the complete records and removes any incomplete record from
+     * the end of the file.
+     */
+    private void load() throws IOException
+    {
+        long length = data.length();
+        long pos = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16)))
+        {
+            while (pos < length)
+            {
+                int size = readRecord(in, length - pos);
+                if (size < 0)
+                    break;
+                pos = pos + size;
+            }
+        }
+        if (!readOnly && pos < length)
+            data.setLength(pos);
+        end = pos;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a record and adds it to the in-memory indexes.
+     * @param in the source positioned at the beginning of the record.
+     * @param available the max number of bytes that the record can occupy.
+     * @return the size of the record, or -1 if the source does not contain a
+     * complete and valid record.
+     */
+    private int readRecord(DataInputStream in, long available)
+            throws IOException
+    {
+        if (available < MINRECORDSIZE)
+            return -1;
+        try
+        {
+            if (in.readInt() != MAGIC)
+                return -1;
+            int length = in.readInt();
+            if (length < 0 || MINRECORDSIZE + (long) length > available)
+                return -1;
+            byte[] content = new byte[length];
+            in.readFully(content);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (in.readInt() != (int) crc.getValue())
+                return -1;
+            decode(content);
+            return MINRECORDSIZE + length;
+        } catch (EOFException e)
+        {
+            return -1;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private void decode(byte[] content) throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(content));
+        byte kind = in.readByte();
+        int generation = in.readInt();
+        int level = in.readInt();
+        double fitness = in.readDouble();
+        long graphOffset = in.readLong();
+        String uid = readString(in);
+        String name = readString(in);
+        String error = readString(in);
+        String provenance = readString(in);
+        String pathname = readString(in);
+
+        CandidateLW item = new CandidateLW(uid, name, pathname);
+        if (!Double.isNaN(fitness))
+            item.setFitness(fitness);
+        if (error != null)
+            item.setError(error);
+        if (provenance != null)
+            item.setGeneratingSource(provenance);
+        if (generation >= 0)
+            item.setGeneration(generation);
+        if (level >= 0)
+            item.setLevel(level);
+
+        if (kind == MEMBER)
+        {
+            membersByGeneration.computeIfAbsent(generation,
+                    k -> new ArrayList<CandidateLW>()).add(item);
+        } else {
+            candidates.add(item);
+            candidatesByUID.putIfAbsent(uid, item);
+            graphOffsetsByUID.putIfAbsent(uid, graphOffset);
+            candidatesByGeneration.computeIfAbsent(generation,
+                    k -> new ArrayList<CandidateLW>()).add(item);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+//------------------------------------------------------------------------------
+
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException
+    {
+        if (str == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+//------------------------------------------------------------------------------
+
+    private static byte[] encode(byte kind, Candidate c, int generation,
+            int level, long graphOffset) throws DENOPTIMException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content))
+        {
+            out.writeByte(kind);
+            out.writeInt(generation);
+            out.writeInt(level);
+            out.writeDouble(c.hasFitness() ? c.getFitness() : Double.NaN);
+            out.writeLong(graphOffset);
+            writeString(out, c.getUID());
+            writeString(out, c.getName());
+            writeString(out, c.getError());
+            String provenance = null;
+            if (c.getGraph() != null && c.getGraph().getLocalMsg() != null
+                    && !c.getGraph().getLocalMsg().isEmpty())
+                provenance = c.getGraph().getLocalMsg();
+            writeString(out, provenance);
+            writeString(out, c.getSDFFile());
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot encode record of candidate "
+                    + c.getName(), e);
+        }
+        byte[] bytes = content.toByteArray();
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(
+                MINRECORDSIZE + bytes.length);
+        try (DataOutputStream out = new DataOutputStream(record))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot encode record of candidate "
+                    + c.getName(), e);
+        }
+        return record.toByteArray();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Appends the record of an evaluated candidate. This method can be called
+     * by concurrent threads.
+     * @param c the candidate.
+     * @param generation the generation that generated the candidate, or -1.
+     * @param level the level that generated the candidate, or -1.
+     * @param graphOffset the offset of the graph of the candidate in the
+     * store of graphs, or -1.
+     * @throws DENOPTIMException if the record could not be written.
+     */
+    public void appendCandidate(Candidate c, int generation, int level,
+            long graphOffset) throws DENOPTIMException
+    {
+        append(encode(CANDIDATE, c, generation, level, graphOffset));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Appends the record of a member of the population at the end of a
+     * generation. This method can be called by concurrent threads.
+     * @param c the member of the population.
+     * @param generation the generation at the end of which the candidate is
+     * member of the population.
+     * @throws DENOPTIMException if the record could not be written.
+     */
+    public void appendPopulationMember(Candidate c, int generation)
+            throws DENOPTIMException
+    {
+        append(encode(MEMBER, c, generation, -1, -1));
+    }
+
+//------------------------------------------------------------------------------
+
+    private void append(byte[] record) throws DENOPTIMException
+    {
+        if (readOnly)
+        {
+            throw new DENOPTIMException("Cannot write to read-only run "
+                    + "summary database '" + file + "'.");
+        }
+        synchronized (this)
+        {
+            try
+            {
+                data.seek(end);
+                data.write(record);
+                end = end + record.length;
+                decode(Arrays.copyOfRange(record, 8,
+                        record.length - 4));
+            } catch (IOException e)
+            {
+                throw new DENOPTIMException("Cannot append record to '"
+                        + file + "'.", e);
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the number of candidates in this database.
+     */
+    public synchronized int size()
+    {
+        return candidates.size();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return all the candidates in the order they have been appended.
+     */
+    public synchronized List<CandidateLW> getCandidates()
+    {
+        return new ArrayList<CandidateLW>(candidates);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param generation the generation that generated the candidates.
+     * @return the candidates generated by the given generation. Can be empty.
+     */
+    public synchronized List<CandidateLW> getCandidatesOfGeneration(
+            int generation)
+    {
+        return new ArrayList<CandidateLW>(candidatesByGeneration.getOrDefault(
+                generation, new ArrayList<CandidateLW>()));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param generation the generation at the end of which we want to know
+     * the population.
+     * @return the members of the population at the end of the given
+     * generation. Can be empty.
+     */
+    public synchronized List<CandidateLW> getPopulationMembers(int generation)
+    {
+        return new ArrayList<CandidateLW>(membersByGeneration.getOrDefault(
+                generation, new ArrayList<CandidateLW>()));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param uid the unique identifier of the candidate.
+     * @return the first candidate appended with the given UID, or
+     * <code>null</code>.
+     */
+    public synchronized CandidateLW getCandidate(String uid)
+    {
+        return candidatesByUID.get(uid);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @param uid the unique identifier of the candidate.
+     * @return the offset of the graph of the first candidate appended with
+     * the given UID in the store of graphs, or -1.
+     */
+    public synchronized long getGraphOffset(String uid)
+    {
+        return graphOffsetsByUID.getOrDefault(uid, -1L);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Forces any record appended so far to be written to the storage device.
+     * @throws DENOPTIMException if the storage device cannot be updated.
+     */
+    public synchronized void sync() throws DENOPTIMException
+    {
+        if (readOnly)
+            return;
+        try
+        {
+            data.getChannel().force(false);
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Cannot synchronize '" + file + "'.",
+                    e);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        data.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,519 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import denoptim.exception.DENOPTIMException;
+import denoptim.fragspace.FragmentSpace;
+import denoptim.graph.AttachmentPoint;
+import denoptim.graph.DGraph;
+import denoptim.graph.Edge;
+import denoptim.graph.Edge.BondType;
+import denoptim.graph.Fragment;
+import denoptim.graph.Ring;
+import denoptim.graph.SymmetricVertexes;
+import denoptim.graph.Vertex;
+import denoptim.graph.Vertex.BBType;
+
+/**
+ * Reads and writes {@link DGraph}s in the JSON format with streaming
+ * readers and writers, and without any whitespace. The format is the same
+ * as the one produced by {@link DENOPTIMgson}, so any graph written by this
+ * class without a {@link FragmentSpace} can be read by any other reader of
+ * graphs, and any graph written by {@link DENOPTIMgson}, including
+ * pretty-printed ones, can be read by this class.
+ * <p>When a {@link FragmentSpace} is given, vertices that are unaltered copies
+ * of the building blocks in the libraries of that space (see
+ * {@link Fragment#isUnalteredCopyOf(Fragment)}) are written as references
+ * to the building block followed by the few data that differ from the
+ * building block, i.e., the identifiers of the vertex and attachment
+ * points, and any change of properties. Such graphs can only be read by
+ * giving this class the same {@link FragmentSpace}.</p>
+ *
+ * @author Marco Foscato
+ */
+
+public class CompactGraphCodec
+{
+    /**
+     * Key of the reference to a building block in a library
+     */
+    private static final String LIBREFKEY = "libraryRef";
+
+    private static final String BBTYPEKEY = "bbType";
+    private static final String BBIDKEY = "bbId";
+    private static final String VERTEXIDKEY = "vertexId";
+    private static final String APIDSKEY = "apIds";
+    private static final String APINMOLKEY = "apInMol";
+    private static final String PROPSKEY = "properties";
+    private static final String REMOVEDPROPSKEY = "removedProperties";
+
+//------------------------------------------------------------------------------
+
+    private CompactGraphCodec()
+    {}
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Produces the compact JSON representation of a graph.
+     * @param graph the graph to encode.
+     * @param fragSpace the fragment space defining the libraries of building
+     * blocks that can be referenced, or <code>null</code> to write all
+     * vertices in full.
+     * @return the JSON string.
+     */
+    public static String toJson(DGraph graph, FragmentSpace fragSpace)
+    {
+        StringWriter sw = new StringWriter();
+        try
+        {
+            write(graph, fragSpace, sw);
+        } catch (IOException e)
+        {
+            // Cannot happen when writing to a string
+            throw new IllegalStateException(e);
+        }
+        return sw.toString();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes the compact JSON representation of a graph.
+     * @param graph the graph to encode. Identifiers of vertices and
+     * attachment points are expected to be unique within the graph.
+     * @param fragSpace the fragment space defining the libraries of building
+     * blocks that can be referenced, or <code>null</code> to write all
+     * vertices in full.
+     * @param out where to write. This is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void write(DGraph graph, FragmentSpace fragSpace,
+            Writer out) throws IOException
+    {
+        Gson gson = DENOPTIMgson.getWriter();
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("graphId").value(graph.getGraphId());
+
+        writer.name("gVertices").beginArray();
+        for (Vertex v : graph.getVertexList())
+        {
+            Fragment original = getOriginalInLibrary(v, fragSpace);
+            if (original != null)
+            {
+                writeReference((Fragment) v, original, gson, writer);
+            } else {
+                gson.toJson(v, v.getClass(), writer);
+            }
+        }
+        writer.endArray();
+
+        writer.name("gEdges").beginArray();
+        for (Edge e : graph.getEdgeList())
+        {
+            gson.toJson(e, Edge.class, writer);
+        }
+        writer.endArray();
+
+        writer.name("gRings").beginArray();
+        for (Ring r : graph.getRings())
+        {
+            gson.toJson(r, Ring.class, writer);
+        }
+        writer.endArray();
+
+        writer.name("symVertices").beginArray();
+        Iterator<SymmetricVertexes> symIter = graph.getSymSetsIterator();
+        while (symIter.hasNext())
+        {
+            gson.toJson(symIter.next(), SymmetricVertexes.class, writer);
+        }
+        writer.endArray();
+
+        writer.endObject();
+        writer.flush();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Finds the building block that a vertex can be written as a reference
+     * to.
+     * @return the building block in the library, or <code>null</code> if
+     * the vertex must be written in full.
+     */
+    private static Fragment getOriginalInLibrary(Vertex v,
+            FragmentSpace fragSpace)
+    {
+        if (fragSpace == null || !(v instanceof Fragment))
+            return null;
+        Vertex original = fragSpace.getLibraryVertex(
+                v.getBuildingBlockType(), v.getBuildingBlockId());
+        if (original instanceof Fragment
+                && ((Fragment) v).isUnalteredCopyOf((Fragment) original))
+            return (Fragment) original;
+        return null;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static void writeReference(Fragment v, Fragment original,
+            Gson gson, JsonWriter writer) throws IOException
+    {
+        writer.beginObject();
+        writer.name(LIBREFKEY).beginObject();
+        writer.name(BBTYPEKEY).value(v.getBuildingBlockType().name());
+        writer.name(BBIDKEY).value(v.getBuildingBlockId());
+        writer.endObject();
+        writer.name(VERTEXIDKEY).value(v.getVertexId());
+
+        boolean hasApInMol = false;
+        writer.name(APIDSKEY).beginArray();
+        for (AttachmentPoint ap : v.getAttachmentPoints())
+        {
+            writer.value(ap.getID());
+            if (ap.getAtomPositionNumberInMol() != -1)
+                hasApInMol = true;
+        }
+        writer.endArray();
+        if (hasApInMol)
+        {
+            writer.name(APINMOLKEY).beginArray();
+            for (AttachmentPoint ap : v.getAttachmentPoints())
+            {
+                writer.value(ap.getAtomPositionNumberInMol());
+            }
+            writer.endArray();
+        }
+
+        // Only the properties that the copy of the building block does not
+        // already have in the same form are written.
+        Map<Object,Object> props = v.getProperties();
+        Map<Object,Object> changedProps = new HashMap<Object,Object>();
+        if (props != null)
+        {
+            for (Map.Entry<Object,Object> entry : props.entrySet())
+            {
+                Object key = entry.getKey();
+                Object value = entry.getValue();
+                if (key instanceof String && value instanceof String
+                        && value.equals(original.getProperty(key)))
+                    continue;
+                changedProps.put(key, value);
+            }
+        }
+        if (!changedProps.isEmpty())
+        {
+            writer.name(PROPSKEY);
+            gson.toJson(changedProps, Map.class, writer);
+        }
+        Map<Object,Object> originalProps = original.getProperties();
+        if (originalProps != null)
+        {
+            List<String> removedKeys = new ArrayList<String>();
+            for (Object key : originalProps.keySet())
+            {
+                if (key instanceof String && (props == null
+                        || !props.containsKey(key)))
+                    removedKeys.add((String) key);
+            }
+            if (!removedKeys.isEmpty())
+            {
+                writer.name(REMOVEDPROPSKEY).beginArray();
+                for (String key : removedKeys)
+                {
+                    writer.value(key);
+                }
+                writer.endArray();
+            }
+        }
+        writer.endObject();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a graph from its JSON representation, whether compact or not.
+     * @param json the JSON string.
+     * @param fragSpace the fragment space needed to resolve references to
+     * building blocks, or <code>null</code> if the JSON is expected to
+     * contain no such reference.
+     * @return the graph.
+     * @throws JsonParseException if the JSON cannot be interpreted.
+     */
+    public static DGraph fromJson(String json, FragmentSpace fragSpace)
+    {
+        return read(new StringReader(json), fragSpace);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a graph from its JSON representation, whether compact or not.
+     * @param in the source of the JSON text. This is not closed.
+     * @param fragSpace the fragment space needed to resolve references to
+     * building blocks, or <code>null</code> if the JSON is expected to
+     * contain no such reference.
+     * @return the graph.
+     * @throws JsonParseException if the JSON cannot be interpreted.
+     */
+    public static DGraph read(Reader in, FragmentSpace fragSpace)
+    {
+        Gson gson = DENOPTIMgson.getReader();
+        int graphId = 0;
+        List<Vertex> vertices = new ArrayList<Vertex>();
+        JsonArray edgeArr = null;
+        JsonArray ringArr = null;
+        JsonArray symArr = null;
+        try
+        {
+            JsonReader reader = new JsonReader(in);
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL)
+                {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name)
+                {
+                    case "graphId":
+                        graphId = reader.nextInt();
+                        break;
+
+                    case "gVertices":
+                        reader.beginArray();
+                        while (reader.hasNext())
+                        {
+                            JsonObject o = JsonParser.parseReader(reader)
+                                    .getAsJsonObject();
+                            if (o.has(LIBREFKEY))
+                            {
+                                vertices.add(readReference(o, fragSpace,
+                                        gson));
+                            } else {
+                                vertices.add(gson.fromJson(o, Vertex.class));
+                            }
+                        }
+                        reader.endArray();
+                        break;
+
+                    // Edges, rings, and symmetric sets refer to vertices
+                    // and APs, so they are resolved once all vertices are
+                    // available.
+                    case "gEdges":
+                        edgeArr = JsonParser.parseReader(reader)
+                                .getAsJsonArray();
+                        break;
+
+                    case "gRings":
+                        ringArr = JsonParser.parseReader(reader)
+                                .getAsJsonArray();
+                        break;
+
+                    case "symVertices":
+                        symArr = JsonParser.parseReader(reader)
+                                .getAsJsonArray();
+                        break;
+
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e)
+        {
+            throw new JsonParseException("Could not read graph from JSON.", e);
+        }
+
+        DGraph graph = new DGraph(vertices, new ArrayList<Edge>());
+        graph.setGraphId(graphId);
+
+        Map<Long,Vertex> vertexById = new HashMap<Long,Vertex>();
+        Map<Integer,AttachmentPoint> apById =
+                new HashMap<Integer,AttachmentPoint>();
+        for (Vertex v : vertices)
+        {
+            vertexById.putIfAbsent(v.getVertexId(), v);
+            for (AttachmentPoint ap : v.getAttachmentPoints())
+            {
+                // Regenerate reference to AP owner
+                ap.setOwner(v);
+                apById.putIfAbsent(ap.getID(), ap);
+            }
+        }
+
+        if (edgeArr != null)
+        {
+            for (JsonElement e : edgeArr)
+            {
+                JsonObject o = e.getAsJsonObject();
+                AttachmentPoint srcAP = apById.get(o.get("srcAPID").getAsInt());
+                AttachmentPoint trgAP = apById.get(o.get("trgAPID").getAsInt());
+                if (srcAP == null || trgAP == null)
+                {
+                    throw new JsonParseException("Edge refers to unknown "
+                            + "attachment point: " + o);
+                }
+                graph.addEdge(new Edge(srcAP, trgAP,
+                        gson.fromJson(o.get("bondType"), BondType.class)));
+            }
+        }
+
+        if (ringArr != null)
+        {
+            for (JsonElement e : ringArr)
+            {
+                JsonObject o = e.getAsJsonObject();
+                Ring ring = new Ring();
+                for (JsonElement re : o.get("vertices").getAsJsonArray())
+                {
+                    ring.addVertex(getVertex(vertexById, re.getAsLong()));
+                }
+                ring.setBondType(gson.fromJson(o.get("bndTyp"),
+                        BondType.class));
+                graph.addRing(ring);
+            }
+        }
+
+        if (symArr != null)
+        {
+            for (JsonElement elSet : symArr)
+            {
+                SymmetricVertexes ss = new SymmetricVertexes();
+                for (JsonElement elId : elSet.getAsJsonArray())
+                {
+                    ss.add(getVertex(vertexById, elId.getAsLong()));
+                }
+                try
+                {
+                    graph.addSymmetricSetOfVertices(ss);
+                } catch (DENOPTIMException e)
+                {
+                    throw new JsonParseException("Vertex listed in multiple "
+                            + "symmetric sets. Check this: " + elSet, e);
+                }
+            }
+        }
+        return graph;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static Vertex getVertex(Map<Long,Vertex> vertexById, long id)
+    {
+        Vertex v = vertexById.get(id);
+        if (v == null)
+        {
+            throw new JsonParseException("Reference to unknown vertex " + id);
+        }
+        return v;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Rebuilds a vertex from a reference to a building block and the data
+     * that differ from such building block.
+     */
+    private static Vertex readReference(JsonObject o, FragmentSpace fragSpace,
+            Gson gson)
+    {
+        JsonObject ref = o.getAsJsonObject(LIBREFKEY);
+        if (fragSpace == null)
+        {
+            throw new JsonParseException("Graph refers to building blocks "
+                    + "of a library (" + ref + "), but no fragment space is "
+                    + "available to resolve such references.");
+        }
+        BBType bbt = BBType.valueOf(ref.get(BBTYPEKEY).getAsString());
+        int bbId = ref.get(BBIDKEY).getAsInt();
+        Vertex original = fragSpace.getLibraryVertex(bbt, bbId);
+        if (!(original instanceof Fragment))
+        {
+            throw new JsonParseException("Could not find building block "
+                    + bbId + " of type " + bbt + " in the fragment space.");
+        }
+        Fragment v = ((Fragment) original).copyOnWriteClone();
+        v.setVertexId(o.get(VERTEXIDKEY).getAsLong());
+
+        JsonArray apIds = o.getAsJsonArray(APIDSKEY);
+        JsonArray apInMol = o.has(APINMOLKEY) ?
+                o.getAsJsonArray(APINMOLKEY) : null;
+        List<AttachmentPoint> aps = v.getAttachmentPoints();
+        if (apIds.size() != aps.size()
+                || (apInMol != null && apInMol.size() != aps.size()))
+        {
+            throw new JsonParseException("Mismatch between the attachment "
+                    + "points of building block " + bbId + " of type " + bbt
+                    + " and those of vertex " + v.getVertexId() + ".");
+        }
+        for (int i=0; i<aps.size(); i++)
+        {
+            aps.get(i).setID(apIds.get(i).getAsInt());
+            if (apInMol != null)
+                aps.get(i).setAtomPositionNumberInMol(
+                        apInMol.get(i).getAsInt());
+        }
+
+        if (o.has(REMOVEDPROPSKEY))
+        {
+            for (JsonElement key : o.getAsJsonArray(REMOVEDPROPSKEY))
+            {
+                v.removeProperty(key.getAsString());
+            }
+        }
+        if (o.has(PROPSKEY))
+        {
+            Map<?,?> props = gson.fromJson(o.get(PROPSKEY), Map.class);
+            for (Map.Entry<?,?> entry : props.entrySet())
+            {
+                v.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        return v;
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -166,6 +166,11 @@ public class DENOPTIMgson
                     && field.getName().equals("jGraphFragIsomorphism")) {
                 return true;
             }
+            if (field.getDeclaringClass() == Fragment.class
+                    && (field.getName().equals("molIsShared")
+                            || field.getName().equals("sharableMol"))) {
+                return true;
+            }
             if (field.getDeclaringClass() == Template.class
                     && field.getName().equals("mol")) {
                 return true;
@@ -214,6 +219,11 @@ public class DENOPTIMgson
                     && field.getName().equals("jGraphFragIsomorphism")) {
                 return true;
             }
+            if (field.getDeclaringClass() == Fragment.class
+                    && (field.getName().equals("molIsShared")
+                            || field.getName().equals("sharableMol"))) {
+                return true;
+            }
             if (field.getDeclaringClass() == Fragment.class
                     && field.getName().equals("lstSymAPs")) {
                 return true;
@@ -127,7 +127,7 @@ public class ThreeDimTreeBuilder
     {
         this.alignIn3D = align;
     }
-    
+
 //------------------------------------------------------------------------------
 
     /**
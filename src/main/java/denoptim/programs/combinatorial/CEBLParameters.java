@@ -19,6 +19,7 @@
 package denoptim.programs.combinatorial;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -34,6 +35,7 @@ import denoptim.files.FileUtils;
 import denoptim.fitness.FitnessParameters;
 import denoptim.graph.DGraph;
 import denoptim.io.DenoptimIO;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.logging.StaticLogger;
 import denoptim.programs.RunTimeParameters;
 
@@ -129,6 +131,27 @@ public class CEBLParameters extends RunTimeParameters
      * serialized graphs can be generated and used to prepare the test suite.
      */
     private boolean prepareChkAndSerForTests = false;
+    
+    /**
+     * The seed value for random number generation, or 0 to use a random seed.
+     */
+    private long seed = 0L;
+    
+    /**
+     * Flag requesting each task to draw random numbers from its own stream,
+     * which is derived from the seed and from the identity of the task.
+     */
+    private boolean useRandomStreamPerTask = false;
+    
+    /**
+     * Flag requesting to maintain the run summary database.
+     */
+    private boolean writeRunSummaryDB = false;
+    
+    /**
+     * The run summary database, if any.
+     */
+    private RunSummaryDatabase runSummaryDB = null;
 
 //-----------------------------------------------------------------------------
     
@@ -245,6 +268,48 @@ public class CEBLParameters extends RunTimeParameters
 	    return prepareChkAndSerForTests;
     }
 
+//-----------------------------------------------------------------------------
+    
+    /**
+     * Returns the run summary database, which is opened upon the first
+     * request.
+     * @return the run summary database or <code>null</code> if we are not 
+     * configured to maintain such database.
+     * @throws DENOPTIMException if the database cannot be opened.
+     */
+    public synchronized RunSummaryDatabase getRunSummaryDatabase() 
+            throws DENOPTIMException
+    {
+        if (!writeRunSummaryDB)
+            return null;
+        if (runSummaryDB == null)
+        {
+            runSummaryDB = new RunSummaryDatabase(
+                    RunSummaryDatabase.getFile(workDir), false);
+        }
+        return runSummaryDB;
+    }
+    
+//-----------------------------------------------------------------------------
+
+    /**
+     * Closes the run summary database, if it is open.
+     */
+    public synchronized void closeRunSummaryDatabase()
+    {
+        if (runSummaryDB == null)
+            return;
+        try
+        {
+            runSummaryDB.close();
+        } catch (IOException e)
+        {
+            getLogger().log(Level.WARNING, "Unable to close run summary "
+                    + "database. " + e.getMessage());
+        }
+        runSummaryDB = null;
+    }
+
 //-----------------------------------------------------------------------------
 
     /**
@@ -273,6 +338,23 @@ public class CEBLParameters extends RunTimeParameters
 		    chkptFile = value;
 		    chkptRestart = true;
 		    break;
+        case "RUNSUMMARYDATABASE":
+            writeRunSummaryDB = true;
+            break;
+        case "RANDOMSEED=":
+            try
+            {
+                seed = Long.parseLong(value);
+            }
+            catch (Throwable t)
+            {
+                msg = "Unable to understand value " + key + "'" + value + "'";
+                throw new DENOPTIMException(msg);
+            }
+            break;
+        case "RANDOMSTREAMPERTASK":
+            useRandomStreamPerTask = true;
+            break;
 		case "DEVEL-PREPAREFILESFORTESTS=":
 		    prepareChkAndSerForTests = true;
 		    break;
@@ -440,6 +522,12 @@ public class CEBLParameters extends RunTimeParameters
 		
         processOtherParameters();
         
+        if (seed != 0)
+        {
+            startRandomizer(seed);
+        }
+        getRandomizer().setTaskStreams(useRandomStreamPerTask);
+        
 		if (useGivenRoots)
 		{
             try
@@ -21,7 +21,9 @@ package denoptim.programs.combinatorial;
 import java.io.File;
 
 import denoptim.combinatorial.CombinatorialExplorerByLayer;
+import denoptim.fitness.FitnessParameters;
 import denoptim.fragspace.FragmentSpaceParameters;
+import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.task.ProgramTask;
 
 
@@ -52,6 +54,11 @@ import denoptim.task.ProgramTask;
 public class FragSpaceExplorer  extends ProgramTask
 {
     private  CombinatorialExplorerByLayer combinatorialAlgorithm = null;
+    
+    /**
+     * The settings of the run.
+     */
+    private CEBLParameters settings = null;
 
 //------------------------------------------------------------------------------
     
@@ -70,7 +77,7 @@ public class FragSpaceExplorer  extends ProgramTask
     @Override
     public void runProgram() throws Throwable
     {
-        CEBLParameters settings = new CEBLParameters();
+        settings = new CEBLParameters();
         if (workDir != null)
         {
             settings.setWorkDirectory(workDir.getAbsolutePath());
@@ -93,6 +100,14 @@ public class FragSpaceExplorer  extends ProgramTask
         {
             combinatorialAlgorithm.stopRun();
         }
+        // Resources are closed when the run terminates normally. Here, we 
+        // make sure any pending change (e.g., in the fitness cache) is saved.
+        if (settings != null 
+                && settings.containsParameters(ParametersType.FIT_PARAMS))
+        {
+            ((FitnessParameters) settings.getParameters(
+                    ParametersType.FIT_PARAMS)).closeFitnessResources();
+        }
         super.handleThrowable();
     }
       
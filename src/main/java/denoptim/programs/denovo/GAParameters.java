@@ -19,9 +19,11 @@
 
 package denoptim.programs.denovo;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
@@ -29,9 +31,11 @@ import java.util.logging.Level;
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
 import denoptim.files.FileFormat;
+import denoptim.io.RunSummaryDatabase;
 import denoptim.logging.Monitor;
 import denoptim.logging.StaticLogger;
 import denoptim.programs.RunTimeParameters;
+import denoptim.utils.IUIDStore;
 import denoptim.utils.MutationType;
 
 
@@ -286,9 +290,16 @@ public class GAParameters extends RunTimeParameters
      * The seed value for random number generation
      */
     protected long seed = 0L;
+    
+    /**
+     * Flag requesting each task to draw random numbers from its own stream,
+     * which is derived from the seed and from the identity of the task.
+     */
+    protected boolean useRandomStreamPerTask = false;
    
     /**
-     * Parallelization scheme: synchronous or asynchronous 
+     * Parallelization scheme: synchronous (1), asynchronous (2), or 
+     * steady-state (3)
      */
     protected int parallelizationScheme = 1;
 
@@ -361,6 +372,12 @@ public class GAParameters extends RunTimeParameters
      */
     public String uidMemoryOnDisk = "memory_UIDs.txt";
     
+    /**
+     * Type of storage used for unique identifiers that do not fit in the 
+     * memory (see {@link GAParameters#maxUIDMemory}).
+     */
+    public IUIDStore.Type uidStoreType = IUIDStore.Type.HASHED;
+    
     /**
      * Flag that enables the ignoring of mutated graphs that lead to a failure 
      * in the evaluation of graphs that generates SMILES, InChI and molecular
@@ -405,6 +422,16 @@ public class GAParameters extends RunTimeParameters
      * members each time we report the population details on file.
      */
     protected boolean writePopOnDisk = false;
+    
+    /**
+     * Flag requesting to maintain the run summary database.
+     */
+    protected boolean writeRunSummaryDB = false;
+    
+    /**
+     * The run summary database, if any.
+     */
+    private RunSummaryDatabase runSummaryDB = null;
 
 //------------------------------------------------------------------------------
     
@@ -859,6 +886,9 @@ public class GAParameters extends RunTimeParameters
                     case "ASYNCHRONOUS":
                         parallelizationScheme = 2;
                         break;
+                    case "STEADYSTATE":
+                        parallelizationScheme = 3;
+                        break;
                     default:
                         throw new DENOPTIMException("Unknown parallelization scheme.");
                 }
@@ -920,6 +950,12 @@ public class GAParameters extends RunTimeParameters
                 break;
             }
             
+            case "RANDOMSTREAMPERTASK":
+            {
+                useRandomStreamPerTask = true;
+                break;
+            }
+            
             case "MAXTRIESPERPOPULATION=":
             {
                 if (value.length() > 0)
@@ -1316,6 +1352,27 @@ public class GAParameters extends RunTimeParameters
                 break;
             }
             
+            case "RUNSUMMARYDATABASE":
+            {
+                writeRunSummaryDB = true;
+                break;
+            }
+            
+            case "UIDSTOREONDISK=":
+            {
+                try
+                {
+                    uidStoreType = IUIDStore.Type.valueOf(value.trim()
+                            .toUpperCase());
+                } catch (IllegalArgumentException e)
+                {
+                    throw new DENOPTIMException("Unknown type of UID store '" 
+                            + value + "'. Use one of " 
+                            + Arrays.toString(IUIDStore.Type.values()), e);
+                }
+                break;
+            }
+            
             default:
                 msg = "Keyword " + key + " is not a known GeneticAlgorithm-" 
                         + "related keyword. Check input files.";
@@ -1397,6 +1454,7 @@ public class GAParameters extends RunTimeParameters
         } else {
             startRandomizer(seed);
         }
+        getRandomizer().setTaskStreams(useRandomStreamPerTask);
 
         int nproc = Runtime.getRuntime().availableProcessors();
         if (numParallelTasks == 0)
@@ -1545,6 +1603,48 @@ public class GAParameters extends RunTimeParameters
         return writePopOnDisk;
     }
 
+//------------------------------------------------------------------------------
+    
+    /**
+     * Returns the run summary database, which is opened upon the first
+     * request.
+     * @return the run summary database or <code>null</code> if we are not 
+     * configured to maintain such database.
+     * @throws DENOPTIMException if the database cannot be opened.
+     */
+    public synchronized RunSummaryDatabase getRunSummaryDatabase() 
+            throws DENOPTIMException
+    {
+        if (!writeRunSummaryDB)
+            return null;
+        if (runSummaryDB == null)
+        {
+            runSummaryDB = new RunSummaryDatabase(
+                    RunSummaryDatabase.getFile(dataDir), false);
+        }
+        return runSummaryDB;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Closes the run summary database, if it is open.
+     */
+    public synchronized void closeRunSummaryDatabase()
+    {
+        if (runSummaryDB == null)
+            return;
+        try
+        {
+            runSummaryDB.close();
+        } catch (IOException e)
+        {
+            getLogger().log(Level.WARNING, "Unable to close run summary "
+                    + "database. " + e.getMessage());
+        }
+        runSummaryDB = null;
+    }
+
 //------------------------------------------------------------------------------
 
 }
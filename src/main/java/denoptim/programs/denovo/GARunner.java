@@ -26,8 +26,10 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import denoptim.fitness.FitnessParameters;
 import denoptim.ga.EvolutionaryAlgorithm;
 import denoptim.ga.ExternalCmdsListener;
+import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.task.ProgramTask;
 
 /**
@@ -57,6 +59,11 @@ public class GARunner extends ProgramTask
      * Pending tasks of the service listening for commands.
      */
     private Future<?> futureWatchers = null;
+    
+    /**
+     * The settings of the run.
+     */
+    private GAParameters settings = null;
 
 
 //------------------------------------------------------------------------------
@@ -76,7 +83,7 @@ public class GARunner extends ProgramTask
     @Override
     public void runProgram() throws Throwable
     {
-        GAParameters settings = new GAParameters();
+        settings = new GAParameters();
         if (workDir != null)
         {
             settings.setWorkingDirectory(workDir.getAbsolutePath());
@@ -109,6 +116,14 @@ public class GARunner extends ProgramTask
         {
             ea.stopRun();
         }
+        // Resources are closed when the run terminates normally. Here, we 
+        // make sure any pending change (e.g., in the fitness cache) is saved.
+        if (settings != null 
+                && settings.containsParameters(ParametersType.FIT_PARAMS))
+        {
+            ((FitnessParameters) settings.getParameters(
+                    ParametersType.FIT_PARAMS)).closeFitnessResources();
+        }
         stopExternalCmdListener();
         super.handleThrowable();
     }
@@ -36,10 +36,12 @@ import org.openscience.cdk.interfaces.IAtomContainer;
 
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
+import denoptim.fitness.FitnessParameters;
 import denoptim.graph.DGraph;
 import denoptim.io.DenoptimIO;
 import denoptim.logging.StaticLogger;
 import denoptim.programs.combinatorial.FragSpaceExplorer;
+import denoptim.programs.RunTimeParameters.ParametersType;
 import denoptim.programs.denovo.GARunner;
 import denoptim.task.FitnessTask;
 
@@ -159,6 +161,23 @@ public class FPRunner
     {
         cleanup();
         tpe.shutdown();
+        closeFitnessResources();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Closes the resources used to evaluate the fitness, e.g., the cache of 
+     * fitness values, which would otherwise lose any pending change.
+     */
+
+    private void closeFitnessResources()
+    {
+        if (settings.containsParameters(ParametersType.FIT_PARAMS))
+        {
+            ((FitnessParameters) settings.getParameters(
+                    ParametersType.FIT_PARAMS)).closeFitnessResources();
+        }
     }
 
 //------------------------------------------------------------------------------
@@ -208,6 +227,7 @@ public class FPRunner
         // wait a bit for pending tasks to finish
         tpe.shutdown();
         tpe.awaitTermination(settings.getWallTime(), TimeUnit.SECONDS);
+        closeFitnessResources();
         String collectiveOutput = settings.getOutputFile().getAbsolutePath();
         for (int i=0; i<graphs.size(); i++)
         {
@@ -29,6 +29,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -37,6 +38,7 @@ import denoptim.exception.DENOPTIMException;
 import denoptim.files.FileFormat;
 import denoptim.files.FileUtils;
 import denoptim.fragmenter.FragmentClusterer;
+import denoptim.fragmenter.IsomorphicFamilyRegistry;
 import denoptim.fragmenter.ScaffoldingPolicy;
 import denoptim.graph.DGraph;
 import denoptim.graph.Template.ContractLevel;
@@ -89,6 +91,12 @@ public class FragmenterParameters extends RunTimeParameters
      */
     private int numParallelTasks = 1;
     
+    /**
+     * Flag requesting to stream the input structures to the parallel tasks
+     * instead of splitting the input into one file per task.
+     */
+    private boolean streaming = false;
+    
     /**
      * Flag requesting the execution of elemental analysis and comparison 
      * of the content of the structure file against a given molecular formula.
@@ -293,7 +301,8 @@ public class FragmenterParameters extends RunTimeParameters
      * a fragmentation process. The key is a string that identifies the vertex 
      * without having to hold the entire data structure of it.
      */
-    private Map<String,Integer> isomorphsCount = new HashMap<String,Integer>();
+    private Map<String,Integer> isomorphsCount = 
+            new ConcurrentHashMap<String,Integer>();
     
     //TODO: We could use something like the SizeControlledSet used in the EA to 
     // collect unique identifiers.
@@ -304,11 +313,11 @@ public class FragmenterParameters extends RunTimeParameters
     private AtomicInteger unqIsomorphicFamilyId = new AtomicInteger(0);
     
     /**
-     * Synchronization lock for manipulating a) the collections (i.e., MW slots)
-     * of fragments produced by multiple threads and b) the relative information 
-     * (i.e., isomorphic family size).
+     * Registry of the isomorphic families of fragments produced by multiple
+     * threads. Manages the collections (i.e., MW slots) of fragments and the 
+     * relative information (i.e., isomorphic family size).
      */
-    public final Object MANAGEMWSLOTSSLOCK = new Object();
+    private IsomorphicFamilyRegistry isomorphicFamilyRegistry = null;
     
     /**
      * Flag signaling the request to analyze each isomorphic family to extract
@@ -414,6 +423,28 @@ public class FragmenterParameters extends RunTimeParameters
         this.numParallelTasks = numParallelTasks;
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the input structures are to be streamed 
+     * to the parallel tasks rather than split into one file per task.
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Sets the use of streaming of input structures to the parallel tasks.
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
@@ -902,6 +933,20 @@ public class FragmenterParameters extends RunTimeParameters
         return isomorphsCount;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the registry of isomorphic families of fragments.
+     */
+    public synchronized IsomorphicFamilyRegistry getIsomorphicFamilyRegistry()
+    {
+        if (isomorphicFamilyRegistry == null)
+        {
+            isomorphicFamilyRegistry = new IsomorphicFamilyRegistry(this);
+        }
+        return isomorphicFamilyRegistry;
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -1272,6 +1317,10 @@ public class FragmenterParameters extends RunTimeParameters
                 }
                 break;
                 
+            case "STREAMING":
+                streaming = true;
+                break;
+                
             case "VERBOSITY=":
                 try
                 {
@@ -19,10 +19,20 @@
 package  denoptim.programs.graphlisthandler;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
+import denoptim.exception.DENOPTIMException;
 import denoptim.graph.DGraph;
 import denoptim.task.ProgramTask;
 
@@ -35,6 +45,11 @@ import denoptim.task.ProgramTask;
 
 public class GraphListsHandler extends ProgramTask
 {
+    /**
+     * Number of graphs of the first list that are matched against the second
+     * list before reporting the results.
+     */
+    private static final int CHUNKSIZE = 1000;
 
 //------------------------------------------------------------------------------
     
@@ -60,6 +75,18 @@ public class GraphListsHandler extends ProgramTask
         glhParams.startProgramSpecificLogger(loggerIdentifier,false); //to STDOUT
         glhParams.printParameters();
 
+        if (glhParams.getNumTasks() > 0)
+        {
+            runParallelComparison(glhParams);
+        } else {
+            runSerialComparison(glhParams);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    private void runSerialComparison(GraphListsHandlerParameters glhParams)
+    {
         Set<DGraph> matchedA = new HashSet<DGraph>();
         Set<DGraph> matchedB = new HashSet<DGraph>();
         
@@ -121,6 +148,140 @@ public class GraphListsHandler extends ProgramTask
         }
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Compares the two lists of graphs by matching only graphs that have the
+     * same isomorphism-invariant hash code, and reports matches and
+     * un-matches of the first list as soon as they are available.
+     */
+    private void runParallelComparison(GraphListsHandlerParameters glhParams)
+            throws DENOPTIMException
+    {
+        List<DGraph> graphsA = glhParams.inGraphsA;
+        List<DGraph> graphsB = glhParams.inGraphsB;
+        
+        glhParams.getLogger().log(Level.INFO, NL + " ===> Matches of list A");
+        int[] counter = new int[1];
+        BitSet matchedB = findMatches(graphsA, graphsB, 
+                glhParams.getNumTasks(), (i, j) -> {
+                    if (j < 0)
+                    {
+                        glhParams.getLogger().log(Level.INFO, NL + "Entry in "
+                                + "list A #" + i + " has no match" + NL
+                                + graphsA.get(i).toString());
+                    } else {
+                        counter[0]++;
+                        glhParams.getLogger().log(Level.INFO, "Entry in list "
+                                + "A #" + i + " is the same as entry in list "
+                                + "B #" + j);
+                    }
+                });
+
+        glhParams.getLogger().log(Level.INFO, NL + " #Matches in list A: " 
+                + counter[0] + "/" + graphsA.size());
+        glhParams.getLogger().log(Level.INFO, " #Matches in list B: " 
+                + matchedB.cardinality() + "/" + graphsB.size());
+        
+        glhParams.getLogger().log(Level.INFO, NL + " ===> Un-matches in list B");
+        for (int j = matchedB.nextClearBit(0); j < graphsB.size(); 
+                j = matchedB.nextClearBit(j+1))
+        {
+            glhParams.getLogger().log(Level.INFO, NL + "Entry in original list"
+                    + " #" + j);
+            glhParams.getLogger().log(Level.INFO, graphsB.get(j).toString());
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Finds, for each graph of the first list, the first graph of the second
+     * list that is isomorphic to it. Only graphs with the same 
+     * isomorphism-invariant hash code (see {@link DGraph#getInvariantHash()}),
+     * which accounts for the number of vertexes, the identity of the building
+     * blocks, and the connectivity, are compared by the 
+     * expensive isomorphism check. The comparisons run in parallel on a
+     * dedicated pool of threads, while the results are given to the consumer
+     * on the calling thread, in the order of the first list, and in chunks
+     * of {@value #CHUNKSIZE} graphs.
+     * @param graphsA the first list of graphs.
+     * @param graphsB the second list of graphs.
+     * @param numThreads the number of threads to use.
+     * @param consumer receives the index of each graph in the first list and
+     * the index of the first isomorphic graph in the second list, or -1 if
+     * no graph of the second list is isomorphic.
+     * @return the set of indexes of the graphs in the second list that are
+     * isomorphic to at least one graph of the first list.
+     * @throws DENOPTIMException if any comparison fails.
+     */
+    public static BitSet findMatches(List<DGraph> graphsA, 
+            List<DGraph> graphsB, int numThreads,
+            BiConsumer<Integer,Integer> consumer) throws DENOPTIMException
+    {
+        BitSet matchedB = new BitSet(graphsB.size());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+        try
+        {
+            // Computing the hash code also prepares the graphs for the
+            // isomorphism check, so no graph is modified concurrently later.
+            long[] hashesB = pool.submit(() -> graphsB.parallelStream()
+                    .mapToLong(g -> g.getInvariantHash()).toArray()).get();
+            Map<Long,List<Integer>> bucketsB = new HashMap<Long,List<Integer>>();
+            for (int j=0; j<hashesB.length; j++)
+            {
+                bucketsB.computeIfAbsent(hashesB[j], 
+                        k -> new ArrayList<Integer>()).add(j);
+            }
+            
+            for (int from=0; from<graphsA.size(); from=from+CHUNKSIZE)
+            {
+                int start = from;
+                int end = Math.min(from+CHUNKSIZE, graphsA.size());
+                int[] matches = pool.submit(() -> IntStream.range(start, end)
+                        .parallel()
+                        .map(i -> findFirstMatch(graphsA.get(i), graphsB, 
+                                bucketsB))
+                        .toArray()).get();
+                for (int i=start; i<end; i++)
+                {
+                    int j = matches[i-start];
+                    if (j >= 0)
+                        matchedB.set(j);
+                    consumer.accept(i, j);
+                }
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new DENOPTIMException("Interrupted while comparing lists "
+                    + "of graphs.", e);
+        } catch (ExecutionException e)
+        {
+            throw new DENOPTIMException("Failed comparison of lists of "
+                    + "graphs.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return matchedB;
+    }
+    
+//------------------------------------------------------------------------------
+
+    private static int findFirstMatch(DGraph graphA, List<DGraph> graphsB,
+            Map<Long,List<Integer>> bucketsB)
+    {
+        List<Integer> candidates = bucketsB.get(graphA.getInvariantHash());
+        if (candidates == null)
+            return -1;
+        for (Integer j : candidates)
+        {
+            if (graphA.isIsomorphicTo(graphsB.get(j)))
+                return j;
+        }
+        return -1;
+    }
+    
 //------------------------------------------------------------------------------
 
 }
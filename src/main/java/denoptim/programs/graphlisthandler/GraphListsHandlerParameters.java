@@ -62,6 +62,12 @@ public class GraphListsHandlerParameters extends RunTimeParameters
     private String outGraphsFile = null;
     private FileFormat outGraphsFormat = FileFormat.GRAPHSDF; //Default
     
+    /**
+     * Number of parallel tasks used to compare the lists of graphs. When zero
+     * (default), the graphs are compared one pair after the other.
+     */
+    private int numParallelTasks = 0;
+    
 //-----------------------------------------------------------------------------
     
     /**
@@ -86,6 +92,17 @@ public class GraphListsHandlerParameters extends RunTimeParameters
         return outGraphsFormat;
     }
 
+//-----------------------------------------------------------------------------
+
+    /**
+     * @return the number of parallel tasks used to compare the lists of
+     * graphs, or zero if graphs are compared one pair after the other.
+     */
+    public int getNumTasks()
+    {
+        return numParallelTasks;
+    }
+
 //-----------------------------------------------------------------------------
 
     /**
@@ -119,6 +136,17 @@ public class GraphListsHandlerParameters extends RunTimeParameters
         case "LOGFILE=":
             logFile = value;
             break;
+        case "PARALLELTASKS=":
+            try
+            {
+                numParallelTasks = Integer.parseInt(value);
+            }
+            catch (Throwable t)
+            {
+                msg = "Unable to understand value " + key + "'" + value + "'";
+                throw new DENOPTIMException(msg);
+            }
+            break;
         case "VERBOSITY=":
             try
             {
@@ -205,6 +233,13 @@ public class GraphListsHandlerParameters extends RunTimeParameters
             throw new DENOPTIMException(msg);
         }
 
+        if (numParallelTasks < 0)
+        {
+            msg = "Number of parallel tasks must be positive or zero, but was "
+                    + numParallelTasks + ". Check you input.";
+            throw new DENOPTIMException(msg);
+        }
+
         if (outGraphsFile != null && FileUtils.checkExists(outGraphsFile))
         {
             msg = "Ouput file '" + outGraphsFile + "' exists aleary!";
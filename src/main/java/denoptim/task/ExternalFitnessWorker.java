@@ -0,0 +1,555 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.task;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import denoptim.exception.DENOPTIMException;
+
+/**
+ * A long-lived external process that evaluates the fitness of any number of
+ * candidates, one at a time.
+ * <p>The process communicates via its standard input and output by
+ * exchanging messages. Each message is made of a header, which is a JSON
+ * object written in a single line, possibly followed by a payload of
+ * exactly as many bytes as specified by the <code>length</code> member
+ * of the header. Lines of the standard output that do not start with
+ * '<code>{</code>' are ignored, so that the process can print any other
+ * output. The standard error is logged.</p>
+ * <p>Requests sent to the worker:</p>
+ * <ul>
+ * <li><code>{"cmd":"ping","id":N}</code> health check. The worker must reply
+ * with a header with the same <code>id</code>.</li>
+ * <li><code>{"cmd":"evaluate","id":N,"length":L,...}</code> followed by the
+ * SDF representation of the candidate (L bytes). The header contains also
+ * the pathnames of the input and output files, the work space, the task ID,
+ * and, optionally, the pathname of the file collecting unique identifiers,
+ * i.e., the same information given to a one-shot fitness provider.
+ * The worker replies with a header with the same <code>id</code> and the
+ * content of the output SDF file as payload. If the reply has no payload,
+ * the worker is expected to have written the output file itself. A reply
+ * with <code>"status":"error"</code> signals a failure of the worker.</li>
+ * <li><code>{"cmd":"shutdown"}</code> asks the worker to terminate.</li>
+ * </ul>
+ */
+public class ExternalFitnessWorker
+{
+    /**
+     * The command line used to start the process
+     */
+    private final List<String> command;
+
+    /**
+     * Logger
+     */
+    private final Logger logger;
+
+    /**
+     * The running process
+     */
+    private Process proc = null;
+
+    /**
+     * Stream used to send messages to the process
+     */
+    private OutputStream toWorker = null;
+
+    /**
+     * Messages received from the process
+     */
+    private final LinkedBlockingQueue<Message> replies =
+            new LinkedBlockingQueue<Message>();
+
+    /**
+     * Last lines of the standard error of the process
+     */
+    private final Deque<String> lastErrorLines = new ArrayDeque<String>();
+
+    /**
+     * Max number of lines of standard error we remember.
+     */
+    private static final int MAXERRLINES = 20;
+
+    /**
+     * Identifier of the last message sent
+     */
+    private long lastMsgId = 0;
+
+    /**
+     * Time of last successful communication with the process
+     */
+    private long lastContact = 0;
+
+    /**
+     * Flag signaling that this worker cannot be used any longer.
+     */
+    private volatile boolean broken = false;
+
+    /**
+     * Max size of the payload of a message, in bytes.
+     */
+    private static final int MAXPAYLOADSIZE = 256 * 1024 * 1024;
+
+    /**
+     * Marker signaling the end of the output stream of the process.
+     */
+    private static final Message ENDOFSTREAM = new Message(null, new byte[0]);
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A message of the protocol.
+     */
+    private static class Message
+    {
+        final JsonObject header;
+        final byte[] payload;
+
+        Message(JsonObject header, byte[] payload)
+        {
+            this.header = header;
+            this.payload = payload;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor. Does not start the process.
+     * @param command the command line that starts the process.
+     * @param logger where to log.
+     */
+    public ExternalFitnessWorker(List<String> command, Logger logger)
+    {
+        this.command = new ArrayList<String>(command);
+        this.logger = logger;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Starts the process and waits until it replies to a health check.
+     * @param timeout the max time we wait for the process to become
+     * responsive, in milliseconds. Use 0 to wait indefinitely.
+     * @throws DENOPTIMException if the process cannot be started or does
+     * not reply.
+     */
+    public void start(long timeout) throws DENOPTIMException
+    {
+        try
+        {
+            proc = new ProcessBuilder(command).start();
+        } catch (IOException e)
+        {
+            broken = true;
+            throw new DENOPTIMException("Could not start external fitness "
+                    + "worker '" + String.join(" ", command) + "'.", e);
+        }
+        toWorker = proc.getOutputStream();
+
+        Thread outReader = new Thread(() -> readReplies(proc.getInputStream()),
+                "ExternalFitnessWorker-out");
+        outReader.setDaemon(true);
+        outReader.start();
+
+        Thread errReader = new Thread(() -> readErrors(proc.getErrorStream()),
+                "ExternalFitnessWorker-err");
+        errReader.setDaemon(true);
+        errReader.start();
+
+        if (!ping(timeout))
+        {
+            shutdown();
+            throw new DENOPTIMException("External fitness worker '"
+                    + String.join(" ", command) + "' did not reply to health "
+                    + "check. " + getLastErrors());
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if the process is running and did not fail
+     * any communication.
+     */
+    public boolean isAlive()
+    {
+        return !broken && proc != null && proc.isAlive();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the time (as from {@link System#currentTimeMillis()}) of the last
+     * successful communication with the process.
+     */
+    public long getLastContact()
+    {
+        return lastContact;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks that the process is responsive.
+     * @param timeout the max time we wait for a reply, in milliseconds.
+     * Use 0 to wait indefinitely.
+     * @return <code>true</code> if the process replied in time.
+     */
+    public boolean ping(long timeout)
+    {
+        JsonObject header = new JsonObject();
+        header.addProperty("cmd", "ping");
+        try
+        {
+            exchange(header, null, timeout);
+        } catch (DENOPTIMException e)
+        {
+            logger.log(Level.WARNING, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Sends a candidate to the process and waits for the result.
+     * @param sdf the content of the input SDF file.
+     * @param details any information to add to the header of the request.
+     * @param timeout the max time we wait for a reply, in milliseconds.
+     * Use 0 to wait indefinitely.
+     * @return the content of the output SDF file, or an empty array if the
+     * process has written the output file by itself.
+     * @throws DENOPTIMException if the process failed, did not reply in time,
+     * or replied with an error.
+     */
+    public byte[] evaluate(byte[] sdf, JsonObject details, long timeout)
+            throws DENOPTIMException
+    {
+        JsonObject header = details.deepCopy();
+        header.addProperty("cmd", "evaluate");
+        Message reply = exchange(header, sdf, timeout);
+        if (reply.header.has("status")
+                && "error".equals(reply.header.get("status").getAsString()))
+        {
+            String msg = "";
+            if (reply.header.has("message"))
+                msg = reply.header.get("message").getAsString();
+            throw new DENOPTIMException("External fitness worker returned an "
+                    + "error: " + msg);
+        }
+        return reply.payload;
+    }
+
+//------------------------------------------------------------------------------
+
+    private Message exchange(JsonObject header, byte[] payload, long timeout)
+            throws DENOPTIMException
+    {
+        if (!isAlive())
+        {
+            throw new DENOPTIMException("External fitness worker is not "
+                    + "running. " + getLastErrors());
+        }
+        long msgId = ++lastMsgId;
+        header.addProperty("id", msgId);
+        header.addProperty("length", payload == null ? 0 : payload.length);
+        try
+        {
+            toWorker.write((header.toString() + "\n").getBytes(
+                    StandardCharsets.UTF_8));
+            if (payload != null)
+                toWorker.write(payload);
+            toWorker.flush();
+        } catch (IOException e)
+        {
+            broken = true;
+            throw new DENOPTIMException("Could not send data to external "
+                    + "fitness worker. " + getLastErrors(), e);
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true)
+        {
+            Message reply = null;
+            try
+            {
+                if (timeout > 0)
+                {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait > 0)
+                        reply = replies.poll(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    reply = replies.take();
+                }
+            } catch (InterruptedException e)
+            {
+                broken = true;
+                Thread.currentThread().interrupt();
+                throw new DENOPTIMException("Interrupted while waiting for "
+                        + "external fitness worker.", e);
+            }
+            if (reply == null)
+            {
+                broken = true;
+                throw new DENOPTIMException("External fitness worker did not "
+                        + "reply within " + timeout + " ms.");
+            }
+            if (reply == ENDOFSTREAM)
+            {
+                broken = true;
+                throw new DENOPTIMException("External fitness worker "
+                        + "terminated unexpectedly. " + getLastErrors());
+            }
+            if (reply.header.has("id")
+                    && reply.header.get("id").getAsLong() == msgId)
+            {
+                lastContact = System.currentTimeMillis();
+                return reply;
+            }
+            logger.log(Level.FINE, "Ignoring unexpected reply from external "
+                    + "fitness worker: " + reply.header);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads messages from the standard output of the process until the end of
+     * the stream, or until a message cannot be read. In either case, the end
+     * of the communication is signaled to any thread waiting for a reply.
+     */
+    private void readReplies(InputStream is)
+    {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        try
+        {
+            while (true)
+            {
+                String line = readLine(dis);
+                if (line == null)
+                    break;
+                if (!line.startsWith("{"))
+                {
+                    logger.log(Level.FINE, "External fitness worker: " + line);
+                    continue;
+                }
+                JsonObject header;
+                try
+                {
+                    header = JsonParser.parseString(line).getAsJsonObject();
+                } catch (RuntimeException e)
+                {
+                    logger.log(Level.WARNING, "Unreadable message from "
+                            + "external fitness worker: " + line);
+                    continue;
+                }
+                int length = getPayloadLength(header);
+                if (length < 0)
+                {
+                    // We cannot know where the next message starts
+                    logger.log(Level.WARNING, "Invalid payload length in "
+                            + "message from external fitness worker: "
+                            + line);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                dis.readFully(payload);
+                replies.add(new Message(header, payload));
+            }
+        } catch (EOFException e)
+        {
+            // Process terminated while sending payload
+        } catch (IOException e)
+        {
+            logger.log(Level.FINE, "Stopped reading from external fitness "
+                    + "worker: " + e.getMessage());
+        } catch (RuntimeException e)
+        {
+            logger.log(Level.WARNING, "Stopped reading from external fitness "
+                    + "worker: " + e);
+        } finally {
+            broken = true;
+            replies.add(ENDOFSTREAM);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the length of the payload from the header of a message.
+     * @return the length of the payload, or -1 if the length is not a number
+     * in the range of acceptable lengths.
+     */
+    private static int getPayloadLength(JsonObject header)
+    {
+        if (!header.has("length"))
+            return 0;
+        long length;
+        try
+        {
+            length = header.get("length").getAsLong();
+        } catch (RuntimeException e)
+        {
+            return -1;
+        }
+        if (length < 0 || length > MAXPAYLOADSIZE)
+            return -1;
+        return (int) length;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads a line terminated by '\n', or the end of stream.
+     * @return the line without line terminator, or <code>null</code> if the
+     * end of the stream has been reached.
+     */
+    private static String readLine(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) != -1)
+        {
+            if (b == '\n')
+                break;
+            baos.write(b);
+        }
+        if (b == -1 && baos.size() == 0)
+            return null;
+        String line = baos.toString(StandardCharsets.UTF_8.name());
+        if (line.endsWith("\r"))
+            line = line.substring(0, line.length()-1);
+        return line;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the standard error of the process so that the process never
+     * blocks on a full buffer.
+     */
+    private void readErrors(InputStream is)
+    {
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(is, StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = br.readLine()) != null)
+            {
+                logger.log(Level.FINE, "External fitness worker ERR> " + line);
+                synchronized (lastErrorLines)
+                {
+                    lastErrorLines.addLast(line);
+                    if (lastErrorLines.size() > MAXERRLINES)
+                        lastErrorLines.removeFirst();
+                }
+            }
+        } catch (IOException e)
+        {
+            // Nothing to do: the process is gone.
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private String getLastErrors()
+    {
+        synchronized (lastErrorLines)
+        {
+            if (lastErrorLines.isEmpty())
+                return "";
+            return "Last lines of standard error: "
+                    + String.join(" | ", lastErrorLines);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Asks the process to terminate and, if it does not do so quickly,
+     * destroys it.
+     */
+    public void shutdown()
+    {
+        broken = true;
+        if (proc == null)
+            return;
+        try
+        {
+            if (proc.isAlive())
+            {
+                JsonObject header = new JsonObject();
+                header.addProperty("cmd", "shutdown");
+                toWorker.write((header.toString() + "\n").getBytes(
+                        StandardCharsets.UTF_8));
+                toWorker.flush();
+            }
+            toWorker.close();
+        } catch (IOException e)
+        {
+            // Process may be gone already
+        }
+        try
+        {
+            if (!proc.waitFor(2, TimeUnit.SECONDS))
+                proc.destroyForcibly();
+        } catch (InterruptedException e)
+        {
+            proc.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Destroys the process without waiting.
+     */
+    void destroy()
+    {
+        broken = true;
+        if (proc != null)
+            proc.destroyForcibly();
+    }
+
+//------------------------------------------------------------------------------
+
+}
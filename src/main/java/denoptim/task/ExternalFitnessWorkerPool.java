@@ -0,0 +1,239 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.task;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonObject;
+
+import denoptim.exception.DENOPTIMException;
+
+/**
+ * A fixed-size collection of {@link ExternalFitnessWorker}s. Workers are
+ * started when first needed, and restarted when they crash or fail to reply
+ * in time.
+ */
+public class ExternalFitnessWorkerPool implements Closeable
+{
+    /**
+     * The command line used to start each worker
+     */
+    private final List<String> command;
+
+    /**
+     * Max time we wait for a worker to reply, in milliseconds. Zero means no
+     * limit.
+     */
+    private final long timeout;
+
+    /**
+     * Logger
+     */
+    private final Logger logger;
+
+    /**
+     * Permits to use a worker: there are as many permits as workers.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Workers that are running and not in use.
+     */
+    private final ConcurrentLinkedQueue<ExternalFitnessWorker> idle =
+            new ConcurrentLinkedQueue<ExternalFitnessWorker>();
+
+    /**
+     * All workers that have been started and not shut down.
+     */
+    private final List<ExternalFitnessWorker> all =
+            new ArrayList<ExternalFitnessWorker>();
+
+    /**
+     * Workers that have been idle for longer than this time (milliseconds)
+     * are checked before being used.
+     */
+    private static final long HEALTHCHECKINTERVAL = 30000;
+
+    /**
+     * Flag signaling that this pool has been closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Hook making sure the workers do not survive the JVM
+     */
+    private final Thread shutDownHook;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor. Does not start any worker.
+     * @param command the command line that starts a worker.
+     * @param size the max number of workers.
+     * @param timeout the max time we wait for a worker to reply, in
+     * milliseconds. Use 0 to wait indefinitely.
+     * @param logger where to log.
+     */
+    public ExternalFitnessWorkerPool(List<String> command, int size,
+            long timeout, Logger logger)
+    {
+        this.command = new ArrayList<String>(command);
+        this.permits = new Semaphore(size, true);
+        this.timeout = timeout;
+        this.logger = logger;
+        this.shutDownHook = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (all)
+                {
+                    for (ExternalFitnessWorker w : all)
+                        w.destroy();
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutDownHook);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Evaluates a candidate using the first available worker.
+     * Waits if all workers are busy.
+     * @param sdf the content of the input SDF file.
+     * @param details any information to add to the request.
+     * @return the content of the output SDF file, or an empty array if the
+     * worker has written the output file by itself.
+     * @throws DENOPTIMException if the worker failed. The worker is then
+     * replaced by a new one when needed.
+     */
+    public byte[] evaluate(byte[] sdf, JsonObject details)
+            throws DENOPTIMException
+    {
+        try
+        {
+            permits.acquire();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new DENOPTIMException("Interrupted while waiting for an "
+                    + "external fitness worker.", e);
+        }
+        ExternalFitnessWorker worker = null;
+        try
+        {
+            worker = getRunningWorker();
+            return worker.evaluate(sdf, details, timeout);
+        } finally {
+            if (worker != null)
+            {
+                if (worker.isAlive() && !closed)
+                {
+                    idle.offer(worker);
+                } else {
+                    discard(worker);
+                }
+            }
+            permits.release();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private ExternalFitnessWorker getRunningWorker() throws DENOPTIMException
+    {
+        if (closed)
+        {
+            throw new DENOPTIMException("Pool of external fitness workers has "
+                    + "been closed.");
+        }
+        ExternalFitnessWorker worker;
+        while ((worker = idle.poll()) != null)
+        {
+            if (worker.isAlive() && (System.currentTimeMillis()
+                    - worker.getLastContact() < HEALTHCHECKINTERVAL
+                    || worker.ping(timeout)))
+            {
+                return worker;
+            }
+            logger.log(Level.WARNING, "External fitness worker failed health "
+                    + "check. Restarting it.");
+            discard(worker);
+        }
+        worker = new ExternalFitnessWorker(command, logger);
+        synchronized (all)
+        {
+            all.add(worker);
+        }
+        try
+        {
+            worker.start(timeout);
+        } catch (DENOPTIMException e)
+        {
+            discard(worker);
+            throw e;
+        }
+        return worker;
+    }
+
+//------------------------------------------------------------------------------
+
+    private void discard(ExternalFitnessWorker worker)
+    {
+        worker.shutdown();
+        synchronized (all)
+        {
+            all.remove(worker);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Shuts down all the workers. Workers that are in use are shut down as
+     * soon as they complete their current task.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        ExternalFitnessWorker worker;
+        while ((worker = idle.poll()) != null)
+        {
+            discard(worker);
+        }
+        try
+        {
+            Runtime.getRuntime().removeShutdownHook(shutDownHook);
+        } catch (IllegalStateException e)
+        {
+            // JVM is shutting down already
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -21,6 +21,11 @@ package denoptim.task;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.logging.Level;
 
 import org.apache.commons.io.FileUtils;
@@ -30,9 +35,12 @@ import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
+import com.google.gson.JsonObject;
+
 import denoptim.combinatorial.GraphBuildingTask;
 import denoptim.constants.DENOPTIMConstants;
 import denoptim.exception.DENOPTIMException;
+import denoptim.fitness.FitnessCache;
 import denoptim.fitness.FitnessParameters;
 import denoptim.fitness.FitnessProvider;
 import denoptim.graph.Candidate;
@@ -103,6 +111,13 @@ public abstract class FitnessTask extends Task
      * Settings for the calculation of the fitness
      */
     protected FitnessParameters fitnessSettings;
+    
+    /**
+     * Fitness of {@link #fitProvMol} calculated by the internal fitness 
+     * provider as part of a batch, or <code>null</code> if the fitness has 
+     * yet to be calculated.
+     */
+    protected Double precomputedFitness = null;
 
 //------------------------------------------------------------------------------
     
@@ -114,6 +129,89 @@ public abstract class FitnessTask extends Task
         this.dGraph = c.getGraph();
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Prepares the molecular representation that this task gives to the 
+     * internal fitness provider, so that the fitness of many candidates can
+     * be calculated in one batch (see 
+     * {@link #evaluateInBatch(List, FitnessParameters)}) before running the
+     * tasks. Subclasses that can do so must override this method, which by 
+     * default does nothing.
+     * @return <code>true</code> if the molecular representation is ready to 
+     * be evaluated, <code>false</code> if this task has to evaluate its 
+     * candidate when running.
+     */
+    public boolean prepareForBatchEvaluation()
+    {
+        return false;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Calculates the fitness of the candidates of many tasks with a single 
+     * internal fitness provider (see 
+     * {@link FitnessProvider#getFitness(List)}). Each task will then use the
+     * resulting fitness value instead of running the fitness provider on its 
+     * own. Tasks that can reuse the fitness of a previously evaluated 
+     * candidate are ignored, and so are those that could not be evaluated in 
+     * the batch, which will therefore run the fitness provider on their own.
+     * Nothing is done if the fitness is not calculated by the internal 
+     * fitness provider.
+     * @param tasks the tasks to evaluate. Their molecular representation must
+     * have been prepared (see {@link #prepareForBatchEvaluation()}).
+     * @param settings the settings defining the fitness provider.
+     * @throws DENOPTIMException if the fitness provider cannot be configured.
+     */
+    public static void evaluateInBatch(List<FitnessTask> tasks,
+            FitnessParameters settings) throws DENOPTIMException
+    {
+        if (settings.useExternalFitness())
+            return;
+        
+        FitnessCache fitnessCache = settings.getFitnessCache();
+        List<FitnessTask> batch = new ArrayList<FitnessTask>();
+        List<IAtomContainer> mols = new ArrayList<IAtomContainer>();
+        for (FitnessTask task : tasks)
+        {
+            if (task.fitProvMol == null)
+                continue;
+            if (fitnessCache != null)
+            {
+                try
+                {
+                    if (fitnessCache.getFitness(task.result.getUID()) != null)
+                        continue;
+                } catch (IOException e)
+                {
+                    // The task will deal with the cache on its own
+                }
+            }
+            batch.add(task);
+            mols.add(task.fitProvMol);
+        }
+        if (batch.isEmpty())
+            return;
+        
+        double[] fitness;
+        FitnessProvider fp = settings.acquireFitnessProvider();
+        try
+        {
+            // NB: here we remove dummy atoms!
+            fitness = fp.getFitness(mols);
+        } finally {
+            settings.releaseFitnessProvider(fp);
+        }
+        for (int i=0; i<batch.size(); i++)
+        {
+            if (!Double.isNaN(fitness[i]))
+            {
+                batch.get(i).precomputedFitness = fitness[i];
+            }
+        }
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
@@ -134,6 +232,9 @@ public abstract class FitnessTask extends Task
                     fitnessSettings.getRandomizer());
             fitProvMol = t3d.convertGraphTo3DAtomContainer(dGraph, true);
     	}
+        // The fitness provider may alter the molecular representation, which
+        // can be the one kept by the candidate
+        result.clearThreeDimTree();
         
         if (fitProvMol.getProperty(DENOPTIMConstants.PROVENANCE) == null ||
         		fitProvMol.getProperty(
@@ -142,9 +243,31 @@ public abstract class FitnessTask extends Task
         	fitProvMol.removeProperty(DENOPTIMConstants.PROVENANCE);
         }
         
+        // Reuse the fitness of an identical candidate, if we have it
+        FitnessCache fitnessCache = fitnessSettings.getFitnessCache();
+        String uidForCache = result.getUID();
+        Double cachedFitness = null;
+        if (fitnessCache != null)
+        {
+            try
+            {
+                cachedFitness = fitnessCache.getFitness(uidForCache);
+            } catch (IOException e)
+            {
+                fitnessSettings.getLogger().log(Level.WARNING, 
+                        "Unable to read fitness cache. {0}", e.getMessage());
+            }
+        }
+        
         // Run fitness provider
         boolean status = false;
-        if (fitnessSettings.useExternalFitness()) {
+        if (cachedFitness != null)
+        {
+            fitnessSettings.getLogger().log(Level.FINE, "Reusing fitness "
+                    + "of previously evaluated candidate " + uidForCache);
+            result.setFitness(cachedFitness);
+            status = true;
+        } else if (fitnessSettings.useExternalFitness()) {
             // Write file with input data to fitness provider
             DenoptimIO.writeSDFFile(fitProvInputFile, fitProvMol, false);
 
@@ -156,11 +279,40 @@ public abstract class FitnessTask extends Task
             // calculating CDK descriptors, so the 'fitProvMol' changes
             status = runInternalFitness();
         }
+        precomputedFitness = null;
+        
+        if (fitnessCache != null && cachedFitness == null && status 
+                && result.hasFitness())
+        {
+            // The fitness provider may have changed the UID, in which case 
+            // the value belongs to a candidate that differs from the one we 
+            // looked for.
+            if (!Objects.equals(uidForCache, result.getUID()))
+            {
+                fitnessSettings.getLogger().log(Level.FINE, "Fitness of " 
+                        + result.getName() + " is not cached because the "
+                        + "fitness provider changed its UID from " 
+                        + uidForCache + " to " + result.getUID() + ".");
+            } else {
+                try
+                {
+                    fitnessCache.putFitness(uidForCache, result.getFitness());
+                } catch (IOException e)
+                {
+                    fitnessSettings.getLogger().log(Level.WARNING, 
+                            "Unable to write fitness cache. {0}", 
+                            e.getMessage());
+                }
+            }
+        }
         
-        // Write the FIT file
+        // Write the FIT file. NB: when reusing a cached fitness, we must 
+        // also replace the file that the external tool would have written.
         result.setChemicalRepresentation(fitProvMol);
         if (this instanceof GraphBuildingTask 
-                || fitnessSettings.writeCandidatesOnDisk())
+                || fitnessSettings.writeCandidatesOnDisk()
+                || (cachedFitness != null 
+                    && fitnessSettings.useExternalFitness()))
         {
             DenoptimIO.writeCandidateToFile(new File(fitProvOutFile), result, 
                     false);
@@ -185,17 +337,15 @@ public abstract class FitnessTask extends Task
     }
     
 //------------------------------------------------------------------------------
-    
+
     /**
-     * @return <code>true</code> if it is all good, <code>false</code> in case 
-     * of any reason for premature returning of the results (error generated in
-     * from the external tool, rejection on the candidate).
-     * @throws DENOPTIMException 
-     * @throws Exception 
+     * Runs the external fitness provider as a new process that evaluates 
+     * only this candidate.
+     * @throws DENOPTIMException if the process fails.
      */
-
-	private boolean runExternalFitness() throws DENOPTIMException
-	{
+    
+    private void runExternalFitnessProcess() throws DENOPTIMException
+    {
 		StringBuilder sb = new StringBuilder();
         sb.append(fitnessSettings.getExternalFitnessProviderInterpreter());
         sb.append(" ").append(fitnessSettings.getExternalFitnessProvider())
@@ -228,7 +378,74 @@ public abstract class FitnessTask extends Task
             throw new DENOPTIMException(msg);
         }
         processHandler = null;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Sends this candidate to one of the persistent external fitness workers,
+     * and writes the result in the output file, as expected from a 
+     * fitness provider running in a dedicated process.
+     * @throws DENOPTIMException if the worker fails.
+     */
+    
+    private void runExternalFitnessWorker() throws DENOPTIMException
+    {
+        String msg = "Sending candidate to external fitness worker: "
+                + fitProvInputFile + NL;
+        fitnessSettings.getLogger().log(Level.INFO, msg);
+        
+        JsonObject details = new JsonObject();
+        details.addProperty("inputFile", fitProvInputFile);
+        details.addProperty("outputFile", fitProvOutFile);
+        details.addProperty("workDir", String.valueOf(workDir));
+        details.addProperty("taskId", id);
+        if (fitProvUIDFile != null)
+        {
+            details.addProperty("uidFile", fitProvUIDFile);
+        }
+        try
+        {
+            byte[] input = Files.readAllBytes(Paths.get(fitProvInputFile));
+            byte[] output = fitnessSettings.getExternalFitnessWorkerPool()
+                    .evaluate(input, details);
+            if (output.length > 0)
+            {
+                Files.write(Paths.get(fitProvOutFile), output);
+            }
+        } catch (IOException e)
+        {
+            throw new DENOPTIMException("Unable to exchange data with external "
+                    + "fitness worker for " + fitProvInputFile, e);
+        } catch (DENOPTIMException e)
+        {
+            msg = "Failed to run external fitness worker on " 
+                    + fitProvInputFile + ". " + e.getMessage();
+            fitnessSettings.getLogger().severe(msg);
+            throw new DENOPTIMException(msg, e);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * @return <code>true</code> if it is all good, <code>false</code> in case 
+     * of any reason for premature returning of the results (error generated in
+     * from the external tool, rejection on the candidate).
+     * @throws DENOPTIMException 
+     * @throws Exception 
+     */
+
+	private boolean runExternalFitness() throws DENOPTIMException
+	{
+	    if (fitnessSettings.useExternalFitnessWorkers())
+	    {
+	        runExternalFitnessWorker();
+	    } else {
+	        runExternalFitnessProcess();
+	    }
         
+        String msg = "";
         // Read results from fitness provider
         IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
         IAtomContainer processedMol = builder.newAtomContainer();
@@ -403,16 +620,20 @@ public abstract class FitnessTask extends Task
 	    fitnessSettings.getLogger().log(Level.FINE, msg);
 
 	    double fitVal = Double.NaN;
-		try {
-			FitnessProvider fp = new FitnessProvider(
-					fitnessSettings.getDescriptors(),
-					fitnessSettings.getFitnessExpression(),
-					fitnessSettings.getLogger());
-			// NB: here we remove dummy atoms!
-			fitVal = fp.getFitness(fitProvMol);
-		} catch (Exception e) {
-			throw new DENOPTIMException("Failed to calculate fitness.", e);
-		}
+	    if (precomputedFitness != null)
+	    {
+	        fitVal = precomputedFitness;
+	    } else {
+    	    FitnessProvider fp = fitnessSettings.acquireFitnessProvider();
+    		try {
+    			// NB: here we remove dummy atoms!
+    			fitVal = fp.getFitness(fitProvMol);
+    		} catch (Exception e) {
+    			throw new DENOPTIMException("Failed to calculate fitness.", e);
+    		} finally {
+    		    fitnessSettings.releaseFitnessProvider(fp);
+    		}
+	    }
 
         if (Double.isNaN(fitVal))
         {
@@ -29,6 +29,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import denoptim.exception.DENOPTIMException;
+import denoptim.fitness.FitnessParameters;
 import denoptim.graph.Candidate;
 
 
@@ -77,6 +78,8 @@ public class TasksBatchManager
         CompletionService<Object> cservice = 
                 new ExecutorCompletionService<>(eservice);
         futures = new ArrayList<>();
+        
+        evaluateInBatches(syncronisedTasks, n);
 
         for (int i=0; i<numOfJobs; i++)
         {
@@ -165,6 +168,75 @@ public class TasksBatchManager
         return results;
     }
 
+//------------------------------------------------------------------------------
+
+    /**
+     * Calculates the fitness of the candidates that are evaluated by the 
+     * internal fitness provider before running the tasks. Tasks are divided 
+     * in as many batches as the threads available, and each thread prepares
+     * the candidates of one batch and calculates their fitness with one
+     * fitness provider (see 
+     * {@link FitnessTask#evaluateInBatch(List, FitnessParameters)}).
+     * @param tasks the tasks to be executed.
+     * @param numBatches the number of batches.
+     * @throws DENOPTIMException if the evaluation of any batch fails.
+     */
+    private void evaluateInBatches(List<Task> tasks, int numBatches) 
+            throws DENOPTIMException
+    {
+        FitnessParameters settings = null;
+        List<FitnessTask> fitTasks = new ArrayList<FitnessTask>();
+        for (Task task : tasks)
+        {
+            if (!(task instanceof FitnessTask))
+                continue;
+            FitnessTask fitTask = (FitnessTask) task;
+            if (settings == null)
+                settings = fitTask.fitnessSettings;
+            if (fitTask.fitnessSettings == settings)
+                fitTasks.add(fitTask);
+        }
+        if (fitTasks.size() < 2 || settings.useExternalFitness())
+            return;
+        
+        final FitnessParameters fitSettings = settings;
+        int batchSize = (fitTasks.size() + numBatches - 1) / numBatches;
+        List<Future<Object>> batchFutures = new ArrayList<>();
+        for (int i=0; i<fitTasks.size(); i=i+batchSize)
+        {
+            List<FitnessTask> batch = fitTasks.subList(i, 
+                    Math.min(i+batchSize, fitTasks.size()));
+            batchFutures.add(eservice.submit(() -> {
+                List<FitnessTask> ready = new ArrayList<FitnessTask>();
+                for (FitnessTask task : batch)
+                {
+                    if (task.prepareForBatchEvaluation())
+                        ready.add(task);
+                }
+                FitnessTask.evaluateInBatch(ready, fitSettings);
+                return null;
+            }));
+        }
+        try
+        {
+            for (Future<Object> f : batchFutures)
+            {
+                f.get();
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            eservice.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new DENOPTIMException(ie);
+        }
+        catch (ExecutionException ee)
+        {
+            eservice.shutdownNow();
+            throw new DENOPTIMException(ee);
+        }
+    }
+    
 //------------------------------------------------------------------------------
     
 	public void stop() 
@@ -0,0 +1,812 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Storage of UIDs on disk with constant-time lookup and insertion.
+ * <p>The entries are appended to a plain text file (one entry per line), so
+ * that the list of entries can be read by any tool that reads lists of UIDs
+ * (e.g., {@link denoptim.ga.EAUtils}). The text file is indexed by an
+ * open-addressing hash table that is
+ * kept on disk in memory-mapped files (one file for each stripe of the
+ * table, named as the text file with extension <code>.idx&lt;i&gt;</code>).
+ * Each stripe has its own lock, so threads working on entries that belong to
+ * different stripes do not block each other. Optionally, a Bloom filter can
+ * be placed in front of the index to answer most negative queries without
+ * any locking.</p>
+ * <p>The index is restart-safe: when a store is created on an existing text
+ * file, the entries that are not yet covered by the index found on disk,
+ * for instance, because of a crash, are indexed before the store is used.
+ * </p>
+ * <p>Entries are compared after removing heading/trailing spaces, and in a
+ * case-sensitive manner. Blank entries are never stored.</p>
+ * <p>Each entry can be associated with a value (see 
+ * {@link #putIfAbsent(String, String)}), which is written on the same line
+ * after a tab character. Therefore, entries cannot contain tabs, and values 
+ * cannot contain newline characters.</p>
+ */
+public class HashedUIDStore implements IUIDStore
+{
+    /**
+     * Identifier of the files containing the index
+     */
+    private static final int MAGIC = 0x55494458;
+
+    /**
+     * Version of the format of the files containing the index
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size (bytes) of the header of each index file: magic number, version,
+     * capacity, number of entries, and length of the indexed text file.
+     */
+    private static final int HEADERSIZE = 24;
+
+    /**
+     * Size (bytes) of a slot in the index: hash of the entry and offset of
+     * the entry in the text file.
+     */
+    private static final int SLOTSIZE = 16;
+
+    /**
+     * Maximum load factor of each stripe. Beyond this, the stripe doubles its
+     * capacity.
+     */
+    private static final double MAXLOAD = 0.6;
+
+    /**
+     * Default number of stripes
+     */
+    public static final int DEFAULTSTRIPES = 16;
+
+    /**
+     * Default number of expected entries
+     */
+    public static final long DEFAULTEXPECTEDSIZE = 1000000;
+
+    /**
+     * The text file collecting the entries
+     */
+    private final File dataFile;
+
+    /**
+     * Channel to the text file
+     */
+    private final FileChannel dataChannel;
+
+    /**
+     * Length of the text file. Guarded by {@link #appendLock}.
+     */
+    private long dataLength;
+
+    /**
+     * Lock for appending to the text file
+     */
+    private final Object appendLock = new Object();
+
+    /**
+     * The stripes of the index
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * Number of bits used to choose the stripe
+     */
+    private final int stripeBits;
+
+    /**
+     * Optional Bloom filter. Can be <code>null</code>.
+     */
+    private final BloomFilter bloom;
+
+    /**
+     * Number of entries in this store.
+     */
+    private final AtomicInteger count = new AtomicInteger(0);
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor of a store with default number of stripes and no Bloom
+     * filter.
+     * @param dataFile the text file where to collect the entries. If this file
+     * exists, its content is imported in the store.
+     * @throws IOException if the files cannot be created or read.
+     */
+    public HashedUIDStore(File dataFile) throws IOException
+    {
+        this(dataFile, DEFAULTSTRIPES, false, DEFAULTEXPECTEDSIZE);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor.
+     * @param dataFile the text file where to collect the entries. If this file
+     * exists, its content is imported in the store.
+     * @param numStripes the number of independently locked stripes of the
+     * index. Rounded up to a power of two.
+     * @param useBloomFilter use <code>true</code> to place a Bloom filter in
+     * front of the index.
+     * @param expectedSize the number of entries we expect to store. This is
+     * used to size the index and the Bloom filter, but the store can grow
+     * beyond this size.
+     * @throws IOException if the files cannot be created or read.
+     */
+    public HashedUIDStore(File dataFile, int numStripes, boolean useBloomFilter,
+            long expectedSize) throws IOException
+    {
+        this.dataFile = dataFile;
+        int bits = 0;
+        while ((1 << bits) < Math.max(1, numStripes))
+            bits++;
+        this.stripeBits = bits;
+
+        dataChannel = FileChannel.open(dataFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        dataLength = dataChannel.size();
+
+        int initialCapacity = nextPowerOfTwo(Math.max(1024L,
+                (long) (expectedSize / (1 << bits) / MAXLOAD)));
+        stripes = new Stripe[1 << bits];
+        long indexedLength = Long.MAX_VALUE;
+        for (int i=0; i<stripes.length; i++)
+        {
+            stripes[i] = new Stripe(new File(dataFile.getAbsolutePath()
+                    + ".idx" + i), initialCapacity);
+            indexedLength = Math.min(indexedLength, stripes[i].indexedLength);
+        }
+        if (indexedLength > dataLength)
+        {
+            // The index does not belong to this text file: start over
+            for (Stripe stripe : stripes)
+                stripe.clear();
+            indexedLength = 0;
+        }
+        indexTail(indexedLength);
+
+        if (useBloomFilter)
+        {
+            bloom = new BloomFilter(Math.max(expectedSize, count.get()), 0.01);
+            for (Stripe stripe : stripes)
+                stripe.feedBloomFilter(bloom);
+        } else {
+            bloom = null;
+        }
+        flush();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Adds to the index any entry of the text file that is found beyond the
+     * given position.
+     */
+    private void indexTail(long fromPosition) throws IOException
+    {
+        for (Stripe stripe : stripes)
+            count.addAndGet(stripe.count);
+
+        long lineStart = fromPosition;
+        long pos = fromPosition;
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        while (pos < dataLength)
+        {
+            buf.clear();
+            int n = dataChannel.read(buf, pos);
+            if (n <= 0)
+                break;
+            buf.flip();
+            while (buf.hasRemaining())
+            {
+                byte b = buf.get();
+                pos++;
+                if (b == '\n')
+                {
+                    indexLine(line, lineLength, lineStart);
+                    lineLength = 0;
+                    lineStart = pos;
+                } else {
+                    if (lineLength == line.length)
+                    {
+                        byte[] longer = new byte[line.length * 2];
+                        System.arraycopy(line, 0, longer, 0, lineLength);
+                        line = longer;
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        if (lineStart < dataLength)
+        {
+            // Incomplete last line, i.e., a write that was interrupted.
+            dataChannel.truncate(lineStart);
+            dataLength = lineStart;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private void indexLine(byte[] line, int length, long offset)
+            throws IOException
+    {
+        for (int i=0; i<length; i++)
+        {
+            if (line[i] == '\t')
+            {
+                length = i;
+                break;
+            }
+        }
+        if (length > 0 && line[length-1] == '\r')
+            length--;
+        if (length == 0)
+            return;
+        byte[] key = new byte[length];
+        System.arraycopy(line, 0, key, 0, length);
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        synchronized (stripe)
+        {
+            if (stripe.find(h, key) < 0)
+            {
+                stripe.put(h, offset);
+                count.incrementAndGet();
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public boolean addIfAbsent(String entry) throws IOException
+    {
+        return putIfAbsent(entry, null);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Adds the given entry, and its associated value, unless the entry is 
+     * already contained in this store.
+     * @param entry the entry to add.
+     * @param value the value associated to the entry. Can be 
+     * <code>null</code>.
+     * @return <code>true</code> if the entry was not already present, and
+     * has thus been added by this method.
+     * @throws IOException if the storage on disk cannot be used.
+     */
+    public boolean putIfAbsent(String entry, String value) throws IOException
+    {
+        byte[] key = toKey(entry);
+        if (key.length == 0)
+            return false;
+        byte[] val = null;
+        if (value != null)
+        {
+            if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+                throw new IllegalArgumentException("Values cannot contain "
+                        + "newline characters.");
+            val = value.getBytes(StandardCharsets.UTF_8);
+        }
+        long h = hash(key);
+        Stripe stripe = stripeFor(h);
+        synchronized (stripe)
+        {
+            if (bloom == null || bloom.mightContain(h))
+            {
+                if (stripe.find(h, key) >= 0)
+                    return false;
+            }
+            long offset = append(key, val);
+            stripe.put(h, offset);
+            if (bloom != null)
+                bloom.put(h);
+        }
+        count.incrementAndGet();
+        return true;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public boolean contains(String entry) throws IOException
+    {
+        byte[] key = toKey(entry);
+        if (key.length == 0)
+            return false;
+        long h = hash(key);
+        if (bloom != null && !bloom.mightContain(h))
+            return false;
+        Stripe stripe = stripeFor(h);
+        synchronized (stripe)
+        {
+            return stripe.find(h, key) >= 0;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the value associated with the given entry.
+     * @param entry the entry to search for.
+     * @return the value associated with the entry, which is an empty string
+     * if the entry was stored without any value, or <code>null</code> if the
+     * entry is not contained in this store.
+     * @throws IOException if the storage on disk cannot be used.
+     */
+    public String get(String entry) throws IOException
+    {
+        byte[] key = toKey(entry);
+        if (key.length == 0)
+            return null;
+        long h = hash(key);
+        if (bloom != null && !bloom.mightContain(h))
+            return null;
+        Stripe stripe = stripeFor(h);
+        long offset;
+        synchronized (stripe)
+        {
+            offset = stripe.find(h, key);
+        }
+        if (offset < 0)
+            return null;
+        return readValue(offset + key.length);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public int size()
+    {
+        return count.get();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes all pending changes on disk and records that the index covers
+     * the entire text file. The cost of this operation is paid only when
+     * this method is called, so the caller controls how frequently the
+     * changes are synchronized with the disk.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        long length;
+        synchronized (appendLock)
+        {
+            dataChannel.force(false);
+            length = dataLength;
+        }
+        // Any entry located before 'length' was added to its stripe while
+        // holding the lock of the stripe, so it is already in the index.
+        for (Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                stripe.setIndexedLength(length);
+                stripe.buffer.force();
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        for (Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                stripe.channel.close();
+            }
+        }
+        dataChannel.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return the text file where the entries are collected.
+     */
+    public File getDataFile()
+    {
+        return dataFile;
+    }
+
+//------------------------------------------------------------------------------
+
+    private long append(byte[] key, byte[] value) throws IOException
+    {
+        int length = key.length + 1;
+        if (value != null)
+            length = length + value.length + 1;
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        buf.put(key);
+        if (value != null)
+        {
+            buf.put((byte) '\t');
+            buf.put(value);
+        }
+        buf.put((byte) '\n');
+        buf.flip();
+        synchronized (appendLock)
+        {
+            long offset = dataLength;
+            long pos = offset;
+            while (buf.hasRemaining())
+            {
+                pos += dataChannel.write(buf, pos);
+            }
+            dataLength = pos;
+            return offset;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Checks if the text file contains the given key on the line starting at
+     * the given offset.
+     */
+    private boolean isKeyAt(byte[] key, long offset) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(key.length + 1);
+        long pos = offset;
+        while (buf.hasRemaining())
+        {
+            int n = dataChannel.read(buf, pos);
+            if (n < 0)
+                return false;
+            pos += n;
+        }
+        for (int i=0; i<key.length; i++)
+        {
+            if (buf.get(i) != key[i])
+                return false;
+        }
+        byte end = buf.get(key.length);
+        return end == '\n' || end == '\r' || end == '\t';
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Reads the value written on the text file starting at the given position,
+     * which is the position right after the end of the key.
+     */
+    private String readValue(long position) throws IOException
+    {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        if (dataChannel.read(one, position) <= 0 || one.get(0) != '\t')
+            return "";
+        long pos = position + 1;
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        while (true)
+        {
+            buf.clear();
+            int n = dataChannel.read(buf, pos);
+            if (n <= 0)
+                break;
+            pos += n;
+            buf.flip();
+            boolean done = false;
+            while (buf.hasRemaining())
+            {
+                byte b = buf.get();
+                if (b == '\n' || b == '\r')
+                {
+                    done = true;
+                    break;
+                }
+                value.write(b);
+            }
+            if (done)
+                break;
+        }
+        return new String(value.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+//------------------------------------------------------------------------------
+
+    private Stripe stripeFor(long h)
+    {
+        if (stripeBits == 0)
+            return stripes[0];
+        return stripes[(int) (h >>> (64 - stripeBits))];
+    }
+
+//------------------------------------------------------------------------------
+
+    private static byte[] toKey(String entry)
+    {
+        String trimmed = entry.trim();
+        if (trimmed.indexOf('\t') >= 0)
+            throw new IllegalArgumentException("Entries cannot contain tabs.");
+        return trimmed.getBytes(StandardCharsets.UTF_8);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * 64-bit FNV-1a hash followed by a finalization mix. The value 0 is
+     * reserved for empty slots and is never returned.
+     */
+    static long hash(byte[] key)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key)
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h == 0 ? 1 : h;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static int nextPowerOfTwo(long n)
+    {
+        int p = 1;
+        while (p < n && p < (1 << 30))
+            p <<= 1;
+        return p;
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * One independently locked part of the index, stored in its own
+     * memory-mapped file. All methods must be called while holding the lock
+     * on this object.
+     */
+    private class Stripe
+    {
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int capacity;
+        private int count;
+        private long indexedLength;
+
+        Stripe(File file, int initialCapacity) throws IOException
+        {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            boolean reuse = false;
+            if (channel.size() >= HEADERSIZE)
+            {
+                ByteBuffer header = ByteBuffer.allocate(HEADERSIZE);
+                channel.read(header, 0);
+                capacity = header.getInt(8);
+                reuse = header.getInt(0) == MAGIC
+                        && header.getInt(4) == VERSION
+                        && capacity > 0
+                        && Integer.bitCount(capacity) == 1
+                        && channel.size() >= HEADERSIZE
+                            + (long) capacity * SLOTSIZE;
+            }
+            if (reuse)
+            {
+                map();
+                count = buffer.getInt(12);
+                indexedLength = buffer.getLong(16);
+            } else {
+                capacity = initialCapacity;
+                map();
+                clear();
+            }
+        }
+
+        private void map() throws IOException
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADERSIZE + (long) capacity * SLOTSIZE);
+        }
+
+        void clear()
+        {
+            for (int i=HEADERSIZE; i<buffer.capacity(); i+=8)
+                buffer.putLong(i, 0L);
+            count = 0;
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, count);
+            setIndexedLength(0);
+        }
+
+        void setIndexedLength(long length)
+        {
+            indexedLength = length;
+            buffer.putLong(16, length);
+        }
+
+        /**
+         * @return the offset of the key in the text file, or -1 if the key
+         * is not found.
+         */
+        long find(long h, byte[] key) throws IOException
+        {
+            int mask = capacity - 1;
+            int i = (int) (h & mask);
+            while (true)
+            {
+                int pos = HEADERSIZE + i * SLOTSIZE;
+                long slotHash = buffer.getLong(pos);
+                if (slotHash == 0)
+                    return -1;
+                if (slotHash == h)
+                {
+                    long offset = buffer.getLong(pos + 8);
+                    if (isKeyAt(key, offset))
+                        return offset;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        void put(long h, long offset) throws IOException
+        {
+            if (count + 1 > capacity * MAXLOAD)
+                grow();
+            insert(h, offset);
+            count++;
+            buffer.putInt(12, count);
+        }
+
+        private void insert(long h, long offset)
+        {
+            int mask = capacity - 1;
+            int i = (int) (h & mask);
+            while (buffer.getLong(HEADERSIZE + i * SLOTSIZE) != 0)
+                i = (i + 1) & mask;
+            buffer.putLong(HEADERSIZE + i * SLOTSIZE, h);
+            buffer.putLong(HEADERSIZE + i * SLOTSIZE + 8, offset);
+        }
+
+        private void grow() throws IOException
+        {
+            long[] hashes = new long[count];
+            long[] offsets = new long[count];
+            int n = 0;
+            for (int i=0; i<capacity; i++)
+            {
+                int pos = HEADERSIZE + i * SLOTSIZE;
+                long slotHash = buffer.getLong(pos);
+                if (slotHash != 0)
+                {
+                    hashes[n] = slotHash;
+                    offsets[n] = buffer.getLong(pos + 8);
+                    n++;
+                }
+            }
+            capacity = capacity * 2;
+            map();
+            long keepIndexedLength = indexedLength;
+            int keepCount = count;
+            clear();
+            for (int i=0; i<n; i++)
+                insert(hashes[i], offsets[i]);
+            count = keepCount;
+            buffer.putInt(12, count);
+            setIndexedLength(keepIndexedLength);
+        }
+
+        void feedBloomFilter(BloomFilter filter)
+        {
+            for (int i=0; i<capacity; i++)
+            {
+                long slotHash = buffer.getLong(HEADERSIZE + i * SLOTSIZE);
+                if (slotHash != 0)
+                    filter.put(slotHash);
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Thread-safe Bloom filter working on precomputed 64-bit hashes.
+     */
+    private static class BloomFilter
+    {
+        private final AtomicLongArray bits;
+        private final long numBits;
+        private final int numHashes;
+
+        BloomFilter(long expectedSize, double falsePositiveProb)
+        {
+            long n = Math.max(1, expectedSize);
+            long m = (long) (-n * Math.log(falsePositiveProb)
+                    / (Math.log(2) * Math.log(2)));
+            m = Math.max(64, Math.min(m, 64L * Integer.MAX_VALUE));
+            bits = new AtomicLongArray((int) ((m + 63) / 64));
+            numBits = bits.length() * 64L;
+            numHashes = Math.max(1,
+                    (int) Math.round((double) numBits / n * Math.log(2)));
+        }
+
+        void put(long h)
+        {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i=1; i<=numHashes; i++)
+            {
+                long bit = index(h1, h2, i);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << (bit & 63);
+                long old;
+                do {
+                    old = bits.get(word);
+                    if ((old & mask) != 0)
+                        break;
+                } while (!bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(long h)
+        {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i=1; i<=numHashes; i++)
+            {
+                long bit = index(h1, h2, i);
+                if ((bits.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private long index(int h1, int h2, int i)
+        {
+            long combined = (long) h1 + (long) i * h2;
+            if (combined < 0)
+                combined = ~combined;
+            return combined % numBits;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
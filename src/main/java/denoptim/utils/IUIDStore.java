@@ -0,0 +1,79 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A storage of unique identifiers (UIDs) that is meant to collect more
+ * entries than what can be conveniently kept in memory.
+ * Implementations are used by {@link SizeControlledSet} to deal with the
+ * entries that do not fit in the in-memory part of the set, and must be
+ * thread safe.
+ */
+public interface IUIDStore extends Closeable
+{
+    /**
+     * Types of stores that can be used to collect UIDs.
+     */
+    public enum Type {
+        /**
+         * Plain text file that is scanned line-by-line for each query.
+         */
+        TEXT,
+
+        /**
+         * Text file indexed by a memory-mapped hash table.
+         */
+        HASHED,
+
+        /**
+         * Like {@link #HASHED}, but with a Bloom filter in front of the index.
+         */
+        HASHED_BLOOM};
+
+    /**
+     * Adds the given entry unless it is already contained in this store.
+     * @param entry the entry to add.
+     * @return <code>true</code> if the entry was not already present, and
+     * has thus been added by this method.
+     * @throws IOException if the storage on disk cannot be used.
+     */
+    public boolean addIfAbsent(String entry) throws IOException;
+
+    /**
+     * Checks if the given entry is contained in this store.
+     * @param entry the entry to search for.
+     * @return <code>true</code> if the entry is contained in this store.
+     * @throws IOException if the storage on disk cannot be used.
+     */
+    public boolean contains(String entry) throws IOException;
+
+    /**
+     * @return the number of entries in this store.
+     */
+    public int size();
+
+    /**
+     * Makes sure any pending change is written on disk.
+     * @throws IOException if the storage on disk cannot be used.
+     */
+    public void flush() throws IOException;
+}
@@ -20,15 +20,22 @@ package denoptim.utils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.Mappings;
 import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.smarts.SmartsPattern;
 
+import denoptim.exception.DENOPTIMException;
+
 
 /**
  * Container of lists of atoms matching a list of SMARTS.
+ * The SMARTS are compiled into queries only once per process: compiled 
+ * queries are kept in a thread-safe cache and reused for any molecule.
+ * The perception of rings and aromaticity needed by the queries is done once
+ * per molecule, and shared by all queries.
  *
  * @author Marco Foscato 
  */
@@ -45,48 +52,153 @@ public class ManySMARTSQuery
     private Throwable problem;
     private boolean problems = false;
     private String message = "";
+    
+    /**
+     * Cache of compiled queries, indexed by SMARTS string. Shared by all 
+     * instances and threads.
+     */
+    private static final Map<String,Pattern> COMPILEDQUERIES = 
+            new ConcurrentHashMap<String,Pattern>();
+    
+    /**
+     * Maximum number of compiled queries kept in the cache.
+     */
+    private static final int MAXCACHEDQUERIES = 5000;
 
 //------------------------------------------------------------------------------
 
     public ManySMARTSQuery(IAtomContainer mol, Map<String, String> smarts) {
         String err="";
         try {
+            Map<String,Pattern> queries = new HashMap<String,Pattern>();
             for (String smartsRef : smarts.keySet())
             {
-                //get the new query
-                String oneSmarts = smarts.get(smartsRef);
                 err = smartsRef;
-                
-                Pattern sp = SmartsPattern.create(oneSmarts);
-
-                // WARNING: assumptions on implicit H count and bond orders!
-                MoleculeUtils.setZeroImplicitHydrogensToAllAtoms(mol);
-                MoleculeUtils.ensureNoUnsetBondOrdersSilent(mol);
-                
-                if (sp.matches(mol))
-                {
-                    Mappings listOfIds = sp.matchAll(mol);
-                    allMatches.put(smartsRef,listOfIds);
-                    numMatches.put(smartsRef,listOfIds.count());
-                }
+                queries.put(smartsRef, getCompiledQuery(
+                        smarts.get(smartsRef)));
             }
+            matchAll(mol, queries);
+        } catch (Throwable t) {
+            recordProblem(err, t);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor that uses queries that have been compiled already, for 
+     * example, by {@link #compileQueries(Map)}. This avoids parsing the same 
+     * SMARTS for each molecule.
+     * @param queries the compiled queries mapped by their reference name.
+     * @param mol the molecule to search into.
+     */
+    public ManySMARTSQuery(Map<String, Pattern> queries, IAtomContainer mol) {
+        try {
+            matchAll(mol, queries);
         } catch (Throwable t) {
-            java.lang.StackTraceElement[] stes = t.getStackTrace();
-            String cause = "";
-            int s = stes.length;
-            if (s >= 1) {
-                java.lang.StackTraceElement ste = stes[0];
-                cause = ste.getClassName();
-            } else {
-                cause = "'unknown' (try to process this molecule alone to "
-                        + "get more info)";
+            recordProblem(queries.keySet().toString(), t);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Parses SMARTS strings into queries that can be used any number of times 
+     * with {@link #ManySMARTSQuery(Map, IAtomContainer)}. SMARTS that have 
+     * been compiled before are taken from the cache.
+     * @param smarts the SMARTS mapped by their reference name.
+     * @return the compiled queries mapped by the same reference names.
+     * @throws DENOPTIMException if any SMARTS cannot be parsed.
+     */
+    public static Map<String, Pattern> compileQueries(Map<String, String> smarts)
+            throws DENOPTIMException
+    {
+        Map<String,Pattern> queries = new HashMap<String,Pattern>();
+        for (String smartsRef : smarts.keySet())
+        {
+            try {
+                queries.put(smartsRef, getCompiledQuery(
+                        smarts.get(smartsRef)));
+            } catch (Throwable t) {
+                throw new DENOPTIMException("Unable to parse SMARTS '"
+                        + smarts.get(smartsRef) + "' for query " + smartsRef 
+                        + ".", t);
+            }
+        }
+        return queries;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Returns the compiled query for the given SMARTS, compiling it only if 
+     * it is not in the cache already. The returned query does not prepare
+     * the molecule (i.e., perceive rings and aromaticity) when used, so the
+     * molecule must be prepared by {@link SmartsPattern#prepare(IAtomContainer)}
+     * before matching, as done by the constructors of this class.
+     * @param smarts the SMARTS string.
+     * @return the compiled query.
+     * @throws IllegalArgumentException if the SMARTS cannot be parsed.
+     */
+    public static Pattern getCompiledQuery(String smarts)
+    {
+        Pattern query = COMPILEDQUERIES.get(smarts);
+        if (query == null)
+        {
+            query = SmartsPattern.create(smarts).setPrepare(false);
+            if (COMPILEDQUERIES.size() < MAXCACHEDQUERIES)
+            {
+                Pattern previous = COMPILEDQUERIES.putIfAbsent(smarts, query);
+                if (previous != null)
+                    query = previous;
             }
-            err = "WARNING! For query " + err + " => Exception returned "
-                    + "by " + cause;
-            problems = true;
-            problem = t;
-            message = err;
         }
+        return query;
+    }
+    
+//------------------------------------------------------------------------------
+
+    private void matchAll(IAtomContainer mol, Map<String, Pattern> queries)
+    {
+        if (queries.isEmpty())
+            return;
+        
+        // WARNING: assumptions on implicit H count and bond orders!
+        MoleculeUtils.setZeroImplicitHydrogensToAllAtoms(mol);
+        MoleculeUtils.ensureNoUnsetBondOrdersSilent(mol);
+        
+        // Ring and aromaticity perception is done once for all queries
+        SmartsPattern.prepare(mol);
+        
+        for (String smartsRef : queries.keySet())
+        {
+            Mappings listOfIds = queries.get(smartsRef).matchAll(mol);
+            if (listOfIds.atLeast(1))
+            {
+                allMatches.put(smartsRef,listOfIds);
+                numMatches.put(smartsRef,listOfIds.count());
+            }
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+    private void recordProblem(String query, Throwable t)
+    {
+        java.lang.StackTraceElement[] stes = t.getStackTrace();
+        String cause = "";
+        int s = stes.length;
+        if (s >= 1) {
+            java.lang.StackTraceElement ste = stes[0];
+            cause = ste.getClassName();
+        } else {
+            cause = "'unknown' (try to process this molecule alone to "
+                    + "get more info)";
+        }
+        problems = true;
+        problem = t;
+        message = "WARNING! For query " + query + " => Exception returned "
+                + "by " + cause;
     }
 
 //------------------------------------------------------------------------------
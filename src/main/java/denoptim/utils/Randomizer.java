@@ -18,6 +18,7 @@
 
 package denoptim.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 
 import javax.vecmath.Point3d;
@@ -29,6 +30,15 @@ import denoptim.io.DenoptimIO;
 
 /**
  * Tool to generate random numbers and random decisions.
+ * <p>A randomizer can be configured to use task-specific streams of 
+ * random numbers (see {@link #setTaskStreams(boolean)}). In such case, a 
+ * thread executing a task can start a stream that is specific for that task
+ * (see {@link #startTaskStream(String)}): until the stream is ended, any 
+ * random number drawn by that thread from this randomizer comes from the 
+ * task-specific stream, which is seeded deterministically from the seed of 
+ * this randomizer and a key identifying the task. Therefore, the random 
+ * numbers used by a task do not depend on how concurrent tasks are 
+ * scheduled, and concurrent tasks do not share any generator.</p>
  */
 
 public class Randomizer
@@ -44,6 +54,23 @@ public class Randomizer
      */
     private MersenneTwister mt = null;
     
+    /**
+     * Flag enabling the use of task-specific streams of random numbers.
+     */
+    private boolean useTaskStreams = false;
+    
+    /**
+     * The task-specific stream of random numbers started by each thread, if
+     * any.
+     */
+    private final ThreadLocal<MersenneTwister> taskStreams = 
+            new ThreadLocal<MersenneTwister>();
+    
+    /**
+     * Increment used to mix seeds and keys of task-specific streams.
+     */
+    private static final long GOLDENGAMMA = 0x9E3779B97F4A7C15L;
+    
     /**
      * local flag used only to enable highly detailed logging.
      */
@@ -114,14 +141,106 @@ public class Randomizer
         mt = new MersenneTwister(rndSeed);
     }
     
+//------------------------------------------------------------------------------
+
+    /**
+     * Enables or disables the use of task-specific streams of random numbers.
+     * This should be configured before any task is started.
+     * @param useTaskStreams use <code>true</code> to let tasks draw random
+     * numbers from their own stream.
+     */
+    public void setTaskStreams(boolean useTaskStreams)
+    {
+        this.useTaskStreams = useTaskStreams;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * @return <code>true</code> if this randomizer lets tasks draw random 
+     * numbers from their own stream.
+     */
+    public boolean usesTaskStreams()
+    {
+        return useTaskStreams;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Starts the stream of random numbers of a task. Until 
+     * {@link #endTaskStream()} is called by the same thread, the random 
+     * numbers drawn by the current thread come from a stream that depends 
+     * only on the seed of this randomizer and on the given key. 
+     * Does nothing unless this randomizer uses task-specific streams.
+     * @param taskKey a string that identifies the task and does not depend
+     * on the order in which tasks are executed.
+     */
+    public void startTaskStream(String taskKey)
+    {
+        if (!useTaskStreams)
+            return;
+        taskStreams.set(new MersenneTwister(getTaskSeed(rndSeed, taskKey)));
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Ends the stream of random numbers of the task executed by the current 
+     * thread, if any. Further random numbers drawn by the current thread 
+     * come from the main sequence of this randomizer.
+     */
+    public void endTaskStream()
+    {
+        taskStreams.remove();
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Derives the seed of a task-specific stream of random numbers.
+     * @param seed the seed of the main sequence.
+     * @param taskKey the key identifying the task.
+     * @return the seed of the stream of the given task.
+     */
+    public static long getTaskSeed(long seed, String taskKey)
+    {
+        long h = mix64(seed + GOLDENGAMMA);
+        for (byte b : taskKey.getBytes(StandardCharsets.UTF_8))
+        {
+            h = mix64(h + GOLDENGAMMA + (b & 0xFFL));
+        }
+        return h;
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Bit mixing function of the SplitMix64 generator.
+     */
+    private static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
 //------------------------------------------------------------------------------
 
     /**
      * Returns the random number generator. Ensures there is an initialized one.
+     * If the current thread has started a task-specific stream, then that 
+     * stream is returned.
      * @return the random number generator
      */
     private MersenneTwister getRNG()
     {
+        if (useTaskStreams)
+        {
+            MersenneTwister stream = taskStreams.get();
+            if (stream != null)
+                return stream;
+        }
         if (mt == null)
         {
             initialiseRNG();
@@ -18,25 +18,27 @@
 
 package denoptim.utils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import denoptim.exception.DENOPTIMException;
-import denoptim.files.FileUtils;
 import denoptim.io.DenoptimIO;
 
 /**
  * Class meant to collect unique strings without leading to memory overflow.
- * This class wraps a synchronised set and controls the size of such set.
+ * This class wraps a set and controls the size of such set.
  * If we need to deal with more elements than the maximum size, then the 
- * entries that do not fit in the maximum size are written to disk and dealt 
- * with by I/O operations.
+ * entries that do not fit in the maximum size are given to an 
+ * {@link IUIDStore} that deals with them by I/O operations.
+ * Once the maximum size is reached, the in-memory set is never modified 
+ * again, so it can be read without locking, and the concurrency is handled
+ * by the {@link IUIDStore}.
  */
 
-public class SizeControlledSet
+public class SizeControlledSet implements Closeable
 {
     /**
      * Maximum size of the set. If there is need to use more entries, the 
@@ -50,6 +52,18 @@ public class SizeControlledSet
      */
     private File dataOnDisk;
     
+    /**
+     * The type of storage used for entries that do not fit in the maximum
+     * size of this set.
+     */
+    private IUIDStore.Type storeType;
+    
+    /**
+     * The storage of entries that do not fit in the maximum size of this set.
+     * This is created only when needed.
+     */
+    private IUIDStore store;
+    
     /**
      * The file used to store all entries on disk
      */
@@ -58,17 +72,31 @@ public class SizeControlledSet
     /**
      * Flag signalling the use of the disk.
      */
-    private boolean usingDisk = false;
+    private volatile boolean usingDisk = false;
     
     /**
-     * Number of entries written to file
+     * The actual data collection. Guarded by its own lock until 
+     * {@link #usingDisk} becomes <code>true</code>, and read-only afterwards.
      */
-    private int entriesInFile = 0;
+    private Set<String> data;
+    
+//------------------------------------------------------------------------------
     
     /**
-     * The actual data collection
+     * Constructor for a size-controlled storage of unique Strings that uses
+     * a {@link HashedUIDStore} to deal with entries that do not fit in the 
+     * memory.
+     * @param maxSize the maximum size of entries to keep in the memory.
+     * @param memoryFile the pathname to a non-existing file that might be used to 
+     * store entries on disk in case the maximum size is not sufficient.
+     * @param allUIDsFile the pathname to a file where all entries are 
+     * collected. It can be null, in which case we do not write every entry to
+     * file.
      */
-    private Set<String> data;
+    public SizeControlledSet(int maxSize, String memoryFile, String allUIDsFile)
+    {
+        this(maxSize, memoryFile, allUIDsFile, IUIDStore.Type.HASHED);
+    }
     
 //------------------------------------------------------------------------------
     
@@ -80,16 +108,40 @@ public class SizeControlledSet
      * @param allUIDsFile the pathname to a file where all entries are 
      * collected. It can be null, in which case we do not write every entry to
      * file.
+     * @param storeType the type of storage used for the entries that do not 
+     * fit in the memory.
      */
-    public SizeControlledSet(int maxSize, String memoryFile, String allUIDsFile)
+    public SizeControlledSet(int maxSize, String memoryFile, String allUIDsFile,
+            IUIDStore.Type storeType)
     {
         this.maxSize = maxSize;
         this.dataOnDisk = new File(memoryFile);
         if (allUIDsFile!=null)
             this.allData = new File(allUIDsFile);
-        data = Collections.synchronizedSet(new HashSet<String>());
+        this.storeType = storeType;
+        data = new HashSet<String>();
     }
     
+//------------------------------------------------------------------------------
+
+    private IUIDStore makeStore() throws IOException
+    {
+        switch (storeType)
+        {
+            case TEXT:
+                return new TextFileUIDStore(dataOnDisk);
+            case HASHED_BLOOM:
+                return new HashedUIDStore(dataOnDisk, 
+                        HashedUIDStore.DEFAULTSTRIPES, true, 
+                        Math.max(maxSize, HashedUIDStore.DEFAULTEXPECTEDSIZE));
+            case HASHED:
+            default:
+                return new HashedUIDStore(dataOnDisk, 
+                        HashedUIDStore.DEFAULTSTRIPES, false, 
+                        Math.max(maxSize, HashedUIDStore.DEFAULTEXPECTEDSIZE));
+        }
+    }
+
 //------------------------------------------------------------------------------
 
     /**
@@ -103,28 +155,37 @@ public class SizeControlledSet
      * @throws IOException when handling of the memory written on disk returns
      * exception.
      */
-    public synchronized boolean addNewUniqueEntry(String entry) throws IOException
+    public boolean addNewUniqueEntry(String entry) throws IOException
     {
-        synchronized (data)
+        boolean wasNew = false;
+        boolean added = false;
+        if (!usingDisk)
         {
-            boolean wasNew = false;
-            if (usingDisk)
+            synchronized (data)
             {
-                if (data.contains(entry))
+                if (!usingDisk)
                 {
-                    return false;
+                    wasNew = data.add(entry);
+                    if (data.size()>=maxSize)
+                    {
+                        store = makeStore();
+                        usingDisk = true;
+                    }
+                    added = true;
                 }
-                wasNew = !FileUtils.isLineInTxtFile(entry, dataOnDisk, true);
-                if (wasNew)
-                {
-                    entriesInFile++;
-                }
-            } else {
-                wasNew = data.add(entry);
-                if (data.size()>=maxSize)
-                    usingDisk = true;
             }
-            if (wasNew && allData!=null)
+        }
+        if (!added)
+        {
+            if (data.contains(entry))
+            {
+                return false;
+            }
+            wasNew = store.addIfAbsent(entry);
+        }
+        if (wasNew && allData!=null)
+        {
+            synchronized (allData)
             {
                 try
                 {
@@ -135,8 +196,8 @@ public class SizeControlledSet
                     throw ((IOException) e.getCause());
                 }
             }
-            return wasNew;
         }
+        return wasNew;
     }
     
 //------------------------------------------------------------------------------
@@ -149,19 +210,17 @@ public class SizeControlledSet
      * @throws IOException when handling of the memory written on disk returns
      * exception.
      */
-    public synchronized boolean contains(String entry) throws IOException
+    public boolean contains(String entry) throws IOException
     {
-        synchronized (data)
+        if (!usingDisk)
         {
-            boolean foundInMemory = data.contains(entry);
-            boolean foundInDisk = false;
-            if (usingDisk && !foundInMemory)
+            synchronized (data)
             {
-                foundInDisk = FileUtils.isLineInTxtFile(entry, dataOnDisk, 
-                        false);
+                if (!usingDisk)
+                    return data.contains(entry);
             }
-            return foundInMemory || foundInDisk;
         }
+        return data.contains(entry) || store.contains(entry);
     }
     
 //------------------------------------------------------------------------------
@@ -170,11 +229,35 @@ public class SizeControlledSet
      * Returns the number of unique entries.
      * @return the number of unique entries.
      */
-    public synchronized int size()
+    public int size()
+    {
+        if (!usingDisk)
+        {
+            synchronized (data)
+            {
+                if (!usingDisk)
+                    return data.size();
+            }
+        }
+        return data.size() + store.size();
+    }
+    
+//------------------------------------------------------------------------------
+
+    /**
+     * Writes any pending change to disk and releases the resources used to
+     * handle the entries stored on disk. This set should not be used after
+     * calling this method.
+     * @throws IOException when handling of the memory written on disk returns
+     * exception.
+     */
+    @Override
+    public void close() throws IOException
     {
         synchronized (data)
         {
-            return data.size() + entriesInFile;
+            if (store != null)
+                store.close();
         }
     }
 
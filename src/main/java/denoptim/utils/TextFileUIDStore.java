@@ -0,0 +1,103 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import denoptim.files.FileUtils;
+
+/**
+ * Storage of UIDs in a plain text file that is read line-by-line for every
+ * query (see {@link FileUtils#isLineInTxtFile(String, File, boolean)}).
+ * Entries are compared ignoring case and heading/trailing spaces.
+ * This is slow for large numbers of entries,
+ * see {@link HashedUIDStore} for a faster alternative.
+ */
+public class TextFileUIDStore implements IUIDStore
+{
+    /**
+     * The file where entries are collected
+     */
+    private File file;
+
+    /**
+     * Number of entries written to file
+     */
+    private int entriesInFile = 0;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Constructor
+     * @param file the text file where to collect the entries.
+     */
+    public TextFileUIDStore(File file)
+    {
+        this.file = file;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public synchronized boolean addIfAbsent(String entry) throws IOException
+    {
+        boolean wasNew = !FileUtils.isLineInTxtFile(entry, file, true);
+        if (wasNew)
+        {
+            entriesInFile++;
+        }
+        return wasNew;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public synchronized boolean contains(String entry) throws IOException
+    {
+        return FileUtils.isLineInTxtFile(entry, file, false);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public synchronized int size()
+    {
+        return entriesInFile;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public void flush() throws IOException
+    {
+        // Nothing to do: every entry is written to disk immediately.
+    }
+
+//------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException
+    {
+        // Nothing to do: every entry is written to disk immediately.
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,144 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.combinatorial;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import denoptim.graph.DGraph;
+import denoptim.graph.Edge;
+import denoptim.graph.EmptyVertex;
+
+/**
+ * Unit test for the store of graphs of a level.
+ *
+ * @author Marco Foscato
+ */
+
+public class GraphLevelStoreTest
+{
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    private DGraph makeGraph(int graphId, int size) throws Exception
+    {
+        DGraph graph = new DGraph();
+        graph.setGraphId(graphId);
+        EmptyVertex prev = null;
+        for (int i=0; i<size; i++)
+        {
+            EmptyVertex v = new EmptyVertex(i);
+            v.addAP();
+            v.addAP();
+            graph.addVertex(v);
+            if (prev != null)
+                graph.addEdge(new Edge(prev.getAP(1), v.getAP(0)));
+            prev = v;
+        }
+        return graph;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testAppendReadAndRollBack() throws Exception
+    {
+        String pathname = tempDir.getAbsolutePath() + File.separator + "lev";
+        GraphLevelStore store = new GraphLevelStore(pathname);
+        ArrayList<Long> offsets = new ArrayList<Long>();
+        for (int i=0; i<5; i++)
+        {
+            offsets.add(store.append(makeGraph(10+i, i+1), 3,
+                    Arrays.asList(i, 0)));
+        }
+        assertEquals(5, store.size());
+
+        // Random access
+        GraphLevelStore.Entry e = store.get(12);
+        assertEquals(12, e.getGraphId());
+        assertEquals(3, e.getRootId());
+        assertEquals(Arrays.asList(2, 0), e.getNextIds());
+        assertEquals(offsets.get(2), e.getOffset());
+        DGraph g = e.getGraph();
+        assertEquals(3, g.getVertexCount());
+        assertEquals(2, g.getEdgeCount());
+        assertNull(store.get(99));
+
+        // Sequential streaming from a given offset
+        GraphLevelStore.Reader reader = store.newReader(offsets.get(1));
+        int n = 0;
+        while ((e = reader.next()) != null)
+        {
+            assertEquals(11+n, e.getGraphId());
+            n++;
+        }
+        assertEquals(4, n);
+
+        // Simulate a crash while writing a record
+        long safeEnd = store.getEndOffset();
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(
+                pathname + "." + GraphLevelStore.DATAEXT, "rw"))
+        {
+            raf.seek(raf.length());
+            raf.write(new byte[] {0x44, 0x47, 0x53, 0x31, 1, 0, 0});
+        }
+        store = new GraphLevelStore(pathname);
+        assertEquals(5, store.size());
+        assertEquals(safeEnd, store.getEndOffset());
+        store.append(makeGraph(15, 2), 3, new ArrayList<Integer>());
+        assertEquals(6, store.size());
+
+        // Roll back to the state of a checkpoint: graphs after the offset
+        // are removed, and so are those with ID larger than the latest
+        // safely completed one.
+        int removed = store.rollBack(offsets.get(4), 12);
+        assertEquals(3, removed);
+        assertEquals(3, store.size());
+        assertNull(store.get(13));
+        assertNull(store.get(14));
+        assertEquals(12, store.get(12).getGraphId());
+        assertEquals(offsets.get(4), store.getEndOffset());
+        store.close();
+
+        store = new GraphLevelStore(pathname);
+        assertEquals(3, store.size());
+        reader = store.newReader(0);
+        assertEquals(10, reader.next().getGraphId());
+        assertEquals(11, reader.next().getGraphId());
+        assertEquals(12, reader.next().getGraphId());
+        assertNull(reader.next());
+        assertTrue(GraphLevelStore.exists(pathname));
+        store.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
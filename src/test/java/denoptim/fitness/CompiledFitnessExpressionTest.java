@@ -0,0 +1,160 @@
+package denoptim.fitness;
+
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ * 
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import denoptim.exception.DENOPTIMException;
+import jakarta.el.ELProcessor;
+
+/**
+ * Unit test for the compiled form of fitness expressions.
+ * 
+ * @author Marco Foscato
+ */
+
+public class CompiledFitnessExpressionTest
+{
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testSameResultsAsExpressionLanguage() throws Exception
+    {
+        List<String> varNames = Arrays.asList("a", "b", "aHyb_1");
+        double[] values = new double[] {1.5, 2.0, 9.0};
+        
+        ELProcessor elp = new ELProcessor();
+        for (int i=0; i<varNames.size(); i++)
+        {
+            elp.defineBean(varNames.get(i), values[i]);
+        }
+        
+        String[] expressions = new String[] {
+                "${a + b}",
+                "${1.23456}",
+                "${7/2}",
+                "${7 % 3 + a}",
+                "${-a * 2 - -b}",
+                "${a > b ? a : b}",
+                "${a gt 1 and not (b eq 2) ? 1 : 2.5}",
+                "${aHyb_1 div 2 mod 3}",
+                "${2*3 + 4*(a - 1)}",
+                "${1e3 + 0.5 * aHyb_1}",
+                "${a >= 1 || false ? 3 : 4}"};
+        
+        for (String expression : expressions)
+        {
+            CompiledFitnessExpression cfe = CompiledFitnessExpression.compile(
+                    expression, varNames);
+            double[] slots = new double[cfe.getNumberOfSlots()];
+            for (int i=0; i<varNames.size(); i++)
+            {
+                slots[cfe.getSlot(varNames.get(i))] = values[i];
+            }
+            double expected = (double) elp.getValue(
+                    expression.substring(2, expression.length()-1), 
+                    Double.class);
+            assertEquals(expected, cfe.evaluate(slots), 0.0, 
+                    "Wrong result for " + expression);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testComparisonOfSpecialValues() throws Exception
+    {
+        List<String> varNames = Arrays.asList("x", "y");
+        double[] specialValues = new double[] {Double.NaN, -0.0, 0.0, 6.0,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        String[] expressions = new String[] {
+                "${x > 5 ? 1 : 0}",
+                "${x < 5 ? 1 : 0}",
+                "${x >= 5 ? 1 : 0}",
+                "${x <= 5 ? 1 : 0}",
+                "${x == 0 ? 1 : 0}",
+                "${x != 0.0 ? 1 : 0}",
+                "${x > y ? 1 : 0}",
+                "${x < y ? 1 : 0}",
+                "${x >= y ? 1 : 0}",
+                "${x <= y ? 1 : 0}",
+                "${x == y ? 1 : 0}",
+                "${x != y ? 1 : 0}"};
+        
+        for (double x : specialValues)
+        {
+            for (double y : specialValues)
+            {
+                ELProcessor elp = new ELProcessor();
+                elp.defineBean("x", x);
+                elp.defineBean("y", y);
+                for (String expression : expressions)
+                {
+                    CompiledFitnessExpression cfe = 
+                            CompiledFitnessExpression.compile(expression, 
+                                    varNames);
+                    double[] slots = new double[cfe.getNumberOfSlots()];
+                    slots[cfe.getSlot("x")] = x;
+                    slots[cfe.getSlot("y")] = y;
+                    double expected = (double) elp.getValue(
+                            expression.substring(2, expression.length()-1), 
+                            Double.class);
+                    assertEquals(expected, cfe.evaluate(slots), 0.0, 
+                            "Wrong result for " + expression + " with x=" + x 
+                            + " and y=" + y);
+                }
+            }
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testUnsupportedExpressions() throws Exception
+    {
+        List<String> varNames = Arrays.asList("a", "b");
+        String[] expressions = new String[] {
+                "${x + 1}",
+                "${a.b}",
+                "${f(a)}",
+                "#{a}",
+                "${a} + ${b}",
+                "${'s'}",
+                "${a > b}",
+                "${empty a}",
+                "${a + }"};
+        for (String expression : expressions)
+        {
+            assertThrows(DENOPTIMException.class, 
+                    () -> CompiledFitnessExpression.compile(expression, 
+                            varNames), 
+                    "Unsupported expression " + expression);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,92 @@
+package denoptim.fitness;
+
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ * 
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the memory of fitness values.
+ * 
+ * @author Marco Foscato
+ */
+
+public class FitnessCacheTest
+{
+    private static final String SEP = System.getProperty("file.separator");
+    
+    @TempDir 
+    static File tempDir;
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testPersistenceAndVersioning() throws Exception
+    {
+        File file = new File(tempDir.getAbsolutePath() + SEP + "fitCache");
+        FitnessCache cache = new FitnessCache(file, "v1", 2);
+        for (int i=0; i<10; i++)
+        {
+            cache.putFitness("UID"+i, i*1.1);
+        }
+        // Values are never overwritten
+        cache.putFitness("UID0", 123.4);
+        for (int i=0; i<10; i++)
+        {
+            assertEquals(i*1.1, cache.getFitness("UID"+i));
+        }
+        assertNull(cache.getFitness("UID10"));
+        cache.close();
+        
+        cache = new FitnessCache(file, "v1", 2);
+        assertEquals(9*1.1, cache.getFitness("UID9"));
+        cache.close();
+        
+        cache = new FitnessCache(file, "v2", 2);
+        assertNull(cache.getFitness("UID9"));
+        cache.close();
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testVersionString() throws Exception
+    {
+        FitnessParameters fpA = new FitnessParameters();
+        fpA.interpretKeyword("EQUATION=", "${a+b}");
+        FitnessParameters fpB = new FitnessParameters();
+        fpB.interpretKeyword("EQUATION=", "${a+b}");
+        FitnessParameters fpC = new FitnessParameters();
+        fpC.interpretKeyword("EQUATION=", "${a-b}");
+        
+        assertEquals(fpA.getFitnessCacheVersion(), 
+                fpB.getFitnessCacheVersion());
+        assertNotEquals(fpA.getFitnessCacheVersion(), 
+                fpC.getFitnessCacheVersion());
+    }
+    
+//------------------------------------------------------------------------------
+
+}
@@ -280,6 +280,55 @@ public class FitnessProviderTest
         }
     }
     
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testGetFitnessOfBatch() throws Exception
+    {
+        FitnessParameters fitPar = new FitnessParameters();
+        String[] lines = new String[] {
+                "FP-Equation=${0.02 * Zagreb - aHyb_1 + aHyb_2}",
+                "FP-DescriptorSpecs=${Variable.atomSpecific('aHyb_1','aHyb','[$([C])]')}",
+                "FP-DescriptorSpecs=${Variable.atomSpecific('aHyb_2','aHyb','[$([O])]')}"};
+        for (int i=0; i<lines.length; i++)
+        {
+            fitPar.interpretKeyword(lines[i]);
+        }
+        fitPar.processParameters();
+        
+        FitnessProvider fp = fitPar.acquireFitnessProvider();
+        
+        List<IAtomContainer> mols = new ArrayList<IAtomContainer>();
+        mols.add(sp.parseSmiles("COc1ccccc1"));
+        mols.add(sp.parseSmiles("CCO"));
+        mols.add(sp.parseSmiles("COc1ccccc1"));
+        
+        double[] fitness = fp.getFitness(mols);
+        fitPar.releaseFitnessProvider(fp);
+        
+        assertEquals(mols.size(), fitness.length);
+        assertTrue(closeEnough(1.5371429, fitness[0]), "Fitness of first "
+                + "molecule should be 1.5371429 but is " + fitness[0]);
+        assertTrue(closeEnough(fitness[0], fitness[2]), "Same molecule gets "
+                + "same fitness");
+        for (int i=0; i<mols.size(); i++)
+        {
+            FitnessProvider fpSingle = new FitnessProvider(
+                    fitPar.getDescriptors(),
+                    fitPar.getFitnessExpression(),
+                    logger);
+            IAtomContainer mol = mols.get(i);
+            double expected = fpSingle.getFitness(mol);
+            assertTrue(closeEnough(expected, fitness[i]), "Batch fitness of "
+                    + "molecule " + i + " is " + fitness[i] + " but should be " 
+                    + expected);
+        }
+        
+        // Providers are reused
+        assertTrue(fp == fitPar.acquireFitnessProvider(), 
+                "Provider is reused");
+    }
+    
 //------------------------------------------------------------------------------
 
     @Test
@@ -113,7 +113,36 @@ public class FragmentClustererTest
         assertTrue(Math.abs(measure.compute(pA, pB) - 2.5) < 0.0001);
         assertTrue(Math.abs(measure.compute(pB, pA) - 2.5) < 0.0001);
     }
-    
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testRMSDLowerBound()
+    {
+        DistanceAsRMSD measure = new DistanceAsRMSD();
+
+        double[] pA = new double[] {0,0,0,  1.5,0,0,  0,1,0,  0,0,0.5};
+        // Same as pA, but rotated by 90 deg about Z and translated
+        double[] pB = new double[] {3,3,3,  3,4.5,3,  2,3,3,  3,3,3.5};
+        double[] shapeA = FragmentClusterer.getShapeDescriptor(pA);
+        double[] shapeB = FragmentClusterer.getShapeDescriptor(pB);
+        assertTrue(shapeA[0] >= shapeA[1] && shapeA[1] >= shapeA[2]);
+        assertTrue(FragmentClusterer.getRMSDLowerBound(shapeA, shapeB, 4)
+                < 0.0001);
+
+        for (int i=0; i<20; i++)
+        {
+            double[] pC = new double[pA.length];
+            for (int j=0; j<pA.length; j++)
+            {
+                pC[j] = pA[j] + 2*(rng.nextDouble() - 0.5) * i * 0.2;
+            }
+            double lowerBound = FragmentClusterer.getRMSDLowerBound(shapeA,
+                    FragmentClusterer.getShapeDescriptor(pC), 4);
+            assertTrue(lowerBound <= measure.compute(pA, pC) + 0.0001);
+        }
+    }
+
 //------------------------------------------------------------------------------
     
     @Test
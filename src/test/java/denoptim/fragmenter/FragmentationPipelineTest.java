@@ -0,0 +1,219 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fragmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import denoptim.constants.DENOPTIMConstants;
+import denoptim.io.DenoptimIO;
+import denoptim.programs.fragmenter.FragmenterParameters;
+
+/**
+ * Unit test for the streaming scheme of the fragmentation.
+ *
+ * @author Marco Foscato
+ */
+
+public class FragmentationPipelineTest
+{
+    private static final String SEP = System.getProperty("file.separator");
+    private static final String NL = System.getProperty("line.separator");
+
+    /**
+     * Number of input structures: enough to fill several batches.
+     */
+    private static final int NUMMOLS =
+            2 * FragmentationPipeline.BATCHSIZE + 37;
+
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Runs the fragmentation and returns the file collecting the fragments.
+     */
+    private File runFragmentation(String name, String structuresFile,
+            String cutRulesFile, int numTasks, boolean streaming)
+                    throws Exception
+    {
+        File workDir = new File(tempDir, name);
+        workDir.mkdir();
+        FragmenterParameters settings = new FragmenterParameters();
+        settings.interpretKeyword("FRG-WORKDIR=" + workDir.getAbsolutePath());
+        settings.interpretKeyword("FRG-STRUCTURESFILE=" + structuresFile);
+        settings.interpretKeyword("FRG-CUTTINGRULESFILE=" + cutRulesFile);
+        settings.interpretKeyword("FRG-PARALLELTASKS=" + numTasks);
+        if (streaming)
+            settings.interpretKeyword("FRG-STREAMING");
+        settings.checkParameters();
+        settings.processParameters();
+
+        ParallelFragmentationAlgorithm algorithm =
+                new ParallelFragmentationAlgorithm(settings);
+        algorithm.run();
+        return new File(FragmenterTask.getFragmentsFileName(settings));
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * @return a string that identifies the content of a fragment, i.e., its
+     * atoms and attachment points.
+     */
+    private static String describe(IAtomContainer frag)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (IAtom atm : frag.atoms())
+        {
+            sb.append(atm.getSymbol());
+        }
+        sb.append(" ").append((Object) frag.getProperty(
+                DENOPTIMConstants.APSTAG));
+        return sb.toString();
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testSameResultsAsFileBasedMode() throws Exception
+    {
+        StringBuilder smiles = new StringBuilder();
+        for (int i=0; i<NUMMOLS; i++)
+        {
+            smiles.append("C".repeat(1 + i % 5)).append("NC(=O)")
+                .append("C".repeat(1 + i % 3))
+                .append(i % 4 == 0 ? "Cl" : "F").append(NL);
+        }
+        String structuresFile = tempDir.getAbsolutePath() + SEP + "mols.smi";
+        DenoptimIO.writeData(structuresFile, smiles.toString(), false);
+
+        String cutRulesFile = tempDir.getAbsolutePath() + SEP + "rules";
+        DenoptimIO.writeData(cutRulesFile,
+                "CTR A 1 [#6] [#7] -" + NL
+                + "CTR C 3 [#6] [#9] -" + NL, false);
+
+        File fileBased = runFragmentation("fileBased", structuresFile,
+                cutRulesFile, 1, false);
+        File streamed = runFragmentation("streamed", structuresFile,
+                cutRulesFile, 3, true);
+
+        List<IAtomContainer> expected = DenoptimIO.readAllAtomContainers(
+                fileBased);
+        List<IAtomContainer> actual = DenoptimIO.readAllAtomContainers(
+                streamed);
+        assertTrue(expected.size() > NUMMOLS);
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++)
+        {
+            assertEquals(describe(expected.get(i)), describe(actual.get(i)),
+                    "Different fragment #" + i);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testFailingWorkerStopsReader() throws Exception
+    {
+        // Elemental analysis requires a formula, which we do not provide, so
+        // the first worker that gets a batch fails.
+        FragmenterParameters settings = new FragmenterParameters();
+        settings.setWorkDirectory(tempDir.getAbsolutePath());
+        settings.setCheckFormula(true);
+        settings.setNumTasks(2);
+        FragmentationPipeline pipeline = new FragmentationPipeline(settings,
+                new File(tempDir, "output.sdf"));
+
+        List<AtomicReference<Throwable>> problems =
+                new ArrayList<AtomicReference<Throwable>>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i=0; i<settings.getNumTasks(); i++)
+        {
+            AtomicReference<Throwable> problem =
+                    new AtomicReference<Throwable>();
+            problems.add(problem);
+            workers.add(new Thread(() -> {
+                try
+                {
+                    pipeline.work(null);
+                } catch (Throwable t)
+                {
+                    problem.set(t);
+                }
+            }));
+        }
+        workers.forEach(t -> t.start());
+
+        SmilesParser sp = new SmilesParser(
+                SilentChemObjectBuilder.getInstance());
+        int maxMols = 1000 * FragmentationPipeline.BATCHSIZE;
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            int submitted = 0;
+            while (submitted < maxMols)
+            {
+                submitted++;
+                if (!pipeline.submit(sp.parseSmiles("CCO")))
+                    break;
+            }
+            assertTrue(submitted < maxMols, "Reader was not stopped");
+            pipeline.close(settings.getNumTasks());
+            for (Thread t : workers)
+            {
+                t.join();
+            }
+        });
+
+        // Any worker processing a batch fails, the others just terminate
+        assertTrue(pipeline.getFailure() instanceof Error);
+        boolean failureIsReported = false;
+        for (AtomicReference<Throwable> problem : problems)
+        {
+            if (problem.get() != null)
+            {
+                assertTrue(problem.get() instanceof Error);
+                if (problem.get() == pipeline.getFailure())
+                    failureIsReported = true;
+            }
+        }
+        assertTrue(failureIsReported);
+        assertFalse(pipeline.submit(sp.parseSmiles("CCO")));
+        assertEquals(0, pipeline.getNumberOfResults());
+        assertFalse(pipeline.getOutput().exists());
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,156 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.fragmenter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import denoptim.constants.DENOPTIMConstants;
+import denoptim.exception.DENOPTIMException;
+import denoptim.graph.APClass;
+import denoptim.graph.Fragment;
+import denoptim.graph.Vertex.BBType;
+import denoptim.io.DenoptimIO;
+import denoptim.programs.fragmenter.FragmenterParameters;
+
+/**
+ * Unit test for the registry of isomorphic families of fragments.
+ *
+ * @author Marco Foscato
+ */
+
+public class IsomorphicFamilyRegistryTest
+{
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A fragment that records how many times its molecular representation
+     * is requested, and that can produce copies that cannot be written to
+     * file.
+     */
+    private static class TestFragment extends Fragment
+    {
+        final AtomicInteger numRequests = new AtomicInteger(0);
+        final boolean unwritableCopies;
+        boolean unwritable = false;
+
+        TestFragment(String smiles, boolean unwritableCopies)
+                throws Exception
+        {
+            super(new SmilesParser(SilentChemObjectBuilder.getInstance())
+                    .parseSmiles(smiles), BBType.FRAGMENT);
+            this.unwritableCopies = unwritableCopies;
+            addAP(0, APClass.make("A:0"));
+        }
+
+        @Override
+        public Fragment clone()
+        {
+            if (!unwritableCopies)
+                return super.clone();
+            try
+            {
+                TestFragment copy = new TestFragment("C", false);
+                copy.unwritable = true;
+                return copy;
+            } catch (Exception e)
+            {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public IAtomContainer getIAtomContainer()
+        {
+            if (unwritable)
+                throw new IllegalStateException("Cannot write this fragment");
+            numRequests.incrementAndGet();
+            return super.getIAtomContainer();
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testWritingDoesNotAlterRegisteredFragments() throws Exception
+    {
+        FragmenterParameters settings = new FragmenterParameters();
+        settings.setWorkDirectory(tempDir.getAbsolutePath());
+        IsomorphicFamilyRegistry registry = new IsomorphicFamilyRegistry(
+                settings);
+
+        TestFragment frag = new TestFragment("CCO", false);
+        assertTrue(registry.register(frag));
+        int numRequests = frag.numRequests.get();
+        registry.flush();
+
+        // The registered fragment is still owned by the caller, so the
+        // writing thread must not touch it.
+        assertEquals(numRequests, frag.numRequests.get());
+
+        String mwSlotID = FragmenterTools.getMWSlotIdentifier(frag,
+                settings.getMWSlotSize());
+        List<IAtomContainer> written = DenoptimIO.readAllAtomContainers(
+                settings.getMWSlotFileNameUnqFrags(mwSlotID));
+        assertEquals(1, written.size());
+        assertEquals(frag.getProperty(DENOPTIMConstants.ISOMORPHICFAMILYID),
+                written.get(0).getProperty(
+                        DENOPTIMConstants.ISOMORPHICFAMILYID));
+        registry.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testUnexpectedWritingProblemIsReported() throws Exception
+    {
+        FragmenterParameters settings = new FragmenterParameters();
+        settings.setWorkDirectory(tempDir.getAbsolutePath());
+        IsomorphicFamilyRegistry registry = new IsomorphicFamilyRegistry(
+                settings);
+
+        assertTrue(registry.register(new TestFragment("CCN", true)));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            DENOPTIMException e = assertThrows(DENOPTIMException.class,
+                    () -> registry.flush());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertThrows(DENOPTIMException.class, () -> registry.close());
+        });
+    }
+
+//------------------------------------------------------------------------------
+
+}
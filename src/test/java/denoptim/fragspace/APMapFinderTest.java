@@ -19,6 +19,7 @@
 package denoptim.fragspace;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
@@ -272,6 +273,62 @@ public class APMapFinderTest
         assertEquals(vG.getAP(0), apmf.getChosenAPMapping().get(vF.getAP(0)));
     }
     
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testIsMappingPossible() throws Exception
+    {
+        FragmentSpace fs = prepare();
+        EmptyVertex vA = new EmptyVertex();
+        vA.setBuildingBlockType(BBType.FRAGMENT);
+        vA.addAP(APCA);
+        vA.addAP(APCA);
+        
+        EmptyVertex vC = new EmptyVertex();
+        vC.setBuildingBlockType(BBType.FRAGMENT);
+        vC.addAP(APCA);
+        vC.addAP(APCA);
+        
+        DGraph g = new DGraph();
+        g.addVertex(vA);
+        g.addVertex(vC);
+        g.addEdge(new Edge(vA.getAP(0), vC.getAP(0)));
+        g.addEdge(new Edge(vA.getAP(1), vC.getAP(1)));
+        
+        // Each of the used APs on vA has a compatible AP, but the two used 
+        // APs cannot be mapped at the same time.
+        EmptyVertex vB = new EmptyVertex();
+        vB.setBuildingBlockType(BBType.FRAGMENT);
+        vB.addAP(APCA);
+        vB.addAP(APCD);
+        
+        assertFalse(APMapFinder.isMappingPossible(fs, vA, vB, false, true));
+        assertFalse(new APMapFinder(fs, vA, vB, true).foundMapping());
+        
+        // Another vertex with the same signature uses the memorized result
+        EmptyVertex vB2 = new EmptyVertex();
+        vB2.setBuildingBlockType(BBType.FRAGMENT);
+        vB2.addAP(APCD);
+        vB2.addAP(APCA);
+        assertFalse(APMapFinder.isMappingPossible(fs, vA, vB2, false, true));
+        
+        EmptyVertex vD = new EmptyVertex();
+        vD.setBuildingBlockType(BBType.FRAGMENT);
+        vD.addAP(APCA);
+        vD.addAP(APCD);
+        vD.addAP(APCA);
+        
+        assertTrue(APMapFinder.isMappingPossible(fs, vA, vD, false, true));
+        APMapFinder apmf = new APMapFinder(fs, vA, vD, true);
+        assertTrue(apmf.foundMapping());
+        assertEquals(2, apmf.getAllAPMappings().size());
+        for (APMapping apm : apmf.getAllAPMappings())
+        {
+            assertTrue(apm.containsKey(vA.getAP(0)));
+            assertTrue(apm.containsKey(vA.getAP(1)));
+        }
+    }
+    
 //------------------------------------------------------------------------------
     
 }
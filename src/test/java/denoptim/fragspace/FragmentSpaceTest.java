@@ -341,6 +341,39 @@ public class FragmentSpaceTest
         }
     }
     
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testChooseRandomFragAPCompatibleWithClass() throws Exception
+    {
+        FragmentSpaceParameters fsp = buildFragmentSpace();
+        FragmentSpace fs = fsp.getFragmentSpace();
+        assertTrue(fs.isDefined(),"FragmentSpace is defined");
+        ArrayList<IdFragmentAndAP> lst = fs.getFragAPsCompatibleWithClass(APC1);
+        assertEquals(lst.size(), fs.countFragAPsCompatibleWithClass(APC1));
+        
+        for (int i=0; i<20; i++)
+        {
+            IdFragmentAndAP chosen = 
+                    fs.chooseRandomFragAPCompatibleWithClass(APC1);
+            boolean found = false;
+            for (IdFragmentAndAP id : lst)
+            {
+                if (id.sameFragAndAp(chosen))
+                {
+                    found = true;
+                    break;
+                }
+            }
+            assertTrue(found, "Chosen AP is not among the compatible ones");
+        }
+        
+        // Changes of the compatibility matrix are seen by the index
+        fs.setCompatibilityMatrix(new HashMap<APClass,ArrayList<APClass>>());
+        assertEquals(0, fs.countFragAPsCompatibleWithClass(APC1));
+        assertEquals(null, fs.chooseRandomFragAPCompatibleWithClass(APC1));
+    }
+    
 //------------------------------------------------------------------------------
     
     @Test
@@ -229,6 +229,124 @@ public class PopulationTest
         assertEquals(partnersForC5.size(), 0, "Wrong umber of partners for C5");
     }
     
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testXOverCompatibilityAfterRemoval() throws Exception
+    {
+        GAParameters gaparams = prepare();
+        FragmentSpaceParameters fsParams = (FragmentSpaceParameters) gaparams
+                .getParameters(ParametersType.FS_PARAMS);
+        FragmentSpace fs = fsParams.getFragmentSpace();
+        
+        Population pop = new Population(gaparams);
+        
+        // We give uniquefying properties to the vertexes so that they
+        // are not seen as v.sameAs(o).
+        String k = "Uniquefying";
+        int counter = 0;
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (DGraph g : Arrays.asList(makeGraphA(), makeGraphB(), 
+                makeGraphC(), makeGraphD()))
+        {
+            for (int i=0; i<g.getVertexCount(); i++)
+            {
+                Vertex v = g.getVertexAtPosition(i);
+                v.setUniquefyingProperty(k);
+                v.setProperty(k, counter);
+                counter++;
+            }
+            Candidate c = new Candidate("C" + candidates.size(), g);
+            candidates.add(c);
+            pop.add(c);
+        }
+        Candidate c1 = candidates.get(0);
+        Candidate c2 = candidates.get(1);
+        Candidate c4 = candidates.get(2);
+        Candidate c5 = candidates.get(3);
+        
+        List<Candidate> partnersForC1 = pop.getXoverPartners(c1, 
+                new ArrayList<Candidate>(Arrays.asList(c1,c2,c4,c5)), fs);
+        assertEquals(Arrays.asList(c2,c4), partnersForC1);
+        assertEquals(9, pop.getXoverSites(c1, c2).size());
+        assertEquals(9, pop.getXoverSites(c2, c1).size());
+        // C5 shares no compatible edge with C1: nothing is computed or stored
+        assertNull(pop.getXoverSites(c1, c5));
+        
+        pop.remove(c2);
+        assertNull(pop.getXoverSites(c1, c2));
+        assertNull(pop.getXoverSites(c2, c1));
+        partnersForC1 = pop.getXoverPartners(c1, 
+                new ArrayList<Candidate>(Arrays.asList(c1,c4,c5)), fs);
+        assertEquals(Arrays.asList(c4), partnersForC1);
+        assertEquals(5, pop.getXoverSites(c1, c4).size());
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testXOverCompatibilityAfterEviction() throws Exception
+    {
+        GAParameters gaparams = prepare();
+        FragmentSpaceParameters fsParams = (FragmentSpaceParameters) gaparams
+                .getParameters(ParametersType.FS_PARAMS);
+        FragmentSpace fs = fsParams.getFragmentSpace();
+        
+        Population pop = new Population(gaparams);
+        
+        String k = "Uniquefying";
+        int counter = 0;
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (DGraph g : Arrays.asList(makeGraphA(), makeGraphB(), 
+                makeGraphC(), makeGraphD()))
+        {
+            for (int i=0; i<g.getVertexCount(); i++)
+            {
+                Vertex v = g.getVertexAtPosition(i);
+                v.setUniquefyingProperty(k);
+                v.setProperty(k, counter);
+                counter++;
+            }
+            Candidate c = new Candidate("C" + candidates.size(), g);
+            candidates.add(c);
+            pop.add(c);
+        }
+        Candidate c1 = candidates.get(0);
+        Candidate c2 = candidates.get(1);
+        Candidate c4 = candidates.get(2);
+        Candidate c5 = candidates.get(3);
+        List<Candidate> eligibleParents = new ArrayList<Candidate>(
+                Arrays.asList(c1,c2,c4,c5));
+        
+        pop.getXoverPartners(c1, eligibleParents, fs);
+        pop.removeIf(c -> c == c2);
+        assertNull(pop.getXoverSites(c1, c2));
+        assertEquals(5, pop.getXoverSites(c1, c4).size());
+        
+        pop.trim(1);
+        assertEquals(1, pop.size());
+        assertNull(pop.getXoverSites(c1, c4));
+        
+        pop.add(c2);
+        pop.add(c4);
+        pop.getXoverPartners(c1, eligibleParents, fs);
+        pop.subList(1, 3).clear();
+        assertNull(pop.getXoverSites(c1, c2));
+        assertNull(pop.getXoverSites(c4, c1));
+        
+        // Evicted members can still be chosen as long as they are eligible
+        List<Candidate> partnersForC1 = pop.getXoverPartners(c1, 
+                eligibleParents, fs);
+        assertEquals(Arrays.asList(c2,c4), partnersForC1);
+        
+        // ...but are forgotten once they are not eligible anymore
+        partnersForC1 = pop.getXoverPartners(c1, 
+                new ArrayList<Candidate>(Arrays.asList(c1)), fs);
+        assertEquals(0, partnersForC1.size());
+        assertNull(pop.getXoverSites(c1, c2));
+        assertNull(pop.getXoverSites(c1, c4));
+    }
+    
 //------------------------------------------------------------------------------
     
     @Test
@@ -0,0 +1,253 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.ga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import denoptim.fitness.FitnessParameters;
+import denoptim.graph.Candidate;
+import denoptim.graph.DGraph;
+import denoptim.logging.CounterID;
+import denoptim.logging.Monitor;
+import denoptim.programs.denovo.GAParameters;
+import denoptim.utils.SizeControlledSet;
+
+/**
+ * Unit test for the steady-state pipeline of the evolutionary algorithm.
+ * The pipeline is driven by tasks that do not evaluate anything, but wait
+ * until they are allowed to complete.
+ *
+ * @author Marco Foscato
+ */
+
+public class SteadyStatePipelineTest
+{
+    private static final int NUMCPU = 2;
+
+    private static final int MAXINFLIGHT = 2 * NUMCPU;
+
+    @TempDir
+    File tempDir;
+
+    private GAParameters settings;
+
+    /**
+     * Allows the stub tasks to complete
+     */
+    private CountDownLatch gate;
+
+    /**
+     * Number of stub tasks being evaluated
+     */
+    private AtomicInteger numRunning = new AtomicInteger(0);
+
+    /**
+     * Max number of stub tasks evaluated at the same time
+     */
+    private AtomicInteger maxNumRunning = new AtomicInteger(0);
+
+    /**
+     * Number of completed stub tasks
+     */
+    private AtomicInteger numCompleted = new AtomicInteger(0);
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A task that waits for the gate to open, and records how many tasks are
+     * running concurrently.
+     */
+    private class StubTask extends OffspringEvaluationTask
+    {
+        StubTask(String name, Monitor mnt)
+        {
+            super(settings, new Candidate(name, new DGraph()), null,
+                    tempDir.getAbsolutePath(), null, mnt, null, false);
+        }
+
+        @Override
+        public Object call() throws Exception
+        {
+            maxNumRunning.accumulateAndGet(numRunning.incrementAndGet(),
+                    Math::max);
+            try
+            {
+                gate.await();
+            } finally {
+                numRunning.decrementAndGet();
+            }
+            numCompleted.incrementAndGet();
+            return null;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private SteadyStatePipeline makePipeline() throws Exception
+    {
+        settings = new GAParameters();
+        settings.setParameters(new FitnessParameters());
+        settings.interpretKeyword("GA-NUMPARALLELTASKS=" + NUMCPU);
+        gate = new CountDownLatch(1);
+        SizeControlledSet scs = new SizeControlledSet(100,
+                tempDir.getAbsolutePath() + File.separator + "uids", null);
+        return new SteadyStatePipeline(settings, scs);
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Waits until all threads of the pipeline have terminated.
+     */
+    private static void waitForPipelineThreads() throws InterruptedException
+    {
+        boolean alive = true;
+        while (alive)
+        {
+            alive = false;
+            for (Thread t : Thread.getAllStackTraces().keySet())
+            {
+                if (t.getName().startsWith("GA-deduplication")
+                        || t.getName().startsWith("GA-evaluation-"))
+                {
+                    alive = true;
+                    t.join(100);
+                }
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testInFlightBoundAndDuplicates() throws Exception
+    {
+        SteadyStatePipeline pipeline = makePipeline();
+        Monitor mnt = new Monitor();
+        AtomicInteger submitted = new AtomicInteger(0);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            Thread generator = new Thread(() -> {
+                try
+                {
+                    for (int i=0; i<10; i++)
+                    {
+                        pipeline.submit(new StubTask("M"+i, mnt), "UID"+i,
+                                mnt);
+                        submitted.incrementAndGet();
+                    }
+                } catch (InterruptedException e)
+                {
+                    // nothing to do
+                }
+            });
+            generator.start();
+
+            // The generator blocks once the pipeline is full
+            while (pipeline.getNumberInFlight() < MAXINFLIGHT
+                    || numRunning.get() < NUMCPU)
+            {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertEquals(MAXINFLIGHT, submitted.get());
+            assertEquals(MAXINFLIGHT, pipeline.getNumberInFlight());
+            assertTrue(generator.isAlive());
+
+            // Completion of offspring drives the generation of new ones
+            gate.countDown();
+            generator.join();
+            assertEquals(10, submitted.get());
+
+            // Duplicates leave the pipeline without being evaluated. If they
+            // did not release their permit, we would block here.
+            for (int i=0; i<3*MAXINFLIGHT; i++)
+            {
+                pipeline.submit(new StubTask("D"+i, mnt), "UID0", mnt);
+            }
+
+            pipeline.shutdown();
+            waitForPipelineThreads();
+        });
+        assertEquals(10, numCompleted.get());
+        assertTrue(maxNumRunning.get() <= NUMCPU);
+        assertEquals(0, pipeline.getNumberInFlight());
+        assertEquals(3*MAXINFLIGHT,
+                mnt.get(CounterID.DUPLICATEPREFITNESS).get());
+        assertNull(pipeline.getFailure());
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testStop() throws Exception
+    {
+        SteadyStatePipeline pipeline = makePipeline();
+        Monitor mnt = new Monitor();
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            Thread generator = new Thread(() -> {
+                try
+                {
+                    for (int i=0; i<10; i++)
+                    {
+                        pipeline.submit(new StubTask("M"+i, mnt), "UID"+i,
+                                mnt);
+                    }
+                } catch (InterruptedException e)
+                {
+                    // nothing to do
+                }
+            });
+            generator.start();
+            while (pipeline.getNumberInFlight() < MAXINFLIGHT
+                    || numRunning.get() < NUMCPU)
+            {
+                Thread.sleep(10);
+            }
+
+            // Stopping releases the generator and the evaluation threads,
+            // even if the tasks never complete by themselves
+            pipeline.stop();
+            assertFalse(Thread.currentThread().isInterrupted());
+            generator.join();
+            waitForPipelineThreads();
+
+            // Later calls do nothing and do not block
+            pipeline.submit(new StubTask("X", mnt), "UIDX", mnt);
+            pipeline.shutdown();
+        });
+        assertEquals(0, numCompleted.get());
+        assertEquals(0, numRunning.get());
+        assertNull(pipeline.getFailure());
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,87 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.AtomContainer;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * Unit test for candidates
+ *
+ * @author Marco Foscato
+ */
+
+public class CandidateTest
+{
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testThreeDimTreeReuse() throws Exception
+    {
+        DGraph graph = new DGraph();
+        EmptyVertex prev = null;
+        for (int i=0; i<3; i++)
+        {
+            EmptyVertex v = new EmptyVertex(i);
+            v.setBuildingBlockId(i);
+            v.addAP();
+            v.addAP();
+            graph.addVertex(v);
+            if (prev != null)
+                graph.addEdge(new Edge(prev.getAP(1), v.getAP(0)));
+            prev = v;
+        }
+        Candidate c = new Candidate(graph);
+
+        IAtomContainer mol = new AtomContainer();
+        mol.addAtom(new Atom("C"));
+
+        assertFalse(c.hasThreeDimTree());
+        c.setThreeDimTree(mol, graph.getInvariantHash());
+        assertTrue(c.hasThreeDimTree());
+        assertTrue(mol == c.getThreeDimTree());
+
+        // Changes of the graph make the model obsolete
+        EmptyVertex v = new EmptyVertex(3);
+        v.setBuildingBlockId(3);
+        v.addAP();
+        graph.appendVertexOnAP(prev.getAP(1), v.getAP(0));
+        assertTrue(c.hasThreeDimTree());
+        assertNull(c.getThreeDimTree());
+
+        // So does replacing the graph
+        c.setThreeDimTree(mol, graph.getInvariantHash());
+        assertTrue(mol == c.getThreeDimTree());
+        c.setGraph(graph.clone());
+        assertNull(c.getThreeDimTree());
+
+        c.clearThreeDimTree();
+        assertFalse(c.hasThreeDimTree());
+    }
+
+//------------------------------------------------------------------------------
+
+}
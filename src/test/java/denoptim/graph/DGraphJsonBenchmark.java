@@ -0,0 +1,233 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+
+import denoptim.fragspace.FragmentSpace;
+import denoptim.fragspace.FragmentSpaceParameters;
+import denoptim.fragspace.IdFragmentAndAP;
+import denoptim.graph.Vertex.BBType;
+import denoptim.io.DenoptimIO;
+import denoptim.json.DENOPTIMgson;
+import denoptim.molecularmodeling.ThreeDimTreeBuilder;
+import denoptim.utils.GraphUtils;
+import denoptim.utils.Randomizer;
+
+/**
+ * Micro-benchmark comparing the JSON format of {@link DGraph}s written by
+ * {@link DGraph#toJson(FragmentSpace)} and read by
+ * {@link DGraph#fromJson(String, FragmentSpace)} with the pretty-printed
+ * format of {@link DENOPTIMgson}. Two kinds of graphs are used:
+ * <ul>
+ * <li>"FSE": graphs like those stored by the combinatorial explorer, i.e., a
+ * scaffold decorated with one layer of fragments and capped, all made of
+ * copies of the building blocks in the libraries, which are written as
+ * references to such libraries,</li>
+ * <li>"FSE-private": the same graphs after building their molecular
+ * representation, which makes the vertices stop sharing the atoms of the
+ * building blocks, so they cannot be written as references,</li>
+ * <li>"GA": the initial population of an evolutionary experiment, i.e.,
+ * graphs read from file, which are written in full, as done for the SDF
+ * tags of the candidates.</li>
+ * </ul>
+ * Sizes of the JSON strings are printed when setting up the benchmark.
+ * This is not a unit test. Run it from the root of the repository (it uses
+ * the data under <code>test/PtCOLX2</code>) with
+ * <pre>
+ * java -cp target/test-classes:&lt;classpath&gt; org.openjdk.jmh.Main DGraphJsonBenchmark
+ * </pre>
+ *
+ * @author Marco Foscato
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DGraphJsonBenchmark
+{
+    private static final String DATADIR = "test/PtCOLX2/data/";
+
+    @Param({"FSE", "FSE-private", "GA"})
+    public String graphKind;
+
+    private FragmentSpace fragSpace;
+
+    /**
+     * The fragment space used to write and read graphs, or
+     * <code>null</code> to write all vertices in full.
+     */
+    private FragmentSpace refSpace;
+
+    private List<DGraph> graphs;
+
+    private List<String> prettyJsons;
+
+    private List<String> compactJsons;
+
+//------------------------------------------------------------------------------
+
+    @Setup
+    public void setup() throws Exception
+    {
+        fragSpace = new FragmentSpace(new FragmentSpaceParameters(),
+                DATADIR + "TCFS-1_scaff.sdf",
+                DATADIR + "TCFS-1_frags.sdf",
+                DATADIR + "TCFS-1_caps.sdf",
+                DATADIR + "TCFS-1_CPMap.par");
+        if (graphKind.startsWith("FSE"))
+        {
+            graphs = makeFSEGraphs(25);
+            refSpace = fragSpace;
+            if ("FSE-private".equals(graphKind))
+            {
+                ThreeDimTreeBuilder t3d = new ThreeDimTreeBuilder(
+                        Logger.getLogger("DGraphJsonBenchmark"),
+                        new Randomizer());
+                t3d.setAlignBBsIn3D(false);
+                for (DGraph g : graphs)
+                    t3d.convertGraphTo3DAtomContainer(g, true);
+            }
+        } else {
+            graphs = DenoptimIO.readDENOPTIMGraphsFromSDFile(
+                    DATADIR + "initPopulation.sdf");
+            refSpace = null;
+        }
+
+        Gson gson = DENOPTIMgson.getWriter();
+        prettyJsons = new ArrayList<String>();
+        compactJsons = new ArrayList<String>();
+        long prettySize = 0;
+        long compactSize = 0;
+        for (DGraph g : graphs)
+        {
+            String pretty = gson.toJson(g);
+            String compact = g.toJson(refSpace);
+            prettyJsons.add(pretty);
+            compactJsons.add(compact);
+            prettySize = prettySize + pretty.length();
+            compactSize = compactSize + compact.length();
+        }
+        System.out.println(graphKind + ": " + graphs.size() + " graphs, "
+                + "pretty-printed JSON " + prettySize + " chars, compact JSON "
+                + compactSize + " chars");
+    }
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Builds graphs like those generated by the first level of a
+     * combinatorial exploration: each AP of the scaffold is used by a
+     * compatible fragment, and any remaining AP is capped.
+     */
+    private List<DGraph> makeFSEGraphs(int num) throws Exception
+    {
+        List<DGraph> fseGraphs = new ArrayList<DGraph>();
+        for (int i=0; i<num; i++)
+        {
+            DGraph g = new DGraph();
+            Vertex scaffold = Vertex.newVertexFromLibrary(
+                    GraphUtils.getUniqueVertexIndex(), 0, BBType.SCAFFOLD,
+                    fragSpace);
+            g.addVertex(scaffold);
+            int choice = i;
+            for (AttachmentPoint ap : scaffold.getAttachmentPoints())
+            {
+                List<IdFragmentAndAP> candidates =
+                        fragSpace.getFragAPsCompatibleWithClass(
+                                ap.getAPClass());
+                if (candidates.isEmpty())
+                    continue;
+                IdFragmentAndAP chosen = candidates.get(
+                        choice % candidates.size());
+                choice = choice + 7;
+                Vertex frag = Vertex.newVertexFromLibrary(
+                        GraphUtils.getUniqueVertexIndex(),
+                        chosen.getVertexMolId(), chosen.getVertexMolType(),
+                        fragSpace);
+                g.appendVertexOnAP(ap, frag.getAP(chosen.getApId()));
+            }
+            g.addCappingGroups(fragSpace);
+            fseGraphs.add(g);
+        }
+        return fseGraphs;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void writePrettyPrinted(Blackhole bh)
+    {
+        Gson gson = DENOPTIMgson.getWriter();
+        for (DGraph g : graphs)
+            bh.consume(gson.toJson(g));
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void writeCompact(Blackhole bh)
+    {
+        for (DGraph g : graphs)
+            bh.consume(g.toJson(refSpace));
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void readPrettyPrinted(Blackhole bh)
+    {
+        Gson gson = DENOPTIMgson.getReader();
+        for (String json : prettyJsons)
+            bh.consume(gson.fromJson(json, DGraph.class));
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void readCompact(Blackhole bh)
+    {
+        for (String json : compactJsons)
+            bh.consume(DGraph.fromJson(json, refSpace));
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,160 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Micro-benchmark comparing the indexed lookups of {@link DGraph} with the
+ * scan of the lists of vertexes and edges. This is not a unit test. Run it
+ * with 
+ * <pre>
+ * java -cp target/test-classes:&lt;classpath&gt; org.openjdk.jmh.Main DGraphLookupBenchmark
+ * </pre>
+ * 
+ * @author Marco Foscato
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DGraphLookupBenchmark
+{
+    @Param({"50", "100", "200"})
+    public int numVertexes;
+    
+    private DGraph graph;
+    
+    private List<Vertex> vertexes;
+    
+//------------------------------------------------------------------------------
+    
+    /**
+     * Builds a branched graph where each vertex has up to three children.
+     */
+    @Setup
+    public void setup() throws Exception
+    {
+        graph = new DGraph();
+        vertexes = new ArrayList<Vertex>();
+        EmptyVertex root = new EmptyVertex(0);
+        for (int j=0; j<3; j++)
+            root.addAP();
+        graph.addVertex(root);
+        vertexes.add(root);
+        int parentPos = 0;
+        int apOnParent = 0;
+        for (int i=1; i<numVertexes; i++)
+        {
+            EmptyVertex v = new EmptyVertex(i);
+            for (int j=0; j<4; j++)
+                v.addAP();
+            Vertex parent = vertexes.get(parentPos);
+            graph.appendVertexOnAP(parent.getAP(apOnParent), v.getAP(0));
+            vertexes.add(v);
+            apOnParent++;
+            if (apOnParent == parent.getNumberOfAPs())
+            {
+                parentPos++;
+                apOnParent = 1;
+            }
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Benchmark
+    public void indexedVertexById(Blackhole bh)
+    {
+        for (int i=0; i<numVertexes; i++)
+            bh.consume(graph.getVertexWithId(i));
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Benchmark
+    public void scannedVertexById(Blackhole bh)
+    {
+        for (int i=0; i<numVertexes; i++)
+        {
+            for (Vertex v : graph.getVertexList())
+            {
+                if (v.getVertexId() == i)
+                {
+                    bh.consume(v);
+                    break;
+                }
+            }
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Benchmark
+    public void indexedEdgesWithSrcAndTrg(Blackhole bh)
+    {
+        for (Vertex v : vertexes)
+        {
+            bh.consume(graph.getEdgesWithSrc(v));
+            bh.consume(graph.getEdgesWithTrg(v));
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+    @Benchmark
+    public void scannedEdgesWithSrcAndTrg(Blackhole bh)
+    {
+        for (Vertex v : vertexes)
+        {
+            List<Edge> src = new ArrayList<Edge>();
+            List<Edge> trg = new ArrayList<Edge>();
+            for (Edge e : graph.getEdgeList())
+            {
+                if (e.getSrcAP().getOwner() == v)
+                    src.add(e);
+                if (e.getTrgAP().getOwner() == v)
+                    trg.add(e);
+            }
+            bh.consume(src);
+            bh.consume(trg);
+        }
+    }
+    
+//------------------------------------------------------------------------------
+    
+}
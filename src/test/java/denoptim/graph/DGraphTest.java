@@ -2990,6 +2990,100 @@ public class DGraphTest
         assertTrue(gB1.isIsomorphicTo(gB2),"graph B vs its clone");
     }
     
+//-----------------------------------------------------------------------------
+    
+    @Test
+    public void testIndexOfVertexesEdgesAndRings() throws Exception 
+    {
+        DGraph g = new DGraph();
+        EmptyVertex v0 = new EmptyVertex(0);
+        v0.addAP();
+        v0.addAP();
+        v0.addAP();
+        g.addVertex(v0);
+        List<EmptyVertex> children = new ArrayList<EmptyVertex>();
+        for (int i=0; i<3; i++)
+        {
+            EmptyVertex v = new EmptyVertex(i+1);
+            v.addAP();
+            v.addAP();
+            g.appendVertexOnAP(v0.getAP(i), v.getAP(0));
+            children.add(v);
+        }
+        
+        assertTrue(g.getVertexWithId(2) == children.get(1));
+        assertNull(g.getVertexWithId(99));
+        assertEquals(3, g.getEdgesWithSrc(v0).size());
+        assertEquals(0, g.getEdgesWithTrg(v0).size());
+        assertEquals(1, g.getEdgesWithTrg(children.get(2)).size());
+        assertTrue(g.getEdgesWithSrc(v0).get(1) == 
+                children.get(1).getEdgeToParent());
+        
+        g.removeVertex(children.get(1));
+        assertNull(g.getVertexWithId(2));
+        assertEquals(2, g.getEdgesWithSrc(v0).size());
+        
+        children.get(2).setVertexId(42);
+        assertNull(g.getVertexWithId(3));
+        assertTrue(g.getVertexWithId(42) == children.get(2));
+        assertTrue(g.containsVertexID(42));
+        
+        EmptyVertex v5 = new EmptyVertex(5);
+        v5.addAP();
+        g.appendVertexOnAP(children.get(2).getAP(1), v5.getAP(0));
+        assertTrue(g.getVertexWithId(5) == v5);
+        assertEquals(1, g.getEdgesWithSrc(children.get(2)).size());
+        
+        DGraph clone = g.clone();
+        assertEquals(g.getVertexCount(), clone.getVertexCount());
+        Vertex clonedV0 = clone.getVertexWithId(0);
+        assertTrue(clonedV0 != v0);
+        assertEquals(2, clone.getEdgesWithSrc(clonedV0).size());
+        
+        // Vertexes with the same ID: the first in the list is found, and the
+        // next one takes its place when the first is removed.
+        v5.setVertexId(0);
+        assertTrue(g.getVertexWithId(0) == v0);
+        g.removeVertex(v0);
+        assertTrue(g.getVertexWithId(0) == v5);
+        g.removeVertex(v5);
+        assertNull(g.getVertexWithId(0));
+        assertFalse(g.containsVertexID(0));
+    }
+    
+//-----------------------------------------------------------------------------
+    
+    @Test
+    public void testInvariantHash() throws Exception 
+    {
+        FragmentSpace fs = prepare();
+        
+        assertEquals(new DGraph().getInvariantHash(), 
+                new DGraph().getInvariantHash(), "empty graphs");
+        
+        DGraph gD1 = makeTestGraphD(fs);
+        DGraph gD2 = makeTestGraphD(fs);
+        assertEquals(gD1.getInvariantHash(), gD2.getInvariantHash(),
+                "two of same graph D");
+        assertEquals(gD1.getInvariantHash(), gD1.clone().getInvariantHash(),
+                "graph D vs its clone");
+        
+        DGraph gB1 = makeTestGraphB(fs);
+        assertNotEquals(gD1.getInvariantHash(), gB1.getInvariantHash(),
+                "graph D vs graph B");
+        assertFalse(gD1.isIsomorphicTo(gB1),"graph D vs graph B");
+        
+        DGraph gB2 = gB1.clone();
+        long hashBeforeChange = gB2.getInvariantHash();
+        assertEquals(gB1.getInvariantHash(), hashBeforeChange);
+        EmptyVertex v = new EmptyVertex();
+        v.addAP();
+        gB2.addVertex(v);
+        assertNotEquals(hashBeforeChange, gB2.getInvariantHash(),
+                "hash of modified graph");
+        assertFalse(gB1.isIsomorphicTo(gB2),"graph B vs modified clone");
+    }
+    
 //-----------------------------------------------------------------------------
 	
 	@Test
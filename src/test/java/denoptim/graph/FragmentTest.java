@@ -233,6 +233,46 @@ public class FragmentTest
         assertEquals("PROVALUE",c.getProperty("PROPNAME"));
     }
     
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testCopyOnWriteClone() throws Exception
+    {
+        Fragment v = makeFragmentA();
+        
+        Fragment c1 = v.copyOnWriteClone();
+        Fragment c2 = v.copyOnWriteClone();
+        Fragment c3 = c2.clone();
+        assertTrue(c1.isMoleculeShared());
+        assertTrue(c3.isMoleculeShared());
+        assertFalse(v.isMoleculeShared());
+        assertEquals(3, c1.getAtomCount());
+        assertEquals(4, c1.getNumberOfAPs());
+        assertTrue(c1.isIsomorphicTo(v));
+        assertTrue(c1.isMoleculeShared());
+        
+        // Changing one copy does not affect others
+        c1.removeAtom(c1.getAtom(1));
+        assertFalse(c1.isMoleculeShared());
+        assertEquals(2, c1.getAtomCount());
+        assertEquals(3, c2.getAtomCount());
+        assertEquals(3, c3.getAtomCount());
+        assertEquals(3, v.getAtomCount());
+        
+        // APs are projected on the own atoms when needed
+        assertEquals(3, c2.getAPCountOnAtom(2));
+        assertFalse(c2.isMoleculeShared());
+        assertTrue(c2.getAtomHoldingAP(c2.getAP(0)) == c2.getAtom(2));
+        assertTrue(c3.isMoleculeShared());
+        assertEquals(1, c3.getAPCountOnAtom(0));
+        
+        // Changes of the original are not seen by later copies
+        v.getAtom(0).setSymbol("N");
+        Fragment c4 = v.copyOnWriteClone();
+        assertEquals("N", c4.getAtom(0).getSymbol());
+        assertEquals("C", c3.getAtom(0).getSymbol());
+    }
+    
 //------------------------------------------------------------------------------
     
     public static Fragment makeFragmentA() throws DENOPTIMException
@@ -347,6 +387,27 @@ public class FragmentTest
         assertTrue(vB.isIsomorphicTo(vA));
     }
     
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testIsomorphismInvariantHash() throws Exception
+    {
+        Fragment vA = makeFragmentA();
+        Fragment vAbis = makeFragmentA();
+        DummyAtomHandler.addDummiesOnLinearities(vAbis, 170.0);
+        Fragment vB = makeFragmentB();
+        Fragment vC = makeFragmentC();
+        
+        assertEquals(vA.getIsomorphismInvariantHash(), 
+                vAbis.getIsomorphismInvariantHash());
+        assertEquals(vA.getIsomorphismInvariantHash(), 
+                vA.clone().getIsomorphismInvariantHash());
+        assertNotEquals(vA.getIsomorphismInvariantHash(), 
+                vB.getIsomorphismInvariantHash());
+        assertNotEquals(vB.getIsomorphismInvariantHash(), 
+                vC.getIsomorphismInvariantHash());
+    }
+    
 //------------------------------------------------------------------------------
 
     
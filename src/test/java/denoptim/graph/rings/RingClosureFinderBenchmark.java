@@ -0,0 +1,159 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph.rings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.vecmath.Point3d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Micro-benchmark comparing the exhaustive scan of torsional space performed
+ * by {@link RotamerScanKernel} with that of
+ * {@link RingClosureFinder#hasClosableRotamer(List, ArrayList, ArrayList,
+ * ArrayList, int, double, int, int, int, int, ArrayList, ArrayList, boolean,
+ * boolean, Logger, int)}. This is not a unit test. Run it with
+ * <pre>
+ * java -cp target/test-classes:&lt;classpath&gt; org.openjdk.jmh.Main RingClosureFinderBenchmark
+ * </pre>
+ *
+ * @author Marco Foscato
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingClosureFinderBenchmark
+{
+    @Param({"3", "4", "5"})
+    public int numRotBonds;
+
+    private List<Point3d> chain;
+
+    private ArrayList<Boolean> rotatability;
+
+    private ArrayList<Double> dihedrals;
+
+    private ArrayList<Double> conds;
+
+    private Logger logger;
+
+    private static final double STEP = 30.0;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * Builds a zig-zag chain where all bonds but the first and last are
+     * rotatable.
+     */
+    @Setup
+    public void setup() throws Exception
+    {
+        int numPts = numRotBonds + 3;
+        chain = new ArrayList<Point3d>();
+        rotatability = new ArrayList<Boolean>();
+        dihedrals = new ArrayList<Double>();
+        for (int i=0; i<numPts; i++)
+        {
+            chain.add(new Point3d(i * 1.25, (i % 2) * 0.9, 0.0));
+            if (i > 0)
+            {
+                rotatability.add(i > 1 && i < numPts-1);
+                dihedrals.add(180.0);
+            }
+        }
+        conds = new ArrayList<Double>();
+        conds.add(-1.0);
+        conds.add(1.8);
+        conds.add(-1.0);
+        conds.add(1.8);
+        conds.add(-1.0);
+        conds.add(3.0);
+        conds.add(-0.3);
+        logger = Logger.getLogger("RingClosureFinderBenchmark");
+        logger.setLevel(Level.WARNING);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void pointListScan(Blackhole bh)
+    {
+        List<Point3d> work = new ArrayList<Point3d>();
+        for (Point3d p : chain)
+            work.add(new Point3d(p));
+        ArrayList<Double> dihIncement = new ArrayList<Double>();
+        for (int i=0; i<dihedrals.size(); i++)
+            dihIncement.add(0.0);
+        ArrayList<ArrayList<Double>> closableConfs =
+                new ArrayList<ArrayList<Double>>();
+        RingClosureFinder.hasClosableRotamer(work, rotatability, dihedrals,
+                dihIncement, 0, STEP, 1, 0, chain.size()-2, chain.size()-1,
+                conds, closableConfs, true, false, logger, 0);
+        bh.consume(closableConfs);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void kernelScan(Blackhole bh)
+    {
+        RotamerScanKernel kernel = new RotamerScanKernel(chain, rotatability,
+                dihedrals, STEP, 1, 0, chain.size()-2, chain.size()-1, conds);
+        ArrayList<ArrayList<Double>> closableConfs =
+                new ArrayList<ArrayList<Double>>();
+        kernel.scan(closableConfs, true, false);
+        bh.consume(closableConfs);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Benchmark
+    public void parallelKernelScan(Blackhole bh)
+    {
+        RotamerScanKernel kernel = new RotamerScanKernel(chain, rotatability,
+                dihedrals, STEP, 1, 0, chain.size()-2, chain.size()-1, conds);
+        ArrayList<ArrayList<Double>> closableConfs =
+                new ArrayList<ArrayList<Double>>();
+        kernel.scan(closableConfs, true, true);
+        bh.consume(closableConfs);
+    }
+
+//------------------------------------------------------------------------------
+
+}
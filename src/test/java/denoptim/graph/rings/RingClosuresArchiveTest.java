@@ -0,0 +1,194 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph.rings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import denoptim.exception.DENOPTIMException;
+
+/**
+ * Unit test for the archive of ring-closing conformations.
+ *
+ * @author Marco Foscato
+ */
+
+public class RingClosuresArchiveTest
+{
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    private RingClosureParameters makeSettings(String pathname,
+            boolean readOnly) throws Exception
+    {
+        RingClosureParameters settings = new RingClosureParameters();
+        settings.interpretKeyword("RCCINDEX=", pathname);
+        if (readOnly)
+            settings.interpretKeyword("RCCREADONLY", "");
+        return settings;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static String chainId(int i)
+    {
+        return (10+i) + "/SCAFFOLD/ap0ap1_" + (20+i) + "/FRAGMENT/ap1ap0%0";
+    }
+
+//------------------------------------------------------------------------------
+
+    private static RingClosingConformations makeRCCs(int i)
+    {
+        ArrayList<ArrayList<Double>> confs = new ArrayList<ArrayList<Double>>();
+        for (int j=0; j<=i%3; j++)
+        {
+            confs.add(new ArrayList<Double>(Arrays.asList(30.0*j, -60.0, i*1.0)));
+        }
+        return new RingClosingConformations(chainId(i), confs);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testStoreAndReload() throws Exception
+    {
+        String pathname = tempDir.getAbsolutePath() + File.separator + "rcc";
+        RingClosuresArchive rca = new RingClosuresArchive(
+                makeSettings(pathname, false));
+        for (int i=0; i<5; i++)
+        {
+            rca.storeEntry(chainId(i), i%2==0, makeRCCs(i));
+        }
+        // Duplicates are ignored
+        rca.storeEntry(chainId(0), false, new RingClosingConformations());
+        assertEquals(5, rca.size());
+        assertTrue(rca.getClosabilityOfChain(chainId(0)));
+        assertEquals(3, rca.getRCCsOfChain(chainId(2)).getNumberOfConformations());
+        assertEquals(1, rca.getCCFromTurningPointId(12).size());
+
+        // A second writer is not allowed
+        assertThrows(DENOPTIMException.class,
+                () -> new RingClosuresArchive(makeSettings(pathname, false)));
+
+        // Readers are allowed even if the writer is still working
+        RingClosuresArchive reader = new RingClosuresArchive(
+                makeSettings(pathname, true));
+        assertEquals(5, reader.size());
+        reader.close();
+        rca.close();
+
+        // Simulate a crash while writing a record
+        long length = new File(pathname).length();
+        try (RandomAccessFile raf = new RandomAccessFile(pathname, "rw"))
+        {
+            raf.seek(length);
+            raf.write(new byte[] {0x52, 0x43, 0x43, 0x31, 0, 0, 0, 50, 1, 2});
+        }
+
+        rca = new RingClosuresArchive(makeSettings(pathname, false));
+        assertEquals(length, new File(pathname).length());
+        assertEquals(5, rca.size());
+        for (int i=0; i<5; i++)
+        {
+            assertEquals(i%2==0, rca.getClosabilityOfChain(chainId(i)));
+            RingClosingConformations rcc = rca.getRCCsOfChain(chainId(i));
+            if (i%2==0)
+            {
+                assertEquals(chainId(i), rcc.getChainID());
+                assertEquals(makeRCCs(i).getListOfConformations(),
+                        rcc.getListOfConformations());
+            } else {
+                assertEquals(0, rcc.getNumberOfConformations());
+            }
+        }
+        rca.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testReadOnly() throws Exception
+    {
+        String pathname = tempDir.getAbsolutePath() + File.separator + "rcc";
+        RingClosuresArchive rca = new RingClosuresArchive(
+                makeSettings(pathname, false));
+        rca.storeEntry(chainId(0), true, makeRCCs(0));
+        rca.close();
+        long length = new File(pathname).length();
+
+        RingClosuresArchive reader = new RingClosuresArchive(
+                makeSettings(pathname, true));
+        reader.storeEntry(chainId(1), true, makeRCCs(1));
+        assertEquals(2, reader.size());
+        assertEquals(2, reader.getRCCsOfChain(chainId(1))
+                .getNumberOfConformations());
+        reader.close();
+        assertEquals(length, new File(pathname).length());
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testConcurrentStoring() throws Exception
+    {
+        String pathname = tempDir.getAbsolutePath() + File.separator + "rcc";
+        RingClosuresArchive rca = new RingClosuresArchive(
+                makeSettings(pathname, false));
+        IntStream.range(0, 400).parallel().forEach(i -> {
+            try
+            {
+                rca.storeEntry(chainId(i%250), true, makeRCCs(i%250));
+                rca.getRCCsOfChain(chainId(i%250));
+            } catch (DENOPTIMException e)
+            {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(250, rca.size());
+        rca.close();
+
+        RingClosuresArchive reloaded = new RingClosuresArchive(
+                makeSettings(pathname, true));
+        assertEquals(250, reloaded.size());
+        for (int i=0; i<250; i++)
+        {
+            assertEquals(makeRCCs(i).getListOfConformations(),
+                    reloaded.getRCCsOfChain(chainId(i))
+                    .getListOfConformations());
+        }
+        assertFalse(reloaded.getCCFromTurningPointId(10).isEmpty());
+        reloaded.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
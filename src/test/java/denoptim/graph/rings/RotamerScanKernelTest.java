@@ -0,0 +1,137 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.graph.rings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.vecmath.Point3d;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the scan of torsional space of chains of points.
+ *
+ * @author Marco Foscato
+ */
+
+public class RotamerScanKernelTest
+{
+
+//------------------------------------------------------------------------------
+
+    private static List<Point3d> getChain()
+    {
+        List<Point3d> chain = new ArrayList<Point3d>();
+        chain.add(new Point3d(0.0, 0.0, 0.0));
+        chain.add(new Point3d(1.0, 0.0, 0.0));
+        chain.add(new Point3d(1.5, 1.3, 0.0));
+        chain.add(new Point3d(2.9, 1.6, 0.2));
+        chain.add(new Point3d(3.6, 0.4, 0.1));
+        chain.add(new Point3d(3.0, -0.8, 0.3));
+        chain.add(new Point3d(2.0, -1.1, 0.9));
+        return chain;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static ArrayList<ArrayList<Double>> runReference(
+            boolean exhaustive)
+    {
+        ArrayList<Boolean> rotatability = new ArrayList<Boolean>(
+                Arrays.asList(false, true, true, true, true, false));
+        ArrayList<Double> dihedrals = new ArrayList<Double>(
+                Arrays.asList(0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        ArrayList<Double> dihIncement = new ArrayList<Double>(
+                Arrays.asList(0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+        ArrayList<Double> conds = new ArrayList<Double>(
+                Arrays.asList(-1.0, 2.2, -1.0, 2.2, -1.0, 3.0, -0.3));
+        ArrayList<ArrayList<Double>> closableConfs =
+                new ArrayList<ArrayList<Double>>();
+        RingClosureFinder.hasClosableRotamer(getChain(), rotatability,
+                dihedrals, dihIncement, 0, 30.0, 1, 0, 5, 6, conds,
+                closableConfs, exhaustive, false,
+                Logger.getLogger("RotamerScanKernelTest"), 0);
+        return closableConfs;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static ArrayList<ArrayList<Double>> runKernel(boolean exhaustive,
+            boolean parallel)
+    {
+        RotamerScanKernel kernel = new RotamerScanKernel(getChain(),
+                Arrays.asList(false, true, true, true, true, false),
+                Arrays.asList(0.0, 0.0, 0.0, 0.0, 0.0, 0.0),
+                30.0, 1, 0, 5, 6,
+                Arrays.asList(-1.0, 2.2, -1.0, 2.2, -1.0, 3.0, -0.3));
+        ArrayList<ArrayList<Double>> closableConfs =
+                new ArrayList<ArrayList<Double>>();
+        kernel.scan(closableConfs, exhaustive, parallel);
+        return closableConfs;
+    }
+
+//------------------------------------------------------------------------------
+
+    private static void assertSameConformations(
+            List<ArrayList<Double>> expected, List<ArrayList<Double>> actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++)
+        {
+            for (int j=0; j<expected.get(i).size(); j++)
+            {
+                assertTrue(Math.abs(expected.get(i).get(j)
+                        - actual.get(i).get(j)) < 0.0001, "Conformation " + i
+                        + " differs: " + expected.get(i) + " "
+                        + actual.get(i));
+            }
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testExhaustiveScan() throws Exception
+    {
+        ArrayList<ArrayList<Double>> expected = runReference(true);
+        assertTrue(expected.size() > 1);
+        assertSameConformations(expected, runKernel(true, false));
+        assertSameConformations(expected, runKernel(true, true));
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testFirstClosableConformation() throws Exception
+    {
+        ArrayList<ArrayList<Double>> expected = runReference(false);
+        assertEquals(1, expected.size());
+        assertSameConformations(expected, runKernel(false, false));
+        assertSameConformations(expected, runKernel(false, true));
+    }
+
+//------------------------------------------------------------------------------
+
+}
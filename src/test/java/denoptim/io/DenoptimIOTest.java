@@ -41,6 +41,7 @@ import org.openscience.cdk.Atom;
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
@@ -347,6 +348,56 @@ public class DenoptimIOTest
                 "fitness 2nd");
     }
     
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testReadSDFProperties() throws Exception {
+        
+        String pathName = tempDir.getAbsolutePath() + SEP + "props.sdf";
+        
+        IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+        List<IAtomContainer> mols = new ArrayList<IAtomContainer>();
+        for (int i=0; i<3; i++)
+        {
+            IAtomContainer iac = builder.newAtomContainer();
+            for (int j=0; j<i+2; j++)
+            {
+                iac.addAtom(new Atom("C"));
+                if (j>0)
+                    iac.addBond(j-1, j, IBond.Order.SINGLE);
+            }
+            iac.setProperty(CDKConstants.TITLE, "mol"+i);
+            iac.setProperty(DENOPTIMConstants.UNIQUEIDTAG, "uid"+i);
+            if (i!=1)
+                iac.setProperty(DENOPTIMConstants.MOLERRORTAG, "line1" + NL 
+                        + "line2 of mol" + i);
+            iac.setProperty("OTHER", "other"+i);
+            mols.add(iac);
+        }
+        DenoptimIO.writeSDFFile(pathName, mols);
+        
+        List<String> propNames = Arrays.asList(CDKConstants.TITLE,
+                DENOPTIMConstants.UNIQUEIDTAG, DENOPTIMConstants.MOLERRORTAG,
+                "MISSING");
+        List<Map<String,Object>> props = DenoptimIO.readSDFProperties(
+                pathName, propNames);
+        List<IAtomContainer> readMols = DenoptimIO.readSDFFile(pathName);
+        
+        assertEquals(3, props.size());
+        for (int i=0; i<3; i++)
+        {
+            assertEquals(propNames.size(), props.get(i).size());
+            for (String propName : propNames)
+            {
+                assertEquals(readMols.get(i).getProperty(propName), 
+                        props.get(i).get(propName), propName + " in mol" + i);
+            }
+        }
+        assertEquals("mol2", props.get(2).get(CDKConstants.TITLE));
+        assertEquals(null, props.get(1).get(DENOPTIMConstants.MOLERRORTAG));
+        assertEquals(null, props.get(0).get("MISSING"));
+    }
+    
 //------------------------------------------------------------------------------
 
 	@Test
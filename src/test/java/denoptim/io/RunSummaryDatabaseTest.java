@@ -0,0 +1,135 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import denoptim.exception.DENOPTIMException;
+import denoptim.graph.Candidate;
+import denoptim.graph.CandidateLW;
+import denoptim.graph.DGraph;
+
+/**
+ * Unit test for the run summary database.
+ *
+ * @author Marco Foscato
+ */
+
+public class RunSummaryDatabaseTest
+{
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    private static Candidate makeCandidate(int i)
+    {
+        Candidate c = new Candidate("M" + i, new DGraph());
+        c.setUID("UID" + i);
+        c.setSDFFile("/some/path/M" + i + "_out.sdf");
+        if (i % 3 == 0)
+        {
+            c.setError("failed " + i);
+        } else {
+            c.setFitness(i * 1.5);
+        }
+        return c;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testAppendAndReload() throws Exception
+    {
+        assertNull(RunSummaryDatabase.openIfExists(tempDir));
+
+        File dbFile = RunSummaryDatabase.getFile(tempDir.getAbsolutePath());
+        RunSummaryDatabase db = new RunSummaryDatabase(dbFile, false);
+        for (int i=0; i<6; i++)
+        {
+            db.appendCandidate(makeCandidate(i), i/2, -1, -1);
+        }
+        db.appendPopulationMember(makeCandidate(1), 0);
+        db.appendPopulationMember(makeCandidate(2), 1);
+        db.appendPopulationMember(makeCandidate(4), 1);
+        assertEquals(6, db.size());
+        assertEquals(2, db.getCandidatesOfGeneration(2).size());
+        db.close();
+
+        // Simulate a crash while writing a record
+        long length = dbFile.length();
+        try (RandomAccessFile raf = new RandomAccessFile(dbFile, "rw"))
+        {
+            raf.seek(length);
+            raf.write(new byte[] {0x44, 0x52, 0x53, 0x31, 0, 0, 0, 90, 1, 2});
+        }
+
+        db = new RunSummaryDatabase(dbFile, false);
+        assertEquals(length, dbFile.length());
+        assertEquals(6, db.size());
+        for (int i=0; i<6; i++)
+        {
+            CandidateLW c = db.getCandidate("UID" + i);
+            assertEquals("M" + i, c.getName());
+            assertEquals(i/2, c.getGeneration());
+            assertEquals("/some/path/M" + i + "_out.sdf", c.getPathToFile());
+            if (i % 3 == 0)
+            {
+                assertFalse(c.hasFitness());
+                assertEquals("failed " + i, c.getError());
+            } else {
+                assertTrue(c.hasFitness());
+                assertEquals(i * 1.5, c.getFitness(), 0.000001);
+            }
+        }
+        List<CandidateLW> members = db.getPopulationMembers(1);
+        assertEquals(2, members.size());
+        assertEquals("UID2", members.get(0).getUid());
+        assertEquals("UID4", members.get(1).getUid());
+        assertTrue(db.getPopulationMembers(5).isEmpty());
+
+        // Records of the FSE carry level and offset of the graph
+        db.appendCandidate(makeCandidate(7), -1, 2, 1234L);
+        assertEquals(1234L, db.getGraphOffset("UID7"));
+        assertEquals(2, db.getCandidate("UID7").getLevel());
+        assertEquals(-1L, db.getGraphOffset("UID8"));
+        db.close();
+
+        RunSummaryDatabase reader = RunSummaryDatabase.openIfExists(tempDir);
+        assertEquals(7, reader.size());
+        assertEquals(1234L, reader.getGraphOffset("UID7"));
+        assertThrows(DENOPTIMException.class,
+                () -> reader.appendCandidate(makeCandidate(8), 0, -1, -1));
+        reader.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
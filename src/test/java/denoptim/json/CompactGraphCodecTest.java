@@ -0,0 +1,180 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import javax.vecmath.Point3d;
+
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.Atom;
+import org.openscience.cdk.Bond;
+import org.openscience.cdk.interfaces.IAtom;
+
+import com.google.gson.JsonParseException;
+
+import denoptim.fragspace.FragmentSpace;
+import denoptim.fragspace.FragmentSpaceParameters;
+import denoptim.graph.APClass;
+import denoptim.graph.DGraph;
+import denoptim.graph.Edge.BondType;
+import denoptim.graph.Fragment;
+import denoptim.graph.Vertex;
+import denoptim.graph.Vertex.BBType;
+
+/**
+ * Unit test for the compact JSON codec of graphs.
+ *
+ * @author Marco Foscato
+ */
+
+public class CompactGraphCodecTest
+{
+
+//------------------------------------------------------------------------------
+
+    private static FragmentSpace makeFragmentSpace() throws Exception
+    {
+        APClass a0 = APClass.make("a",0,BondType.SINGLE);
+        APClass h0 = APClass.make("h",0,BondType.SINGLE);
+        HashMap<APClass,ArrayList<APClass>> cpMap =
+                new HashMap<APClass,ArrayList<APClass>>();
+        cpMap.put(a0, new ArrayList<APClass>(Arrays.asList(a0)));
+        HashMap<APClass,APClass> capMap = new HashMap<APClass,APClass>();
+        capMap.put(a0, h0);
+
+        Fragment scaf = new Fragment();
+        IAtom a1 = new Atom("C", new Point3d(new double[]{0.0, 0.0, 0.0}));
+        IAtom a2 = new Atom("C", new Point3d(new double[]{1.0, 0.0, 0.0}));
+        scaf.addAtom(a1);
+        scaf.addAtom(a2);
+        scaf.addBond(new Bond(a1, a2));
+        scaf.addAP(0, a0, new Point3d(new double[]{0.0, 0.0, 1.0}));
+        scaf.addAP(1, a0, new Point3d(new double[]{1.0, 1.0, 1.0}));
+        scaf.projectAPsToProperties();
+        scaf.setBuildingBlockType(BBType.SCAFFOLD);
+        scaf.setBuildingBlockId(0);
+
+        Fragment frag = new Fragment();
+        IAtom a3 = new Atom("O", new Point3d(new double[]{0.0, 0.0, 0.0}));
+        frag.addAtom(a3);
+        frag.addAP(0, a0, new Point3d(new double[]{0.0, 1.0, 1.0}));
+        frag.addAP(0, a0, new Point3d(new double[]{0.0, 1.0, -1.0}));
+        frag.projectAPsToProperties();
+        frag.setBuildingBlockType(BBType.FRAGMENT);
+        frag.setBuildingBlockId(0);
+
+        Fragment cap = new Fragment();
+        IAtom a4 = new Atom("H", new Point3d(new double[]{0.0, 0.0, 0.0}));
+        cap.addAtom(a4);
+        cap.addAP(0, h0, new Point3d(new double[]{0.0, 1.0, 1.0}));
+        cap.projectAPsToProperties();
+        cap.setBuildingBlockType(BBType.CAP);
+        cap.setBuildingBlockId(0);
+
+        ArrayList<Vertex> scaffs = new ArrayList<Vertex>();
+        scaffs.add(scaf);
+        ArrayList<Vertex> frags = new ArrayList<Vertex>();
+        frags.add(frag);
+        ArrayList<Vertex> caps = new ArrayList<Vertex>();
+        caps.add(cap);
+
+        return new FragmentSpace(new FragmentSpaceParameters(), scaffs, frags,
+                caps, cpMap, capMap, new HashSet<APClass>(), cpMap);
+    }
+
+//------------------------------------------------------------------------------
+
+    private static DGraph makeGraph(FragmentSpace fs) throws Exception
+    {
+        DGraph g = new DGraph();
+        Vertex v1 = Vertex.newVertexFromLibrary(1, 0, BBType.SCAFFOLD, fs);
+        Vertex v2 = Vertex.newVertexFromLibrary(2, 0, BBType.FRAGMENT, fs);
+        Vertex v3 = Vertex.newVertexFromLibrary(3, 0, BBType.FRAGMENT, fs);
+        Vertex v4 = Vertex.newVertexFromLibrary(4, 0, BBType.CAP, fs);
+        g.addVertex(v1);
+        g.appendVertexOnAP(v1.getAP(0), v2.getAP(0));
+        g.appendVertexOnAP(v1.getAP(1), v3.getAP(1));
+        g.appendVertexOnAP(v2.getAP(1), v4.getAP(0));
+        v2.setProperty("someKey", "someValue");
+        v2.getAP(1).setAtomPositionNumberInMol(3);
+        return g;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testRoundTripWithReferences() throws Exception
+    {
+        FragmentSpace fs = makeFragmentSpace();
+        DGraph g = makeGraph(fs);
+        String fullJson = g.toJson();
+        assertFalse(fullJson.contains("libraryRef"));
+        assertFalse(fullJson.contains("\n"));
+
+        String json = g.toJson(fs);
+        assertEquals(4, json.split("libraryRef", -1).length - 1);
+        assertTrue(json.length() < fullJson.length());
+
+        DGraph decoded = DGraph.fromJson(json, fs);
+        StringBuilder reason = new StringBuilder();
+        assertTrue(g.sameAs(decoded, reason), reason.toString());
+        assertEquals(fullJson, decoded.toJson());
+        assertEquals(3, decoded.getVertexAtPosition(1).getAP(1)
+                .getAtomPositionNumberInMol());
+
+        // References cannot be resolved without the fragment space
+        assertThrows(JsonParseException.class, () -> DGraph.fromJson(json));
+
+        // Vertices that do not share the atoms of the library are written
+        // in full
+        g.getVertexAtPosition(2).getIAtomContainer();
+        String json2 = g.toJson(fs);
+        assertEquals(3, json2.split("libraryRef", -1).length - 1);
+        assertEquals(g.toJson(), DGraph.fromJson(json2, fs).toJson());
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testReadPrettyPrintedFormat() throws Exception
+    {
+        FragmentSpace fs = makeFragmentSpace();
+        DGraph g = makeGraph(fs);
+        g.addRing(g.getVertexAtPosition(2), g.getVertexAtPosition(3));
+        String pretty = DENOPTIMgson.getWriter().toJson(g);
+        assertTrue(pretty.contains("\n"));
+
+        DGraph decoded = DGraph.fromJson(pretty);
+        assertEquals(g.toJson(), decoded.toJson());
+        assertEquals(1, decoded.getRingCount());
+        assertEquals(g.getEdgeCount(), decoded.getEdgeCount());
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,98 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.programs.graphlisthandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import denoptim.graph.DGraph;
+import denoptim.graph.Edge;
+import denoptim.graph.EmptyVertex;
+
+/**
+ * Unit test for the comparison of lists of graphs.
+ *
+ * @author Marco Foscato
+ */
+
+public class GraphListsHandlerTest
+{
+
+//------------------------------------------------------------------------------
+
+    private static DGraph makeChain(int... bbIds) throws Exception
+    {
+        DGraph graph = new DGraph();
+        EmptyVertex prev = null;
+        for (int bbId : bbIds)
+        {
+            EmptyVertex v = new EmptyVertex();
+            v.setBuildingBlockId(bbId);
+            v.addAP();
+            v.addAP();
+            graph.addVertex(v);
+            if (prev != null)
+                graph.addEdge(new Edge(prev.getAP(1), v.getAP(0)));
+            prev = v;
+        }
+        return graph;
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testFindMatches() throws Exception
+    {
+        List<DGraph> graphsA = new ArrayList<DGraph>();
+        graphsA.add(makeChain(1, 2, 3));
+        graphsA.add(makeChain(4, 5));
+        graphsA.add(makeChain(1, 2, 3));
+        graphsA.add(makeChain(7));
+        graphsA.add(makeChain(1, 3, 2));
+
+        List<DGraph> graphsB = new ArrayList<DGraph>();
+        graphsB.add(makeChain(4, 5));
+        graphsB.add(makeChain(9));
+        graphsB.add(makeChain(1, 2, 3));
+        graphsB.add(makeChain(1, 2, 3));
+
+        for (int numThreads : new int[] {1, 3})
+        {
+            List<Integer> matches = new ArrayList<Integer>();
+            BitSet matchedB = GraphListsHandler.findMatches(graphsA, graphsB,
+                    numThreads, (i, j) -> {
+                        assertEquals(matches.size(), i);
+                        matches.add(j);
+                    });
+            assertEquals(Arrays.asList(2, 0, 2, -1, -1), matches);
+            assertEquals(2, matchedB.cardinality());
+            assertEquals(0, matchedB.nextSetBit(0));
+            assertEquals(2, matchedB.nextSetBit(1));
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,219 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import denoptim.exception.DENOPTIMException;
+
+/**
+ * Unit test for the pool of external fitness workers. The workers are
+ * processes running {@link ScriptedWorker}, which behaves according to the
+ * content of the request.
+ *
+ * @author Marco Foscato
+ */
+
+public class ExternalFitnessWorkerPoolTest
+{
+    private static final Logger LOGGER = Logger.getLogger(
+            ExternalFitnessWorkerPoolTest.class.getName());
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A worker that replies with the upper case version of the payload,
+     * unless the payload is one of the following commands:
+     * <ul>
+     * <li><code>CRASH</code>: the process terminates without replying.</li>
+     * <li><code>SLEEP</code>: the process does not reply for a long time.</li>
+     * <li><code>ERROR</code>: the process replies with an error.</li>
+     * <li><code>LENGTH=x</code>: the process replies with a header declaring
+     * <code>x</code> as length of the payload.</li>
+     * </ul>
+     */
+    public static class ScriptedWorker
+    {
+        public static void main(String[] args) throws Exception
+        {
+            DataInputStream in = new DataInputStream(System.in);
+            PrintStream out = new PrintStream(System.out, false, "UTF-8");
+            String line;
+            while ((line = readLine(in)) != null)
+            {
+                JsonObject header = JsonParser.parseString(line)
+                        .getAsJsonObject();
+                String cmd = header.get("cmd").getAsString();
+                long id = header.has("id") ? header.get("id").getAsLong() : -1;
+                byte[] payload = new byte[header.has("length") ?
+                        header.get("length").getAsInt() : 0];
+                in.readFully(payload);
+                String text = new String(payload, StandardCharsets.UTF_8);
+                if ("shutdown".equals(cmd))
+                {
+                    break;
+                }
+                if ("ping".equals(cmd))
+                {
+                    out.print("{\"id\":" + id + "}\n");
+                } else if ("CRASH".equals(text)) {
+                    System.exit(3);
+                } else if ("SLEEP".equals(text)) {
+                    Thread.sleep(60000);
+                } else if ("ERROR".equals(text)) {
+                    out.print("{\"id\":" + id + ",\"status\":\"error\","
+                            + "\"message\":\"scripted\"}\n");
+                } else if (text.startsWith("LENGTH=")) {
+                    out.print("{\"id\":" + id + ",\"length\":"
+                            + text.substring(7) + "}\n");
+                } else {
+                    byte[] reply = text.toUpperCase().getBytes(
+                            StandardCharsets.UTF_8);
+                    // Output that is not a message must be ignored
+                    out.print("Some log line\n");
+                    out.print("{\"id\":" + id + ",\"length\":" + reply.length
+                            + "}\n");
+                    out.write(reply);
+                }
+                out.flush();
+            }
+        }
+
+        private static String readLine(DataInputStream in) throws IOException
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1 && b != '\n')
+            {
+                baos.write(b);
+            }
+            if (b == -1 && baos.size() == 0)
+                return null;
+            return baos.toString("UTF-8");
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private static List<String> getWorkerCommand()
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        String classpath = System.getProperty("surefire.test.class.path",
+                System.getProperty("java.class.path"));
+        return Arrays.asList(java, "-cp", classpath,
+                ScriptedWorker.class.getName());
+    }
+
+//------------------------------------------------------------------------------
+
+    private static String evaluate(ExternalFitnessWorkerPool pool, String text)
+            throws DENOPTIMException
+    {
+        byte[] reply = pool.evaluate(text.getBytes(StandardCharsets.UTF_8),
+                new JsonObject());
+        return new String(reply, StandardCharsets.UTF_8);
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testRepliesAndRestart() throws Exception
+    {
+        ExternalFitnessWorkerPool pool = new ExternalFitnessWorkerPool(
+                getWorkerCommand(), 1, 0, LOGGER);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            assertEquals("ABC", evaluate(pool, "abc"));
+            assertEquals("DEF", evaluate(pool, "def"));
+
+            // Errors reported by the worker do not kill the worker
+            DENOPTIMException e = assertThrows(DENOPTIMException.class,
+                    () -> evaluate(pool, "ERROR"));
+            assertTrue(e.getMessage().contains("scripted"));
+            assertEquals("GHI", evaluate(pool, "ghi"));
+
+            // A crashed worker is replaced by a new one
+            assertThrows(DENOPTIMException.class,
+                    () -> evaluate(pool, "CRASH"));
+            assertEquals("JKL", evaluate(pool, "jkl"));
+        });
+        pool.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        ExternalFitnessWorkerPool pool = new ExternalFitnessWorkerPool(
+                getWorkerCommand(), 1, 5000, LOGGER);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            assertEquals("ABC", evaluate(pool, "abc"));
+            long start = System.currentTimeMillis();
+            DENOPTIMException e = assertThrows(DENOPTIMException.class,
+                    () -> evaluate(pool, "SLEEP"));
+            assertTrue(e.getMessage().contains("did not reply"));
+            assertTrue(System.currentTimeMillis() - start < 30000);
+            assertEquals("DEF", evaluate(pool, "def"));
+        });
+        pool.close();
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testMalformedHeader() throws Exception
+    {
+        // No timeout: a malformed reply must not make us wait forever
+        ExternalFitnessWorkerPool pool = new ExternalFitnessWorkerPool(
+                getWorkerCommand(), 1, 0, LOGGER);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            for (String length : Arrays.asList("-5", "\"abc\"",
+                    "99999999999", "{}"))
+            {
+                assertThrows(DENOPTIMException.class,
+                        () -> evaluate(pool, "LENGTH=" + length));
+                assertEquals("ABC", evaluate(pool, "abc"));
+            }
+        });
+        pool.close();
+    }
+
+//------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,155 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import denoptim.fitness.FitnessParameters;
+import denoptim.fitness.FitnessProvider;
+import denoptim.graph.Candidate;
+import denoptim.graph.DGraph;
+
+/**
+ * Unit test for the manager of batches of tasks.
+ *
+ * @author Marco Foscato
+ */
+
+public class TasksBatchManagerTest
+{
+    @TempDir
+    File tempDir;
+
+//------------------------------------------------------------------------------
+
+    /**
+     * A task that evaluates a molecule given as SMILES, and records whether
+     * the fitness had been calculated in a batch before running the task.
+     */
+    private static class SmilesFitnessTask extends FitnessTask
+    {
+        final String smiles;
+        final boolean preparable;
+        boolean wasPrecomputed = false;
+
+        SmilesFitnessTask(FitnessParameters settings, String smiles,
+                boolean preparable, File workDir)
+        {
+            super(settings, new Candidate(smiles, new DGraph()));
+            this.smiles = smiles;
+            this.preparable = preparable;
+            this.workDir = workDir;
+            this.fitProvOutFile = new File(workDir, smiles + "_out.sdf")
+                    .getAbsolutePath();
+            result.setUID(smiles);
+        }
+
+        @Override
+        public boolean prepareForBatchEvaluation()
+        {
+            if (!preparable)
+                return false;
+            fitProvMol = parse(smiles);
+            return true;
+        }
+
+        @Override
+        public Object call() throws Exception
+        {
+            wasPrecomputed = precomputedFitness != null;
+            if (fitProvMol == null)
+                fitProvMol = parse(smiles);
+            runFitnessProvider();
+            return result;
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    private static IAtomContainer parse(String smiles)
+    {
+        try
+        {
+            return new SmilesParser(SilentChemObjectBuilder.getInstance())
+                    .parseSmiles(smiles);
+        } catch (Exception e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testBatchEvaluationOfInternalFitness() throws Exception
+    {
+        FitnessParameters fitPar = new FitnessParameters();
+        fitPar.interpretKeyword("FP-Equation=${0.02 * Zagreb}");
+        fitPar.processParameters();
+
+        String[] smiles = new String[] {"CCO", "COc1ccccc1", "CCN", "CC(C)C",
+                "c1ccccc1O"};
+        List<Task> tasks = new ArrayList<Task>();
+        List<SmilesFitnessTask> fitTasks = new ArrayList<SmilesFitnessTask>();
+        for (int i=0; i<smiles.length; i++)
+        {
+            // The last task does not prepare its molecule in advance
+            SmilesFitnessTask task = new SmilesFitnessTask(fitPar, smiles[i],
+                    i < smiles.length-1, tempDir);
+            tasks.add(task);
+            fitTasks.add(task);
+        }
+
+        TasksBatchManager tbm = new TasksBatchManager();
+        List<Candidate> results = tbm.executeTasks(tasks, 2);
+        assertEquals(smiles.length, results.size());
+
+        FitnessProvider fp = new FitnessProvider(fitPar.getDescriptors(),
+                fitPar.getFitnessExpression(), fitPar.getLogger());
+        for (int i=0; i<smiles.length; i++)
+        {
+            SmilesFitnessTask task = fitTasks.get(i);
+            if (i < smiles.length-1)
+            {
+                assertTrue(task.wasPrecomputed, "Task " + i + " was not "
+                        + "evaluated in a batch");
+            } else {
+                assertFalse(task.wasPrecomputed);
+            }
+            assertTrue(task.result.hasFitness());
+            assertEquals(fp.getFitness(parse(smiles[i])),
+                    task.result.getFitness(), 0.0001);
+        }
+    }
+
+//------------------------------------------------------------------------------
+
+}
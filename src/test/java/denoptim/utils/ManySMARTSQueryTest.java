@@ -0,0 +1,110 @@
+/*
+ *   DENOPTIM
+ *   Copyright (C) 2022 Marco Foscato <marco.foscato@uib.no>
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package denoptim.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smarts.SmartsPattern;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+/**
+ * Unit test for ManySMARTSQuery
+ *
+ * @author Marco Foscato
+ */
+
+public class ManySMARTSQueryTest
+{
+
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testCompiledQueries() throws Exception
+    {
+        SmilesParser sp = new SmilesParser(
+                SilentChemObjectBuilder.getInstance());
+        
+        Map<String,String> smarts = new HashMap<String,String>();
+        smarts.put("aromC", "c");
+        smarts.put("ringC", "[C;R]");
+        smarts.put("carbonyl", "C=O");
+        smarts.put("nitrogen", "[#7]");
+        
+        assertTrue(ManySMARTSQuery.getCompiledQuery("c") 
+                == ManySMARTSQuery.getCompiledQuery("c"));
+        Map<String,Pattern> queries = ManySMARTSQuery.compileQueries(smarts);
+        assertTrue(ManySMARTSQuery.getCompiledQuery("C=O") 
+                == queries.get("carbonyl"));
+        
+        // DENOPTIM works with explicit hydrogen atoms
+        IAtomContainer mol = sp.parseSmiles("C1CCCCC1C(=O)c1ccccc1");
+        AtomContainerManipulator.convertImplicitToExplicitHydrogens(mol);
+        ManySMARTSQuery msq = new ManySMARTSQuery(queries, mol);
+        assertFalse(msq.hasProblems());
+        assertEquals(6, msq.getNumMatchesOfQuery("aromC"));
+        assertEquals(6, msq.getNumMatchesOfQuery("ringC"));
+        assertEquals(1, msq.getNumMatchesOfQuery("carbonyl"));
+        assertEquals(0, msq.getNumMatchesOfQuery("nitrogen"));
+        assertEquals(null, msq.getMatchesOfSMARTS("nitrogen"));
+        
+        // Same results when starting from the SMARTS strings
+        IAtomContainer mol2 = sp.parseSmiles("C1CCCCC1C(=O)c1ccccc1");
+        AtomContainerManipulator.convertImplicitToExplicitHydrogens(mol2);
+        ManySMARTSQuery msq2 = new ManySMARTSQuery(mol2, smarts);
+        assertFalse(msq2.hasProblems());
+        
+        // Same results as queries that are compiled on the fly and that
+        // prepare the molecule themselves
+        for (String ref : smarts.keySet())
+        {
+            IAtomContainer mol3 = sp.parseSmiles("C1CCCCC1C(=O)c1ccccc1");
+            AtomContainerManipulator.convertImplicitToExplicitHydrogens(mol3);
+            int expected = SmartsPattern.create(smarts.get(ref))
+                    .matchAll(mol3).count();
+            assertEquals(expected, msq.getNumMatchesOfQuery(ref), ref);
+            assertEquals(expected, msq2.getNumMatchesOfQuery(ref), ref);
+        }
+        
+        // Molecules with implicit hydrogens are matched after setting
+        // the implicit hydrogen counts to zero, just like without caching
+        IAtomContainer mol4 = sp.parseSmiles("C1CCCCC1C(=O)N");
+        ManySMARTSQuery msq4 = new ManySMARTSQuery(queries, mol4);
+        assertFalse(msq4.hasProblems());
+        assertEquals(6, msq4.getNumMatchesOfQuery("ringC"));
+        assertEquals(1, msq4.getNumMatchesOfQuery("nitrogen"));
+        assertEquals(0, msq4.getNumMatchesOfQuery("aromC"));
+        
+        smarts.put("wrong", "C(");
+        ManySMARTSQuery msq3 = new ManySMARTSQuery(mol2, smarts);
+        assertTrue(msq3.hasProblems());
+    }
+
+//------------------------------------------------------------------------------
+
+}
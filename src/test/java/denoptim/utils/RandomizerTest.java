@@ -18,8 +18,12 @@
 
 package denoptim.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.stream.IntStream;
+
 import javax.vecmath.Point3d;
 
 import org.junit.jupiter.api.Test;
@@ -79,6 +83,62 @@ public class RandomizerTest
         }
     }
     
+//------------------------------------------------------------------------------
+
+    @Test
+    public void testTaskStreams() throws Exception
+    {
+        long seed = 1234567;
+        int numTasks = 200;
+        int numDraws = 50;
+        
+        // Streams of tasks run serially
+        Randomizer rngA = new Randomizer(seed);
+        rngA.setTaskStreams(true);
+        long[][] resA = new long[numTasks][numDraws];
+        for (int t=0; t<numTasks; t++)
+        {
+            rngA.startTaskStream("task" + t);
+            for (int i=0; i<numDraws; i++)
+                resA[t][i] = rngA.nextInt(1000000);
+            rngA.endTaskStream();
+        }
+        
+        // Streams of tasks run in parallel and in different order
+        Randomizer rngB = new Randomizer(seed);
+        rngB.setTaskStreams(true);
+        long[][] resB = new long[numTasks][numDraws];
+        IntStream.range(0, numTasks).parallel().map(t -> numTasks - 1 - t)
+            .forEach(t -> {
+                rngB.startTaskStream("task" + t);
+                for (int i=0; i<numDraws; i++)
+                    resB[t][i] = rngB.nextInt(1000000);
+                rngB.endTaskStream();
+            });
+        
+        for (int t=0; t<numTasks; t++)
+        {
+            for (int i=0; i<numDraws; i++)
+                assertEquals(resA[t][i], resB[t][i]);
+        }
+        
+        // Task streams do not consume the main sequence
+        assertEquals(new Randomizer(seed).nextDouble(), rngA.nextDouble());
+        assertEquals(new Randomizer(seed).nextDouble(), rngB.nextDouble());
+        
+        // Different tasks and different seeds give different streams
+        assertNotEquals(Randomizer.getTaskSeed(seed, "task0"),
+                Randomizer.getTaskSeed(seed, "task1"));
+        assertNotEquals(Randomizer.getTaskSeed(seed, "task0"),
+                Randomizer.getTaskSeed(seed + 1, "task0"));
+        
+        // Without task streams, tasks draw from the main sequence
+        Randomizer rngD = new Randomizer(seed);
+        rngD.startTaskStream("task0");
+        assertEquals(new Randomizer(seed).nextDouble(), rngD.nextDouble());
+        rngD.endTaskStream();
+    }
+    
 //------------------------------------------------------------------------------
     
 }
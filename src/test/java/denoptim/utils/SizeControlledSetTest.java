@@ -79,6 +79,47 @@ public class SizeControlledSetTest
         }
     }
     
+//------------------------------------------------------------------------------
+    
+    @Test
+    public void testHashedStoreRestart() throws Exception
+    {
+        assertTrue(this.tempDir.isDirectory(),"Should be a directory ");
+        String memoryFile = tempDir.getAbsolutePath() + SEP + "test_hashed";
+        
+        SizeControlledSet scs = new SizeControlledSet(5, memoryFile, null,
+                IUIDStore.Type.HASHED_BLOOM);
+        int tot = 2000;
+        String base = "entry";
+        for (int i=0; i<tot; i++)
+        {
+            assertTrue(scs.addNewUniqueEntry(base+i),"Adding "+i);
+        }
+        assertEquals(tot,scs.size());
+        for (int i=0; i<tot; i++)
+        {
+            assertTrue(scs.contains(base+i),"Contains "+i);
+            assertFalse(scs.addNewUniqueEntry(base+i),"OverLoading "+i);
+        }
+        assertFalse(scs.contains("notThere"));
+        scs.close();
+        
+        // The entries on disk are found after a restart.
+        HashedUIDStore store = new HashedUIDStore(new File(memoryFile));
+        assertEquals(tot-5,store.size());
+        for (int i=5; i<tot; i++)
+        {
+            assertTrue(store.contains(base+i),"Contains after restart "+i);
+        }
+        assertFalse(store.contains(base+0));
+        assertTrue(store.addIfAbsent(base+0));
+        assertFalse(store.addIfAbsent(base+0));
+        store.close();
+        
+        // The text file can be read as any list of UIDs.
+        assertEquals(tot-4,DenoptimIO.readList(memoryFile).size());
+    }
+
 //------------------------------------------------------------------------------
 
 }